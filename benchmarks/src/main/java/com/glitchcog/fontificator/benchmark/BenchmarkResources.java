@@ -0,0 +1,117 @@
+package com.glitchcog.fontificator.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.glitchcog.fontificator.config.ConfigFont;
+import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
+
+/**
+ * Loads the fixtures shared by the benchmarks. Everything comes from resources, the bundled presets and fonts of the
+ * main project and the IRC corpus of this one, so results stay comparable from release to release.
+ *
+ * @author Matt Yanos
+ */
+public class BenchmarkResources
+{
+    /**
+     * A preset using a fixed width font, Dragon Warrior III
+     */
+    public static final String FIXED_WIDTH_PRESET = "dw3";
+
+    /**
+     * A preset using a variable width font, Final Fantasy VI
+     */
+    public static final String VARIABLE_WIDTH_PRESET = "ff6";
+
+    /**
+     * Resource containing one raw Twitch IRC PRIVMSG line, including its tags, per line
+     */
+    public static final String TWITCH_CORPUS = "corpus/twitch_privmsg.txt";
+
+    /**
+     * Load one of the bundled presets on top of the default values
+     *
+     * @param presetName
+     *            The name of the preset file without the path or extension, like ff6
+     * @return properties
+     * @throws Exception
+     */
+    public static FontificatorProperties loadPreset(String presetName) throws Exception
+    {
+        FontificatorProperties props = new FontificatorProperties();
+        props.loadDefaultValues(true);
+        LoadConfigReport report = props.loadFile(ConfigFont.INTERNAL_FILE_PREFIX + "presets/" + presetName + ".cgf");
+        if (report.isErrorFree())
+        {
+            return props;
+        }
+        throw new IllegalStateException("Unable to load preset " + presetName + ": " + report.getMessages());
+    }
+
+    /**
+     * Read every non-empty line of a UTF-8 text resource
+     *
+     * @param resourceName
+     * @return lines
+     * @throws IOException
+     */
+    public static List<String> loadLines(String resourceName) throws IOException
+    {
+        InputStream is = BenchmarkResources.class.getClassLoader().getResourceAsStream(resourceName);
+        if (is == null)
+        {
+            throw new IOException("Resource " + resourceName + " not found");
+        }
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (!line.isEmpty())
+                {
+                    lines.add(line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /**
+     * Get the content of a raw IRC PRIVMSG line, everything after the separator following the prefix
+     *
+     * @param rawLine
+     * @return content
+     */
+    public static String getContent(String rawLine)
+    {
+        final String separator = " :";
+        final int prefixStart = rawLine.indexOf(separator);
+        return rawLine.substring(rawLine.indexOf(separator, prefixStart + separator.length()) + separator.length());
+    }
+
+    /**
+     * Get the nick out of the prefix of a raw IRC PRIVMSG line
+     *
+     * @param rawLine
+     * @return nick
+     */
+    public static String getNick(String rawLine)
+    {
+        final String separator = " :";
+        final int prefixStart = rawLine.indexOf(separator) + separator.length();
+        return rawLine.substring(prefixStart, rawLine.indexOf('!', prefixStart));
+    }
+}
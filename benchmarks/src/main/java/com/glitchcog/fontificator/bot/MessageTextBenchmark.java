@@ -0,0 +1,152 @@
+package com.glitchcog.fontificator.bot;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.glitchcog.fontificator.benchmark.BenchmarkResources;
+import com.glitchcog.fontificator.config.ConfigEmoji;
+import com.glitchcog.fontificator.config.ConfigMessage;
+import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.emoji.EmojiManager;
+import com.glitchcog.fontificator.emoji.EmojiType;
+import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
+
+/**
+ * Measures parsing messages from the corpus into the MessageText that SpriteFont draws, a char array with a sparse
+ * table of the emoji slots' indices and keys, with emoji turned off and with emoji turned on against Twitch emotes from
+ * the tags and third party emotes matched by word. No emoji images are loaded, only the lookups are measured.
+ *
+ * @author Matt Yanos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageTextBenchmark
+{
+    private static final int CORPUS_SIZE = 256;
+
+    /**
+     * Third party emotes keyed off of the words in the corpus that should match them
+     */
+    private static final String[] FFZ_GLOBAL_EMOTES = { "ZreknarF", "OMEGALUL", "monkaS" };
+    private static final String[] BTTV_GLOBAL_EMOTES = { "FeelsGoodMan", "FeelsBadMan", "LUL", "PepeHands", "gachiBASS" };
+
+    @Param({ "false", "true" })
+    public boolean emoji;
+
+    private String[] usernames;
+
+    private String[] contents;
+
+    private TwitchPrivmsg[] privmsgs;
+
+    private Message[] parsedMessages;
+
+    private EmojiManager emojiManager;
+
+    private ConfigMessage messageConfig;
+
+    private ConfigEmoji emojiConfig;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        FontificatorProperties props = BenchmarkResources.loadPreset(BenchmarkResources.VARIABLE_WIDTH_PRESET);
+        messageConfig = props.getMessageConfig();
+        emojiConfig = props.getEmojiConfig();
+        emojiManager = new EmojiManager();
+
+        emojiConfig.setEmojiEnabled(emoji);
+        emojiConfig.setTwitchEnabled(emoji);
+        emojiConfig.setFfzEnabled(emoji);
+        emojiConfig.setBttvEnabled(emoji);
+        if (emoji)
+        {
+            emojiConfig.setFfzGlobalLoaded(true);
+            emojiConfig.setBttvGlobalLoaded(true);
+            putEmoji(EmojiType.FRANKERFACEZ_GLOBAL, FFZ_GLOBAL_EMOTES);
+            putEmoji(EmojiType.BETTER_TTV_GLOBAL, BTTV_GLOBAL_EMOTES);
+        }
+
+        List<String> lines = BenchmarkResources.loadLines(BenchmarkResources.TWITCH_CORPUS);
+        if (lines.size() != CORPUS_SIZE)
+        {
+            throw new IllegalStateException("Expected " + CORPUS_SIZE + " lines in " + BenchmarkResources.TWITCH_CORPUS + ", found " + lines.size());
+        }
+
+        Map<String, String> usernameIds = new HashMap<String, String>();
+        usernames = new String[CORPUS_SIZE];
+        contents = new String[CORPUS_SIZE];
+        privmsgs = new TwitchPrivmsg[CORPUS_SIZE];
+        parsedMessages = new Message[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            final String line = lines.get(i);
+            privmsgs[i] = ChatViewerBot.parseRawTwitchMessage(line, "glitchcog", usernameIds);
+            usernames[i] = privmsgs[i].getDisplayName();
+            contents[i] = BenchmarkResources.getContent(line);
+            parsedMessages[i] = createMessage(i);
+            parsedMessages[i].getText(emojiManager, messageConfig, emojiConfig);
+        }
+    }
+
+    private void putEmoji(EmojiType type, String[] words) throws Exception
+    {
+        for (String word : words)
+        {
+            emojiManager.getEmojiByType(type).put(word, new LazyLoadEmoji(word, "http://localhost/emoji/" + word + ".png", 28, 28, type));
+        }
+    }
+
+    private Message createMessage(int index)
+    {
+        return new Message(MessageType.NORMAL, usernames[index], new Date(0L), contents[index], privmsgs[index]);
+    }
+
+    /**
+     * A new message parsing its text for the first time, as happens when it is first drawn or after a configuration
+     * change
+     */
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void parseIntoText(Blackhole bh)
+    {
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            bh.consume(createMessage(i).getText(emojiManager, messageConfig, emojiConfig));
+        }
+    }
+
+    /**
+     * A message returning its already parsed text, as happens for every message on every frame
+     */
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void getTextCached(Blackhole bh)
+    {
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            bh.consume(parsedMessages[i].getText(emojiManager, messageConfig, emojiConfig));
+        }
+    }
+}
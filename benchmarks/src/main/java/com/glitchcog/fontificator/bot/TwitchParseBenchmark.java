@@ -0,0 +1,69 @@
+package com.glitchcog.fontificator.bot;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.glitchcog.fontificator.benchmark.BenchmarkResources;
+
+/**
+ * Measures turning the Twitch tags of a raw IRC post into a TwitchPrivmsg, once per post that comes in over the wire.
+ * This lives in the bot package to reach the parser without a connected bot.
+ *
+ * @author Matt Yanos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwitchParseBenchmark
+{
+    /**
+     * Number of lines in the corpus, which must match the resource, since JMH needs it as a constant
+     */
+    private static final int CORPUS_SIZE = 256;
+
+    private static final String CHANNEL = "glitchcog";
+
+    private String[] rawLines;
+
+    private Map<String, String> usernameIds;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        List<String> lines = BenchmarkResources.loadLines(BenchmarkResources.TWITCH_CORPUS);
+        if (lines.size() != CORPUS_SIZE)
+        {
+            throw new IllegalStateException("Expected " + CORPUS_SIZE + " lines in " + BenchmarkResources.TWITCH_CORPUS + ", found " + lines.size());
+        }
+        rawLines = lines.toArray(new String[lines.size()]);
+        usernameIds = new HashMap<String, String>();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void parseRawTwitchMessage(Blackhole bh)
+    {
+        for (int i = 0; i < rawLines.length; i++)
+        {
+            bh.consume(ChatViewerBot.parseRawTwitchMessage(rawLines[i], CHANNEL, usernameIds));
+        }
+    }
+}
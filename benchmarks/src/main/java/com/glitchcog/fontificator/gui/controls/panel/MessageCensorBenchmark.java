@@ -0,0 +1,80 @@
+package com.glitchcog.fontificator.gui.controls.panel;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.glitchcog.fontificator.benchmark.BenchmarkResources;
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.bot.MessageType;
+import com.glitchcog.fontificator.bot.TwitchPrivmsg;
+import com.glitchcog.fontificator.gui.controls.panel.MessageCensorPanel.CensorRules;
+
+/**
+ * Measures the censorship check MessageCensorPanel.checkCensor runs on every incoming message, with every rule enabled,
+ * by calling the same static check the panel calls with its latest copy of the rules
+ *
+ * @author Matt Yanos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCensorBenchmark
+{
+    private static final int CORPUS_SIZE = 256;
+
+    private static final String[] USER_WHITELIST = { "glitchcog", "moogle_mail" };
+
+    private static final String[] USER_BLACKLIST = { "spambot9000", "warpzone" };
+
+    private static final String[] BANNED_WORDS = { "spoilers", "shortcut", "password", "darn", "heck", "frick", "dang", "gosh", "crud", "nerts" };
+
+    private static final int UNKNOWN_CHAR_PERCENT = 20;
+
+    private CensorRules rules;
+
+    private Message[] messages;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        rules = new CensorRules(true, true, true, true, UNKNOWN_CHAR_PERCENT, USER_WHITELIST, USER_BLACKLIST, BANNED_WORDS);
+
+        List<String> lines = BenchmarkResources.loadLines(BenchmarkResources.TWITCH_CORPUS);
+        messages = new Message[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            final String username = BenchmarkResources.getNick(lines.get(i));
+            messages[i] = new Message(MessageType.NORMAL, username, new Date(0L), BenchmarkResources.getContent(lines.get(i)), new TwitchPrivmsg(username));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void checkCensor(Blackhole bh)
+    {
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            // Clear the previous invocation's result, as recheckCensorship does, so every message is checked in full
+            messages[i].resetCensorship(false);
+            MessageCensorPanel.checkCensor(messages[i], rules);
+            bh.consume(messages[i].getCensoredReason());
+        }
+    }
+}
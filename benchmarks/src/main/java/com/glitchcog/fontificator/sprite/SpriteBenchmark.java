@@ -0,0 +1,92 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.glitchcog.fontificator.benchmark.BenchmarkResources;
+import com.glitchcog.fontificator.config.ConfigFont;
+
+/**
+ * Measures drawing single glyphs out of a bundled font sprite sheet while cycling through a number of distinct
+ * colors, like a chat full of users with their own username colors, both tinting the whole sheet per color and
+ * tinting only the drawn glyphs in the glyph atlas
+ *
+ * @author Matt Yanos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpriteBenchmark
+{
+    @Param({ "1", "16", "256" })
+    public int colorCount;
+
+    @Param({ "false", "true" })
+    public boolean glyphAtlas;
+
+    private Sprite sprite;
+
+    private Color[] colors;
+
+    private int frameCount;
+
+    private int drawIndex;
+
+    private BufferedImage image;
+
+    private Graphics2D g2d;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        ConfigFont fontConfig = BenchmarkResources.loadPreset(BenchmarkResources.FIXED_WIDTH_PRESET).getFontConfig();
+        sprite = new Sprite(fontConfig.getFontFilename(), fontConfig.getGridWidth(), fontConfig.getGridHeight());
+        sprite.setColorCacheCapacity(fontConfig);
+        sprite.setGlyphAtlasEnabled(glyphAtlas);
+        frameCount = fontConfig.getGridWidth() * fontConfig.getGridHeight();
+
+        // Seeded so every run draws the same colors
+        Random rand = new Random(colorCount);
+        colors = new Color[colorCount];
+        for (int i = 0; i < colorCount; i++)
+        {
+            colors[i] = new Color(rand.nextInt(0x1000000));
+        }
+
+        image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        g2d = image.createGraphics();
+        drawIndex = 0;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        g2d.dispose();
+    }
+
+    @Benchmark
+    public void draw()
+    {
+        final int i = drawIndex++;
+        sprite.draw(g2d, (i * 8) & 0x7F, (i * 3) & 0x7F, i % frameCount, 2.0f, colors[i % colors.length]);
+    }
+}
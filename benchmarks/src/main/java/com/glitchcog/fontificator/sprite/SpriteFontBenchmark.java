@@ -0,0 +1,116 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.glitchcog.fontificator.benchmark.BenchmarkResources;
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.bot.MessageType;
+import com.glitchcog.fontificator.bot.TwitchPrivmsg;
+import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.emoji.EmojiManager;
+
+/**
+ * Measures drawing completely revealed messages from the corpus into an offscreen image with a fixed width and a
+ * variable width bundled font, as happens for every visible message each time the chat is painted
+ *
+ * @author Matt Yanos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpriteFontBenchmark
+{
+    private static final int CORPUS_SIZE = 256;
+
+    private static final int IMAGE_WIDTH = 640;
+
+    private static final int IMAGE_HEIGHT = 480;
+
+    private static final int LINE_WRAP_LENGTH = 600;
+
+    @Param({ BenchmarkResources.FIXED_WIDTH_PRESET, BenchmarkResources.VARIABLE_WIDTH_PRESET })
+    public String preset;
+
+    private FontificatorProperties props;
+
+    private SpriteFont font;
+
+    private EmojiManager emojiManager;
+
+    private Message[] messages;
+
+    private BufferedImage image;
+
+    private Graphics2D g2d;
+
+    private FontMetrics fontMetrics;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        props = BenchmarkResources.loadPreset(preset);
+        props.getEmojiConfig().setEmojiEnabled(false);
+        font = new SpriteFont(props.getFontConfig());
+        font.updateForConfigChange();
+        emojiManager = new EmojiManager();
+
+        image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g2d = image.createGraphics();
+        g2d.setFont(new Font(Font.DIALOG, Font.PLAIN, 20));
+        fontMetrics = g2d.getFontMetrics();
+
+        List<String> lines = BenchmarkResources.loadLines(BenchmarkResources.TWITCH_CORPUS);
+        messages = new Message[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            final String line = lines.get(i);
+            final String username = BenchmarkResources.getNick(line);
+            messages[i] = new Message(MessageType.NORMAL, username, new Date(0L), BenchmarkResources.getContent(line), new TwitchPrivmsg(username));
+            while (!messages[i].isCompletelyDrawn())
+            {
+                messages[i].incrementDrawCursor(emojiManager, props.getMessageConfig(), props.getEmojiConfig());
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        g2d.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void drawMessage(Blackhole bh)
+    {
+        for (int i = 0; i < CORPUS_SIZE; i++)
+        {
+            bh.consume(font.drawMessage(g2d, fontMetrics, messages[i], Color.WHITE, props.getColorConfig(), props.getMessageConfig(), props.getEmojiConfig(), emojiManager, 0, 0, 0, IMAGE_HEIGHT, LINE_WRAP_LENGTH, false, null, null));
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.glitchcog.fontificator.bot;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Feeds the bot tagged IRC lines as fast as a raid or a hype train would, to see how the chat holds up under load. The
+ * lines are either replayed from a corpus file of captured posts, one per line like the file ChatViewerBot.debug reads,
+ * or made up on the spot with a configurable share of emotes and badged users and a configurable number of distinct
+ * username colors. They are posted at a steady rate of up to thousands per second, plus a burst of lines all at once
+ * every few seconds, and each one goes through handleLine just like a line from the IRC server.
+ *
+ * @author Matt Yanos
+ */
+public class ChatLoadGenerator
+{
+    private static final Logger logger = Logger.getLogger(ChatLoadGenerator.class);
+
+    /**
+     * The time between batches of lines, which are sized to keep up the rate
+     */
+    private static final long TICK_MILLIS = 10L;
+
+    /**
+     * The time between bursts
+     */
+    public static final long BURST_PERIOD_MILLIS = 5000L;
+
+    private static final String CHANNEL = "#loadtest";
+
+    /**
+     * The number of different users the made up lines are posted by
+     */
+    private static final int USER_COUNT = 2000;
+
+    // @formatter:off
+    private static final String[] WORDS = new String[] { "hype", "raid", "gg", "lol", "this", "song", "is", "so", "good", "wow", "chat", "the", "boss", "fight", "run", "pb", "pace", "let's", "go", "clip", "it", "no", "way", "again", "first", "try" };
+
+    private static final String[] EMOTE_NAMES = new String[] { "Kappa", "PogChamp", "Kreygasm", "SMOrc", "BibleThump", "4Head", "ResidentSleeper", "DansGame", "FrankerZ", "SwiftRage" };
+
+    private static final String[] EMOTE_IDS = new String[] { "25", "88", "41", "52", "86", "354", "245", "33", "65", "34" };
+    // @formatter:on
+
+    private final ChatViewerBot bot;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final Random rnd;
+
+    /**
+     * The load settings, which can be changed while the generator is running
+     */
+    private volatile int linesPerSecond;
+    private volatile int burstSize;
+    private volatile int emotePercent;
+    private volatile int badgePercent;
+    private volatile int colorCount;
+
+    /**
+     * The lines to replay, or null to make lines up
+     */
+    private volatile String[] corpus;
+
+    /**
+     * The position of the next corpus line to replay, only accessed on the generator thread
+     */
+    private int corpusIndex;
+
+    /**
+     * The number of lines posted since the generator was last started
+     */
+    private final AtomicLong posted;
+
+    /**
+     * The running task and the timing of the lines it posts, guarded by this object
+     */
+    private ScheduledFuture<?> task;
+    private long startTime;
+    private long stopTime;
+    private long lastTick;
+    private long lastBurst;
+    private double owed;
+
+    public ChatLoadGenerator(ChatViewerBot bot)
+    {
+        this.bot = bot;
+        this.rnd = new Random();
+        this.posted = new AtomicLong();
+        this.linesPerSecond = 100;
+        this.burstSize = 0;
+        this.emotePercent = 20;
+        this.badgePercent = 30;
+        this.colorCount = 50;
+
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Chat Load Generator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Start posting lines, if the generator isn't already
+     */
+    public synchronized void start()
+    {
+        if (task != null)
+        {
+            return;
+        }
+
+        posted.set(0L);
+        startTime = now();
+        lastTick = startTime;
+        lastBurst = startTime;
+        owed = 0.0;
+        task = executor.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    tick();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error generating chat load", e);
+                }
+            }
+        }, 0L, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop posting lines
+     */
+    public synchronized void stop()
+    {
+        if (task != null)
+        {
+            task.cancel(false);
+            task = null;
+            stopTime = now();
+        }
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return task != null;
+    }
+
+    /**
+     * Get the number of lines posted since the generator was last started
+     *
+     * @return posted
+     */
+    public long getPostedCount()
+    {
+        return posted.get();
+    }
+
+    /**
+     * Get the time the generator has been running, or ran for if it's stopped, since it was last started
+     *
+     * @return milliseconds
+     */
+    public synchronized long getElapsedMillis()
+    {
+        return (task != null ? now() : stopTime) - startTime;
+    }
+
+    /**
+     * Read the lines of a corpus file of tagged IRC posts to replay instead of making lines up
+     *
+     * @param file
+     * @return the number of lines read
+     * @throws IOException
+     */
+    public int loadCorpus(File file) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = br.readLine()) != null)
+            {
+                if (!line.trim().isEmpty())
+                {
+                    lines.add(line);
+                }
+            }
+        }
+        finally
+        {
+            br.close();
+        }
+
+        if (lines.isEmpty())
+        {
+            throw new IOException("No lines to replay in " + file.getName());
+        }
+
+        corpus = lines.toArray(new String[lines.size()]);
+        return lines.size();
+    }
+
+    /**
+     * Stop replaying the corpus and go back to making lines up
+     */
+    public void clearCorpus()
+    {
+        corpus = null;
+    }
+
+    public void setLinesPerSecond(int linesPerSecond)
+    {
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    /**
+     * @param burstSize
+     *            The number of extra lines posted all at once every BURST_PERIOD_MILLIS
+     */
+    public void setBurstSize(int burstSize)
+    {
+        this.burstSize = burstSize;
+    }
+
+    /**
+     * @param emotePercent
+     *            The share of the words of made up lines that are emotes
+     */
+    public void setEmotePercent(int emotePercent)
+    {
+        this.emotePercent = emotePercent;
+    }
+
+    /**
+     * @param badgePercent
+     *            The share of made up lines posted by subscribers and moderators
+     */
+    public void setBadgePercent(int badgePercent)
+    {
+        this.badgePercent = badgePercent;
+    }
+
+    /**
+     * @param colorCount
+     *            The number of distinct username colors in made up lines
+     */
+    public void setColorCount(int colorCount)
+    {
+        this.colorCount = Math.max(1, colorCount);
+    }
+
+    /**
+     * Post the lines owed since the last tick, plus a burst if one is due
+     */
+    private void tick()
+    {
+        int due;
+        synchronized (this)
+        {
+            final long now = now();
+            // Never owe more than a second's worth, so falling behind doesn't snowball
+            owed = Math.min(owed + linesPerSecond * (now - lastTick) / 1000.0, Math.max(1.0, linesPerSecond));
+            lastTick = now;
+            due = (int) owed;
+            owed -= due;
+            if (burstSize > 0 && now - lastBurst >= BURST_PERIOD_MILLIS)
+            {
+                due += burstSize;
+                lastBurst = now;
+            }
+        }
+
+        for (int i = 0; i < due; i++)
+        {
+            bot.handleLine(nextLine());
+            posted.incrementAndGet();
+        }
+    }
+
+    private String nextLine()
+    {
+        final String[] lines = corpus;
+        if (lines != null)
+        {
+            final String line = lines[corpusIndex % lines.length];
+            corpusIndex = (corpusIndex + 1) % lines.length;
+            return line;
+        }
+        return makeLine();
+    }
+
+    /**
+     * Make up a tagged IRC post from a random user
+     *
+     * @return line
+     */
+    private String makeLine()
+    {
+        final int user = rnd.nextInt(USER_COUNT);
+        final String login = "viewer" + user;
+        final boolean badged = rnd.nextInt(100) < badgePercent;
+        final boolean mod = badged && user % 10 == 0;
+        final String badges = badged ? (mod ? "moderator/1,subscriber/12" : "subscriber/" + (user % 2 == 0 ? 0 : 12)) : "";
+
+        // Each user keeps the same color, from a palette of evenly spaced hues
+        final int colors = colorCount;
+        final Color color = Color.getHSBColor((user % colors) / (float) colors, 0.7f, 0.9f);
+
+        StringBuilder text = new StringBuilder();
+        Map<String, StringBuilder> emoteRanges = new LinkedHashMap<String, StringBuilder>();
+        final int wordCount = 3 + rnd.nextInt(10);
+        for (int w = 0; w < wordCount; w++)
+        {
+            if (w > 0)
+            {
+                text.append(' ');
+            }
+            if (rnd.nextInt(100) < emotePercent)
+            {
+                final int e = rnd.nextInt(EMOTE_NAMES.length);
+                StringBuilder ranges = emoteRanges.get(EMOTE_IDS[e]);
+                if (ranges == null)
+                {
+                    ranges = new StringBuilder();
+                    emoteRanges.put(EMOTE_IDS[e], ranges);
+                }
+                else
+                {
+                    ranges.append(',');
+                }
+                ranges.append(text.length()).append('-').append(text.length() + EMOTE_NAMES[e].length() - 1);
+                text.append(EMOTE_NAMES[e]);
+            }
+            else
+            {
+                text.append(WORDS[rnd.nextInt(WORDS.length)]);
+            }
+        }
+
+        StringBuilder emotes = new StringBuilder();
+        for (Map.Entry<String, StringBuilder> entry : emoteRanges.entrySet())
+        {
+            if (emotes.length() > 0)
+            {
+                emotes.append('/');
+            }
+            emotes.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append("@badges=").append(badges);
+        line.append(";color=").append(String.format("#%06X", color.getRGB() & 0xFFFFFF));
+        line.append(";display-name=Viewer").append(user);
+        line.append(";emotes=").append(emotes);
+        line.append(";id=").append(UUID.randomUUID());
+        line.append(";mod=").append(mod ? 1 : 0);
+        line.append(";room-id=1;subscriber=").append(badged ? 1 : 0);
+        line.append(";tmi-sent-ts=").append(System.currentTimeMillis());
+        line.append(";turbo=0;user-id=").append(100000 + user);
+        line.append(";user-type= :").append(login).append('!').append(login).append('@').append(login).append(".tmi.twitch.tv PRIVMSG ").append(CHANNEL).append(" :").append(text);
+        return line.toString();
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -7,6 +7,8 @@ import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -15,6 +17,7 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.jibble.pircbot.PircBot;
 
+import com.glitchcog.fontificator.bot.ingest.IngestPipeline;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.gui.chat.ChatPanel;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelIrc;
@@ -43,7 +46,7 @@ public class ChatViewerBot extends PircBot
         String line;
         while ((line = br.readLine()) != null)
         {
-            onUnknown(line);
+            handleLine(line);
         }
         br.close();
     }
@@ -93,14 +96,22 @@ public class ChatViewerBot extends PircBot
      */
     private Map<String, TwitchPrivmsg> privmsgs;
 
+    /**
+     * Carries lines read from the socket through parsing, username casing, emoji parsing and censorship to the chat,
+     * off of the socket reader thread
+     */
+    private final IngestPipeline pipeline;
+
     /**
      * Default constructor, just initializes the username case map
      */
     public ChatViewerBot()
     {
-        this.usernameCases = new HashMap<String, String>();
-        this.usernameIds = new HashMap<String, String>();
-        this.privmsgs = new HashMap<String, TwitchPrivmsg>();
+        // These are filled in on the ingest pipeline threads, and cleared from the control panel
+        this.usernameCases = Collections.synchronizedMap(new HashMap<String, String>());
+        this.usernameIds = Collections.synchronizedMap(new HashMap<String, String>());
+        this.privmsgs = Collections.synchronizedMap(new HashMap<String, TwitchPrivmsg>());
+        this.pipeline = new IngestPipeline(this);
 
         final String encoding = "UTF-8";
         try
@@ -116,9 +127,12 @@ public class ChatViewerBot extends PircBot
 
     public void reset()
     {
-        for (TwitchPrivmsg state : privmsgs.values())
+        synchronized (privmsgs)
         {
-            state.resetPostCount();
+            for (TwitchPrivmsg state : privmsgs.values())
+            {
+                state.resetPostCount();
+            }
         }
         usernameCases.clear();
     }
@@ -147,6 +161,26 @@ public class ChatViewerBot extends PircBot
         this.chat = chat;
     }
 
+    /**
+     * Get the chat panel to add messages to
+     * 
+     * @return chat
+     */
+    public ChatPanel getChat()
+    {
+        return chat;
+    }
+
+    /**
+     * Get the pipeline that carries lines read from the socket to the chat
+     * 
+     * @return pipeline
+     */
+    public IngestPipeline getPipeline()
+    {
+        return pipeline;
+    }
+
     /**
      * PircBot doesn't let you set the username if you're connected, so this checks for that
      * 
@@ -253,82 +287,118 @@ public class ChatViewerBot extends PircBot
         }
         else if (response.startsWith("@"))
         {
-            if (response.startsWith("@ban"))
+            // Everything past this point is parsed off of the socket reader thread, so a flood of posts can't hold up
+            // the PONG
+            pipeline.read(response);
+        }
+        else
+        {
+            log("Unknown implemented message type: " + response);
+        }
+    }
+
+    /**
+     * Whether a tagged line read from the socket is a ban, which purges the banned user's messages
+     * 
+     * @param response
+     * @return is a ban
+     */
+    public static boolean isBanLine(String response)
+    {
+        return response.startsWith("@ban");
+    }
+
+    /**
+     * Parse a tagged line read from the socket, on the parse stage of the ingest pipeline, and queue the post or ban it
+     * carries to be made into a message or carried out
+     * 
+     * @param response
+     * @param receivedNanos
+     *            The nano time the line was read from the socket
+     * @throws InterruptedException
+     *             if the pipeline is stopped while waiting for room in the next stage
+     */
+    public void parseLine(String response, long receivedNanos) throws InterruptedException
+    {
+        if (isBanLine(response))
+        {
+            try
             {
-                try
+                int firstBreak = response.indexOf(POST_SEPARATOR);
+                int secondBreak = response.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
+
+                Map<String, String> params = parseMessageParams(response, firstBreak, secondBreak);
+                String bannedUserId = params.get("target-user-id");
+                String bannedUsername = usernameIds.get(bannedUserId);
+                String bannedReason = params.get("ban-reason");
+                if (bannedReason == null || bannedReason.trim().isEmpty())
                 {
-                    int firstBreak = response.indexOf(POST_SEPARATOR);
-                    int secondBreak = response.indexOf(POST_SEPARATOR, firstBreak + POST_SEPARATOR.length());
-
-                    Map<String, String> params = parseMessageParams(response, firstBreak, secondBreak);
-                    String bannedUserId = params.get("target-user-id");
-                    String bannedUsername = usernameIds.get(bannedUserId);
-                    String bannedReason = params.get("ban-reason");
-                    if (bannedReason == null || bannedReason.trim().isEmpty())
-                    {
-                        bannedReason = "TWITCH PURGE";
-                    }
-                    String banDuration = params.get("ban-duration");
-                    if (banDuration != null && banDuration.trim().isEmpty())
-                    {
-                        banDuration = null;
-                    }
-                    chat.purgeMessagesForUser(bannedUsername, bannedReason + (banDuration == null ? "" : " FOR " + banDuration + " ms"));
+                    bannedReason = "TWITCH PURGE";
                 }
-                catch (Exception e)
+                String banDuration = params.get("ban-duration");
+                if (banDuration != null && banDuration.trim().isEmpty())
                 {
-                    log("Unparsable ban: " + response);
+                    banDuration = null;
                 }
+                pipeline.putPurge(bannedUsername, bannedReason + (banDuration == null ? "" : " FOR " + banDuration + " ms"));
             }
-            else
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
             {
-                try
+                log("Unparsable ban: " + response);
+            }
+        }
+        else
+        {
+            try
+            {
+                TwitchPrivmsg privmsg = parseRawTwitchMessage(response);
+                String message = response.substring(response.indexOf(POST_SEPARATOR, response.indexOf(POST_SEPARATOR) + POST_SEPARATOR.length()) + POST_SEPARATOR.length());
+                if (message.startsWith(CTCP_INDICATOR))
                 {
-                    TwitchPrivmsg privmsg = parseRawTwitchMessage(response);
-                    String message = response.substring(response.indexOf(POST_SEPARATOR, response.indexOf(POST_SEPARATOR) + POST_SEPARATOR.length()) + POST_SEPARATOR.length());
-                    if (message.startsWith(CTCP_INDICATOR))
+                    // Remove leading character
+                    message = message.substring(CTCP_INDICATOR.length());
+                    if (message.endsWith(CTCP_INDICATOR))
                     {
-                        // Remove leading character
-                        message = message.substring(CTCP_INDICATOR.length());
-                        if (message.endsWith(CTCP_INDICATOR))
+                        // Remove terminating character
+                        message = message.substring(0, message.length() - 1);
+                    }
+                    final String commandSplit = " ";
+                    if (message.contains(commandSplit))
+                    {
+                        final String command = message.substring(0, message.indexOf(commandSplit));
+                        // Take the command off the message
+                        message = message.substring(message.indexOf(commandSplit) + commandSplit.length());
+                        if ("ACTION".equals(command))
                         {
-                            // Remove terminating character
-                            message = message.substring(0, message.length() - 1);
-                        }
-                        final String commandSplit = " ";
-                        if (message.contains(commandSplit))
-                        {
-                            final String command = message.substring(0, message.indexOf(commandSplit));
-                            // Take the command off the message
-                            message = message.substring(message.indexOf(commandSplit) + commandSplit.length());
-                            if ("ACTION".equals(command))
-                            {
-                                sendMessageToChat(MessageType.ACTION, message, privmsg);
-                            }
-                            else
-                            {
-                                log("Unknown CTCP command: " + command);
-                            }
+                            pipeline.putPost(MessageType.ACTION, message, privmsg, receivedNanos);
                         }
                         else
                         {
-                            log("CTCP message missing command type: " + message);
+                            log("Unknown CTCP command: " + command);
                         }
                     }
-                    else if (privmsg.isDisplayMessage())
+                    else
                     {
-                        sendMessageToChat(MessageType.NORMAL, message, privmsg);
+                        log("CTCP message missing command type: " + message);
                     }
                 }
-                catch (Exception e)
+                else if (privmsg.isDisplayMessage())
                 {
-                    log("Unparsable message: " + response);
+                    pipeline.putPost(MessageType.NORMAL, message, privmsg, receivedNanos);
                 }
             }
-        }
-        else
-        {
-            log("Unknown implemented message type: " + response);
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                log("Unparsable message: " + response);
+            }
         }
     }
 
@@ -356,6 +426,22 @@ public class ChatViewerBot extends PircBot
      * @return privmsg
      */
     private TwitchPrivmsg parseRawTwitchMessage(String rawMessage)
+    {
+        return parseRawTwitchMessage(rawMessage, controlPanel.getChannelNoHash(), usernameIds);
+    }
+
+    /**
+     * Turn a raw message post containing the Twitch header information into a TwitchPrivmsg object. This only depends
+     * on what is passed in, so it can be run without a connected bot, like from the benchmarks.
+     * 
+     * @param rawMessage
+     * @param channelNoHash
+     *            The channel connected to, used to identify the broadcaster
+     * @param usernameIds
+     *            A map of lowercase usernames keyed off of user ID to be updated with the user of the post
+     * @return privmsg
+     */
+    static TwitchPrivmsg parseRawTwitchMessage(String rawMessage, String channelNoHash, Map<String, String> usernameIds)
     {
         TwitchPrivmsg privmsg = new TwitchPrivmsg();
 
@@ -439,7 +525,7 @@ public class ChatViewerBot extends PircBot
             }
             catch (Exception e)
             {
-                log("Error parsing subscriber value \"" + subStr + "\" in Twitch header");
+                logger.warn("Error parsing subscriber value \"" + subStr + "\" in Twitch header");
             }
         }
         String turboStr = paramMap.get("turbo");
@@ -452,13 +538,13 @@ public class ChatViewerBot extends PircBot
             }
             catch (Exception e)
             {
-                log("Error parsing subscriber value \"" + turboStr + "\" in Twitch header");
+                logger.warn("Error parsing subscriber value \"" + turboStr + "\" in Twitch header");
             }
         }
         privmsg.setPrime(paramMap.get("badges") != null && paramMap.get("badges").contains("premium"));
 
         String userTypeStr = paramMap.get("user-type");
-        if (displayName != null && !displayName.trim().isEmpty() && displayName.equalsIgnoreCase(this.controlPanel.getChannelNoHash()))
+        if (displayName != null && !displayName.trim().isEmpty() && displayName.equalsIgnoreCase(channelNoHash))
         {
             // Set the broadcaster badge based on the display name matching the channel connected to, since Twitch
             // doesn't put this usertype into its IRC tags.
@@ -481,7 +567,7 @@ public class ChatViewerBot extends PircBot
         return privmsg;
     }
 
-    private Map<String, String> parseMessageParams(String rawMessage, int firstBreak, int secondBreak)
+    private static Map<String, String> parseMessageParams(String rawMessage, int firstBreak, int secondBreak)
     {
         // Custom Twitch message parameters:
         final int startIndex = rawMessage.length() > 1 && rawMessage.charAt(0) == '@' ? 1 : 0;
@@ -573,6 +659,25 @@ public class ChatViewerBot extends PircBot
      * @param privmsg
      */
     public void sendMessageToChat(MessageType type, String message, TwitchPrivmsg privmsg)
+    {
+        // This is called on the socket reader thread and the event dispatch thread, so it pushes out chat lines
+        // waiting to be parsed rather than wait on the pipeline
+        pipeline.offerPost(type, message, privmsg);
+    }
+
+    /**
+     * Make a message for the chat out of a post, on the enrich stage of the ingest pipeline. This is where the username
+     * casing is resolved, which can mean looking it up on the Twitch API, and where the message text and emoji are
+     * parsed, so none of that has to be done while the chat is painting.
+     * 
+     * @param type
+     * @param message
+     * @param privmsg
+     * @param receivedNanos
+     *            The nano time the post was received
+     * @return msg
+     */
+    public Message createMessage(MessageType type, String message, TwitchPrivmsg privmsg, long receivedNanos)
     {
         String casedUsername = handleUsernameCasing(type, privmsg.getDisplayName(), message);
 
@@ -580,9 +685,12 @@ public class ChatViewerBot extends PircBot
         privmsg.setDisplayName(casedUsername);
         privmsg.incrementPostCount();
 
-        // Finally, construct the message and send it on to the chat display
-        Message msg = new Message(type, casedUsername, message, privmsg);
-        chat.addMessage(msg);
+        Message msg = new Message(type, casedUsername, new Date(), message, privmsg, receivedNanos);
+        if (chat.isLoaded())
+        {
+            msg.getText(chat.getEmojiManager(), chat.getMessageConfig(), chat.getEmojiConfig());
+        }
+        return msg;
     }
 
     /**
@@ -1,10 +1,8 @@
 package com.glitchcog.fontificator.bot;
 
 import java.net.MalformedURLException;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,6 +15,7 @@ import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.EmojiType;
 import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
 import com.glitchcog.fontificator.emoji.TypedEmojiMap;
+import com.glitchcog.fontificator.sprite.MessageText;
 import com.glitchcog.fontificator.sprite.SpriteCharacterKey;
 
 /**
@@ -30,12 +29,6 @@ public class Message
 
     private static final long UNCOMPLETED_TIME = 0L;
 
-    /**
-     * A regex for checking for emoji keys in the text. Used in a String.split to divide the message into an array of
-     * words and the spaces between them.
-     */
-    public static final String SPACE_BOUNDARY_REGEX = "(?:(?=\\s+)(?<!\\s+)|(?<=\\s+)(?!\\s+))";
-
     /**
      * The state of the user that is prepended to the message from Twitch. This reference is the same one that's stored
      * in the ChatViewerBot, so it is possible to update that object and see the effects on this message
@@ -83,22 +76,34 @@ public class Message
     private final MessageType type;
 
     /**
-     * The badges to draw, the size of which is used to keep track of the position of the username, which is used for
-     * coloring. This value is calculated when the text is parsed into SpriteCharacterKeys and will be null if all
-     * badges are switched off.
+     * The text of the message as last parsed, along with the badges and config versions it was parsed with, or null
+     * if it hasn't been parsed yet. It is swapped as a whole so a paint never sees text and badges from different
+     * parses.
+     */
+    private volatile ParsedText parsed;
+
+    /**
+     * Text parsed ahead of time on a background thread, waiting to be swapped in by commitPreparedText
      */
-    private Map<String, LazyLoadEmoji> badges;
+    private volatile ParsedText prepared;
 
     /**
-     * The String of the message put into text
+     * Whether a background re-parse of this message is underway, in which case the stale text is returned by getText
+     * so the old rendering stays on screen until the new text is committed
      */
-    private SpriteCharacterKey[] text;
+    private volatile boolean reparsePending;
 
     /**
      * The text that goes between a time stamp and a username
      */
     private static final String TIMESTAMP_USERNAME_SPACER = " ";
 
+    /**
+     * Room for the timestamp, badges and content breaker on top of the username and content when guessing how long the
+     * parsed text will be
+     */
+    private static final int TEXT_CAPACITY_PADDING = 32;
+
     /**
      * The maximum possible value of an int cast into a float, used to max out the character count if the message speed
      * is maxed out
@@ -111,21 +116,19 @@ public class Message
     private float drawCursor;
 
     /**
-     * Keep track of the configuration the last time this message was parsed, so if no configuration has changed (check
-     * using ConfigMessage.equals), then there's no need to re-parse it
+     * The moment in time the message was completely drawn
      */
-    private ConfigMessage lastMessageConfig;
+    private long completedTime;
 
     /**
-     * Keep track of the configuration the last time this message was parsed, so if no configuration has changed (check
-     * using ConfigEmoji.equals), then there's no need to re-parse it
+     * The nano time the message was received, for measuring how long it takes to show up on screen
      */
-    private ConfigEmoji lastEmojiConfig;
+    private final long receivedNanos;
 
     /**
-     * The moment in time the message was completely drawn
+     * Whether any of the message has been painted yet. This is only accessed on the paint thread.
      */
-    private long completedTime;
+    private boolean painted;
 
     /**
      * Construct a message specifying the type, username and content, but set the time stamp to the current local time
@@ -159,16 +162,38 @@ public class Message
      *            The Twitch Privmsg object, will not be null
      */
     public Message(MessageType type, String username, Date timestamp, String content, TwitchPrivmsg privmsg)
+    {
+        this(type, username, timestamp, content, privmsg, System.nanoTime());
+    }
+
+    /**
+     * Construct a message specifying everything, including when it was received, for a message that was received some
+     * time before it was made, like a post that has been waiting to be parsed
+     * 
+     * @param type
+     *            The type of this message
+     * @param username
+     *            The username of whomever posted this message
+     * @param timestamp
+     *            When the message was posted (local time)
+     * @param content
+     *            The text of the message
+     * @param privmsg
+     *            The Twitch Privmsg object, will not be null
+     * @param receivedNanos
+     *            The nano time the message was received
+     */
+    public Message(MessageType type, String username, Date timestamp, String content, TwitchPrivmsg privmsg, long receivedNanos)
     {
         this.type = type;
         this.username = username;
         this.timestamp = timestamp;
         this.content = content;
         this.drawCursor = 0.0f;
-        this.lastMessageConfig = new ConfigMessage();
-        this.lastEmojiConfig = new ConfigEmoji();
         this.privmsg = privmsg;
         this.completedTime = UNCOMPLETED_TIME;
+        this.receivedNanos = receivedNanos;
+        this.painted = false;
     }
 
     /**
@@ -245,7 +270,7 @@ public class Message
      */
     public int getMessageLength(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
     {
-        return getText(emojiManager, messageConfig, emojiConfig).length;
+        return getText(emojiManager, messageConfig, emojiConfig).length();
     }
 
     /**
@@ -326,7 +351,8 @@ public class Message
      */
     public int getIndexUsername(ConfigMessage messageConfig)
     {
-        int index = badges == null ? 0 : badges.size();
+        final ParsedText current = parsed;
+        int index = current == null || current.badges == null ? 0 : current.badges.size();
         if (messageConfig.showTimestamps())
         {
             index += getIndexTimestamp(messageConfig);
@@ -350,57 +376,103 @@ public class Message
      * @param emojiConfig
      * @return message text
      */
-    public SpriteCharacterKey[] getText(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+    public MessageText getText(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
     {
-        if (text != null && !isConfigChanged(messageConfig, emojiConfig))
+        ParsedText current = parsed;
+        if (current != null && (reparsePending || current.isParsedWith(messageConfig, emojiConfig)))
         {
-            return text;
+            return current.text;
         }
         else
         {
-            text = parseIntoText(emojiManager, messageConfig, emojiConfig);
-            this.lastMessageConfig.deepCopy(messageConfig);
-            this.lastEmojiConfig.deepCopy(emojiConfig);
-            return text;
+            current = parseIntoText(emojiManager, messageConfig, emojiConfig);
+            parsed = current;
+            return current.text;
         }
     }
 
     /**
-     * Get whether the configuration has changed
+     * Get whether the text has already been parsed, but with a configuration different from the specified one, so it
+     * needs to be parsed again
      * 
      * @param messageConfig
      * @param emojiConfig
-     * @return changed
+     * @return outdated
+     */
+    public boolean isTextOutdated(ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+    {
+        final ParsedText current = parsed;
+        return current != null && !current.isParsedWith(messageConfig, emojiConfig);
+    }
+
+    /**
+     * Mark this message as being re-parsed in the background, so until commitPreparedText is called, getText keeps
+     * returning the text already parsed rather than parsing it again on the calling thread
+     * 
+     * @param reparsePending
      */
-    private boolean isConfigChanged(ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+    public void setReparsePending(boolean reparsePending)
     {
-        final boolean messageConfigChanged = !messageConfig.equals(lastMessageConfig);
-        final boolean emojiConfigChanged = !emojiConfig.equals(lastEmojiConfig);
-        return messageConfigChanged || emojiConfigChanged;
+        this.reparsePending = reparsePending;
     }
 
     /**
-     * Compile the array of SpriteCharacterKeys using the specified configuration. This can be a bit memory intensive
-     * since each character is a new albeit small object, so this should not be done many times a second, rather only if
-     * something has changed in the configuration to warrant a re-translation.
+     * Parse the text for the specified configuration without making it visible to getText yet. This may be called
+     * from any thread, and the parsed text is swapped in by commitPreparedText.
      * 
      * @param emojiManager
      * @param messageConfig
      * @param emojiConfig
-     * @return spriteCharacterKeys
+     * @return the prepared text
      */
-    private SpriteCharacterKey[] parseIntoText(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+    public MessageText prepareText(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
     {
-        List<SpriteCharacterKey> keyList = new ArrayList<SpriteCharacterKey>();
+        final ParsedText next = parseIntoText(emojiManager, messageConfig, emojiConfig);
+        prepared = next;
+        return next.text;
+    }
+
+    /**
+     * Swap in the text parsed by prepareText, if any, and stop returning the stale text
+     */
+    public void commitPreparedText()
+    {
+        final ParsedText next = prepared;
+        if (next != null)
+        {
+            parsed = next;
+            prepared = null;
+        }
+        reparsePending = false;
+    }
+
+    /**
+     * Compile the text of characters and emoji using the specified configuration. This looks up every word of the
+     * message as a potential emoji, so this should not be done many times a second, rather only if something has
+     * changed in the configuration to warrant a re-translation.
+     * 
+     * @param emojiManager
+     * @param messageConfig
+     * @param emojiConfig
+     * @return parsed text
+     */
+    private ParsedText parseIntoText(EmojiManager emojiManager, ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+    {
+        // Get the versions before parsing, so a change made while parsing is caught by the next call
+        final long messageConfigVersion = messageConfig.getTextVersion();
+        final long emojiConfigVersion = emojiConfig.getTextVersion();
+
+        // Badges carry over from the previous parse when they're all switched off
+        final ParsedText previous = parsed;
+        Map<String, LazyLoadEmoji> badges = previous == null ? null : previous.badges;
+
+        MessageText.Builder builder = new MessageText.Builder(content.length() + username.length() + TEXT_CAPACITY_PADDING);
 
         if (messageConfig.showTimestamps())
         {
             String timeStampStr = messageConfig.getTimerFormatter().format(timestamp);
             timeStampStr = applyCasing(timeStampStr, messageConfig.getMessageCasing());
-            for (int c = 0; c < timeStampStr.length(); c++)
-            {
-                keyList.add(new SpriteCharacterKey(timeStampStr.charAt(c)));
-            }
+            builder.append(timeStampStr);
         }
 
         // Add badges to be placed right before the username
@@ -490,7 +562,7 @@ public class Message
                 {
                     sck.setEmojiBgColorOverride(ConfigEmoji.MOD_BADGE_COLOR);
                 }
-                keyList.add(sck);
+                builder.appendEmoji(sck);
             }
         }
 
@@ -498,147 +570,134 @@ public class Message
         {
             if (messageConfig.showTimestamps())
             {
-                for (int c = 0; c < TIMESTAMP_USERNAME_SPACER.length(); c++)
-                {
-                    keyList.add(new SpriteCharacterKey(TIMESTAMP_USERNAME_SPACER.charAt(c)));
-                }
-            }
-            String casedUsername = applyCasing(username, messageConfig.getMessageCasing());
-            for (int c = 0; c < casedUsername.length(); c++)
-            {
-                keyList.add(new SpriteCharacterKey(casedUsername.charAt(c)));
+                builder.append(TIMESTAMP_USERNAME_SPACER);
             }
+            builder.append(applyCasing(username, messageConfig.getMessageCasing()));
         }
         if (messageConfig.showUsernames() || messageConfig.showTimestamps() || (emojiConfig.isAnyBadgesEnabled() && badges != null && !badges.isEmpty()))
         {
-            for (int c = 0; c < type.getContentBreaker().length(); c++)
-            {
-                keyList.add(new SpriteCharacterKey(type.getContentBreaker().charAt(c)));
-            }
+            builder.append(type.getContentBreaker());
         }
 
         // Parse out the emoji, if enabled
         if (emojiConfig.isEmojiEnabled())
         {
-            processEmoji(content, privmsg, keyList, emojiManager, emojiConfig, MessageType.MANUAL.equals(type), messageConfig.getMessageCasing());
+            processEmoji(content, privmsg, builder, emojiManager, emojiConfig, MessageType.MANUAL.equals(type), messageConfig.getMessageCasing());
         }
         // Configured for no emoji, so just chars
         else
         {
-            String casedContent = applyCasing(content, messageConfig.getMessageCasing());
-            for (int c = 0; c < casedContent.length(); c++)
-            {
-                keyList.add(new SpriteCharacterKey(casedContent.charAt(c)));
-            }
+            builder.append(applyCasing(content, messageConfig.getMessageCasing()));
         }
 
-        // Return the list as an array, to be kept until configuration is modified requiring a reprocessing
-        return keyList.toArray(new SpriteCharacterKey[keyList.size()]);
-    }
-
-    public static String[] codePointSpaceSplit(String content)
-    {
-        List<String> words = new ArrayList<String>();
-        if (!content.isEmpty())
-        {
-            int breakIndex = 0;
-            int c = 0;
-            boolean currentlyInWord = !Character.isWhitespace(content.codePointAt(c));
-            while (c < content.length())
-            {
-                final int codePoint = content.codePointAt(c);
-                final boolean isWhitespace = Character.isWhitespace(codePoint);
-                final int charSize = Character.charCount(codePoint);
-
-                if ((currentlyInWord && isWhitespace) || (!currentlyInWord && !isWhitespace))
-                {
-                    words.add(content.substring(breakIndex, c));
-                    breakIndex = c;
-                    currentlyInWord = !currentlyInWord;
-                }
-
-                c += charSize;
-            }
-            words.add(content.substring(breakIndex, content.length()));
-        }
-        return words.toArray(new String[words.size()]);
+        // Return the text, to be kept until configuration is modified requiring a reprocessing
+        return new ParsedText(builder.build(), badges, messageConfigVersion, emojiConfigVersion);
     }
 
     /**
      * Convert the content of the message into the appropriate emoji. Add those emoji and the remaining characters
-     * between them to the specified keyList array.
+     * between them to the specified text builder.
      * 
      * @param content
      * @param privmsg
-     * @param keyList
-     *            The array to add the emoji and remaining characters to
+     * @param builder
+     *            The text to add the emoji and remaining characters to
      * @param emojiManager
      * @param emojiConfig
      * @param isManualMessage
      */
-    private static void processEmoji(String content, TwitchPrivmsg privmsg, List<SpriteCharacterKey> keyList, EmojiManager emojiManager, ConfigEmoji emojiConfig, boolean isManualMessage, MessageCasing casing)
+    private static void processEmoji(String content, TwitchPrivmsg privmsg, MessageText.Builder builder, EmojiManager emojiManager, ConfigEmoji emojiConfig, boolean isManualMessage, MessageCasing casing)
     {
         Map<Integer, EmoteAndIndices> emotes = privmsg.getEmotes();
+        final boolean twitchEmotes = emojiConfig.isTwitchEnabled() && !emotes.isEmpty();
 
-        String[] words = content.split(SPACE_BOUNDARY_REGEX);
-
-        int charIndex = 0;
+        // As a known bug here, all manual messages will have access to all Twitch emotes, regardless of subscriber status
+        final EmojiType[] wordTypes = isManualMessage ? EmojiType.MANUAL_EMOJI_TYPES : EmojiType.THIRD_PARTY_EMOJI_TYPES;
+        final boolean wordEmotes = isAnyTypeEnabledAndLoaded(wordTypes, emojiConfig);
 
-        LazyLoadEmoji emoji = null;
-        for (int w = 0; w < words.length; w++)
+        WordTokenizer tokens = new WordTokenizer(content);
+        while (tokens.next())
         {
-            EmoteAndIndices eai = emotes.get(charIndex);
-            if (eai != null && emojiConfig.isTwitchEnabled())
+            LazyLoadEmoji emoji = null;
+            if (!tokens.isWhitespace())
             {
-                // This catches subscriber emotes and any non-global emotes
-                emoji = emojiManager.getEmojiById(eai.getEmoteId(), words[w], emojiConfig);
-                if (emoji == null)
+                EmoteAndIndices eai = twitchEmotes ? emotes.get(tokens.getStart()) : null;
+                if (eai != null)
                 {
-                    // The already loaded Twitch V1 emoji map doesn't this emote ID yet, so add it
-                    try
+                    // This catches subscriber emotes and any non-global emotes
+                    final String word = tokens.getWord();
+                    emoji = emojiManager.getEmojiById(eai.getEmoteId(), word, emojiConfig);
+                    if (emoji == null)
                     {
-                        emoji = emojiManager.putEmojiById(eai.getEmoteId(), words[w], emojiConfig);
-                    }
-                    catch (MalformedURLException e)
-                    {
-                        logger.error("Unable to load emote for emote ID " + eai.getEmoteId(), e);
+                        // The already loaded Twitch V1 emoji map doesn't this emote ID yet, so add it
+                        try
+                        {
+                            emoji = emojiManager.putEmojiById(eai.getEmoteId(), word, emojiConfig);
+                        }
+                        catch (MalformedURLException e)
+                        {
+                            logger.error("Unable to load emote for emote ID " + eai.getEmoteId(), e);
+                        }
                     }
                 }
-            }
-            // At this point, only 3rd party emoji should be a possibility for this word (with the exception of
-            // manual messages)
-            else
-            {
-                // This is the manual message exception
-                if (isManualMessage)
-                {
-                    // As a known bug here, all manual messages will have access to all Twitch emotes, regardless of
-                    // subscriber status
-                    emoji = emojiManager.getEmoji(EmojiType.MANUAL_EMOJI_TYPES, words[w], emojiConfig);
-                }
-                // Only check 3rd party emotes
-                else
+                // At this point, only 3rd party emoji should be a possibility for this word (with the exception of
+                // manual messages)
+                else if (wordEmotes)
                 {
-                    emoji = emojiManager.getEmoji(EmojiType.THIRD_PARTY_EMOJI_TYPES, words[w], emojiConfig);
+                    emoji = emojiManager.getEmoji(wordTypes, tokens.getWord(), emojiConfig);
                 }
             }
 
             if (emoji == null)
             {
-                String casedWord = applyCasing(words[w], casing);
                 // Done checking for all sorts of emoji types, so it's just a word. Set the characters.
-                for (int c = 0; c < casedWord.length(); c++)
-                {
-                    keyList.add(new SpriteCharacterKey(casedWord.charAt(c)));
-                }
+                appendWithCasing(builder, content, tokens.getStart(), tokens.getEnd(), casing);
             }
             else
             {
-                keyList.add(new SpriteCharacterKey(emoji, false));
+                builder.appendEmoji(new SpriteCharacterKey(emoji, false));
+            }
+        }
+    }
+
+    /**
+     * Get whether any of the specified types of emoji can be matched by word, so words don't need to be copied out of
+     * the content to be looked up if none of them can
+     * 
+     * @param types
+     * @param emojiConfig
+     * @return any enabled and loaded
+     */
+    private static boolean isAnyTypeEnabledAndLoaded(EmojiType[] types, ConfigEmoji emojiConfig)
+    {
+        for (EmojiType type : types)
+        {
+            if (emojiConfig.isTypeEnabledAndLoaded(type))
+            {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // Increment the charIndex by the current word's length
-            charIndex += words[w].length();
+    /**
+     * Append part of the content to the text, only copying it out of the content first if the casing changes it
+     * 
+     * @param builder
+     * @param content
+     * @param start
+     * @param end
+     * @param casing
+     */
+    private static void appendWithCasing(MessageText.Builder builder, String content, int start, int end, MessageCasing casing)
+    {
+        if (casing == MessageCasing.MIXED_CASE)
+        {
+            builder.append(content, start, end);
+        }
+        else
+        {
+            builder.append(applyCasing(content.substring(start, end), casing));
         }
     }
 
@@ -705,6 +764,75 @@ public class Message
         return privmsg;
     }
 
+    /**
+     * Get the nano time the message was received
+     * 
+     * @return receivedNanos
+     */
+    public long getReceivedNanos()
+    {
+        return receivedNanos;
+    }
+
+    /**
+     * Note that some of the message has been painted, called on the paint thread each time it's drawn
+     * 
+     * @return whether this is the first time
+     */
+    public boolean markPainted()
+    {
+        final boolean first = !painted;
+        painted = true;
+        return first;
+    }
+
+    /**
+     * Get the moment in time the message was completely drawn
+     * 
+     * @return completedTime, or zero if it isn't yet completed
+     */
+    public long getCompletedTime()
+    {
+        return completedTime;
+    }
+
+    /**
+     * Get the moment in time the message expires after it's completely drawn, which is once its age in whole seconds
+     * exceeds the expiration time
+     * 
+     * @param expirationTime
+     *            in seconds
+     * @return expiration time in milliseconds, or Long.MAX_VALUE if it isn't yet completed
+     */
+    public long getExpirationDeadline(int expirationTime)
+    {
+        return getExpirationDeadline(completedTime, expirationTime);
+    }
+
+    /**
+     * Get the moment in time a message completely drawn at the specified time expires
+     * 
+     * @param completedTime
+     *            in milliseconds, or zero if it isn't yet completed
+     * @param expirationTime
+     *            in seconds
+     * @return expiration time in milliseconds, or Long.MAX_VALUE if it isn't yet completed
+     */
+    public static long getExpirationDeadline(long completedTime, int expirationTime)
+    {
+        return completedTime == UNCOMPLETED_TIME ? Long.MAX_VALUE : completedTime + (expirationTime + 1L) * 1000L;
+    }
+
+    /**
+     * Let go of the parsed text, called once the message is removed from the chat so the text doesn't stay in memory
+     * while something still references the message. The text is just parsed again if it's ever asked for.
+     */
+    public void releaseText()
+    {
+        parsed = null;
+        prepared = null;
+    }
+
     /**
      * @return age of the message since it was completely drawn, or zero if it isn't yet completed in seconds
      */
@@ -732,4 +860,42 @@ public class Message
         }
     }
 
+    /**
+     * The result of parsing the message: the text, the badges drawn in it, and the versions of the configuration it
+     * was parsed with
+     */
+    private static class ParsedText
+    {
+        /**
+         * The String of the message put into text
+         */
+        private final MessageText text;
+
+        /**
+         * The badges to draw, the size of which is used to keep track of the position of the username, which is used
+         * for coloring. This will be null if all badges have been switched off since the message was posted.
+         */
+        private final Map<String, LazyLoadEmoji> badges;
+
+        /**
+         * The text versions of the message and emoji configurations this was parsed with, so if neither has changed,
+         * then there's no need to re-parse it
+         */
+        private final long messageConfigVersion;
+        private final long emojiConfigVersion;
+
+        private ParsedText(MessageText text, Map<String, LazyLoadEmoji> badges, long messageConfigVersion, long emojiConfigVersion)
+        {
+            this.text = text;
+            this.badges = badges;
+            this.messageConfigVersion = messageConfigVersion;
+            this.emojiConfigVersion = emojiConfigVersion;
+        }
+
+        private boolean isParsedWith(ConfigMessage messageConfig, ConfigEmoji emojiConfig)
+        {
+            return messageConfig.getTextVersion() == messageConfigVersion && emojiConfig.getTextVersion() == emojiConfigVersion;
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+package com.glitchcog.fontificator.bot;
+
+/**
+ * Steps through the runs of whitespace and of everything else in a message's content, in a single pass and without
+ * copying any of it. Each run is a span of char offsets into the content, the same offsets the Twitch emote tags use,
+ * so a span can be checked for an emote by where it starts, and the word is only copied out of the content when it has
+ * to be looked up. Whitespace here is the same as \s in a regular expression: space, tab, newline, vertical tab, form
+ * feed and carriage return.
+ *
+ * @author Matt Yanos
+ */
+class WordTokenizer
+{
+    private final String content;
+
+    private int start;
+
+    private int end;
+
+    private boolean whitespace;
+
+    WordTokenizer(String content)
+    {
+        this.content = content;
+    }
+
+    /**
+     * Move on to the next run of whitespace or of everything else
+     *
+     * @return whether there is another run
+     */
+    boolean next()
+    {
+        start = end;
+        if (start >= content.length())
+        {
+            return false;
+        }
+
+        whitespace = isWhitespace(content.charAt(start));
+        end = start + 1;
+        while (end < content.length() && isWhitespace(content.charAt(end)) == whitespace)
+        {
+            end++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset of the first char of the current run
+     */
+    int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return the offset just past the last char of the current run
+     */
+    int getEnd()
+    {
+        return end;
+    }
+
+    boolean isWhitespace()
+    {
+        return whitespace;
+    }
+
+    /**
+     * Copy the current run out of the content
+     *
+     * @return word
+     */
+    String getWord()
+    {
+        return content.substring(start, end);
+    }
+
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,383 @@
+package com.glitchcog.fontificator.bot.ingest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.glitchcog.fontificator.bot.ChatViewerBot;
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.bot.MessageType;
+import com.glitchcog.fontificator.bot.TwitchPrivmsg;
+
+/**
+ * Carries lines read from the IRC socket to the chat in stages, each on its own thread, so nothing slow ever holds up
+ * reading the socket:
+ * <ol>
+ * <li>Parse: split the Twitch tags and the message out of the raw line, and handle bans</li>
+ * <li>Enrich: resolve the username casing, which may look it up on the Twitch API, and parse the message text and
+ * emoji</li>
+ * <li>Censor: check the message against the censorship rules</li>
+ * <li>Render: add whatever messages are ready to the chat all at once, and carry out purges in order with them</li>
+ * </ol>
+ * The socket reader offers lines to the parse stage, which drops the oldest chat lines waiting if it falls too far
+ * behind, and each stage after that waits for room in the next one, so a slow stage backs up into the parse queue
+ * rather than the socket. Posts from anywhere else, like joins, actions and messages typed in by hand, are offered to
+ * the parse stage the same way. Each line is sorted into a LineKind as it's read, and only chat lines are ever dropped:
+ * bans and posts from elsewhere push the oldest chat lines out instead, and only wait if the whole parse queue is bans
+ * and posts, so neither the socket reader nor the event dispatch thread waits on the pipeline in practice. The parse
+ * stage is the only place anything is dropped, and each kind of line dropped there is counted on its own. Each post
+ * carries the time its line was read, so the time it takes to show up on screen covers the whole pipeline. The render
+ * stage coalesces each batch into a single update of the chat, skipping any messages that the rest of the batch would
+ * push out of the chat before they could be shown.
+ *
+ * @author Matt Yanos
+ */
+public class IngestPipeline
+{
+    /**
+     * The most raw lines that can wait to be parsed before the oldest are dropped
+     */
+    private static final int PARSE_CAPACITY = 4096;
+
+    /**
+     * The most posts that can wait at each stage after parsing before the stage before it has to wait
+     */
+    private static final int STAGE_CAPACITY = 1024;
+
+    /**
+     * The most items a stage takes off its queue at once
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final ChatViewerBot bot;
+
+    private final IngestStage<Line> parse;
+
+    private final IngestStage<Post> enrich;
+
+    private final IngestStage<Post> censor;
+
+    private final IngestStage<Post> render;
+
+    /**
+     * The number of lines of each kind dropped by the parse stage, indexed by LineKind ordinal
+     */
+    private final AtomicLongArray droppedLines;
+
+    /**
+     * Start the threads of every stage of the pipeline
+     * 
+     * @param chatViewerBot
+     *            The bot that parses the lines and makes the messages, and holds the chat to add them to
+     */
+    public IngestPipeline(ChatViewerBot chatViewerBot)
+    {
+        this.bot = chatViewerBot;
+        this.droppedLines = new AtomicLongArray(LineKind.values().length);
+
+        render = new IngestStage<Post>("Render", STAGE_CAPACITY, MAX_BATCH_SIZE)
+        {
+            /**
+             * The messages of the batch waiting to be added to the chat together. This is only used on the render
+             * stage thread.
+             */
+            private final List<Message> additions = new ArrayList<Message>(MAX_BATCH_SIZE);
+
+            @Override
+            protected void process(List<Post> batch) throws Exception
+            {
+                super.process(batch);
+                addAdditions();
+            }
+
+            @Override
+            protected void processItem(Post post)
+            {
+                if (post.isPurge())
+                {
+                    // Messages that came in before the purge have to be in the chat to be purged
+                    addAdditions();
+                    bot.getChat().purgeMessagesForUser(post.username, post.reason);
+                }
+                else if (post.message != null)
+                {
+                    additions.add(post.message);
+                }
+            }
+
+            private void addAdditions()
+            {
+                try
+                {
+                    addCoalesced(bot.getChat().addMessages(additions));
+                }
+                finally
+                {
+                    additions.clear();
+                }
+            }
+        };
+
+        censor = new IngestStage<Post>("Censor", STAGE_CAPACITY, MAX_BATCH_SIZE)
+        {
+            @Override
+            protected void processItem(Post post) throws InterruptedException
+            {
+                if (post.message != null)
+                {
+                    bot.getChat().checkCensor(post.message);
+                }
+                render.put(post);
+            }
+        };
+
+        enrich = new IngestStage<Post>("Enrich", STAGE_CAPACITY, MAX_BATCH_SIZE)
+        {
+            @Override
+            protected void processItem(Post post) throws InterruptedException
+            {
+                if (!post.isPurge())
+                {
+                    post.message = bot.createMessage(post.type, post.text, post.privmsg, post.receivedNanos);
+                }
+                censor.put(post);
+            }
+        };
+
+        parse = new IngestStage<Line>("Parse", PARSE_CAPACITY, MAX_BATCH_SIZE)
+        {
+            @Override
+            protected boolean isDroppable(Line line)
+            {
+                return line.kind.isDroppable();
+            }
+
+            @Override
+            protected void dropped(Line line)
+            {
+                droppedLines.incrementAndGet(line.kind.ordinal());
+            }
+
+            @Override
+            protected void processItem(Line line) throws InterruptedException
+            {
+                if (line.post == null)
+                {
+                    bot.parseLine(line.text, line.receivedNanos);
+                }
+                else
+                {
+                    enrich.put(line.post);
+                }
+            }
+        };
+
+        render.start();
+        censor.start();
+        enrich.start();
+        parse.start();
+    }
+
+    /**
+     * Queue a raw line read from the socket to be parsed, stamped with the time it was read. This only waits if the
+     * line is a ban and the whole parse queue is bans and posts that can't be dropped to make room for it.
+     *
+     * @param line
+     */
+    public void read(String line)
+    {
+        parse.offer(new Line(line, ChatViewerBot.isBanLine(line) ? LineKind.BAN : LineKind.CHAT, System.nanoTime()));
+    }
+
+    /**
+     * Get the statistics of every stage, in the order items flow through them
+     * 
+     * @return stages
+     */
+    public List<IngestStageMBean> getStages()
+    {
+        return Collections.unmodifiableList(Arrays.<IngestStageMBean> asList(parse, enrich, censor, render));
+    }
+
+    /**
+     * Get the number of lines of the specified kind that the parse stage has thrown away to keep up
+     * 
+     * @param kind
+     * @return dropped count
+     */
+    public long getDroppedCount(LineKind kind)
+    {
+        return droppedLines.get(kind.ordinal());
+    }
+
+    /**
+     * Queue a post that didn't come from parsing a line, like a join or a message typed in by hand, to be made into a
+     * message for the chat. This goes through the parse stage, pushing out the oldest chat line waiting to be parsed if
+     * there's no room, so it only waits if the whole parse queue is bans and posts.
+     *
+     * @param type
+     * @param text
+     * @param privmsg
+     */
+    public void offerPost(MessageType type, String text, TwitchPrivmsg privmsg)
+    {
+        parse.offer(new Line(new Post(type, text, privmsg, System.nanoTime())));
+    }
+
+    /**
+     * Queue a post parsed from a line, from the parse stage, to be made into a message for the chat, waiting for room
+     * if the enrich stage is behind
+     *
+     * @param type
+     * @param text
+     * @param privmsg
+     * @param receivedNanos
+     *            The nano time the post was received
+     * @throws InterruptedException
+     */
+    public void putPost(MessageType type, String text, TwitchPrivmsg privmsg, long receivedNanos) throws InterruptedException
+    {
+        enrich.put(new Post(type, text, privmsg, receivedNanos));
+    }
+
+    /**
+     * Queue a purge of a user's messages, from the parse stage, to be carried out after every message before it has
+     * been added to the chat
+     *
+     * @param username
+     * @param reason
+     * @throws InterruptedException
+     */
+    public void putPurge(String username, String reason) throws InterruptedException
+    {
+        enrich.put(new Post(username, reason));
+    }
+
+    /**
+     * What a line waiting to be parsed holds, which decides whether it can be dropped when the parse stage falls behind
+     */
+    public enum LineKind
+    {
+        /**
+         * A line of chat read from the socket, which is the only kind that can be dropped, since another one is
+         * never far behind
+         */
+        CHAT(true),
+
+        /**
+         * A ban read from the socket, which purges the banned user's messages
+         */
+        BAN(false),
+
+        /**
+         * A post from somewhere other than the socket, like a join or a message typed in by hand
+         */
+        POST(false);
+
+        private final boolean droppable;
+
+        private LineKind(boolean droppable)
+        {
+            this.droppable = droppable;
+        }
+
+        public boolean isDroppable()
+        {
+            return droppable;
+        }
+    }
+
+    /**
+     * A raw line read from the socket, along with what kind of line it is and the nano time it was read, or a post from
+     * somewhere other than the socket that only needs to be passed along to the enrich stage
+     */
+    private static class Line
+    {
+        private final String text;
+
+        private final LineKind kind;
+
+        private final long receivedNanos;
+
+        private final Post post;
+
+        private Line(String text, LineKind kind, long receivedNanos)
+        {
+            this.text = text;
+            this.kind = kind;
+            this.receivedNanos = receivedNanos;
+            this.post = null;
+        }
+
+        private Line(Post post)
+        {
+            this.text = null;
+            this.kind = LineKind.POST;
+            this.receivedNanos = post.receivedNanos;
+            this.post = post;
+        }
+
+        @Override
+        public String toString()
+        {
+            return post == null ? text : post.toString();
+        }
+    }
+
+    /**
+     * Something on its way through the pipeline after parsing: either a post to be made into a message, or a purge of
+     * a user's messages
+     */
+    private static class Post
+    {
+        private final MessageType type;
+
+        private final String text;
+
+        private final TwitchPrivmsg privmsg;
+
+        private final String username;
+
+        private final String reason;
+
+        private final long receivedNanos;
+
+        /**
+         * The message made from the post by the enrich stage
+         */
+        private Message message;
+
+        private Post(MessageType type, String text, TwitchPrivmsg privmsg, long receivedNanos)
+        {
+            this.type = type;
+            this.text = text;
+            this.privmsg = privmsg;
+            this.username = null;
+            this.reason = null;
+            this.receivedNanos = receivedNanos;
+        }
+
+        private Post(String username, String reason)
+        {
+            this.type = null;
+            this.text = null;
+            this.privmsg = null;
+            this.username = username;
+            this.reason = reason;
+            this.receivedNanos = System.nanoTime();
+        }
+
+        private boolean isPurge()
+        {
+            return type == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return isPurge() ? "purge of " + username : type + " post \"" + text + "\"";
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.glitchcog.fontificator.bot.ingest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One stage of the pipeline that takes lines from the IRC socket to messages in the chat. Each stage has its own
+ * bounded queue and its own daemon thread that takes whatever items are waiting, in the order they arrived, and
+ * processes them as a batch. A stage hands its results to the next stage with put, which waits for room when the next
+ * queue is full, so a slow stage holds up the ones before it rather than losing anything. Only the first stage is fed
+ * with offer, which throws away the oldest waiting items that the stage says can be dropped instead of waiting, so the
+ * thread reading the socket is only ever held up by a queue full of items that can't be. Every stage keeps count of
+ * what it has processed, dropped and coalesced, for JMX.
+ *
+ * @author Matt Yanos
+ */
+public abstract class IngestStage<T> implements IngestStageMBean
+{
+    private static final Logger logger = Logger.getLogger(IngestStage.class);
+
+    /**
+     * The stage name is appended to this to register the stage with the platform MBean server
+     */
+    public static final String OBJECT_NAME_PREFIX = "com.glitchcog.fontificator:type=IngestStage,name=";
+
+    private final String name;
+
+    private final ArrayBlockingQueue<T> queue;
+
+    /**
+     * The most items processed in one batch
+     */
+    private final int maxBatchSize;
+
+    private final Thread worker;
+
+    private final AtomicInteger peakQueueDepth;
+
+    private final AtomicLong processedCount;
+
+    private final AtomicLong droppedCount;
+
+    private final AtomicLong coalescedCount;
+
+    private final AtomicLong processNanos;
+
+    private final AtomicLong blockedNanos;
+
+    /**
+     * @param name
+     *            The name of the stage, for its thread and JMX
+     * @param capacity
+     *            The most items that can wait in the queue
+     * @param maxBatchSize
+     *            The most items processed in one batch
+     */
+    protected IngestStage(String name, int capacity, int maxBatchSize)
+    {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<T>(capacity);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.peakQueueDepth = new AtomicInteger();
+        this.processedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.coalescedCount = new AtomicLong();
+        this.processNanos = new AtomicLong();
+        this.blockedNanos = new AtomicLong();
+
+        this.worker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                work();
+            }
+        }, "Ingest " + name);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Start the stage's thread and register the stage for JMX. Failing to register only means it can't be watched, so
+     * it is logged rather than thrown.
+     */
+    public void start()
+    {
+        worker.start();
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME_PREFIX + name));
+        }
+        catch (JMException e)
+        {
+            logger.warn("Unable to register the " + name + " ingest stage for JMX", e);
+        }
+    }
+
+    /**
+     * Hand an item to this stage, waiting for room if the queue is full
+     *
+     * @param item
+     * @throws InterruptedException
+     */
+    public void put(T item) throws InterruptedException
+    {
+        if (!queue.offer(item))
+        {
+            final long start = System.nanoTime();
+            queue.put(item);
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+        notePeakQueueDepth();
+    }
+
+    /**
+     * Hand an item to this stage, throwing away the oldest waiting item that can be dropped to make room if the queue
+     * is full. If none of the waiting items can be dropped, an item that can be is thrown away itself, and one that
+     * can't waits for room, which is only dropped if the waiting thread is interrupted.
+     *
+     * @param item
+     */
+    public void offer(T item)
+    {
+        while (!queue.offer(item))
+        {
+            final T oldest = getOldestDroppable();
+            if (oldest != null)
+            {
+                // This stage's thread may have taken it in the meantime, which leaves room all the same
+                if (queue.remove(oldest))
+                {
+                    noteDropped(oldest);
+                }
+            }
+            else if (isDroppable(item))
+            {
+                noteDropped(item);
+                return;
+            }
+            else
+            {
+                try
+                {
+                    put(item);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    noteDropped(item);
+                }
+                return;
+            }
+        }
+        notePeakQueueDepth();
+    }
+
+    /**
+     * Whether the item may be thrown away to make room when the stage is offered an item while its queue is full. By
+     * default, any item may be.
+     *
+     * @param item
+     * @return droppable
+     */
+    protected boolean isDroppable(T item)
+    {
+        return true;
+    }
+
+    /**
+     * Called with each item thrown away to make room in the queue, after it has been counted, for stages that keep
+     * count of what they drop by kind
+     *
+     * @param item
+     */
+    protected void dropped(T item)
+    {
+    }
+
+    private T getOldestDroppable()
+    {
+        for (T waiting : queue)
+        {
+            if (isDroppable(waiting))
+            {
+                return waiting;
+            }
+        }
+        return null;
+    }
+
+    private void noteDropped(T item)
+    {
+        droppedCount.incrementAndGet();
+        dropped(item);
+    }
+
+    /**
+     * Process a batch of items in the order they arrived. By default, each item is processed on its own, and an item
+     * that fails is logged and skipped without holding up the rest.
+     *
+     * @param batch
+     * @throws Exception
+     */
+    protected void process(List<T> batch) throws Exception
+    {
+        for (T item : batch)
+        {
+            try
+            {
+                processItem(item);
+            }
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                logger.error("Unable to process " + item + " in the " + name + " ingest stage", e);
+            }
+        }
+    }
+
+    /**
+     * Process a single item
+     *
+     * @param item
+     * @throws Exception
+     */
+    protected abstract void processItem(T item) throws Exception;
+
+    /**
+     * Count items of a batch that were passed over because later items made them irrelevant
+     *
+     * @param count
+     */
+    protected void addCoalesced(int count)
+    {
+        coalescedCount.addAndGet(count);
+    }
+
+    private void work()
+    {
+        List<T> batch = new ArrayList<T>(maxBatchSize);
+        while (true)
+        {
+            try
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+
+                final long start = System.nanoTime();
+                process(batch);
+                processNanos.addAndGet(System.nanoTime() - start);
+                processedCount.addAndGet(batch.size());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (Exception e)
+            {
+                logger.error("Error in the " + name + " ingest stage", e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void notePeakQueueDepth()
+    {
+        final int depth = queue.size();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth))
+        {
+            peak = peakQueueDepth.get();
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    @Override
+    public int getPeakQueueDepth()
+    {
+        return peakQueueDepth.get();
+    }
+
+    @Override
+    public long getProcessedCount()
+    {
+        return processedCount.get();
+    }
+
+    @Override
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount()
+    {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public double getAverageProcessMillis()
+    {
+        final long processed = processedCount.get();
+        return processed == 0L ? 0.0 : processNanos.get() / 1000000.0 / processed;
+    }
+
+    @Override
+    public long getBlockedMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+}
@@ -0,0 +1,42 @@
+package com.glitchcog.fontificator.bot.ingest;
+
+/**
+ * The statistics of one stage of the ingest pipeline as exposed over JMX
+ *
+ * @author Matt Yanos
+ */
+public interface IngestStageMBean
+{
+    public String getName();
+
+    public int getQueueDepth();
+
+    public int getQueueCapacity();
+
+    /**
+     * Get the most items that have been waiting in the queue at once
+     */
+    public int getPeakQueueDepth();
+
+    public long getProcessedCount();
+
+    /**
+     * Get the number of items thrown away to make room in the full queue
+     */
+    public long getDroppedCount();
+
+    /**
+     * Get the number of items passed over because a later item in the same batch made them irrelevant
+     */
+    public long getCoalescedCount();
+
+    /**
+     * Get the average time spent processing each item, in milliseconds
+     */
+    public double getAverageProcessMillis();
+
+    /**
+     * Get the total time the stage before this one spent waiting for room in this stage's queue, in milliseconds
+     */
+    public long getBlockedMillis();
+}
@@ -2,6 +2,7 @@ package com.glitchcog.fontificator.config;
 
 import java.awt.Color;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.glitchcog.fontificator.config.loadreport.LoadConfigErrorType;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
@@ -13,11 +14,42 @@ import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
  */
 public abstract class Config
 {
+    /**
+     * The source of version numbers for every config object, shared so that no two versions of any two config objects
+     * are ever equal
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
     /**
      * Keep a reference to the properties for updating when changes are made
      */
     protected Properties props;
 
+    /**
+     * A stamp of the current values of this config, changed every time they are modified, so anything derived from
+     * them can tell whether it is out of date by comparing a single long instead of every value
+     */
+    private volatile long version = VERSIONS.incrementAndGet();
+
+    /**
+     * Get the version of the current values of this config. It is different after any change made through a setter,
+     * reset or load of a config that tracks its version.
+     * 
+     * @return version
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Mark the values of this config as changed, to be called after they are modified
+     */
+    protected void incrementVersion()
+    {
+        version = VERSIONS.incrementAndGet();
+    }
+
     /**
      * Loads all fields from a Properties object
      * 
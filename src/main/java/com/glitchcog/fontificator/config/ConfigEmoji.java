@@ -25,6 +25,14 @@ public class ConfigEmoji extends Config
     public static final int MIN_BADGE_OFFSET = -32;
     public static final int MAX_BADGE_OFFSET = 64;
 
+    public static final int MIN_PREFETCH_THREADS = 1;
+    public static final int MAX_PREFETCH_THREADS = 32;
+    public static final int DEFAULT_PREFETCH_THREADS = 8;
+
+    public static final int MIN_PREFETCH_PER_HOST = 1;
+    public static final int MAX_PREFETCH_PER_HOST = 16;
+    public static final int DEFAULT_PREFETCH_PER_HOST = 4;
+
     /**
      * The green of moderator badges, used for FrankerFaceZ badge coloration
      */
@@ -163,11 +171,49 @@ public class ConfigEmoji extends Config
      */
     private Boolean bttvCached;
 
+    /**
+     * The most emoji images downloaded at once when caching
+     */
+    private Integer prefetchThreads;
+
+    /**
+     * The most emoji images downloaded at once from any one host when caching, so no one CDN is flooded
+     */
+    private Integer prefetchPerHost;
+
+    /**
+     * The version of only the values that change how a message is parsed into text, which are whether emoji, badges
+     * and each type of emote are enabled and which of them have been loaded. The rest, like the scales and the loading
+     * display strategy, only change how the emoji are laid out and drawn, so changing them doesn't make any parsed text
+     * or remembered emoji lookups outdated.
+     */
+    private volatile long textVersion = getVersion();
+
     public ConfigEmoji()
     {
         resetWorkCompleted();
     }
 
+    /**
+     * Get the version of the values that change how a message is parsed into text. It is different after any change
+     * to one of them, and the same after a change to any other value.
+     * 
+     * @return text version
+     */
+    public long getTextVersion()
+    {
+        return textVersion;
+    }
+
+    /**
+     * Mark the values that change how a message is parsed into text as changed, which also changes the version
+     */
+    private void incrementTextVersion()
+    {
+        incrementVersion();
+        textVersion = getVersion();
+    }
+
     @Override
     public void reset()
     {
@@ -180,6 +226,8 @@ public class ConfigEmoji extends Config
         badgeHeightOffset = null;
         emojiScale = null;
         badgeScale = null;
+        prefetchThreads = null;
+        prefetchPerHost = null;
         displayStrategy = null;
         twitchEnabled = null;
         twitchCacheEnabled = null;
@@ -190,6 +238,7 @@ public class ConfigEmoji extends Config
         bttvLoadedChannel = null;
         bttvGlobalLoaded = null;
         bttvCached = null;
+        incrementTextVersion();
     }
 
     public boolean isEmojiEnabled()
@@ -201,6 +250,7 @@ public class ConfigEmoji extends Config
     {
         this.emojiEnabled = emojiEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_ENABLED, Boolean.toString(emojiEnabled));
+        incrementTextVersion();
     }
 
     public boolean isAnimationEnabled()
@@ -212,6 +262,7 @@ public class ConfigEmoji extends Config
     {
         this.animationEnabled = animationEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_ANIMATION, Boolean.toString(animationEnabled));
+        incrementVersion();
     }
 
     public boolean isTwitchBadgesEnabled()
@@ -223,6 +274,7 @@ public class ConfigEmoji extends Config
     {
         this.twitchBadgesEnabled = twitchBadgesEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_TWITCH_BADGES, Boolean.toString(twitchBadgesEnabled));
+        incrementTextVersion();
     }
 
     public boolean isFfzBadgesEnabled()
@@ -234,6 +286,7 @@ public class ConfigEmoji extends Config
     {
         this.ffzBadgesEnabled = ffzBadgesEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_FFZ_BADGES, Boolean.toString(ffzBadgesEnabled));
+        incrementTextVersion();
     }
 
     /**
@@ -255,6 +308,7 @@ public class ConfigEmoji extends Config
     {
         this.emojiScaleToLine = emojiScaleToLine;
         props.setProperty(FontificatorProperties.KEY_EMOJI_SCALE_TO_LINE, Boolean.toString(emojiScaleToLine));
+        incrementVersion();
     }
 
     public boolean isBadgeScaleToLine()
@@ -266,6 +320,7 @@ public class ConfigEmoji extends Config
     {
         this.badgeScaleToLine = badgeScaleToLine;
         props.setProperty(FontificatorProperties.KEY_EMOJI_BADGE_SCALE_TO_LINE, Boolean.toString(badgeScaleToLine));
+        incrementVersion();
     }
 
     public int getBadgeHeightOffset()
@@ -277,6 +332,7 @@ public class ConfigEmoji extends Config
     {
         this.badgeHeightOffset = badgeHeightOffset;
         props.setProperty(FontificatorProperties.KEY_EMOJI_BADGE_HEIGHT_OFFSET, Integer.toString(badgeHeightOffset));
+        incrementVersion();
     }
 
     public Integer getEmojiScale()
@@ -288,6 +344,7 @@ public class ConfigEmoji extends Config
     {
         this.emojiScale = emojiScale;
         props.setProperty(FontificatorProperties.KEY_EMOJI_SCALE, Integer.toString(emojiScale));
+        incrementVersion();
     }
 
     public Integer getBadgeScale()
@@ -299,6 +356,29 @@ public class ConfigEmoji extends Config
     {
         this.badgeScale = badgeScale;
         props.setProperty(FontificatorProperties.KEY_EMOJI_BADGE_SCALE, Integer.toString(badgeScale));
+        incrementVersion();
+    }
+
+    public Integer getPrefetchThreads()
+    {
+        return prefetchThreads;
+    }
+
+    public void setPrefetchThreads(Integer prefetchThreads)
+    {
+        this.prefetchThreads = prefetchThreads;
+        props.setProperty(FontificatorProperties.KEY_EMOJI_PREFETCH_THREADS, Integer.toString(prefetchThreads));
+    }
+
+    public Integer getPrefetchPerHost()
+    {
+        return prefetchPerHost;
+    }
+
+    public void setPrefetchPerHost(Integer prefetchPerHost)
+    {
+        this.prefetchPerHost = prefetchPerHost;
+        props.setProperty(FontificatorProperties.KEY_EMOJI_PREFETCH_PER_HOST, Integer.toString(prefetchPerHost));
     }
 
     public EmojiLoadingDisplayStragegy getDisplayStrategy()
@@ -310,6 +390,7 @@ public class ConfigEmoji extends Config
     {
         this.displayStrategy = displayStrategy;
         props.setProperty(FontificatorProperties.KEY_EMOJI_DISPLAY_STRAT, displayStrategy.name());
+        incrementVersion();
     }
 
     public boolean isTwitchEnabled()
@@ -321,6 +402,7 @@ public class ConfigEmoji extends Config
     {
         this.twitchEnabled = twitchEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_TWITCH_ENABLE, Boolean.toString(twitchEnabled));
+        incrementTextVersion();
     }
 
     public boolean isTwitchCacheEnabled()
@@ -332,6 +414,7 @@ public class ConfigEmoji extends Config
     {
         this.twitchCacheEnabled = twitchCacheEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_TWITCH_CACHE, Boolean.toString(twitchCacheEnabled));
+        incrementVersion();
     }
 
     public boolean isFfzEnabled()
@@ -343,6 +426,7 @@ public class ConfigEmoji extends Config
     {
         this.ffzEnabled = ffzEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_FFZ_ENABLE, Boolean.toString(ffzEnabled));
+        incrementTextVersion();
     }
 
     public boolean isFfzCacheEnabled()
@@ -354,6 +438,7 @@ public class ConfigEmoji extends Config
     {
         this.ffzCacheEnabled = ffzCacheEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_FFZ_CACHE, Boolean.toString(ffzCacheEnabled));
+        incrementVersion();
     }
 
     public Boolean isBttvEnabled()
@@ -370,6 +455,7 @@ public class ConfigEmoji extends Config
     {
         this.bttvCacheEnabled = bttvCacheEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_BTTV_CACHE, Boolean.toString(bttvCacheEnabled));
+        incrementVersion();
     }
 
     /**
@@ -454,8 +540,13 @@ public class ConfigEmoji extends Config
             final String bttvEnabledStr = props.getProperty(FontificatorProperties.KEY_EMOJI_BTTV_ENABLE);
             final String bttvCacheStr = props.getProperty(FontificatorProperties.KEY_EMOJI_BTTV_CACHE);
 
+            final String prefetchThreadsStr = props.getProperty(FontificatorProperties.KEY_EMOJI_PREFETCH_THREADS);
+            final String prefetchPerHostStr = props.getProperty(FontificatorProperties.KEY_EMOJI_PREFETCH_PER_HOST);
+
             // Check that the values are valid
             validateStrings(report, enabledStr, aniStr, twitchBadgeStr, ffzBadgeStr, scaleEnabledStr, scaleBadgeEnabledStr, badgeHeightOffsetStr, scaleStr, scaleBadgeStr, displayStratStr, twitchEnabledStr, twitchCacheStr, ffzEnabledStr, ffzCacheStr, bttvEnabledStr, bttvCacheStr);
+            validateIntegerWithLimitString(FontificatorProperties.KEY_EMOJI_PREFETCH_THREADS, prefetchThreadsStr, MIN_PREFETCH_THREADS, MAX_PREFETCH_THREADS, report);
+            validateIntegerWithLimitString(FontificatorProperties.KEY_EMOJI_PREFETCH_PER_HOST, prefetchPerHostStr, MIN_PREFETCH_PER_HOST, MAX_PREFETCH_PER_HOST, report);
 
             // Fill the values
             if (report.isErrorFree())
@@ -476,9 +567,13 @@ public class ConfigEmoji extends Config
                 ffzCacheEnabled = evaluateBooleanString(props, FontificatorProperties.KEY_EMOJI_FFZ_CACHE, report);
                 bttvEnabled = evaluateBooleanString(props, FontificatorProperties.KEY_EMOJI_BTTV_ENABLE, report);
                 bttvCacheEnabled = evaluateBooleanString(props, FontificatorProperties.KEY_EMOJI_BTTV_CACHE, report);
+                prefetchThreads = evaluateIntegerString(props, FontificatorProperties.KEY_EMOJI_PREFETCH_THREADS, report);
+                prefetchPerHost = evaluateIntegerString(props, FontificatorProperties.KEY_EMOJI_PREFETCH_PER_HOST, report);
             }
         }
 
+        incrementTextVersion();
+
         return report;
     }
 
@@ -719,36 +814,6 @@ public class ConfigEmoji extends Config
         return true;
     }
 
-    /**
-     * Perform a deep copy of the emoji config, used to compare against the previous one used to generated the string of
-     * characters and emojis that are stored in a Message object
-     * 
-     * @param copy
-     */
-    public void deepCopy(ConfigEmoji copy)
-    {
-        this.emojiEnabled = copy.emojiEnabled;
-        this.twitchBadgesEnabled = copy.twitchBadgesEnabled;
-        this.ffzBadgesEnabled = copy.ffzBadgesEnabled;
-        this.emojiScaleToLine = copy.emojiScaleToLine;
-        this.emojiScale = copy.emojiScale;
-        this.badgeScaleToLine = copy.badgeScaleToLine;
-        this.badgeHeightOffset = copy.badgeHeightOffset;
-        this.badgeScale = copy.badgeScale;
-        this.displayStrategy = copy.displayStrategy;
-        this.twitchEnabled = copy.twitchEnabled;
-        this.ffzEnabled = copy.ffzEnabled;
-        this.twitchLoaded = copy.twitchLoaded;
-        this.twitchBadgesLoadedChannel = copy.twitchBadgesLoadedChannel;
-        this.ffzLoadedChannel = copy.ffzLoadedChannel;
-        this.ffzGlobalLoaded = copy.ffzGlobalLoaded;
-        this.bttvEnabled = copy.bttvEnabled;
-        this.bttvCacheEnabled = copy.bttvCacheEnabled;
-        this.bttvLoadedChannel = copy.bttvLoadedChannel;
-        this.bttvGlobalLoaded = copy.bttvGlobalLoaded;
-        this.bttvCached = copy.bttvCached;
-    }
-
     /**
      * Get whether the Twitch emotes have been loaded
      * 
@@ -767,6 +832,7 @@ public class ConfigEmoji extends Config
     public void setTwitchLoaded(Boolean twitchLoaded)
     {
         this.twitchLoaded = twitchLoaded;
+        incrementTextVersion();
     }
 
     /**
@@ -787,6 +853,7 @@ public class ConfigEmoji extends Config
     public void setTwitchCached(Boolean twitchCached)
     {
         this.twitchCached = twitchCached;
+        incrementVersion();
     }
 
     /**
@@ -818,6 +885,7 @@ public class ConfigEmoji extends Config
     public void setTwitchBadgesLoaded(String twitchBadgesLoadedChannel)
     {
         this.twitchBadgesLoadedChannel = twitchBadgesLoadedChannel;
+        incrementTextVersion();
     }
 
     /**
@@ -829,6 +897,7 @@ public class ConfigEmoji extends Config
     public void setFfzBadgesLoaded(String ffzBadgesLoadedChannel)
     {
         this.ffzBadgesLoadedChannel = ffzBadgesLoadedChannel;
+        incrementTextVersion();
     }
 
     /**
@@ -850,6 +919,7 @@ public class ConfigEmoji extends Config
     public void setFfzLoaded(String ffzLoadedChannel)
     {
         this.ffzLoadedChannel = ffzLoadedChannel;
+        incrementTextVersion();
     }
 
     /**
@@ -870,6 +940,7 @@ public class ConfigEmoji extends Config
     public void setFfzGlobalLoaded(Boolean ffzGlobalLoaded)
     {
         this.ffzGlobalLoaded = ffzGlobalLoaded;
+        incrementTextVersion();
     }
 
     /**
@@ -890,12 +961,14 @@ public class ConfigEmoji extends Config
     public void setFfzCached(Boolean ffzCached)
     {
         this.ffzCached = ffzCached;
+        incrementVersion();
     }
 
     public void setBttvEnabled(Boolean bttvEnabled)
     {
         this.bttvEnabled = bttvEnabled;
         props.setProperty(FontificatorProperties.KEY_EMOJI_BTTV_ENABLE, Boolean.toString(bttvEnabled));
+        incrementTextVersion();
     }
 
     public String getBttvLoadedChannel()
@@ -906,11 +979,13 @@ public class ConfigEmoji extends Config
     public void setBttvLoadedChannel(String bttvLoadedChannel)
     {
         this.bttvLoadedChannel = bttvLoadedChannel;
+        incrementTextVersion();
     }
 
     public void setBttvGlobalLoaded(Boolean bttvGlobalLoaded)
     {
         this.bttvGlobalLoaded = bttvGlobalLoaded;
+        incrementTextVersion();
     }
 
     public boolean isBttvLoaded(String testChannel)
@@ -921,6 +996,7 @@ public class ConfigEmoji extends Config
     public void setBttfLoaded(String bttvLoadedChannel)
     {
         this.bttvLoadedChannel = bttvLoadedChannel;
+        incrementTextVersion();
     }
 
     public Boolean isBttvGlobalLoaded()
@@ -931,6 +1007,7 @@ public class ConfigEmoji extends Config
     public void setBttfGlobalLoaded(Boolean bttvGlobalLoaded)
     {
         this.bttvGlobalLoaded = bttvGlobalLoaded;
+        incrementTextVersion();
     }
 
     public boolean isBttvCached()
@@ -941,6 +1018,7 @@ public class ConfigEmoji extends Config
     public void setBttvCached(Boolean bttvCached)
     {
         this.bttvCached = bttvCached;
+        incrementVersion();
     }
 
     /**
@@ -1011,6 +1089,7 @@ public class ConfigEmoji extends Config
                 this.bttvCached = true;
             }
         }
+        incrementTextVersion();
     }
 
     /**
@@ -1029,6 +1108,7 @@ public class ConfigEmoji extends Config
         this.bttvLoadedChannel = null;
         this.bttvGlobalLoaded = false;
         this.bttvCached = null;
+        incrementTextVersion();
     }
 
     /**
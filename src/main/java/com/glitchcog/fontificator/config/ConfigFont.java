@@ -43,6 +43,15 @@ public class ConfigFont extends Config
     public static final int MIN_CHAR_SPACING = -16;
     public static final int MAX_CHAR_SPACING = 32;
 
+    /**
+     * The range and default for the number of megabytes of recolored sprite images each sprite can keep cached
+     */
+    public static final int MIN_COLOR_CACHE_SIZE = 1;
+    public static final int MAX_COLOR_CACHE_SIZE = 1024;
+    public static final int DEFAULT_COLOR_CACHE_SIZE = 64;
+
+    public static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
     private String fontFilename;
 
     private String borderFilename;
@@ -75,6 +84,17 @@ public class ConfigFont extends Config
 
     private FontType fontType;
 
+    /**
+     * The number of megabytes of recolored sprite images each sprite can keep cached
+     */
+    private int colorCacheSize;
+
+    /**
+     * Whether to tint only the glyphs of the font that are drawn, into a shared atlas, rather than a copy of the whole
+     * font sheet for each color
+     */
+    private Boolean glyphAtlasEnabled;
+
     /**
      * Default constructor for creating an empty config to fill with load method
      */
@@ -101,6 +121,8 @@ public class ConfigFont extends Config
         extendedCharEnabled = null;
         lineSpacing = 0;
         charSpacing = 0;
+        colorCacheSize = DEFAULT_COLOR_CACHE_SIZE;
+        glyphAtlasEnabled = null;
     }
 
     public void validateFontFile(LoadConfigReport report, String fontFilename)
@@ -221,12 +243,16 @@ public class ConfigFont extends Config
             final String charSpacingStr = props.getProperty(FontificatorProperties.KEY_FONT_SPACING_CHAR);
             final String fontTypeStr = props.getProperty(FontificatorProperties.KEY_FONT_TYPE);
             final String charKeyStr = props.getProperty(FontificatorProperties.KEY_FONT_CHARACTERS);
+            final String colorCacheSizeStr = props.getProperty(FontificatorProperties.KEY_FONT_COLOR_CACHE_SIZE);
+            final String glyphAtlasStr = props.getProperty(FontificatorProperties.KEY_FONT_GLYPH_ATLAS);
 
             final String borderFilenameStr = props.getProperty(FontificatorProperties.KEY_FONT_FILE_BORDER);
             final String fontFilenameStr = props.getProperty(FontificatorProperties.KEY_FONT_FILE_FONT);
 
             // Check that the values are valid
             validateStrings(report, fontFilenameStr, borderFilenameStr, gridWidthStr, gridHeightStr, charKeyStr, unknownCharStr, extendedCharStr, scaleStr, borderScaleStr, borderInsetXStr, borderInsetYStr, spaceWidthStr, baselineStr, lineSpacingStr, charSpacingStr, fontTypeStr);
+            validateIntegerWithLimitString(FontificatorProperties.KEY_FONT_COLOR_CACHE_SIZE, colorCacheSizeStr, MIN_COLOR_CACHE_SIZE, MAX_COLOR_CACHE_SIZE, report);
+            validateBooleanStrings(report, glyphAtlasStr);
 
             // Fill the values
             if (report.isErrorFree())
@@ -247,6 +273,8 @@ public class ConfigFont extends Config
                 this.baselineOffset = Integer.parseInt(baselineStr);
                 this.lineSpacing = Integer.parseInt(lineSpacingStr);
                 this.charSpacing = Integer.parseInt(charSpacingStr);
+                this.colorCacheSize = Integer.parseInt(colorCacheSizeStr);
+                this.glyphAtlasEnabled = evaluateBooleanString(props, FontificatorProperties.KEY_FONT_GLYPH_ATLAS, report);
             }
         }
 
@@ -429,4 +457,26 @@ public class ConfigFont extends Config
         props.setProperty(FontificatorProperties.KEY_FONT_TYPE, fontType.name());
     }
 
+    public int getColorCacheSize()
+    {
+        return colorCacheSize;
+    }
+
+    public void setColorCacheSize(int colorCacheSize)
+    {
+        this.colorCacheSize = colorCacheSize;
+        props.setProperty(FontificatorProperties.KEY_FONT_COLOR_CACHE_SIZE, Integer.toString(colorCacheSize));
+    }
+
+    public boolean isGlyphAtlasEnabled()
+    {
+        return glyphAtlasEnabled;
+    }
+
+    public void setGlyphAtlasEnabled(boolean glyphAtlasEnabled)
+    {
+        this.glyphAtlasEnabled = glyphAtlasEnabled;
+        props.setProperty(FontificatorProperties.KEY_FONT_GLYPH_ATLAS, Boolean.toString(glyphAtlasEnabled));
+    }
+
 }
@@ -7,8 +7,7 @@ import java.util.Properties;
 
 import com.glitchcog.fontificator.config.loadreport.LoadConfigErrorType;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
-import com.glitchcog.fontificator.gui.chat.clock.MessageExpirer;
-import com.glitchcog.fontificator.gui.chat.clock.MessageProgressor;
+import com.glitchcog.fontificator.gui.chat.clock.FrameScheduler;
 
 /**
  * The configuration for how to display the messages
@@ -52,12 +51,13 @@ public class ConfigMessage extends Config
     /**
      * The datetime pattern for the timestamps
      */
-    private String timeFormat;
+    private volatile String timeFormat;
 
     /**
-     * The formatter for timestamps
+     * The formatters for timestamps, one per thread because SimpleDateFormat isn't thread safe and messages are parsed
+     * on the ingest, frame scheduler, re-parse and event dispatch threads. Each is rebuilt when the pattern changes.
      */
-    private DateFormat timeFormatter;
+    private final ThreadLocal<SimpleDateFormat> timeFormatters = new ThreadLocal<SimpleDateFormat>();
 
     /**
      * The number of messages to keep to draw and scroll back through
@@ -100,6 +100,33 @@ public class ConfigMessage extends Config
      */
     private MessageCasing messageCasing;
 
+    /**
+     * The version of only the values that change how a message is parsed into text, which are the join messages,
+     * usernames, timestamps, time format and casing. The rest, like the speed and expiration time, only change how and
+     * when the text is drawn, so changing them doesn't make any parsed text outdated.
+     */
+    private volatile long textVersion = getVersion();
+
+    /**
+     * Get the version of the values that change how a message is parsed into text. It is different after any change
+     * to one of them, and the same after a change to any other value.
+     * 
+     * @return text version
+     */
+    public long getTextVersion()
+    {
+        return textVersion;
+    }
+
+    /**
+     * Mark the values that change how a message is parsed into text as changed, which also changes the version
+     */
+    private void incrementTextVersion()
+    {
+        incrementVersion();
+        textVersion = getVersion();
+    }
+
     @Override
     public void reset()
     {
@@ -115,6 +142,7 @@ public class ConfigMessage extends Config
         this.caseResolutionType = null;
         this.specifyCaseAllowed = null;
         this.messageCasing = null;
+        incrementTextVersion();
     }
 
     public LoadConfigReport validateTimeFormat(LoadConfigReport report, String timeFormatStr)
@@ -206,6 +234,8 @@ public class ConfigMessage extends Config
             }
         }
 
+        incrementTextVersion();
+
         return report;
     }
 
@@ -221,6 +251,7 @@ public class ConfigMessage extends Config
     {
         this.joinMessages = joinMessages;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_JOIN, Boolean.toString(joinMessages));
+        incrementTextVersion();
     }
 
     /**
@@ -235,6 +266,7 @@ public class ConfigMessage extends Config
     {
         this.usernames = usernames;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_USERNAME, Boolean.toString(usernames));
+        incrementTextVersion();
     }
 
     /**
@@ -249,6 +281,7 @@ public class ConfigMessage extends Config
     {
         this.timestamps = timestamps;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_TIMESTAMP, Boolean.toString(timestamps));
+        incrementTextVersion();
     }
 
     /**
@@ -259,16 +292,28 @@ public class ConfigMessage extends Config
         return timeFormat;
     }
 
+    /**
+     * Get the formatter for timestamps belonging to the calling thread, so it must not be handed off to another thread
+     * 
+     * @return timeFormatter
+     */
     public DateFormat getTimerFormatter()
     {
+        final String pattern = timeFormat;
+        SimpleDateFormat timeFormatter = timeFormatters.get();
+        if (timeFormatter == null || !timeFormatter.toPattern().equals(pattern))
+        {
+            timeFormatter = new SimpleDateFormat(pattern);
+            timeFormatters.set(timeFormatter);
+        }
         return timeFormatter;
     }
 
     public void setTimeFormat(String timeFormat)
     {
         this.timeFormat = timeFormat;
-        this.timeFormatter = new SimpleDateFormat(timeFormat);
         props.setProperty(FontificatorProperties.KEY_MESSAGE_TIMEFORMAT, timeFormat);
+        incrementTextVersion();
     }
 
     /**
@@ -283,6 +328,7 @@ public class ConfigMessage extends Config
     {
         this.queueSize = queueSize;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_QUEUE_SIZE, Integer.toString(queueSize));
+        incrementVersion();
     }
 
     /**
@@ -301,19 +347,20 @@ public class ConfigMessage extends Config
     }
 
     /**
-     * Set the message speed and update the message progressor timer to match the newly set speed
+     * Set the message speed and restart the message rollout to match the newly set speed
      * 
      * @param messageSpeed
-     * @param progressor
+     * @param scheduler
      */
-    public void setMessageSpeed(int messageSpeed, MessageProgressor progressor)
+    public void setMessageSpeed(int messageSpeed, FrameScheduler scheduler)
     {
         this.messageSpeed = messageSpeed;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_SPEED, Integer.toString(messageSpeed));
-        if (progressor != null)
+        if (scheduler != null)
         {
-            progressor.refreshTimer(getMessageDelay());
+            scheduler.restartRollout();
         }
+        incrementVersion();
     }
 
     public Integer getExpirationTime()
@@ -321,21 +368,22 @@ public class ConfigMessage extends Config
         return expirationTime;
     }
 
-    public void setExpirationTime(Integer expirationTime, MessageExpirer expirer)
+    public void setExpirationTime(Integer expirationTime, FrameScheduler scheduler)
     {
         this.expirationTime = expirationTime;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_EXPIRATION_TIME, Integer.toString(expirationTime));
-        if (expirer != null)
+        if (scheduler != null)
         {
             if (expirationTime == MIN_MESSAGE_EXPIRATION)
             {
-                expirer.cancelLatest();
+                scheduler.stopExpiry();
             }
             else
             {
-                expirer.startClock();
+                scheduler.startExpiry();
             }
         }
+        incrementVersion();
     }
 
     public boolean isMessageExpirable()
@@ -352,6 +400,7 @@ public class ConfigMessage extends Config
     {
         this.hideEmptyBorder = hideEmptyBorder;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_HIDE_EMPTY_BORDER, Boolean.toString(hideEmptyBorder));
+        incrementVersion();
     }
 
     public boolean isHideEmptyBackground()
@@ -363,6 +412,7 @@ public class ConfigMessage extends Config
     {
         this.hideEmptyBackground = hideEmptyBackground;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_HIDE_EMPTY_BACKGROUND, Boolean.toString(hideEmptyBackground));
+        incrementVersion();
     }
 
     public UsernameCaseResolutionType getCaseResolutionType()
@@ -374,6 +424,7 @@ public class ConfigMessage extends Config
     {
         this.caseResolutionType = caseResolutionType;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_CASE_TYPE, caseResolutionType.name());
+        incrementVersion();
     }
 
     public Boolean isSpecifyCaseAllowed()
@@ -385,6 +436,7 @@ public class ConfigMessage extends Config
     {
         this.specifyCaseAllowed = specifyCaseAllowed;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_CASE_SPECIFY, Boolean.toString(specifyCaseAllowed));
+        incrementVersion();
     }
 
     public MessageCasing getMessageCasing()
@@ -396,6 +448,7 @@ public class ConfigMessage extends Config
     {
         this.messageCasing = messageCasing;
         props.setProperty(FontificatorProperties.KEY_MESSAGE_CASING, messageCasing.name());
+        incrementTextVersion();
     }
 
     @Override
@@ -454,19 +507,4 @@ public class ConfigMessage extends Config
         return true;
     }
 
-    /**
-     * Perform a deep copy of the message config, used to compare against the previous one used to generated the string
-     * of characters and emojis that are stored in a Message object
-     * 
-     * @param copy
-     */
-    public void deepCopy(ConfigMessage copy)
-    {
-        this.joinMessages = copy.joinMessages;
-        this.timeFormat = copy.timeFormat;
-        this.timestamps = copy.timestamps;
-        this.usernames = copy.usernames;
-        this.messageCasing = copy.messageCasing;
-    }
-
 }
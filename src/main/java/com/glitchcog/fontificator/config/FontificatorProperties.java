@@ -82,8 +82,10 @@ public class FontificatorProperties extends Properties
     public static final String KEY_FONT_CHARACTERS = "fontCharacters";
     public static final String KEY_FONT_SPACING_LINE = "fontLineSpacing";
     public static final String KEY_FONT_SPACING_CHAR = "fontCharSpacing";
+    public static final String KEY_FONT_COLOR_CACHE_SIZE = "fontColorCacheSize";
+    public static final String KEY_FONT_GLYPH_ATLAS = "fontGlyphAtlas";
 
-    public static final String[] FONT_KEYS = new String[] { KEY_FONT_FILE_BORDER, KEY_FONT_FILE_FONT, KEY_FONT_TYPE, KEY_FONT_GRID_WIDTH, KEY_FONT_GRID_HEIGHT, KEY_FONT_SCALE, KEY_FONT_BORDER_SCALE, KEY_FONT_BORDER_INSET_X, KEY_FONT_BORDER_INSET_Y, KEY_FONT_SPACE_WIDTH, KEY_FONT_BASELINE_OFFSET, KEY_FONT_UNKNOWN_CHAR, KEY_FONT_EXTENDED_CHAR, KEY_FONT_CHARACTERS, KEY_FONT_SPACING_LINE, KEY_FONT_SPACING_CHAR };
+    public static final String[] FONT_KEYS = new String[] { KEY_FONT_FILE_BORDER, KEY_FONT_FILE_FONT, KEY_FONT_TYPE, KEY_FONT_GRID_WIDTH, KEY_FONT_GRID_HEIGHT, KEY_FONT_SCALE, KEY_FONT_BORDER_SCALE, KEY_FONT_BORDER_INSET_X, KEY_FONT_BORDER_INSET_Y, KEY_FONT_SPACE_WIDTH, KEY_FONT_BASELINE_OFFSET, KEY_FONT_UNKNOWN_CHAR, KEY_FONT_EXTENDED_CHAR, KEY_FONT_CHARACTERS, KEY_FONT_SPACING_LINE, KEY_FONT_SPACING_CHAR, KEY_FONT_COLOR_CACHE_SIZE, KEY_FONT_GLYPH_ATLAS };
 
     public static final String KEY_CHAT_SCROLL = "chatScrollEnabled";
     public static final String KEY_CHAT_RESIZABLE = "chatResizable";
@@ -155,8 +157,10 @@ public class FontificatorProperties extends Properties
     public static final String KEY_EMOJI_FFZ_CACHE = "emojiFfzCached";
     public static final String KEY_EMOJI_BTTV_ENABLE = "emojiBttvEnabled";
     public static final String KEY_EMOJI_BTTV_CACHE = "emojiBttvCached";
+    public static final String KEY_EMOJI_PREFETCH_THREADS = "emojiPrefetchThreads";
+    public static final String KEY_EMOJI_PREFETCH_PER_HOST = "emojiPrefetchPerHost";
 
-    public static final String[] EMOJI_KEYS = new String[] { KEY_EMOJI_ENABLED, KEY_EMOJI_ANIMATION, KEY_EMOJI_TWITCH_BADGES, KEY_EMOJI_FFZ_BADGES, KEY_EMOJI_SCALE_TO_LINE, KEY_EMOJI_BADGE_SCALE_TO_LINE, KEY_EMOJI_BADGE_HEIGHT_OFFSET, KEY_EMOJI_SCALE, KEY_EMOJI_BADGE_SCALE, KEY_EMOJI_DISPLAY_STRAT, KEY_EMOJI_TWITCH_ENABLE, KEY_EMOJI_TWITCH_CACHE, KEY_EMOJI_FFZ_ENABLE, KEY_EMOJI_FFZ_CACHE, KEY_EMOJI_BTTV_ENABLE, KEY_EMOJI_BTTV_CACHE };
+    public static final String[] EMOJI_KEYS = new String[] { KEY_EMOJI_ENABLED, KEY_EMOJI_ANIMATION, KEY_EMOJI_TWITCH_BADGES, KEY_EMOJI_FFZ_BADGES, KEY_EMOJI_SCALE_TO_LINE, KEY_EMOJI_BADGE_SCALE_TO_LINE, KEY_EMOJI_BADGE_HEIGHT_OFFSET, KEY_EMOJI_SCALE, KEY_EMOJI_BADGE_SCALE, KEY_EMOJI_DISPLAY_STRAT, KEY_EMOJI_TWITCH_ENABLE, KEY_EMOJI_TWITCH_CACHE, KEY_EMOJI_FFZ_ENABLE, KEY_EMOJI_FFZ_CACHE, KEY_EMOJI_BTTV_ENABLE, KEY_EMOJI_BTTV_CACHE, KEY_EMOJI_PREFETCH_THREADS, KEY_EMOJI_PREFETCH_PER_HOST };
 
     public static final String KEY_CENSOR_ENABLED = "censorEnabled";
     public static final String KEY_CENSOR_PURGE_ON_TWITCH_BAN = "censorPurgeOnTwitchBan";
@@ -592,6 +596,8 @@ public class FontificatorProperties extends Properties
         setPropertyOverride(KEY_FONT_EXTENDED_CHAR, trueString, override);
         setPropertyOverride(KEY_FONT_SPACING_LINE, Integer.toString(2), override);
         setPropertyOverride(KEY_FONT_SPACING_CHAR, Integer.toString(0), override);
+        setPropertyOverride(KEY_FONT_COLOR_CACHE_SIZE, Integer.toString(ConfigFont.DEFAULT_COLOR_CACHE_SIZE), override);
+        setPropertyOverride(KEY_FONT_GLYPH_ATLAS, trueString, override);
 
         setPropertyOverride(KEY_CHAT_SCROLL, falseString, override);
         setPropertyOverride(KEY_CHAT_RESIZABLE, trueString, override);
@@ -653,6 +659,8 @@ public class FontificatorProperties extends Properties
         setPropertyOverride(KEY_EMOJI_FFZ_CACHE, falseString, override);
         setPropertyOverride(KEY_EMOJI_BTTV_ENABLE, falseString, override);
         setPropertyOverride(KEY_EMOJI_BTTV_CACHE, falseString, override);
+        setPropertyOverride(KEY_EMOJI_PREFETCH_THREADS, Integer.toString(ConfigEmoji.DEFAULT_PREFETCH_THREADS), override);
+        setPropertyOverride(KEY_EMOJI_PREFETCH_PER_HOST, Integer.toString(ConfigEmoji.DEFAULT_PREFETCH_PER_HOST), override);
 
         setPropertyOverride(KEY_CENSOR_ENABLED, trueString, override);
         setPropertyOverride(KEY_CENSOR_PURGE_ON_TWITCH_BAN, trueString, override);
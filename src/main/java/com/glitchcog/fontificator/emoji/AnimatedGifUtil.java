@@ -5,6 +5,7 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URL;
@@ -52,9 +53,9 @@ public class AnimatedGifUtil
     public static final String IMAGE_WIDTH = "imageWidth";
     public static final String IMAGE_HEIGHT = "imageHeight";
 
-    public static Image loadAnimatedGif(final URL url)
+    public static Image loadAnimatedGif(final byte[] imageBytes)
     {
-        return new ImageIcon(url).getImage();
+        return new ImageIcon(imageBytes).getImage();
     }
 
     /**
@@ -62,22 +63,24 @@ public class AnimatedGifUtil
      * 
      * Adapted from http://stackoverflow.com/questions/26801433/fix-frame-rate-of-animated-gif-in-java#answer-26829534
      * 
+     * @param imageBytes
+     *            The animated GIF file to be loaded
      * @param url
-     *            The URL for the animated GIF to be loaded
+     *            The URL the animated GIF was loaded from, for logging
      * @param dim
      *            The dimension object to be filled by the width and height of the loaded animated GIF
      * @return The loaded animated GIF
      * @throws Exception
      */
-    public static Image loadDittoAnimatedGif(final URL url, Dimension dim)
+    public static Image loadDittoAnimatedGif(final byte[] imageBytes, final URL url, Dimension dim)
     {
-        final Image dimImage = new ImageIcon(url).getImage();
+        final Image dimImage = new ImageIcon(imageBytes).getImage();
 
         Image image = null;
         try
         {
             ImageReader gifReader = ImageIO.getImageReadersByFormatName(GIF_EXTENSION).next();
-            InputStream imageStream = url.openStream();
+            InputStream imageStream = new ByteArrayInputStream(imageBytes);
             gifReader.setInput(ImageIO.createImageInputStream(imageStream));
             IIOMetadata imageMetaData = gifReader.getImageMetadata(0);
             String metaFormatName = imageMetaData.getNativeMetadataFormatName();
@@ -143,7 +146,7 @@ public class AnimatedGifUtil
         {
             // If anything goes wrong, just load it normally
             logger.error("Error loading animated GIF (ditto) from " + url, e);
-            image = new ImageIcon(url).getImage();
+            image = new ImageIcon(imageBytes).getImage();
             dim.setSize(image.getWidth(null), image.getHeight(null));
         }
 
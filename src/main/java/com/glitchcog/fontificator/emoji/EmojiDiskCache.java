@@ -0,0 +1,674 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the emoji images downloaded from the emote and badge CDNs on disk, so restarting shows emoji right away and
+ * works without a connection. Each image is stored under a hash of its URL in the .fontificator directory of the user's
+ * home directory, next to a small properties file holding the URL and the ETag and Last-Modified headers it was served
+ * with. A cached image is returned straight from disk, and the first time it's read each run it is revalidated in the
+ * background with a conditional request, replacing it on disk if the CDN has a newer one. The least recently read
+ * images are deleted once the cache grows past its size limit. Images that aren't from http or https URLs are read as
+ * they are, without being cached. Downloads of the same image, whether to load, prefetch or revalidate it, are done one
+ * at a time, and each writes its own temporary file before renaming it into place, so they can't interleave into a
+ * corrupt image. Nothing touches the disk until the cache is first used: the temporary files left behind by a run that
+ * quit mid-write are deleted then, and the directory is only created when the first image is written to it.
+ *
+ * @author Matt Yanos
+ */
+public class EmojiDiskCache
+{
+    private static final Logger logger = Logger.getLogger(EmojiDiskCache.class);
+
+    private static final File DEFAULT_DIRECTORY = new File(new File(System.getProperty("user.home"), ".fontificator"), "emoji");
+
+    /**
+     * The most bytes of images kept on disk before the least recently read are deleted
+     */
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * How far under the size limit the cache is trimmed to once it's over, so it isn't trimmed again on every download
+     */
+    private static final double TRIM_RATIO = 0.9;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final int READ_TIMEOUT_MILLIS = 20000;
+
+    private static final String IMAGE_EXTENSION = ".img";
+
+    private static final String META_EXTENSION = ".meta";
+
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * The number of locks the downloads are spread across by the hash of their URL
+     */
+    private static final int DOWNLOAD_LOCK_COUNT = 64;
+
+    private static final String KEY_URL = "url";
+
+    private static final String KEY_ETAG = "etag";
+
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+
+    private static final EmojiDiskCache instance = new EmojiDiskCache(DEFAULT_DIRECTORY, DEFAULT_MAX_BYTES);
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    /**
+     * Whether the directory has been cleared of temporary files left behind by a previous run, guarded by this object
+     */
+    private boolean started;
+
+    /**
+     * Whether the directory is known to exist, guarded by this object
+     */
+    private boolean directoryCreated;
+
+    /**
+     * Whether the directory couldn't be created, after which images are just downloaded every time
+     */
+    private volatile boolean unavailable;
+
+    /**
+     * Revalidates cached images one at a time, so the CDN isn't flooded with requests for images that are already shown
+     */
+    private final ExecutorService revalidator;
+
+    /**
+     * The hashes of the images already downloaded or revalidated this run
+     */
+    private final Set<String> fresh;
+
+    /**
+     * Held while downloading an image, chosen by the hash of its URL, so the same image is only downloaded by one
+     * thread at a time
+     */
+    private final Object[] downloadLocks;
+
+    /**
+     * The total size of the images on disk, or -1 until the directory has been scanned, guarded by this object
+     */
+    private long totalBytes;
+
+    private boolean writeFailureReported;
+
+    public static EmojiDiskCache getInstance()
+    {
+        return instance;
+    }
+
+    public EmojiDiskCache(File directory, long maxBytes)
+    {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.fresh = Collections.synchronizedSet(new HashSet<String>());
+        this.totalBytes = -1L;
+        this.downloadLocks = new Object[DOWNLOAD_LOCK_COUNT];
+        for (int i = 0; i < downloadLocks.length; i++)
+        {
+            downloadLocks[i] = new Object();
+        }
+        this.revalidator = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Emoji Cache Revalidator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Get the bytes of the image at the specified URL, from disk if it has been cached, or else downloaded and cached.
+     * This blocks for the download if there is one, so it must not be called on the paint thread.
+     *
+     * @param url
+     * @return the image file bytes
+     * @throws IOException
+     *             if the image isn't cached and can't be downloaded
+     * @throws InterruptedIOException
+     *             if the calling thread is interrupted before the image could be read from disk or downloaded
+     */
+    public byte[] read(final URL url) throws IOException
+    {
+        if (unavailable || !isCacheable(url))
+        {
+            return readFully(url.openStream());
+        }
+
+        start();
+
+        final String key = hash(url);
+        final File imageFile = new File(directory, key + IMAGE_EXTENSION);
+        byte[] bytes = readFile(imageFile);
+        if (bytes != null)
+        {
+            // The modified time of the image file is when it was last read, for the least recently read to go first
+            imageFile.setLastModified(System.currentTimeMillis());
+            if (fresh.add(key))
+            {
+                revalidator.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            synchronized (getDownloadLock(key))
+                            {
+                                download(url, key, true);
+                            }
+                        }
+                        catch (IOException e)
+                        {
+                            logger.debug("Unable to revalidate cached emoji " + url + ": " + e.getMessage());
+                        }
+                    }
+                });
+            }
+            return bytes;
+        }
+
+        synchronized (getDownloadLock(key))
+        {
+            // Another thread may have downloaded it while this one waited
+            bytes = readFile(imageFile);
+            if (bytes != null)
+            {
+                return bytes;
+            }
+            // Reading the file fails on an interrupted thread, which shouldn't go on to download it instead
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedIOException("Interrupted before reading " + url);
+            }
+            fresh.add(key);
+            return download(url, key, false);
+        }
+    }
+
+    /**
+     * Delete the cached image at the specified URL, because it turned out not to be a readable image, so it's
+     * downloaded again the next time it's read instead of being revalidated as current forever
+     *
+     * @param url
+     */
+    public void evict(URL url)
+    {
+        if (unavailable || !isCacheable(url))
+        {
+            return;
+        }
+
+        final String key = hash(url);
+        synchronized (getDownloadLock(key))
+        {
+            final File imageFile = new File(directory, key + IMAGE_EXTENSION);
+            final long length = imageFile.length();
+            if (imageFile.delete())
+            {
+                synchronized (this)
+                {
+                    if (totalBytes >= 0L)
+                    {
+                        totalBytes -= length;
+                    }
+                }
+            }
+            new File(directory, key + META_EXTENSION).delete();
+            fresh.remove(key);
+        }
+        logger.debug("Evicted unreadable cached emoji " + url);
+    }
+
+    /**
+     * Delete the temporary files left behind by a previous run that quit while writing them, the first time the cache
+     * is used. Every write comes through here first, so none of this run's temporary files can be deleted.
+     */
+    private synchronized void start()
+    {
+        if (started)
+        {
+            return;
+        }
+        started = true;
+
+        File[] tempFiles = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(TEMP_EXTENSION);
+            }
+        });
+        if (tempFiles != null)
+        {
+            for (File f : tempFiles)
+            {
+                f.delete();
+            }
+            if (tempFiles.length > 0)
+            {
+                logger.debug("Deleted " + tempFiles.length + " stale temporary files from the emoji cache");
+            }
+        }
+    }
+
+    /**
+     * Create the directory, if it hasn't been already, the first time an image is written to it
+     *
+     * @return whether the directory exists
+     */
+    private synchronized boolean createDirectory()
+    {
+        start();
+        if (!directoryCreated && !unavailable)
+        {
+            directoryCreated = directory.isDirectory() || directory.mkdirs();
+            if (!directoryCreated)
+            {
+                unavailable = true;
+                logger.warn("Unable to create the emoji cache directory " + directory.getAbsolutePath() + ", so emoji will be downloaded every time");
+            }
+        }
+        return directoryCreated;
+    }
+
+    private Object getDownloadLock(String key)
+    {
+        return downloadLocks[(key.hashCode() & Integer.MAX_VALUE) % downloadLocks.length];
+    }
+
+    /**
+     * Download the image at the specified URL and store it on disk
+     *
+     * @param url
+     * @param key
+     *            The hash of the URL
+     * @param conditional
+     *            Whether to only download the image if it has changed since it was cached
+     * @return the image file bytes, or null if a conditional request found the cached image to be current
+     * @throws IOException
+     */
+    private byte[] download(URL url, String key, boolean conditional) throws IOException
+    {
+        final File metaFile = new File(directory, key + META_EXTENSION);
+        URLConnection conn = url.openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+        if (conditional)
+        {
+            Properties meta = readMeta(metaFile);
+            if (meta.getProperty(KEY_ETAG) != null)
+            {
+                conn.setRequestProperty("If-None-Match", meta.getProperty(KEY_ETAG));
+            }
+            if (meta.getProperty(KEY_LAST_MODIFIED) != null)
+            {
+                conn.setRequestProperty("If-Modified-Since", meta.getProperty(KEY_LAST_MODIFIED));
+            }
+        }
+
+        if (conn instanceof HttpURLConnection)
+        {
+            final int status = ((HttpURLConnection) conn).getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+            {
+                return null;
+            }
+            else if (status != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("HTTP " + status + " for " + url);
+            }
+        }
+
+        final byte[] bytes = readFully(conn.getInputStream());
+
+        Properties meta = new Properties();
+        meta.setProperty(KEY_URL, url.toString());
+        if (conn.getHeaderField("ETag") != null)
+        {
+            meta.setProperty(KEY_ETAG, conn.getHeaderField("ETag"));
+        }
+        if (conn.getHeaderField("Last-Modified") != null)
+        {
+            meta.setProperty(KEY_LAST_MODIFIED, conn.getHeaderField("Last-Modified"));
+        }
+        store(key, bytes, meta);
+
+        return bytes;
+    }
+
+    /**
+     * Write the image and its metadata to disk, then trim the cache if it's grown past its limit. A failure to write
+     * only means the image will be downloaded again next time, and a failure to trim only leaves the cache over its
+     * limit, so both are logged rather than thrown.
+     *
+     * @param key
+     * @param bytes
+     * @param meta
+     */
+    private void store(String key, byte[] bytes, Properties meta)
+    {
+        if (!createDirectory())
+        {
+            return;
+        }
+
+        final File imageFile = new File(directory, key + IMAGE_EXTENSION);
+        final File metaFile = new File(directory, key + META_EXTENSION);
+        try
+        {
+            final long replacedBytes = imageFile.length();
+            writeFile(imageFile, key, bytes);
+
+            ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+            meta.store(metaBytes, null);
+            writeFile(metaFile, key, metaBytes.toByteArray());
+
+            synchronized (this)
+            {
+                if (totalBytes >= 0L)
+                {
+                    totalBytes += bytes.length - replacedBytes;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            synchronized (this)
+            {
+                if (!writeFailureReported)
+                {
+                    logger.warn("Unable to write to the emoji cache in " + directory.getAbsolutePath(), e);
+                    writeFailureReported = true;
+                }
+            }
+            return;
+        }
+
+        // The image is already stored, so failing to trim only leaves the cache over its limit until the next write
+        try
+        {
+            trim();
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Unable to trim the emoji cache in " + directory.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Delete the least recently read images until the cache is back under its size limit
+     */
+    private synchronized void trim()
+    {
+        // The directory is only listed the first time, to add up its size, and when it's actually over the limit
+        if (totalBytes >= 0L && totalBytes <= maxBytes)
+        {
+            return;
+        }
+
+        File[] imageFiles = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(IMAGE_EXTENSION);
+            }
+        });
+        if (imageFiles == null)
+        {
+            return;
+        }
+
+        // Snapshot when each image was last read, since reads touch the files and evictions delete them while this
+        // sorts, and a sort whose keys change under it can throw
+        CachedImage[] images = new CachedImage[imageFiles.length];
+        for (int i = 0; i < imageFiles.length; i++)
+        {
+            images[i] = new CachedImage(imageFiles[i]);
+        }
+
+        if (totalBytes < 0L)
+        {
+            totalBytes = 0L;
+            for (CachedImage image : images)
+            {
+                totalBytes += image.length;
+            }
+        }
+
+        if (totalBytes <= maxBytes)
+        {
+            return;
+        }
+
+        Arrays.sort(images, new Comparator<CachedImage>()
+        {
+            @Override
+            public int compare(CachedImage a, CachedImage b)
+            {
+                return a.lastRead < b.lastRead ? -1 : (a.lastRead == b.lastRead ? 0 : 1);
+            }
+        });
+
+        final long target = (long) (maxBytes * TRIM_RATIO);
+        for (int i = 0; i < images.length && totalBytes > target; i++)
+        {
+            final String name = images[i].file.getName();
+            if (images[i].file.delete())
+            {
+                totalBytes -= images[i].length;
+                new File(directory, name.substring(0, name.length() - IMAGE_EXTENSION.length()) + META_EXTENSION).delete();
+            }
+        }
+        logger.debug("Trimmed the emoji cache to " + totalBytes + " bytes");
+    }
+
+    private static boolean isCacheable(URL url)
+    {
+        return "http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol());
+    }
+
+    /**
+     * Get the name an image is stored under, the hex SHA-1 hash of its URL
+     *
+     * @param url
+     * @return hash
+     */
+    private static String hash(URL url)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // Every Java platform is required to support UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read the whole of a cached file in one go through its channel
+     *
+     * @param file
+     * @return bytes, or null if the file isn't there or can't be read
+     */
+    private static byte[] readFile(File file)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            FileInputStream in = new FileInputStream(file);
+            try
+            {
+                FileChannel channel = in.getChannel();
+                final byte[] bytes = new byte[(int) channel.size()];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                {
+                    // Keep reading until the buffer is full
+                }
+                return buffer.hasRemaining() ? null : bytes;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to read cached emoji " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a file by way of a temporary file of its own, so a file that's only partly written is never read as a
+     * cached image
+     *
+     * @param file
+     * @param key
+     *            The hash of the URL, to name the temporary file after
+     * @param bytes
+     * @throws IOException
+     */
+    private static void writeFile(File file, String key, byte[] bytes) throws IOException
+    {
+        final File temp = File.createTempFile(key, TEMP_EXTENSION, file.getParentFile());
+        FileOutputStream out = new FileOutputStream(temp);
+        try
+        {
+            out.write(bytes);
+        }
+        catch (IOException e)
+        {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        finally
+        {
+            out.close();
+        }
+
+        // Renaming onto an existing file fails on some platforms
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+        {
+            temp.delete();
+            throw new IOException("Unable to replace " + file.getName());
+        }
+    }
+
+    private static Properties readMeta(File metaFile)
+    {
+        Properties meta = new Properties();
+        try
+        {
+            FileInputStream in = new FileInputStream(metaFile);
+            try
+            {
+                meta.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // Without the metadata, the revalidation just downloads the whole image again
+        }
+        return meta;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * An image file in the cache along with its size and when it was last read, as they were when the directory was
+     * listed
+     */
+    private static class CachedImage
+    {
+        private final File file;
+
+        private final long lastRead;
+
+        private final long length;
+
+        private CachedImage(File file)
+        {
+            this.file = file;
+            this.lastRead = file.lastModified();
+            this.length = file.length();
+        }
+    }
+}
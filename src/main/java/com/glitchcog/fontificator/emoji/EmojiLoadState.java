@@ -0,0 +1,29 @@
+package com.glitchcog.fontificator.emoji;
+
+/**
+ * Where a LazyLoadEmoji is in the process of getting its image
+ * 
+ * @author Matt Yanos
+ */
+public enum EmojiLoadState
+{
+    // @formatter:off
+    UNLOADED("Not yet requested"), 
+    PENDING("Waiting on the loader"), 
+    LOADED("Image loaded"), 
+    FAILED("Unable to load image");
+    // @formatter:on
+
+    private final String description;
+
+    private EmojiLoadState(String description)
+    {
+        this.description = description;
+    }
+
+    @Override
+    public String toString()
+    {
+        return description;
+    }
+}
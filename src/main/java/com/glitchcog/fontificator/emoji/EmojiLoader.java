@@ -0,0 +1,200 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Loads emoji images in the background so the paint thread never waits on a download. Once one or more images arrive,
+ * a single repaint is requested by running the repaint target on the event dispatch thread.
+ *
+ * @author Matt Yanos
+ */
+public class EmojiLoader
+{
+    private static final Logger logger = Logger.getLogger(EmojiLoader.class);
+
+    /**
+     * The number of emoji images that can be downloaded at once by the default executor
+     */
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * The number of emoji images that can be waiting to be downloaded by the default executor. Any requests beyond this
+     * are dropped and the emoji is put back to unloaded so it is requested again the next time it's drawn.
+     */
+    private static final int QUEUE_SIZE = 512;
+
+    /**
+     * How long to wait after a failed load before requesting the image again, in milliseconds
+     */
+    private static final long DEFAULT_RETRY_DELAY = 60000L;
+
+    private final Executor executor;
+
+    /**
+     * Run on the event dispatch thread to repaint whatever shows the emoji when images arrive
+     */
+    private final Runnable repaintTarget;
+
+    private final long retryDelay;
+
+    /**
+     * Whether a repaint has already been requested for images that have arrived, so a burst of loads results in just
+     * one repaint
+     */
+    private final AtomicBoolean repaintScheduled;
+
+    /**
+     * The number of emoji images being loaded or waiting to be loaded
+     */
+    private final AtomicInteger inFlight;
+
+    /**
+     * Construct a loader that downloads on a small pool of daemon threads
+     *
+     * @param repaintTarget
+     *            What to run on the event dispatch thread to repaint whatever shows the emoji whenever emoji images
+     *            finish loading
+     */
+    public EmojiLoader(Runnable repaintTarget)
+    {
+        this(createDefaultExecutor(), repaintTarget, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * Construct a loader that loads on the specified executor
+     *
+     * @param executor
+     *            Runs the loads, which block for the duration of the download. If it rejects a load, the emoji is put
+     *            back to unloaded.
+     * @param repaintTarget
+     *            What to run on the event dispatch thread to repaint whatever shows the emoji whenever emoji images
+     *            finish loading, or null to not repaint anything
+     * @param retryDelay
+     *            How long to wait after a failed load before requesting the image again, in milliseconds
+     */
+    public EmojiLoader(Executor executor, Runnable repaintTarget, long retryDelay)
+    {
+        this.executor = executor;
+        this.repaintTarget = repaintTarget;
+        this.retryDelay = retryDelay;
+        this.repaintScheduled = new AtomicBoolean(false);
+        this.inFlight = new AtomicInteger();
+    }
+
+    private static ThreadPoolExecutor createDefaultExecutor()
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Emoji Loader " + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queue up the specified emoji to have its image loaded in the background
+     *
+     * @param emoji
+     */
+    void request(LazyLoadEmoji emoji)
+    {
+        inFlight.incrementAndGet();
+        try
+        {
+            executor.execute(new LoadTask(emoji));
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.decrementAndGet();
+            emoji.resetLoadState();
+        }
+    }
+
+    /**
+     * Get how long to wait after a failed load before requesting the image again
+     *
+     * @return retry delay in milliseconds
+     */
+    long getRetryDelay()
+    {
+        return retryDelay;
+    }
+
+    /**
+     * Get the number of emoji images currently being loaded or waiting to be loaded
+     *
+     * @return count
+     */
+    public int getInFlightCount()
+    {
+        return inFlight.get();
+    }
+
+    private void imageArrived()
+    {
+        if (repaintTarget != null && repaintScheduled.compareAndSet(false, true))
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    repaintScheduled.set(false);
+                    repaintTarget.run();
+                }
+            });
+        }
+    }
+
+    private class LoadTask implements Runnable
+    {
+        private final LazyLoadEmoji emoji;
+
+        private LoadTask(LazyLoadEmoji emoji)
+        {
+            this.emoji = emoji;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                if (emoji.load())
+                {
+                    logger.trace("Loaded emoji " + emoji.getUrl());
+                    imageArrived();
+                }
+                else if (emoji.isImageLoaded(false))
+                {
+                    // The animated GIF image failed, but the still image it falls back on is there to be drawn
+                    imageArrived();
+                }
+            }
+            finally
+            {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
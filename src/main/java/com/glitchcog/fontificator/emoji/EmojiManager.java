@@ -2,8 +2,11 @@ package com.glitchcog.fontificator.emoji;
 
 import java.net.MalformedURLException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
@@ -47,6 +50,11 @@ public class EmojiManager
         }
     };
 
+    /**
+     * The most words remembered for each set of emoji types before the least recently looked up are forgotten
+     */
+    private static final int WORD_MEMO_CAPACITY = 4096;
+
     /**
      * Holds all the pre-loaded emoji. This is where any pre-loadable emoji go. Basically, it holds anything other than
      * the Twitch emoji, because Twitch's emoji API is stupid and wrong.
@@ -55,27 +63,66 @@ public class EmojiManager
 
     /**
      * V1 Twitch emotes loaded whenever a loaded on the fly via the emote ID on the IRC post tags' emote ID. These
-     * aren't ever lazy loaded because they are only loaded on the fly when used.
+     * aren't ever lazy loaded because they are only loaded on the fly when used. Messages are parsed on more than one
+     * thread, so this is concurrent.
      */
-    private Map<String, LazyLoadEmoji> emojiById;
+    private ConcurrentMap<String, LazyLoadEmoji> emojiById;
 
     /**
      * Map keyed off of FrankerFaceZ badge IDs that returns a set of users that have that badge
      */
-    private Map<Integer, Set<String>> ffzBadgeUsers;
+    private volatile Map<Integer, Set<String>> ffzBadgeUsers;
 
     /**
-     * Construct an emoji manager object, instantiates the map of maps keyed off of all the possible emoji types
+     * The emoji, or lack of one, already found for words of manual messages and of posts from chat. Chat says the same
+     * words and emotes over and over, so this saves walking every type of emoji for each of them.
+     */
+    private final WordMemo manualWordMemo;
+
+    private final WordMemo thirdPartyWordMemo;
+
+    /**
+     * Loads the images of the emoji drawn with this manager in the background, or null if they are never loaded lazily
+     */
+    private final EmojiLoader loader;
+
+    /**
+     * Construct an emoji manager object without a background loader, so emoji images are only ever loaded by caching
+     * them ahead of time
      */
     public EmojiManager()
     {
+        this(null);
+    }
+
+    /**
+     * Construct an emoji manager object, instantiates the map of maps keyed off of all the possible emoji types
+     * 
+     * @param loader
+     *            Loads the images of emoji that are drawn before they're loaded
+     */
+    public EmojiManager(EmojiLoader loader)
+    {
+        this.loader = loader;
         ffzBadgeUsers = new HashMap<Integer, Set<String>>();
         preloadedEmoji = new HashMap<EmojiType, TypedEmojiMap>();
         for (EmojiType type : EmojiType.values())
         {
             preloadedEmoji.put(type, new TypedEmojiMap(type));
         }
-        emojiById = new HashMap<String, LazyLoadEmoji>();
+        emojiById = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        manualWordMemo = new WordMemo();
+        thirdPartyWordMemo = new WordMemo();
+    }
+
+    /**
+     * Get the loader that emoji images drawn with this manager are requested from
+     * 
+     * @return loader, or null if images aren't loaded lazily
+     */
+    public EmojiLoader getLoader()
+    {
+        return loader;
     }
 
     /**
@@ -119,6 +166,68 @@ public class EmojiManager
      * @return emoji or null if it's not found
      */
     public LazyLoadEmoji getEmoji(EmojiType[] types, String testKey, ConfigEmoji config)
+    {
+        final WordMemo memo = getWordMemo(types, config);
+        if (memo == null)
+        {
+            return findEmoji(types, testKey, config);
+        }
+
+        final long configVersion = config.getTextVersion();
+        final long emojiVersion = getModificationCount(types);
+        synchronized (memo)
+        {
+            memo.validate(config, configVersion, emojiVersion);
+            LazyLoadEmoji emoji = memo.get(testKey);
+            if (emoji != null || memo.containsKey(testKey))
+            {
+                return emoji;
+            }
+        }
+
+        LazyLoadEmoji emoji = findEmoji(types, testKey, config);
+        synchronized (memo)
+        {
+            // Don't remember what was found if the config or the emoji changed while it was being looked for
+            if (memo.isFor(config, configVersion, emojiVersion) && config.getTextVersion() == configVersion && getModificationCount(types) == emojiVersion)
+            {
+                memo.put(testKey, emoji);
+            }
+        }
+        return emoji;
+    }
+
+    /**
+     * Get the total number of emoji that have been put in the maps of the specified types. Each map's count only ever
+     * goes up, so the total only stays the same for as long as none of those maps change, and emoji put in the maps of
+     * other types, like the FrankerFaceZ replacements cached by ID, leave it alone.
+     * 
+     * @param types
+     * @return modification count
+     */
+    private long getModificationCount(EmojiType[] types)
+    {
+        long count = 0L;
+        for (EmojiType type : types)
+        {
+            TypedEmojiMap typedEmoji = preloadedEmoji.get(type);
+            if (typedEmoji != null)
+            {
+                count += typedEmoji.getModificationCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walk the maps of the specified types of emoji in order for the first emoji keyed by the specified word
+     * 
+     * @param types
+     * @param testKey
+     * @param config
+     * @return emoji or null if it's not found
+     */
+    private LazyLoadEmoji findEmoji(EmojiType[] types, String testKey, ConfigEmoji config)
     {
         LazyLoadEmoji emoji = null;
         // If config is null, then just assume we want it. Used when caching.
@@ -140,6 +249,33 @@ public class EmojiManager
         return emoji;
     }
 
+    /**
+     * Get the memo of words for the specified types of emoji, if lookups of those types are remembered
+     * 
+     * @param types
+     * @param config
+     * @return memo, or null if these lookups aren't remembered, like those without a config made while caching
+     */
+    private WordMemo getWordMemo(EmojiType[] types, ConfigEmoji config)
+    {
+        if (config == null)
+        {
+            return null;
+        }
+        else if (types == EmojiType.THIRD_PARTY_EMOJI_TYPES)
+        {
+            return thirdPartyWordMemo;
+        }
+        else if (types == EmojiType.MANUAL_EMOJI_TYPES)
+        {
+            return manualWordMemo;
+        }
+        else
+        {
+            return null;
+        }
+    }
+
     /**
      * @param emojiId
      * @param word
@@ -152,8 +288,9 @@ public class EmojiManager
         logger.trace("Loading unmapped emote from emote ID " + emojiId);
         final String emoteUrl = EmojiApiLoader.getTwitchEmoteV1Url(emojiId);
         LazyLoadEmoji emoji = new LazyLoadEmoji(word, emoteUrl, EmojiType.TWITCH_V1);
-        emojiById.put(Integer.toString(emojiId), emoji);
-        return emoji;
+        // Another message with the same emote may have been parsed at the same time, so keep whichever got here first
+        LazyLoadEmoji existing = emojiById.putIfAbsent(Integer.toString(emojiId), emoji);
+        return existing == null ? emoji : existing;
     }
 
     /**
@@ -170,26 +307,30 @@ public class EmojiManager
         if (emojiConfig != null && emojiConfig.isTwitchEnabled() && emojiConfig.isFfzEnabled() && FFZ_REPLACEMENT_EMOTE_URLS.keySet().contains(emojiId))
         {
             TypedEmojiMap tem = preloadedEmoji.get(EmojiType.FRANKERFACEZ_REPLACEMENT);
-            LazyLoadEmoji emoji = tem.getEmoji(getFfzReplacementKey(emojiId), emojiConfig);
-            if (emoji == null)
+            // Synchronized so messages parsed at the same time don't each make their own replacement emoji
+            synchronized (tem)
             {
-                try
+                LazyLoadEmoji emoji = tem.getEmoji(getFfzReplacementKey(emojiId), emojiConfig);
+                if (emoji == null)
                 {
-                    logger.trace("Loading replacement FFZ emote for " + word);
-                    emoji = new LazyLoadEmoji(word, FFZ_REPLACEMENT_EMOTE_URLS.get(emojiId), EmojiType.FRANKERFACEZ_REPLACEMENT);
-                    tem.put(getFfzReplacementKey(emojiId), emoji);
-                    return emoji;
+                    try
+                    {
+                        logger.trace("Loading replacement FFZ emote for " + word);
+                        emoji = new LazyLoadEmoji(word, FFZ_REPLACEMENT_EMOTE_URLS.get(emojiId), EmojiType.FRANKERFACEZ_REPLACEMENT);
+                        tem.put(getFfzReplacementKey(emojiId), emoji);
+                        return emoji;
+                    }
+                    catch (MalformedURLException e)
+                    {
+                        logger.error(e.toString(), e);
+                        return emojiById.get(Integer.toString(emojiId));
+                    }
                 }
-                catch (MalformedURLException e)
+                else
                 {
-                    logger.error(e.toString(), e);
-                    return emojiById.get(Integer.toString(emojiId));
+                    return emoji;
                 }
             }
-            else
-            {
-                return emoji;
-            }
         }
         else if (emojiConfig != null && emojiConfig.isTwitchEnabled())
         {
@@ -215,4 +356,50 @@ public class EmojiManager
     {
         return ffzBadgeUsers;
     }
+
+    /**
+     * The emoji found for the most recently looked up words, with null for words that aren't emoji, that is only good
+     * for as long as neither the emoji config's text version nor the maps of the types it was looked up in change.
+     * Access must be synchronized on the memo.
+     */
+    private static class WordMemo extends LinkedHashMap<String, LazyLoadEmoji>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private ConfigEmoji config;
+
+        private long configVersion;
+
+        private long emojiVersion;
+
+        private WordMemo()
+        {
+            super(WORD_MEMO_CAPACITY * 4 / 3 + 1, 0.75f, true);
+        }
+
+        /**
+         * Forget every word if the memo isn't for the specified config and emoji versions, and make it for them
+         */
+        private void validate(ConfigEmoji config, long configVersion, long emojiVersion)
+        {
+            if (!isFor(config, configVersion, emojiVersion))
+            {
+                clear();
+                this.config = config;
+                this.configVersion = configVersion;
+                this.emojiVersion = emojiVersion;
+            }
+        }
+
+        private boolean isFor(ConfigEmoji config, long configVersion, long emojiVersion)
+        {
+            return this.config == config && this.configVersion == configVersion && this.emojiVersion == emojiVersion;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LazyLoadEmoji> eldest)
+        {
+            return size() > WORD_MEMO_CAPACITY;
+        }
+    }
 }
@@ -0,0 +1,299 @@
+package com.glitchcog.fontificator.emoji;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Matches words against the regular expression keys of a TypedEmojiMap without compiling any expressions per word. The
+ * expressions are indexed by the literal character each must start with, if there is one, so a word is only ever tested
+ * against the expressions that could possibly match it, plus those that could start with anything. Each bucket of more
+ * than one expression is also merged into a single alternation, so a word that matches none of them, which is nearly
+ * every word, is turned away by one match attempt instead of one per expression. This is an immutable snapshot of the
+ * expressions it was built with, so it can be read from any thread.
+ *
+ * @author Matt Yanos
+ */
+class EmojiRegexMatcher
+{
+    private static final Logger logger = Logger.getLogger(EmojiRegexMatcher.class);
+
+    /**
+     * The characters that mean something in a regular expression, so a regular expression starting with one of them has
+     * no literal first character unless it's escaped
+     */
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    /**
+     * The characters that, following the first literal character, make it optional
+     */
+    private static final String OPTIONAL_QUANTIFIERS = "?*{";
+
+    /**
+     * Finds backreferences, which can't be merged into an alternation because the group numbers shift
+     */
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\[1-9k]");
+
+    /**
+     * Buckets of expressions keyed off of the literal first character a word must have for them to match
+     */
+    private final Map<Character, Bucket> indexed;
+
+    /**
+     * The expressions that could match a word starting with any character
+     */
+    private final Bucket unindexed;
+
+    /**
+     * Build a matcher for the specified compiled expressions, which are tried in the order they're specified
+     *
+     * @param patterns
+     *            The compiled expression for each emoji
+     */
+    EmojiRegexMatcher(Map<Pattern, LazyLoadEmoji> patterns)
+    {
+        Map<Character, List<Entry>> byFirst = new HashMap<Character, List<Entry>>();
+        List<Entry> anyFirst = new ArrayList<Entry>();
+        int order = 0;
+        for (Map.Entry<Pattern, LazyLoadEmoji> pattern : patterns.entrySet())
+        {
+            Entry entry = new Entry(order++, pattern.getKey(), pattern.getValue());
+            Character first = getLiteralFirstCharacter(pattern.getKey());
+            if (first == null)
+            {
+                anyFirst.add(entry);
+            }
+            else
+            {
+                List<Entry> bucket = byFirst.get(first);
+                if (bucket == null)
+                {
+                    bucket = new ArrayList<Entry>();
+                    byFirst.put(first, bucket);
+                }
+                bucket.add(entry);
+            }
+        }
+
+        this.indexed = new HashMap<Character, Bucket>(byFirst.size() * 2);
+        for (Map.Entry<Character, List<Entry>> bucket : byFirst.entrySet())
+        {
+            indexed.put(bucket.getKey(), new Bucket(bucket.getValue()));
+        }
+        this.unindexed = new Bucket(anyFirst);
+    }
+
+    /**
+     * Compile a regular expression key. A key that isn't a valid regular expression is matched as plain text rather
+     * than failing every lookup.
+     *
+     * @param regex
+     * @return pattern
+     */
+    static Pattern compile(String regex)
+    {
+        try
+        {
+            return Pattern.compile(regex);
+        }
+        catch (PatternSyntaxException e)
+        {
+            logger.warn("Emoji key \"" + regex + "\" is not a valid regular expression, so it will only match itself");
+            return Pattern.compile(Pattern.quote(regex));
+        }
+    }
+
+    /**
+     * Get the emoji whose expression matches the whole of the specified word, picking the first one in the order the
+     * expressions were specified if there are several
+     *
+     * @param word
+     * @return emoji or null if none match
+     */
+    LazyLoadEmoji match(String word)
+    {
+        Bucket bucket = word.isEmpty() ? null : indexed.get(word.charAt(0));
+        Entry candidate = bucket == null ? null : bucket.match(word);
+        Entry anyCandidate = unindexed.match(word);
+        if (candidate == null || anyCandidate != null && anyCandidate.order < candidate.order)
+        {
+            candidate = anyCandidate;
+        }
+        return candidate == null ? null : candidate.emoji;
+    }
+
+    /**
+     * Get the literal character every match of the specified expression must start with
+     *
+     * @param pattern
+     * @return the first character, or null if it can't be known without matching
+     */
+    private static Character getLiteralFirstCharacter(Pattern pattern)
+    {
+        final String regex = pattern.pattern();
+        if (pattern.flags() != 0 || regex.isEmpty() || hasTopLevelAlternation(regex))
+        {
+            return null;
+        }
+
+        int next;
+        char first = regex.charAt(0);
+        if (first == '\\')
+        {
+            // Only an escaped symbol is a literal; escaped letters and digits are classes like \d or quotes like \Q
+            if (regex.length() < 2 || Character.isLetterOrDigit(regex.charAt(1)))
+            {
+                return null;
+            }
+            first = regex.charAt(1);
+            next = 2;
+        }
+        else if (META_CHARACTERS.indexOf(first) >= 0)
+        {
+            return null;
+        }
+        else
+        {
+            next = 1;
+        }
+
+        if (next < regex.length() && OPTIONAL_QUANTIFIERS.indexOf(regex.charAt(next)) >= 0)
+        {
+            return null;
+        }
+        return first;
+    }
+
+    /**
+     * Determine whether the specified expression has a | outside of any group or character class, which would let it
+     * start with more than one thing
+     *
+     * @param regex
+     * @return has top level alternation
+     */
+    private static boolean hasTopLevelAlternation(String regex)
+    {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++)
+        {
+            final char c = regex.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (inClass)
+            {
+                inClass = c != ']';
+            }
+            else if (c == '[')
+            {
+                inClass = true;
+            }
+            else if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+            else if (c == '|' && depth == 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An expression along with the emoji it's a key for and its place in the order the expressions are tried
+     */
+    private static class Entry
+    {
+        private final int order;
+
+        private final Pattern pattern;
+
+        private final LazyLoadEmoji emoji;
+
+        private Entry(int order, Pattern pattern, LazyLoadEmoji emoji)
+        {
+            this.order = order;
+            this.pattern = pattern;
+            this.emoji = emoji;
+        }
+    }
+
+    /**
+     * Expressions that share a first character, in order, with the alternation of all of them to turn away words that
+     * match none of them at once
+     */
+    private static class Bucket
+    {
+        private final Entry[] entries;
+
+        /**
+         * The alternation of all the expressions, or null if there is only one or they can't be merged
+         */
+        private final Pattern merged;
+
+        private Bucket(List<Entry> entries)
+        {
+            this.entries = entries.toArray(new Entry[entries.size()]);
+            this.merged = merge(this.entries);
+        }
+
+        private static Pattern merge(Entry[] entries)
+        {
+            if (entries.length < 2)
+            {
+                return null;
+            }
+
+            StringBuilder alternation = new StringBuilder();
+            for (Entry entry : entries)
+            {
+                if (BACKREFERENCE.matcher(entry.pattern.pattern()).find())
+                {
+                    return null;
+                }
+                if (alternation.length() > 0)
+                {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(entry.pattern.pattern()).append(')');
+            }
+
+            try
+            {
+                return Pattern.compile(alternation.toString());
+            }
+            catch (PatternSyntaxException e)
+            {
+                return null;
+            }
+        }
+
+        private Entry match(String word)
+        {
+            if (merged != null && !merged.matcher(word).matches())
+            {
+                return null;
+            }
+            for (Entry entry : entries)
+            {
+                if (entry.pattern.matcher(word).matches())
+                {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -4,7 +4,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -39,9 +39,16 @@ public class LazyLoadEmoji
 
     private final EmojiType type;
 
-    private Image image;
+    private volatile Image image;
 
-    private Image animatedGifImage;
+    private volatile Image animatedGifImage;
+
+    private volatile EmojiLoadState loadState;
+
+    /**
+     * When the last attempt to load the image failed
+     */
+    private long failedTime;
 
     private URL url;
 
@@ -49,9 +56,9 @@ public class LazyLoadEmoji
 
     private String state;
 
-    private int width;
+    private volatile int width;
 
-    private int height;
+    private volatile int height;
 
     private boolean animated;
 
@@ -96,78 +103,201 @@ public class LazyLoadEmoji
         this.height = height;
         this.firstLoadFailureReported = false;
         this.bgColor = bgColor;
+        this.loadState = EmojiLoadState.UNLOADED;
     }
 
+    /**
+     * Load the image right away on the calling thread, blocking until it is loaded. An image that is already loaded, or
+     * is already being loaded by the background loader or another thread, is left alone.
+     */
     public void cacheImage()
     {
-        getImage(isAnimatedGif());
+        synchronized (this)
+        {
+            if (loadState == EmojiLoadState.LOADED || loadState == EmojiLoadState.PENDING)
+            {
+                return;
+            }
+            loadState = EmojiLoadState.PENDING;
+        }
+        load();
+    }
+
+    /**
+     * Lazy-loaded image. This never blocks: if the image isn't loaded yet, it is requested from the specified
+     * EmojiLoader and null is returned until it arrives, so the caller should fall back on the emoji loading display
+     * strategy.
+     * 
+     * @param animated
+     * @param loader
+     *            Where to request the image if it isn't loaded yet, or null to only return it if it already is
+     * @return image, or null if it isn't loaded yet
+     */
+    public Image getImage(boolean animated, EmojiLoader loader)
+    {
+        if (loadState != EmojiLoadState.LOADED && loader != null)
+        {
+            requestLoad(loader);
+        }
+
+        // Return the animated GIF image only if animated is requested AND this emoji is an animated GIF, falling back
+        // on the still image while the animated GIF image has failed to load and is waiting to be retried
+        final Image animatedImage = animatedGifImage;
+        return animated && animatedGif && animatedImage != null ? animatedImage : image;
+    }
+
+    /**
+     * Hand this emoji off to the specified EmojiLoader if it hasn't been requested yet, or if it failed long enough ago
+     * to be worth another try
+     * 
+     * @param loader
+     */
+    private synchronized void requestLoad(EmojiLoader loader)
+    {
+        final boolean retry = loadState == EmojiLoadState.FAILED && System.currentTimeMillis() - failedTime > loader.getRetryDelay();
+        if (loadState == EmojiLoadState.UNLOADED || retry)
+        {
+            loadState = EmojiLoadState.PENDING;
+            loader.request(this);
+        }
+    }
+
+    /**
+     * Put the emoji back to unloaded, so it will be requested again the next time its image is needed. Used when the
+     * EmojiLoader is too backed up to take the request.
+     */
+    synchronized void resetLoadState()
+    {
+        if (loadState == EmojiLoadState.PENDING)
+        {
+            loadState = EmojiLoadState.UNLOADED;
+        }
     }
 
     /**
-     * Lazy-loaded image
+     * Read the image, and the animated GIF image if this emoji is an animated GIF, from the EmojiDiskCache, which
+     * downloads it from the URL if it isn't on disk yet. This blocks for the duration of the download, so it is meant
+     * to be called by the EmojiLoader or the emoji cache worker, never on the paint thread. If the calling thread is
+     * interrupted, the emoji is put back to unloaded instead of failed.
      * 
-     * @return image
+     * @return whether the image was loaded, including the animated GIF image if this emoji is an animated GIF
      */
-    public Image getImage(boolean animated)
+    boolean load()
     {
-        // Lazy load the still image whether or not the emoji is animated
-        if (image == null)
+        try
         {
-            try
+            byte[] imageBytes = null;
+
+            // Load the still image whether or not the emoji is animated
+            if (image == null)
             {
-                BufferedImage imageFromTwitch = ImageIO.read(url);
+                imageBytes = EmojiDiskCache.getInstance().read(url);
+                BufferedImage imageFromTwitch = ImageIO.read(new ByteArrayInputStream(imageBytes));
 
                 // Hack to make image background transparent because Twitch emote V1 of sizes 2.0 and 3.0 sometimes are
                 // not of the correct type for transparency. Kappa (ID 25) is an example of a non transparent emoji in
                 // sizes 2.0 and 3.0. Seriously. Download a Kappa size 2.0 image from the V1 URL and open it in an
                 // editor. The background is solid, but when Twitch displays it in their chat, it displays transparent.
-                if (EmojiOpacityHandler.isCandidateForModification(type, imageFromTwitch.getType(), identifier))
+                Image loadedImage;
+                if (imageFromTwitch == null)
                 {
-                    image = EmojiOpacityHandler.fixOpaqueEmote(identifier, imageFromTwitch);
+                    // Don't keep bytes that aren't an image on disk, or they'd be revalidated as current every time
+                    EmojiDiskCache.getInstance().evict(url);
+                    loadedImage = null;
+                }
+                else if (EmojiOpacityHandler.isCandidateForModification(type, imageFromTwitch.getType(), identifier))
+                {
+                    loadedImage = EmojiOpacityHandler.fixOpaqueEmote(identifier, imageFromTwitch);
                 }
                 // No hack required
                 else
                 {
-                    image = imageFromTwitch;
+                    loadedImage = imageFromTwitch;
                 }
 
-                if (image != null)
+                if (loadedImage != null)
                 {
-                    this.width = this.image.getWidth(null);
-                    this.height = this.image.getHeight(null);
+                    this.width = loadedImage.getWidth(null);
+                    this.height = loadedImage.getHeight(null);
                 }
-
+                image = loadedImage;
             }
-            catch (IOException e)
+
+            // Only load the animated GIF image if the image is an animatedGif type
+            if (animatedGif && animatedGifImage == null)
             {
-                if (!firstLoadFailureReported)
+                if (imageBytes == null)
                 {
-                    logger.error("Unable to load emoji: " + url, e);
-                    firstLoadFailureReported = true;
-                    image = null;
+                    imageBytes = EmojiDiskCache.getInstance().read(url);
+                }
+
+                // BTTV emote (ditto) gets special care
+                if ("(ditto)".equals(identifier))
+                {
+                    Dimension dim = new Dimension();
+                    Image dittoImage = AnimatedGifUtil.loadDittoAnimatedGif(imageBytes, url, dim);
+                    this.width = (int) dim.getWidth();
+                    this.height = (int) dim.getHeight();
+                    animatedGifImage = dittoImage;
+                }
+                else
+                {
+                    animatedGifImage = AnimatedGifUtil.loadAnimatedGif(imageBytes);
                 }
             }
         }
+        catch (Exception e)
+        {
+            if (!firstLoadFailureReported && !Thread.currentThread().isInterrupted())
+            {
+                logger.error("Unable to load emoji: " + url, e);
+                firstLoadFailureReported = true;
+            }
+        }
 
-        // Only lazy load the animated GIF image if the image is an animatedGif type
-        if (animatedGif && animatedGifImage == null)
+        // An animated GIF that didn't load counts as a failure even if the still image did, so the animated GIF image
+        // is tried again after the retry delay, and only it, since the still image is kept
+        final boolean loaded = image != null && (!animatedGif || animatedGifImage != null);
+        synchronized (this)
         {
-            // BTTV emote (ditto) gets special care
-            if ("(ditto)".equals(identifier))
+            if (loaded)
+            {
+                loadState = EmojiLoadState.LOADED;
+            }
+            else if (Thread.currentThread().isInterrupted())
             {
-                Dimension dim = new Dimension();
-                animatedGifImage = AnimatedGifUtil.loadDittoAnimatedGif(url, dim);
-                this.width = (int) dim.getWidth();
-                this.height = (int) dim.getHeight();
+                // Stopped rather than failed, like when caching is canceled, so it can be requested again right away
+                loadState = EmojiLoadState.UNLOADED;
             }
             else
             {
-                animatedGifImage = AnimatedGifUtil.loadAnimatedGif(url);
+                loadState = EmojiLoadState.FAILED;
+                failedTime = System.currentTimeMillis();
             }
         }
+        return loaded;
+    }
 
-        // Return the animated GIF image only if animated is requested AND this emoji is an animated GIF
-        return animated && animatedGif ? animatedGifImage : image;
+    /**
+     * Get where this emoji is in the process of loading its image
+     * 
+     * @return loadState
+     */
+    public EmojiLoadState getLoadState()
+    {
+        return loadState;
+    }
+
+    /**
+     * Whether the image that getImage would return for the specified animation setting has already been loaded, without
+     * attempting to load it
+     * 
+     * @param animated
+     * @return loaded
+     */
+    public boolean isImageLoaded(boolean animated)
+    {
+        return (animated && animatedGif ? animatedGifImage : image) != null;
     }
 
     public boolean isSubscriber()
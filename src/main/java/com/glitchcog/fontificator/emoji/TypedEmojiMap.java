@@ -1,10 +1,13 @@
 package com.glitchcog.fontificator.emoji;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import com.glitchcog.fontificator.config.ConfigEmoji;
 
@@ -17,6 +20,10 @@ import com.glitchcog.fontificator.config.ConfigEmoji;
  * This separation is to permit the speedier access of emoji keyed off of words before checking through all the regular
  * expression keys, which takes longer because each key must be accessed and compared as a regular expression.<br />
  * <br />
+ * Each regular expression key is compiled once when it's put in the map, and the compiled keys are indexed into an
+ * EmojiRegexMatcher the first time a word is looked up after any regular expression keys are added, so loading a type
+ * of emoji only rebuilds the matcher for that type.<br />
+ * <br />
  * 
  * @author Matt Yanos
  */
@@ -24,15 +31,36 @@ public class TypedEmojiMap
 {
     private final EmojiType type;
 
+    /**
+     * Counts every emoji put in this map, so anything derived from what it holds can tell whether it is out of date
+     */
+    private final AtomicLong modifications;
+
+    /**
+     * The emoji keyed off of words and off of regular expressions. Emoji can be put in these by the emoji loading
+     * threads and by message parsing on any thread while words are being looked up, so they're concurrent.
+     */
     private Map<String, LazyLoadEmoji> normalMap;
 
     private Map<String, LazyLoadEmoji> regexMap;
 
+    /**
+     * The compiled regular expression keys, in the order they were put in the map, guarded by this object
+     */
+    private Map<String, Pattern> compiledRegexes;
+
+    /**
+     * The matcher for the current regular expression keys, or null if keys have been added since it was last built
+     */
+    private volatile EmojiRegexMatcher regexMatcher;
+
     public TypedEmojiMap(EmojiType type)
     {
         this.type = type;
-        normalMap = new HashMap<String, LazyLoadEmoji>();
-        regexMap = new HashMap<String, LazyLoadEmoji>();
+        modifications = new AtomicLong();
+        normalMap = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        regexMap = new ConcurrentHashMap<String, LazyLoadEmoji>();
+        compiledRegexes = new LinkedHashMap<String, Pattern>();
     }
 
     /**
@@ -72,18 +100,16 @@ public class TypedEmojiMap
             return null;
         }
 
+        if (testKey == null)
+        {
+            return null;
+        }
+
         LazyLoadEmoji emoji = normalMap.get(testKey);
 
         if (emoji == null)
         {
-            for (String regex : regexMap.keySet())
-            {
-                if (testKey.matches(regex))
-                {
-                    emoji = regexMap.get(regex);
-                    break;
-                }
-            }
+            emoji = getRegexMatcher().match(testKey);
         }
 
         return emoji;
@@ -94,12 +120,63 @@ public class TypedEmojiMap
         if (isRegularExpression(key))
         {
             key = fixRegularExpression(key);
-            return regexMap.put(key, value);
+            synchronized (this)
+            {
+                if (!compiledRegexes.containsKey(key))
+                {
+                    compiledRegexes.put(key, EmojiRegexMatcher.compile(key));
+                }
+                regexMatcher = null;
+                LazyLoadEmoji previous = regexMap.put(key, value);
+                modifications.incrementAndGet();
+                return previous;
+            }
         }
         else
         {
-            return normalMap.put(key, value);
+            LazyLoadEmoji previous = normalMap.put(key, value);
+            modifications.incrementAndGet();
+            return previous;
+        }
+    }
+
+    /**
+     * Get the number of emoji that have been put in this map, which changes whenever it does
+     * 
+     * @return modification count
+     */
+    public long getModificationCount()
+    {
+        return modifications.get();
+    }
+
+    /**
+     * Get the matcher for the current regular expression keys, building it if keys have been added since it was last
+     * built
+     * 
+     * @return matcher
+     */
+    private EmojiRegexMatcher getRegexMatcher()
+    {
+        EmojiRegexMatcher matcher = regexMatcher;
+        if (matcher == null)
+        {
+            synchronized (this)
+            {
+                matcher = regexMatcher;
+                if (matcher == null)
+                {
+                    Map<Pattern, LazyLoadEmoji> patterns = new LinkedHashMap<Pattern, LazyLoadEmoji>(compiledRegexes.size() * 2);
+                    for (Map.Entry<String, Pattern> compiled : compiledRegexes.entrySet())
+                    {
+                        patterns.put(compiled.getValue(), regexMap.get(compiled.getKey()));
+                    }
+                    matcher = new EmojiRegexMatcher(patterns);
+                    regexMatcher = matcher;
+                }
+            }
         }
+        return matcher;
     }
 
     public Collection<String> keySet()
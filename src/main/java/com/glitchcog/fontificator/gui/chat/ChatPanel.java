@@ -1,44 +1,41 @@
 package com.glitchcog.fontificator.gui.chat;
 
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
+import java.awt.Image;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 
 import com.glitchcog.fontificator.bot.Message;
 import com.glitchcog.fontificator.config.ConfigCensor;
 import com.glitchcog.fontificator.config.ConfigChat;
-import com.glitchcog.fontificator.config.ConfigColor;
 import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.config.ConfigFont;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.emoji.EmojiLoader;
 import com.glitchcog.fontificator.emoji.EmojiManager;
-import com.glitchcog.fontificator.gui.chat.clock.MessageExpirer;
-import com.glitchcog.fontificator.gui.chat.clock.MessageProgressor;
+import com.glitchcog.fontificator.gui.chat.clock.FrameScheduler;
+import com.glitchcog.fontificator.gui.chat.stats.FrameStats;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelDebug;
 import com.glitchcog.fontificator.gui.controls.panel.ControlPanelFont;
 import com.glitchcog.fontificator.gui.controls.panel.MessageCensorPanel;
-import com.glitchcog.fontificator.sprite.Sprite;
 import com.glitchcog.fontificator.sprite.SpriteFont;
 
 /**
- * This panel contains the entire visualization of the chat, so it handles all the drawing. It also handles scrolling
+ * This panel contains the entire visualization of the chat, drawn by its ChatRenderer. It also handles scrolling
  * through the chat.
  * 
  * @author Matt Yanos
@@ -50,39 +47,19 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     private static final long serialVersionUID = 1L;
 
     /**
-     * The cache of messages to be displayed
+     * The cache of messages to be displayed. Only addMessage and clearChat modify it, and they are synchronized, so
+     * there is a single writer at a time, while paint, the message progressor and the censor read snapshots of it
+     * without locking.
      */
-    private ConcurrentLinkedQueue<Message> messages;
+    private MessageRingBuffer messages;
 
     private MessageCensorPanel censor;
 
     /**
-     * Contains the timed task and a reference to this chat to be used to progress rolling out new messages at the
-     * appropriate speed
+     * Rolls out new messages at the appropriate speed, removes expired messages and repaints for animated emoji, all
+     * on one thread that only wakes up when something is due
      */
-    private MessageProgressor messageProgressor;
-
-    /**
-     * Contains the timed task and a reference to this chat to be used to refresh periodically in case any messages have
-     * been expired
-     */
-    private MessageExpirer messageExpirer;
-
-    /**
-     * The sprite used to draw the border around the chat, to be displayed if the border scale is greater than zero
-     */
-    private Sprite border;
-
-    /**
-     * The number of lines for all the messages in the chat buffer. This is not the number of messages, but the number
-     * of lines the messages will take up once drawn.
-     */
-    private int lineCount;
-
-    /**
-     * The number of lines that fit on the screen between the top border and bottom border.
-     */
-    private int onScreenLineCount;
+    private FrameScheduler frameScheduler;
 
     /**
      * Configuration for the font and the border
@@ -95,11 +72,6 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     private ConfigChat chatConfig;
 
-    /**
-     * Configuration for which colors to use to draw the chat
-     */
-    private ConfigColor colorConfig;
-
     /**
      * Configuration for how to draw the messages, what parts of the messages to display, the rate to display new
      * messages, the format for the timestamps, and the queue size
@@ -123,9 +95,9 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     private ControlPanelDebug debugSettings;
 
     /**
-     * The font used to draw the chat messages
+     * Renders the chat onto this panel
      */
-    private SpriteFont font;
+    private ChatRenderer renderer;
 
     /**
      * This indicates whether the configuration has been loaded. Before this is true, no call to any methods that draw
@@ -139,6 +111,28 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     private EmojiManager emojiManager;
 
+    /**
+     * Re-parses the messages in the background when the message or emoji configuration changes
+     */
+    private MessageReparser messageReparser;
+
+    /**
+     * Times the frames of the chat for JMX and the debug stats display
+     */
+    private FrameStats frameStats;
+
+    /**
+     * Where the stats display was last drawn, or null if it isn't being drawn
+     */
+    private Rectangle statsBounds;
+
+    /**
+     * Expired messages that have left the cache but still hold their text, because the next paint measures the area
+     * they vacated from their layouts. They let go of their text once that paint is done. This is only accessed on the
+     * event dispatch thread.
+     */
+    private final List<Message> expiredUnreleased;
+
     /**
      * Construct the ChatPanel, which contains the entire visualization of the chat
      * 
@@ -150,13 +144,22 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     public ChatPanel() throws IOException
     {
         loaded = false;
-        lineCount = Integer.MAX_VALUE;
-        onScreenLineCount = 0;
-        messages = new ConcurrentLinkedQueue<Message>();
+        messages = new MessageRingBuffer(ConfigMessage.MAX_QUEUE_SIZE);
+        expiredUnreleased = new ArrayList<Message>();
 
-        emojiManager = new EmojiManager();
-        messageProgressor = new MessageProgressor(this);
-        messageExpirer = new MessageExpirer(this);
+        emojiManager = new EmojiManager(new EmojiLoader(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Emoji that arrived can change the size of the messages they're in as well as how they look
+                repaintMessages();
+            }
+        }));
+        frameScheduler = new FrameScheduler(this);
+        messageReparser = new MessageReparser(this);
+        frameStats = new FrameStats(this);
+        frameStats.register();
     }
 
     /**
@@ -186,15 +189,13 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         logger.trace("Setting chat panel config via fontificator properties object");
         this.fontConfig = fProps.getFontConfig();
         this.chatConfig = fProps.getChatConfig();
-        this.colorConfig = fProps.getColorConfig();
         this.messageConfig = fProps.getMessageConfig();
         this.emojiConfig = fProps.getEmojiConfig();
         this.censorConfig = fProps.getCensorConfig();
 
-        font = new SpriteFont(fontConfig);
-        reloadFontFromConfig();
-        // This initializes the border
-        reloadBorderFromConfig();
+        // This initializes the font and the border
+        renderer = new ChatRenderer(fProps, emojiManager);
+        renderer.setImageObserver(this);
 
         // This indicates that the chat panel is ready to be drawn
         loaded = true;
@@ -225,367 +226,299 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         }
 
         Graphics2D g2d = (Graphics2D) g;
+        final Rectangle clip = g2d.getClipBounds();
 
-        if (chatConfig.isAntiAlias())
+        // A repaint of nothing but the stats display just keeps its numbers current, so it isn't counted as a frame
+        final boolean statsOnly = statsBounds != null && clip != null && statsBounds.contains(clip);
+
+        // Any messages outdated by a configuration change keep their old text for this paint while they're re-parsed
+        messageReparser.reparseIfConfigChanged();
+
+        renderer.setDebugGrids(debugSettings.isDrawTextGrid(), debugSettings.getTextGridColor(), debugSettings.isDrawBorderGrid(), debugSettings.getBorderGridColor());
+        final long frameStart = System.nanoTime();
+        Rectangle changed = renderer.paint(g2d, getWidth(), getHeight(), Arrays.asList(messages.snapshot()), debugSettings.isCompositing());
+        if (!statsOnly)
         {
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            frameStats.recordFrame(renderer, System.nanoTime() - frameStart);
         }
 
-        // Fits in the line height.
-        boolean stillFits = true;
-        int fontSize = 0;
-        while (stillFits)
+        // The area the expired messages vacated has been measured now, so their text is no longer needed
+        for (Message msg : expiredUnreleased)
         {
-            fontSize++;
-            g2d.setFont(new Font(g2d.getFont().getName(), Font.PLAIN, fontSize));
-            stillFits = (font.getFontHeight() - fontConfig.getBaselineOffset()) * fontConfig.getFontScale() > g2d.getFontMetrics().getStringBounds("A", 0, 1, g2d).getHeight();
+            msg.releaseText();
         }
+        expiredUnreleased.clear();
 
-        logger.trace("Calulated font size: " + fontSize);
-
-        List<Message> drawMessages = new ArrayList<Message>();
-
-        // Make a copy of the actual cache that only includes the messages that are completely drawn and possibly the
-        // one message currently being drawn
-        long drawTime = System.currentTimeMillis();
-        for (Message msg : messages)
+        // Whatever changed outside of the area being painted still needs to make it onto the screen
+        if (clip != null && !changed.isEmpty() && !clip.contains(changed))
         {
-            final boolean censored = censorConfig.isCensorshipEnabled() && msg.isCensored();
-            final boolean expired = messageConfig.isMessageExpirable() && msg.getAge(drawTime) > messageConfig.getExpirationTime();
-            if (!censored && !expired)
-            {
-                drawMessages.add(msg);
-            }
-            if (!censored && !expired && !msg.isCompletelyDrawn())
-            {
-                // No need to check any further messages because this is the one currently being rolled out
-                break;
-            }
+            super.repaint(0L, changed.x, changed.y, changed.width, changed.height);
         }
 
-        // Draws the background color and the chroma key border
-        if (messageConfig.isHideEmptyBackground() && drawMessages.isEmpty())
+        if (debugSettings.isDrawFrameStats())
         {
-            // If the messages are empty and the background should be hidden, draw the chroma color regardless of whether it's enabled
-            g2d.setColor(colorConfig.getChromaColor());
-            g2d.fillRect(0, 0, getWidth(), getHeight());
+            statsBounds = frameStats.paintHud(g2d);
+            // Redraw the stats display with this frame's numbers if this frame didn't cover it
+            if (!statsOnly && clip != null && !clip.contains(statsBounds))
+            {
+                super.repaint(0L, statsBounds.x, statsBounds.y, statsBounds.width, statsBounds.height);
+            }
         }
         else
         {
-            drawBackgroundAndChroma(g2d);
+            statsBounds = null;
         }
+    }
 
-        // This offset represents how far inward in the x and y directions the messages should be drawn
-        Point offset = new Point();
-
-        // If border scale is zero, just skip this. The drawBorder method won't draw a zero scale border, but if these
-        // calculations are attempted with a zero scale it will throw a divide by zero exception
-        // Also check if no messages are visible whether the border should be hidden
-        if (fontConfig.getBorderScale() > 0.0f && !(messageConfig.isHideEmptyBorder() && drawMessages.isEmpty()))
+    /**
+     * Count every repaint request for the frame statistics. A repaint on its own doesn't invalidate the offscreen
+     * layers; changes to the configuration go through invalidateAndRepaint instead.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height)
+    {
+        if (frameStats != null)
         {
-            final int gridWidth = getWidth() / border.getSpriteDrawWidth(fontConfig.getBorderScale());
-            final int gridHeight = getHeight() / border.getSpriteDrawHeight(fontConfig.getBorderScale());
-
-            final int leftOffset = (getWidth() - gridWidth * border.getSpriteDrawWidth(fontConfig.getBorderScale())) / 2;
-            final int topOffset = (getHeight() - gridHeight * border.getSpriteDrawHeight(fontConfig.getBorderScale())) / 2;
-
-            offset = new Point(leftOffset, topOffset);
-
-            drawBorder(g2d, gridWidth, gridHeight, offset, colorConfig.getBorderColor(), debugSettings.isDrawBorderGrid(), debugSettings.getBorderGridColor());
+            frameStats.recordRepaintRequest();
         }
-
-        drawChat(g2d, drawMessages, offset, debugSettings.isDrawTextGrid(), debugSettings.getTextGridColor());
+        super.repaint(tm, x, y, width, height);
     }
 
     /**
-     * Draws a test grid for debugging purposes
-     * 
-     * @param g
-     * @param one
-     * @param two
-     * @param x
-     * @param y
-     * @param width
-     * @param height
-     * @param squareSize
-     */
-    protected void drawGrid(Graphics g, Color one, Color two, int x, int y, int width, int height, int squareSize)
-    {
-        for (int r = 0; r < height / squareSize + 1; r++)
+     * Mark the offscreen layers as needing to be completely redrawn and repaint the chat, because the configuration has
+     * changed in a way that could affect anything drawn, including the background and border
+     */
+    public void invalidateAndRepaint()
+    {
+        if (renderer != null)
         {
-            for (int c = 0; c < width / squareSize + 1; c++)
-            {
-                boolean colorOne = r % 2 == 1 && c % 2 == 0 || r % 2 == 0 && c % 2 == 1;
-                g.setColor(colorOne ? one : two);
-                g.fillRect(x + c * squareSize, y + r * squareSize, squareSize, squareSize);
-            }
+            renderer.invalidateLayers();
         }
+        repaint();
     }
 
     /**
-     * Draw the background and the chroma key border
-     * 
-     * @param g2d
+     * Redraw all the messages, but not the background or border, because their text or the emoji images in them have
+     * changed
      */
-    private void drawBackgroundAndChroma(Graphics2D g2d)
+    public void repaintMessages()
     {
-        if (chatConfig.isChromaEnabled())
+        if (renderer != null)
         {
-            g2d.setColor(chatConfig.isChromaInvert() ? colorConfig.getBgColor() : colorConfig.getChromaColor());
-            g2d.fillRect(0, 0, getWidth(), getHeight());
-            g2d.setColor(chatConfig.isChromaInvert() ? colorConfig.getChromaColor() : colorConfig.getBgColor());
-            Rectangle border = chatConfig.getChromaBorder();
-            g2d.fillRoundRect(Math.min(getWidth(), border.x), Math.min(getHeight(), border.y), Math.max(0, getWidth() - border.width - border.x), Math.max(0, getHeight() - border.height - border.y), chatConfig.getChromaCornerRadius(), chatConfig.getChromaCornerRadius());
+            renderer.invalidateMessageLayer();
         }
-        else
+        repaintChat();
+    }
+
+    /**
+     * Redraw just the animated emoji on screen, because a new frame of their animations is ready
+     */
+    public void repaintAnimation()
+    {
+        if (renderer != null)
         {
-            // Just draw the background
-            g2d.setColor(colorConfig.getBgColor());
-            g2d.fillRect(0, 0, getWidth(), getHeight());
+            renderer.invalidateAnimatedEmoji();
         }
+        repaintChat();
     }
 
     /**
-     * Draw the words in the messages in the chat
-     * 
-     * @param g2d
-     * @param messages
-     * @param offset
+     * Repaint the whole chat because messages have been added, removed, moved or scrolled, but without invalidating the
+     * offscreen layers, so only what changed since the last frame is redrawn into them
      */
-    private void drawChat(Graphics2D g2d, List<Message> drawMessages, Point offset, boolean debug, Color debugColor)
+    public void repaintChat()
     {
-        final int lineWrapLength = (border == null || fontConfig.getBorderScale() <= 0.0f ? getWidth() : border.getSpriteDrawWidth(fontConfig.getBorderScale()) * (getWidth() / border.getSpriteDrawWidth(fontConfig.getBorderScale()) - 2)) - fontConfig.getBorderInsetX() * 2;
-        final int leftEdge = offset.x + (border == null || fontConfig.getBorderScale() <= 0.0f ? 0 : border.getSpriteDrawWidth(fontConfig.getBorderScale())) + fontConfig.getBorderInsetX();
+        frameStats.recordRepaintRequest();
+        super.repaint(0L, 0, 0, getWidth(), getHeight());
+    }
 
-        // totalHeight is the height of all the messages
-        int totalHeight = 0;
-        for (Message msg : drawMessages)
+    /**
+     * Emoji images are drawn with this panel as their observer, so every frame of every animated emoji lands here.
+     * Rather than each frame repainting the chat, the frame scheduler collects them into one repaint per animation
+     * frame.
+     */
+    @Override
+    public boolean imageUpdate(Image img, int infoflags, int x, int y, int w, int h)
+    {
+        if ((infoflags & (FRAMEBITS | ALLBITS)) != 0)
         {
-            Dimension dim = font.getMessageDimensions(msg, g2d.getFontMetrics(), messageConfig, emojiConfig, emojiManager, lineWrapLength);
-            totalHeight += dim.getHeight();
+            frameScheduler.requestAnimationFrame();
+            return (infoflags & (ALLBITS | ABORT)) == 0;
         }
+        return super.imageUpdate(img, infoflags, x, y, w, h);
+    }
 
-        // Used for scrolling
-        int lineHeight = font.getLineHeightScaled();
-        if (lineHeight == 0)
+    /**
+     * Add a message to the cache, and call method to process any censorship
+     * 
+     * @param addition
+     */
+    synchronized public void addMessage(Message addition)
+    {
+        if (addition.isJoinType() && !messageConfig.showJoinMessages())
         {
-            lineHeight = 1;
+            return;
         }
-        lineCount = lineHeight == 0 ? 0 : totalHeight / lineHeight;
 
-        // borderEdgeThickness is the y-inset on the top plus the height of the top part of the border
-        final int borderEdgeThickness = offset.y + (border == null || fontConfig.getBorderScale() < ConfigFont.FONT_BORDER_SCALE_GRANULARITY ? 0 : border.getSpriteDrawHeight(fontConfig.getBorderScale())) + fontConfig.getBorderInsetY();
+        censor.checkCensor(addition);
 
-        final int drawableVerticalRange = getHeight() - borderEdgeThickness * 2;
+        addMessages(Collections.singletonList(addition));
+    }
 
-        // Used for scrolling when chat scrolls normally and starts from the top, or when chat scrolls reverse and starts from the bottom
-        onScreenLineCount = drawableVerticalRange / lineHeight;
+    /**
+     * Add messages that have already been checked for censorship to the cache all at once, with a single rollout
+     * update and repaint for the lot. Messages that the rest of the batch would push out of the message queue are
+     * skipped rather than added and trimmed away before they could be seen.
+     * 
+     * @param additions
+     * @return the number of messages skipped
+     */
+    synchronized public int addMessages(List<Message> additions)
+    {
+        if (additions.isEmpty())
+        {
+            return 0;
+        }
 
-        // y is where the drawing begins
-        int y;
-        if (chatConfig.isChatFromBottom())
+        List<Message> shown = new ArrayList<Message>(additions.size());
+        for (Message addition : additions)
         {
-            if (chatConfig.isReverseScrolling())
-            {
-                if (totalHeight > drawableVerticalRange)
-                {
-                    y = borderEdgeThickness;
-                }
-                else
-                {
-                    y = getHeight() - totalHeight - borderEdgeThickness;
-                }
-            }
-            else
+            if (!addition.isJoinType() || messageConfig.showJoinMessages())
             {
-                y = getHeight() - totalHeight - borderEdgeThickness;
+                shown.add(addition);
             }
         }
-        // else chat from top
-        else
+
+        final int skipped = Math.max(0, shown.size() - messageConfig.getQueueSize());
+
+        // Note that for a moment here, the size of messages can exceed the specified queueSize in the message config,
+        // so if another thread is accessing this, be sure to take that into consideration
+        List<Message> evicted = new ArrayList<Message>();
+        for (int i = skipped; i < shown.size(); i++)
         {
-            if (chatConfig.isReverseScrolling())
+            Message pushedOut = messages.add(shown.get(i));
+            if (pushedOut != null)
             {
-                y = borderEdgeThickness;
+                evicted.add(pushedOut);
             }
-            else
+        }
+        evicted.addAll(messages.trimTo(messageConfig.getQueueSize()));
+        frameScheduler.untrackExpiry(evicted);
+
+        initMessageRollout();
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
             {
-                if (totalHeight > drawableVerticalRange)
-                {
-                    // Not all the messages fit in the given space range, so start drawing up out of bounds at a negative y. This uses just the top borderEdgeThickness's height, not both top and bottom
-                    y = (getHeight() - borderEdgeThickness) - totalHeight;
-                }
-                // If the total height of all the messages is less than or equal to the total height
-                else
+                if (censor.isVisible())
                 {
-                    // Just set the y to start drawing to the borderEdgeThickness because it should be fixed to the top when there's enough room for everything
-                    y = borderEdgeThickness;
+                    censor.updateManualTable();
                 }
             }
-        }
+        });
 
-        final int botLimit;
-        if (chatConfig.isReverseScrolling() && totalHeight > drawableVerticalRange)
-        {
-            botLimit = getHeight() - borderEdgeThickness - font.getLineHeightScaled();
-        }
-        else
-        {
-            botLimit = getHeight() - borderEdgeThickness;
-        }
+        repaintChat();
 
-        // Draw each message in the drawMessages copy of the cache
-        for (int i = 0; i < drawMessages.size(); i++)
-        {
-            int msgIndex = chatConfig.isReverseScrolling() ? drawMessages.size() - i - 1 : i;
-            Message msg = drawMessages.get(msgIndex);
-            Color col = getUsernameColor(colorConfig, msg);
-            // The call to drawMessage in SpriteFont will determine whether to draw each character based on whether it is located at a position appropriate to be drawn on
-            Dimension dim = font.drawMessage(g2d, g2d.getFontMetrics(), msg, col, colorConfig, messageConfig, emojiConfig, emojiManager, leftEdge, y, borderEdgeThickness, botLimit, lineWrapLength, debug, debugColor, this);
-            y += dim.getHeight();
-        }
+        return skipped;
     }
 
-    private static Color getUsernameColor(ConfigColor colorConfig, Message msg)
+    /**
+     * Check a message against the censorship rules before it is added to the cache. The rules are read from a copy the
+     * censorship panel takes on the event dispatch thread whenever they change, so this may be called from any thread.
+     * 
+     * @param msg
+     */
+    public void checkCensor(Message msg)
     {
-        Color col;
-        if (msg.isJoinType())
-        {
-            col = colorConfig.getHighlight();
-        }
-        else if (colorConfig.isUseTwitchColors() && msg.getPrivmsg().getColor() != null)
-        {
-            col = msg.getPrivmsg().getColor();
-        }
-        else
-        {
-            col = colorConfig.getPalette().isEmpty() ? colorConfig.getHighlight() : colorConfig.getPalette().get(Math.abs(msg.getUsername().toLowerCase().hashCode()) % colorConfig.getPalette().size());
-        }
-        return col;
+        censor.checkCensor(msg);
     }
 
     /**
-     * Draw the border
+     * Repaint only the characters of the specified message that were revealed by moving its draw cursor forward. If the
+     * newly revealed characters start a new line, complete the message, or the message wasn't on screen in the last
+     * frame, the positions of other messages may change, so the whole chat is repainted instead. This may be called
+     * from any thread.
      * 
-     * @param g2d
-     * @param gridWidth
-     * @param gridHeight
-     * @param offset
-     * @param color
+     * @param msg
+     *            The message being rolled out
+     * @param fromCursor
+     *            The draw cursor before it was incremented
+     * @param toCursor
+     *            The draw cursor after it was incremented
      */
-    private void drawBorder(Graphics2D g2d, int gridWidth, int gridHeight, Point offset, Color color, boolean debug, Color debugColor)
+    public void repaintRevealed(final Message msg, final float fromCursor, final float toCursor)
     {
-        final float scale = fontConfig.getBorderScale();
-
-        if (scale <= 0.0f)
+        SwingUtilities.invokeLater(new Runnable()
         {
-            return;
-        }
+            @Override
+            public void run()
+            {
+                if (isLoaded())
+                {
+                    repaintDirty(renderer.getRevealedBounds(msg, fromCursor, toCursor));
+                }
+            }
+        });
+    }
 
-        if (debug)
+    /**
+     * Remove the specified expired messages from the cache, then repaint only the parts of the chat they vacated.
+     * Messages are only guaranteed to stay put when one above them disappears when the chat starts from the bottom and
+     * scrolls normally, so in any other layout the whole chat is repainted. This may be called from any thread.
+     * 
+     * @param expired
+     *            The messages that have expired, any of which may have already left the cache
+     */
+    public void expireMessages(final Set<Message> expired)
+    {
+        synchronized (this)
         {
-            g2d.setColor(debugColor);
+            messages.removeAll(expired);
         }
 
-        for (int r = 0; r < gridHeight; r++)
+        SwingUtilities.invokeLater(new Runnable()
         {
-            for (int c = 0; c < gridWidth; c++)
+            @Override
+            public void run()
             {
-                int pixelX = c * border.getSpriteDrawWidth(scale) + offset.x;
-                int pixelY = r * border.getSpriteDrawHeight(scale) + offset.y;
-
-                if (r == 0) // Top row
-                {
-                    if (c == 0) // Top left
-                    {
-                        border.draw(g2d, pixelX, pixelY, 0, scale, color);
-                    }
-                    else if (c == gridWidth - 1) // Top right
-                    {
-                        border.draw(g2d, pixelX, pixelY, 2, scale, color);
-                    }
-                    else
-                    // Top middle
-                    {
-                        border.draw(g2d, pixelX, pixelY, 1, scale, color);
-                    }
-                }
-                else if (r == gridHeight - 1) // Bottom row
+                if (isLoaded())
                 {
-                    if (c == 0) // Bottom left
+                    repaintDirty(renderer.getExpiredBounds(System.currentTimeMillis()));
+                    if (censor.isVisible())
                     {
-                        border.draw(g2d, pixelX, pixelY, 6, scale, color);
-                    }
-                    else if (c == gridWidth - 1) // Bottom right
-                    {
-                        border.draw(g2d, pixelX, pixelY, 8, scale, color);
-                    }
-                    else
-                    // Bottom middle
-                    {
-                        border.draw(g2d, pixelX, pixelY, 7, scale, color);
+                        censor.updateManualTable();
                     }
+                    // The vacated area is measured with the text by the next paint, so it can only be let go of after
+                    expiredUnreleased.addAll(expired);
                 }
                 else
-                // Middle
                 {
-                    if (c == 0) // Middle left
-                    {
-                        border.draw(g2d, pixelX, pixelY, 3, scale, color);
-                    }
-                    else if (c == gridWidth - 1) // Middle right
+                    for (Message msg : expired)
                     {
-                        border.draw(g2d, pixelX, pixelY, 5, scale, color);
-                    }
-                    else
-                    // Middle middle
-                    {
-                        border.draw(g2d, pixelX, pixelY, 4, scale, color);
+                        msg.releaseText();
                     }
                 }
-                if (debug)
-                {
-                    g2d.drawRect(pixelX, pixelY, (int) (border.getSpriteWidth() * scale), (int) (border.getSpriteHeight() * scale));
-                }
             }
-        }
+        });
     }
 
     /**
-     * Add a message to the cache, and call method to process any censorship
+     * Repaint the specified dirty region
      * 
-     * @param addition
+     * @param dirty
+     *            The region to repaint, an empty rectangle to skip repainting, or null to repaint everything
      */
-    synchronized public void addMessage(Message addition)
+    private void repaintDirty(Rectangle dirty)
     {
-        if (addition.isJoinType() && !messageConfig.showJoinMessages())
-        {
-            return;
-        }
-
-        censor.checkCensor(addition);
-
-        // Note that for a moment here, the size of messages can exceed the specified queueSize in the message config,
-        // so if another thread is accessing this, be sure to take that into consideration
-        messages.add(addition);
-        int remCount = Math.max(0, messages.size() - messageConfig.getQueueSize());
-
-        Iterator<Message> iter = messages.iterator();
-        while (iter.hasNext() && remCount > 0)
+        if (dirty == null)
         {
-            iter.next();
-            iter.remove();
-            remCount--;
+            repaintChat();
         }
-
-        initMessageRollout();
-        if (censor.isVisible())
+        else if (!dirty.isEmpty())
         {
-            censor.updateManualTable();
+            repaint(dirty);
         }
-
-        repaint();
     }
 
     /**
@@ -593,8 +526,8 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     synchronized public void clearChat()
     {
-        messages.clear();
-        repaint();
+        frameScheduler.untrackExpiry(messages.clear());
+        repaintChat();
     }
 
     /**
@@ -604,7 +537,7 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     {
         if (isLoaded())
         {
-            font.setLineScrollOffset(0);
+            renderer.getFont().setLineScrollOffset(0);
         }
     }
 
@@ -620,6 +553,9 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     {
         if (isLoaded())
         {
+            final SpriteFont font = renderer.getFont();
+            final int lineCount = renderer.getLineCount();
+            final int onScreenLineCount = renderer.getOnScreenLineCount();
             final int dir = positiveDirection ? lines : -lines;
             if (chatConfig.isChatFromBottom())
             {
@@ -637,7 +573,7 @@ public class ChatPanel extends JPanel implements MouseWheelListener
                     font.incrementLineScrollOffset(dir, lineCount == 0 ? 0 : -lineCount + 1, 1);
                 }
             }
-            repaint();
+            repaintChat();
         }
     }
 
@@ -654,24 +590,15 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     }
 
     /**
-     * Get the message cache. This is used by the timer task that resides in the MessageProgressor object to increment
-     * the drawing of the messages
+     * Get a snapshot of the message cache, oldest first. This is used by the timer task that resides in the
+     * FrameScheduler to increment the drawing of the messages. It never blocks on a message being added, and
+     * the array is shared by every caller until the cache changes, so it must not be modified.
      * 
      * @return messages
      */
-    synchronized public Message[] getMessages()
+    public Message[] getMessages()
     {
-        return messages.toArray(new Message[messages.size()]);
-    }
-
-    /**
-     * Get the actual queue of messages
-     * 
-     * @return messages
-     */
-    public ConcurrentLinkedQueue<Message> getMessageQueue()
-    {
-        return messages;
+        return messages.snapshot();
     }
 
     /**
@@ -682,7 +609,7 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     public void reloadFontFromConfig() throws IOException
     {
-        font.updateForConfigChange();
+        renderer.reloadFontFromConfig();
     }
 
     /**
@@ -692,16 +619,25 @@ public class ChatPanel extends JPanel implements MouseWheelListener
      */
     public void reloadBorderFromConfig() throws IOException
     {
-        try
-        {
-            border = new Sprite(fontConfig.getBorderFilename(), 3, 3);
-        }
-        catch (Exception e)
-        {
-            final String errorMessage = "Unable to load border sprite " + (fontConfig == null ? "for null font configuration" : "for border filename " + fontConfig.getBorderFilename());
-            logger.error(errorMessage, e);
-            border = new Sprite();
-        }
+        renderer.reloadBorderFromConfig();
+    }
+
+    /**
+     * Updates the size of the caches of recolored font and border images when it changes in the configuration
+     */
+    public void reloadColorCacheSizeFromConfig()
+    {
+        renderer.reloadColorCacheSizeFromConfig();
+    }
+
+    /**
+     * Get the renderer that draws the chat onto this panel, which can also render it into an image
+     * 
+     * @return renderer
+     */
+    public ChatRenderer getRenderer()
+    {
+        return renderer;
     }
 
     /**
@@ -725,30 +661,35 @@ public class ChatPanel extends JPanel implements MouseWheelListener
     }
 
     /**
-     * Get the message progressor
+     * Get the frame scheduler that rolls out messages, removes expired messages and repaints for animated emoji
      * 
-     * @return messageProgressor
+     * @return frameScheduler
      */
-    public MessageProgressor getMessageProgressor()
+    public FrameScheduler getFrameScheduler()
     {
-        return messageProgressor;
+        return frameScheduler;
     }
 
-    public MessageExpirer getMessageExpirer()
+    /**
+     * Get the frame statistics of the chat, which are also registered for JMX
+     * 
+     * @return frameStats
+     */
+    public FrameStats getFrameStats()
     {
-        return messageExpirer;
+        return frameStats;
     }
 
     public void banUser(String bannedUser)
     {
         censor.addBan(bannedUser);
-        repaint();
+        invalidateAndRepaint();
     }
 
     public void unbanUser(String bannedUser)
     {
         censor.removeBan(bannedUser);
-        repaint();
+        invalidateAndRepaint();
     }
 
     public EmojiManager getEmojiManager()
@@ -756,22 +697,24 @@ public class ChatPanel extends JPanel implements MouseWheelListener
         return emojiManager;
     }
 
+    /**
+     * Start tracking when messages expire, if messages are set to expire
+     */
     public void initExpirationTimer()
     {
-        if (messageConfig.isMessageExpirable())
-        {
-            messageExpirer.startClock();
-        }
+        frameScheduler.startExpiry();
     }
 
     /**
      * Attempt to restart the message rollout, called whenever some messages might be reintroduced to the drawMessage
      * after the message rollout is completed, by being uncensored for example. This call relies on the fact that the
-     * messageProgression will halt again if all the messages are complete already.
+     * rollout will go idle again if all the messages are complete already. Messages that were completed without being
+     * rolled out, like by being censored, are also picked up here to be given an expiration deadline.
      */
     public void initMessageRollout()
     {
-        messageProgressor.startClock(messageConfig.getMessageDelay());
+        frameScheduler.startRollout();
+        frameScheduler.startExpiry();
     }
 
     public boolean isCensorshipEnabled()
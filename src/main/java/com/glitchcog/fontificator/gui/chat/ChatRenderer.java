@@ -0,0 +1,1488 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.config.ConfigCensor;
+import com.glitchcog.fontificator.config.ConfigChat;
+import com.glitchcog.fontificator.config.ConfigColor;
+import com.glitchcog.fontificator.config.ConfigEmoji;
+import com.glitchcog.fontificator.config.ConfigFont;
+import com.glitchcog.fontificator.config.ConfigMessage;
+import com.glitchcog.fontificator.config.FontificatorProperties;
+import com.glitchcog.fontificator.emoji.EmojiManager;
+import com.glitchcog.fontificator.gui.chat.stats.FramePhase;
+import com.glitchcog.fontificator.sprite.MessageLayout;
+import com.glitchcog.fontificator.sprite.Sprite;
+import com.glitchcog.fontificator.sprite.SpriteFont;
+
+/**
+ * Renders the chat: the background, the chroma key border, the sprite border and the messages. It doesn't depend on
+ * any Swing component, so the chat can be rendered into an image on a headless machine with render, or painted onto
+ * the ChatPanel with paint, which is what the chat window does.
+ * 
+ * @author Matt Yanos
+ */
+public class ChatRenderer
+{
+    private static final Logger logger = Logger.getLogger(ChatRenderer.class);
+
+    /**
+     * Configuration for the font and the border
+     */
+    private ConfigFont fontConfig;
+
+    /**
+     * Configuration for the chat, meaning whether scrolling is enabled and whether and how to draw the chroma key
+     * border
+     */
+    private ConfigChat chatConfig;
+
+    /**
+     * Configuration for which colors to use to draw the chat
+     */
+    private ConfigColor colorConfig;
+
+    /**
+     * Configuration for how to draw the messages, what parts of the messages to display, the rate to display new
+     * messages, the format for the timestamps, and the queue size
+     */
+    private ConfigMessage messageConfig;
+
+    /**
+     * Configuration for whether to include emoji in the messages
+     */
+    private ConfigEmoji emojiConfig;
+
+    /**
+     * Configuration for how to censor messages
+     */
+    private ConfigCensor censorConfig;
+
+    /**
+     * Manages emoji loading, caching, and access
+     */
+    private EmojiManager emojiManager;
+
+    /**
+     * The font used to draw the chat messages
+     */
+    private SpriteFont font;
+
+    /**
+     * The sprite used to draw the border around the chat, to be displayed if the border scale is greater than zero
+     */
+    private Sprite border;
+
+    /**
+     * Notified when emoji images drawn in the chat finish loading or animating, or null if nothing needs to be
+     */
+    private ImageObserver imageObserver;
+
+    /**
+     * Debugging options for drawing a grid around each character and each border tile
+     */
+    private boolean drawTextGrid;
+    private Color textGridColor;
+    private boolean drawBorderGrid;
+    private Color borderGridColor;
+
+    /**
+     * The size of what is being rendered onto
+     */
+    private int targetWidth;
+    private int targetHeight;
+
+    /**
+     * The number of lines for all the messages in the chat buffer. This is not the number of messages, but the number
+     * of lines the messages will take up once drawn.
+     */
+    private int lineCount;
+
+    /**
+     * The number of lines that fit on the screen between the top border and bottom border.
+     */
+    private int onScreenLineCount;
+
+    /**
+     * Where each message was drawn in the last frame, in the order they were drawn, keyed to the y position it started
+     * at before the scroll offset is applied. Along with the other frame variables below, this is used to repaint only
+     * the part of the chat that changes when a message rolls out another character or expires.
+     */
+    private Map<Message, Integer> frameMessageY;
+
+    /**
+     * The messages of the last frame in the order they were drawn, and the y position each started at before the
+     * scroll offset is applied, followed by the y position where the last one ended
+     */
+    private Message[] frameMessages;
+    private int[] frameMessageOffsets;
+
+    /**
+     * The draw cursor of each message in the last frame
+     */
+    private Map<Message, Float> frameDrawCursor;
+
+    /**
+     * The font metrics, wrap length, vertical limits, line height and scroll offset the last frame was drawn with
+     */
+    private FontMetrics frameFontMetrics;
+    private int frameLineWrapLength;
+    private int frameLeftEdge;
+    private int frameTopLimit;
+    private int frameBotLimit;
+    private int frameLineHeight;
+    private int frameScrollOffset;
+
+    /**
+     * The offscreen layer holding the background and border when compositing, the offset it was drawn with, and
+     * whether it was drawn for no messages, which can hide the background and border
+     */
+    private BufferedImage staticLayer;
+    private Point staticLayerOffset;
+    private boolean staticLayerEmpty;
+
+    /**
+     * The offscreen layer holding the messages when compositing, transparent everywhere else
+     */
+    private BufferedImage messageLayer;
+
+    /**
+     * Whether the offscreen layers need to be completely redrawn on the next composited paint
+     */
+    private volatile boolean layersStale;
+
+    /**
+     * Whether the message layer needs to be completely redrawn on the next composited paint, while the background and
+     * border layer can be kept, because the messages' text or emoji images changed
+     */
+    private volatile boolean messageLayerStale;
+
+    /**
+     * Whether the animated emoji on screen need to be drawn again on the next composited paint, because a new frame of
+     * their animations is ready
+     */
+    private volatile boolean animatedEmojiStale;
+
+    /**
+     * The height of each completely drawn message that has been measured, so messages that aren't on screen don't have
+     * to be measured again every frame. These are only good for the font metrics, wrap length and line height they
+     * were measured with, and until the font, the configuration or the messages' text or emoji are invalidated.
+     */
+    private final Map<Message, Integer> messageHeights;
+    private FontMetrics heightsFontMetrics;
+    private int heightsLineWrapLength;
+    private int heightsLineHeight;
+    private volatile boolean heightsStale;
+
+    /**
+     * The time spent in each phase of the last paint, indexed by FramePhase ordinal
+     */
+    private final long[] framePhaseNanos;
+
+    /**
+     * How many messages had their first glyph painted in the last paint, and the total and longest time between
+     * receiving each of them and painting it
+     */
+    private int frameFirstPaintCount;
+    private long frameFirstPaintTotalNanos;
+    private long frameFirstPaintMaxNanos;
+
+    /**
+     * Construct a renderer for the chat described by the specified properties
+     * 
+     * @param fProps
+     *            The properties from which to get the configuration references
+     * @param emojiManager
+     *            Manages the emoji that appear in the messages
+     * @throws IOException
+     *             If there are any issues loading the files specified for the font and border
+     */
+    public ChatRenderer(FontificatorProperties fProps, EmojiManager emojiManager) throws IOException
+    {
+        this(fProps.getFontConfig(), fProps.getChatConfig(), fProps.getColorConfig(), fProps.getMessageConfig(), fProps.getEmojiConfig(), fProps.getCensorConfig(), emojiManager);
+
+        font = new SpriteFont(fontConfig);
+        reloadFontFromConfig();
+        // This initializes the border
+        reloadBorderFromConfig();
+    }
+
+    /**
+     * Construct a renderer that draws with the configuration, font, border, emoji and debugging grids of the specified
+     * renderer, but keeps frame state of its own, so rendering with it leaves the frame the specified renderer is on
+     * alone
+     * 
+     * @param source
+     */
+    private ChatRenderer(ChatRenderer source)
+    {
+        this(source.fontConfig, source.chatConfig, source.colorConfig, source.messageConfig, source.emojiConfig, source.censorConfig, source.emojiManager);
+
+        this.font = source.font;
+        this.border = source.border;
+        this.drawTextGrid = source.drawTextGrid;
+        this.textGridColor = source.textGridColor;
+        this.drawBorderGrid = source.drawBorderGrid;
+        this.borderGridColor = source.borderGridColor;
+    }
+
+    /**
+     * Construct a renderer for the specified configuration that hasn't painted any frame yet, without a font or border
+     */
+    private ChatRenderer(ConfigFont fontConfig, ConfigChat chatConfig, ConfigColor colorConfig, ConfigMessage messageConfig, ConfigEmoji emojiConfig, ConfigCensor censorConfig, EmojiManager emojiManager)
+    {
+        this.fontConfig = fontConfig;
+        this.chatConfig = chatConfig;
+        this.colorConfig = colorConfig;
+        this.messageConfig = messageConfig;
+        this.emojiConfig = emojiConfig;
+        this.censorConfig = censorConfig;
+        this.emojiManager = emojiManager;
+
+        this.lineCount = Integer.MAX_VALUE;
+        this.onScreenLineCount = 0;
+        this.frameMessageY = new LinkedHashMap<Message, Integer>();
+        this.frameDrawCursor = new HashMap<Message, Float>();
+        this.frameMessages = new Message[0];
+        this.frameMessageOffsets = new int[] { 0 };
+        this.layersStale = true;
+        this.messageHeights = new WeakHashMap<Message, Integer>();
+        this.framePhaseNanos = new long[FramePhase.values().length];
+    }
+
+    /**
+     * Updates the font when there are changes to the configuration
+     * 
+     * @throws IOException
+     *             If there is a problem using a file
+     */
+    public void reloadFontFromConfig() throws IOException
+    {
+        font.updateForConfigChange();
+        invalidateLayers();
+    }
+
+    /**
+     * Updates the border when there are changes to the configuration
+     * 
+     * @throws IOException
+     */
+    public void reloadBorderFromConfig() throws IOException
+    {
+        try
+        {
+            border = new Sprite(fontConfig.getBorderFilename(), 3, 3);
+            border.setColorCacheCapacity(fontConfig);
+        }
+        catch (Exception e)
+        {
+            final String errorMessage = "Unable to load border sprite " + (fontConfig == null ? "for null font configuration" : "for border filename " + fontConfig.getBorderFilename());
+            logger.error(errorMessage, e);
+            border = new Sprite();
+        }
+        invalidateLayers();
+    }
+
+    /**
+     * Apply the color cache size from the configuration to the border. The font sprite picks it up the next time it's
+     * drawn. Nothing drawn changes, so nothing needs to be redrawn.
+     */
+    public void reloadColorCacheSizeFromConfig()
+    {
+        if (border != null)
+        {
+            border.setColorCacheCapacity(fontConfig);
+        }
+    }
+
+    /**
+     * Mark the offscreen layers as needing to be completely redrawn on the next composited paint, because something
+     * that isn't tracked frame to frame, like the configuration, has changed
+     */
+    public void invalidateLayers()
+    {
+        layersStale = true;
+        heightsStale = true;
+    }
+
+    /**
+     * Mark the message layer as needing to be completely redrawn on the next composited paint, because the text or the
+     * emoji images of the messages have changed, but not the background or border
+     */
+    public void invalidateMessageLayer()
+    {
+        messageLayerStale = true;
+        heightsStale = true;
+    }
+
+    /**
+     * Mark the animated emoji on screen as needing to be drawn again on the next composited paint, because a new frame
+     * of their animations is ready. Only the regions the animated emoji are drawn into are redrawn.
+     */
+    public void invalidateAnimatedEmoji()
+    {
+        animatedEmojiStale = true;
+    }
+
+    /**
+     * Set the debugging options for drawing grids around the characters and border tiles
+     * 
+     * @param drawTextGrid
+     * @param textGridColor
+     * @param drawBorderGrid
+     * @param borderGridColor
+     */
+    public void setDebugGrids(boolean drawTextGrid, Color textGridColor, boolean drawBorderGrid, Color borderGridColor)
+    {
+        this.drawTextGrid = drawTextGrid;
+        this.textGridColor = textGridColor;
+        this.drawBorderGrid = drawBorderGrid;
+        this.borderGridColor = borderGridColor;
+    }
+
+    /**
+     * Set the observer to be notified when emoji images drawn in the chat finish loading or animating
+     * 
+     * @param imageObserver
+     */
+    public void setImageObserver(ImageObserver imageObserver)
+    {
+        this.imageObserver = imageObserver;
+    }
+
+    /**
+     * Get the font used to draw the chat messages, which also holds the scroll offset
+     * 
+     * @return font
+     */
+    public SpriteFont getFont()
+    {
+        return font;
+    }
+
+    /**
+     * Get the font metrics the last frame was laid out with, or null if nothing has been drawn yet
+     * 
+     * @return frameFontMetrics
+     */
+    public FontMetrics getFrameFontMetrics()
+    {
+        return frameFontMetrics;
+    }
+
+    /**
+     * Get the wrap width in pixels the last frame was laid out with
+     * 
+     * @return frameLineWrapLength
+     */
+    public int getFrameLineWrapLength()
+    {
+        return frameLineWrapLength;
+    }
+
+    /**
+     * Get the time the last paint spent in the specified phase
+     * 
+     * @param phase
+     * @return nanoseconds
+     */
+    public long getFramePhaseNanos(FramePhase phase)
+    {
+        return framePhaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Get the number of messages that had their first glyph painted in the last paint
+     * 
+     * @return count
+     */
+    public int getFrameFirstPaintCount()
+    {
+        return frameFirstPaintCount;
+    }
+
+    /**
+     * Get the total time between receiving and first painting the messages first painted in the last paint
+     * 
+     * @return nanoseconds
+     */
+    public long getFrameFirstPaintTotalNanos()
+    {
+        return frameFirstPaintTotalNanos;
+    }
+
+    /**
+     * Get the longest time between receiving and first painting any message first painted in the last paint
+     * 
+     * @return nanoseconds
+     */
+    public long getFrameFirstPaintMaxNanos()
+    {
+        return frameFirstPaintMaxNanos;
+    }
+
+    /**
+     * Get the number of lines all the messages in the last frame take up
+     * 
+     * @return lineCount
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Get the number of lines that fit between the top and bottom border in the last frame
+     * 
+     * @return onScreenLineCount
+     */
+    public int getOnScreenLineCount()
+    {
+        return onScreenLineCount;
+    }
+
+    /**
+     * Render a snapshot of the chat into the specified image, the size of which determines the size of the chat. This
+     * works headless. The snapshot is drawn from scratch by a renderer of its own, so the frame this renderer last
+     * painted, what it has measured and whether its layers need to be redrawn are left as they are for the next paint.
+     * 
+     * @param messages
+     *            The messages in the chat, oldest first
+     * @param target
+     *            The image to render onto
+     */
+    public void render(Message[] messages, BufferedImage target)
+    {
+        ChatRenderer snapshot = new ChatRenderer(this);
+        Graphics2D g2d = target.createGraphics();
+        snapshot.paint(g2d, target.getWidth(), target.getHeight(), Arrays.asList(messages), false, false);
+        g2d.dispose();
+    }
+
+    /**
+     * Paint the chat
+     * 
+     * @param g2d
+     *            The graphics object to paint with
+     * @param width
+     *            The width of the chat
+     * @param height
+     *            The height of the chat
+     * @param messages
+     *            The messages in the chat, oldest first
+     * @param compositing
+     *            Whether to composite offscreen layers that are kept from paint to paint rather than drawing
+     *            everything directly
+     * @return the region that changed since the last paint, which may go beyond the graphics object's clip when
+     *         compositing, or just the clip when not, since everything within it is drawn from scratch
+     */
+    public Rectangle paint(Graphics2D g2d, int width, int height, Collection<Message> messages, boolean compositing)
+    {
+        return paint(g2d, width, height, messages, compositing, true);
+    }
+
+    /**
+     * Paint the chat, either onto the screen or into an image
+     * 
+     * @param g2d
+     * @param width
+     * @param height
+     * @param messages
+     * @param compositing
+     * @param onScreen
+     *            Whether this is painting the chat onto the screen, which is the only time messages are marked as
+     *            painted and their time to first paint is measured
+     * @return the region that changed since the last paint
+     */
+    private Rectangle paint(Graphics2D g2d, int width, int height, Collection<Message> messages, boolean compositing, boolean onScreen)
+    {
+        this.targetWidth = width;
+        this.targetHeight = height;
+
+        Arrays.fill(framePhaseNanos, 0L);
+        frameFirstPaintCount = 0;
+        frameFirstPaintTotalNanos = 0L;
+        frameFirstPaintMaxNanos = 0L;
+        // Emoji drawn outside of a paint, like into a rendered image, aren't part of this frame
+        font.takeEmojiDrawNanos();
+
+        if (chatConfig.isAntiAlias())
+        {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        }
+
+        // Extended characters are drawn with a font that fits in the line height
+        g2d.setFont(font.getExtendedFont(g2d));
+
+        List<Message> drawMessages = new ArrayList<Message>();
+
+        // Make a copy of the actual cache that only includes the messages that are completely drawn and possibly the
+        // one message currently being drawn. Expired messages have already been removed from the cache by the frame
+        // scheduler.
+        for (Message msg : messages)
+        {
+            final boolean censored = censorConfig.isCensorshipEnabled() && msg.isCensored();
+            if (!censored)
+            {
+                drawMessages.add(msg);
+            }
+            if (!censored && !msg.isCompletelyDrawn())
+            {
+                // No need to check any further messages because this is the one currently being rolled out
+                break;
+            }
+        }
+
+        if (compositing)
+        {
+            return paintComposited(g2d, drawMessages);
+        }
+        else
+        {
+            long start = System.nanoTime();
+            drawStaticBackground(g2d, drawMessages.isEmpty());
+            start = timePhase(FramePhase.BACKGROUND, start);
+            Point offset = drawStaticBorder(g2d, drawMessages.isEmpty());
+            start = timePhase(FramePhase.BORDER, start);
+            layoutChat(g2d.getFontMetrics(), drawMessages, offset);
+            start = timePhase(FramePhase.LAYOUT, start);
+            drawChat(g2d, drawTextGrid, textGridColor, onScreen);
+            timeDrawChat(start);
+            // The layers didn't see this frame, so they can't be updated from it
+            layersStale = true;
+            final Rectangle clip = g2d.getClipBounds();
+            return clip == null ? new Rectangle(0, 0, width, height) : clip;
+        }
+    }
+
+    /**
+     * Paint the chat by compositing the offscreen layers. The background and border layer is only redrawn when the size
+     * or configuration changes. The message layer is updated by comparing where the messages are now to where they
+     * were in the last frame: if they all moved by the same amount, like when new lines push old ones up or the chat
+     * scrolls, the layer is shifted with copyArea, and only the bands exposed at the edges and the messages that were
+     * added, removed or rolled out are drawn again.
+     * 
+     * @param g2d
+     * @param drawMessages
+     * @return the region of the layers that changed
+     */
+    private Rectangle paintComposited(Graphics2D g2d, List<Message> drawMessages)
+    {
+        final int width = targetWidth;
+        final int height = targetHeight;
+        if (width <= 0 || height <= 0)
+        {
+            return new Rectangle();
+        }
+
+        final boolean stale = layersStale;
+        layersStale = false;
+        final boolean messagesStale = messageLayerStale;
+        messageLayerStale = false;
+        final boolean animationStale = animatedEmojiStale;
+        animatedEmojiStale = false;
+
+        long start = System.nanoTime();
+
+        final boolean resized = staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height;
+        final boolean empty = drawMessages.isEmpty();
+        if (stale || resized || staticLayerEmpty != empty)
+        {
+            if (resized)
+            {
+                staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D sg = createLayerGraphics(staticLayer, g2d);
+            sg.setComposite(AlphaComposite.Clear);
+            sg.fillRect(0, 0, width, height);
+            sg.setComposite(AlphaComposite.SrcOver);
+            drawStaticBackground(sg, empty);
+            start = timePhase(FramePhase.BACKGROUND, start);
+            staticLayerOffset = drawStaticBorder(sg, empty);
+            staticLayerEmpty = empty;
+            sg.dispose();
+            start = timePhase(FramePhase.BORDER, start);
+        }
+        start = timePhase(FramePhase.BACKGROUND, start);
+
+        // Remember the last frame to compare against before laying out this one
+        final Map<Message, Integer> prevMessageY = new HashMap<Message, Integer>(frameMessageY);
+        final Map<Message, Float> prevDrawCursor = new HashMap<Message, Float>(frameDrawCursor);
+        final FontMetrics prevFontMetrics = frameFontMetrics;
+        final int prevLineWrapLength = frameLineWrapLength;
+        final int prevLeftEdge = frameLeftEdge;
+        final int prevTopLimit = frameTopLimit;
+        final int prevBotLimit = frameBotLimit;
+        final int prevScrollOffset = frameScrollOffset;
+
+        layoutChat(g2d.getFontMetrics(), drawMessages, staticLayerOffset);
+        start = timePhase(FramePhase.LAYOUT, start);
+
+        final int lineHeight = Math.max(1, font.getLineHeightScaled());
+        final boolean layoutChanged = prevFontMetrics == null || !prevFontMetrics.getFont().equals(frameFontMetrics.getFont()) || prevLineWrapLength != frameLineWrapLength || prevLeftEdge != frameLeftEdge || prevTopLimit != frameTopLimit || prevBotLimit != frameBotLimit || lineHeight != frameLineHeight;
+        frameLineHeight = lineHeight;
+
+        if (resized)
+        {
+            messageLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D mg = createLayerGraphics(messageLayer, g2d);
+
+        Rectangle dirty = null;
+        if (!stale && !messagesStale && !resized && !layoutChanged)
+        {
+            dirty = getChangedBounds(mg, prevMessageY, prevDrawCursor, prevScrollOffset);
+        }
+        if (dirty == null)
+        {
+            dirty = new Rectangle(0, 0, width, height);
+        }
+        else if (animationStale)
+        {
+            dirty = addAnimatedEmojiBounds(dirty).intersection(new Rectangle(0, 0, width, height));
+        }
+
+        if (!dirty.isEmpty())
+        {
+            mg.setClip(dirty);
+            mg.setComposite(AlphaComposite.Clear);
+            mg.fillRect(dirty.x, dirty.y, dirty.width, dirty.height);
+            mg.setComposite(AlphaComposite.SrcOver);
+            drawChat(mg, drawTextGrid, textGridColor, true);
+        }
+        mg.dispose();
+        start = timeDrawChat(start);
+
+        g2d.drawImage(staticLayer, 0, 0, null);
+        start = timePhase(FramePhase.BACKGROUND, start);
+        g2d.drawImage(messageLayer, 0, 0, null);
+        timePhase(FramePhase.GLYPHS, start);
+
+        return dirty;
+    }
+
+    /**
+     * Add the time since the start to the specified phase of this frame
+     * 
+     * @param phase
+     * @param start
+     *            The nano time the phase started
+     * @return the nano time the phase ended, to start the next one
+     */
+    private long timePhase(FramePhase phase, long start)
+    {
+        final long end = System.nanoTime();
+        framePhaseNanos[phase.ordinal()] += end - start;
+        return end;
+    }
+
+    /**
+     * Add the time since the start to this frame's glyphs, except for the part the font spent drawing emoji, which goes
+     * to the emoji phase instead
+     * 
+     * @param start
+     *            The nano time drawing the messages started
+     * @return the nano time drawing the messages ended
+     */
+    private long timeDrawChat(long start)
+    {
+        final long end = timePhase(FramePhase.GLYPHS, start);
+        final long emojiNanos = font.takeEmojiDrawNanos();
+        framePhaseNanos[FramePhase.GLYPHS.ordinal()] -= emojiNanos;
+        framePhaseNanos[FramePhase.EMOJI.ordinal()] += emojiNanos;
+        return end;
+    }
+
+    /**
+     * Create the graphics object for drawing on an offscreen layer, set up to draw the same way as the chat panel's
+     * graphics
+     * 
+     * @param layer
+     * @param g2d
+     * @return layer graphics
+     */
+    private static Graphics2D createLayerGraphics(BufferedImage layer, Graphics2D g2d)
+    {
+        Graphics2D lg = layer.createGraphics();
+        lg.setRenderingHints(g2d.getRenderingHints());
+        lg.setFont(g2d.getFont());
+        return lg;
+    }
+
+    /**
+     * Compare where the messages were in the last frame to where they are now, and shift the message layer to match if
+     * they all moved together
+     * 
+     * @param mg
+     *            The message layer graphics
+     * @param prevMessageY
+     * @param prevDrawCursor
+     * @param prevScrollOffset
+     * @return the region of the message layer that needs to be drawn again, or null if all of it does
+     */
+    private Rectangle getChangedBounds(Graphics2D mg, Map<Message, Integer> prevMessageY, Map<Message, Float> prevDrawCursor, int prevScrollOffset)
+    {
+        final int width = messageLayer.getWidth();
+        final int height = messageLayer.getHeight();
+
+        // Every message on screen in both frames must have moved the same distance
+        Integer delta = null;
+        for (Map.Entry<Message, Integer> frameMsg : frameMessageY.entrySet())
+        {
+            final Integer prevY = prevMessageY.get(frameMsg.getKey());
+            if (prevY != null)
+            {
+                final int msgDelta = (frameMsg.getValue() + frameScrollOffset * frameLineHeight) - (prevY + prevScrollOffset * frameLineHeight);
+                if (delta == null)
+                {
+                    delta = msgDelta;
+                }
+                else if (delta != msgDelta)
+                {
+                    return null;
+                }
+            }
+        }
+        if (delta == null)
+        {
+            return null;
+        }
+        else if (Math.abs(delta) >= height)
+        {
+            return null;
+        }
+
+        int overflowTop = 0;
+        int overflowBottom = 0;
+        for (Message msg : frameMessageY.keySet())
+        {
+            MessageLayout layout = font.getMessageLayout(msg, frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLineWrapLength);
+            overflowTop = Math.max(overflowTop, layout.getOverflowTop());
+            overflowBottom = Math.max(overflowBottom, layout.getOverflowBottom());
+        }
+
+        Rectangle dirty = new Rectangle();
+        if (delta != 0)
+        {
+            mg.copyArea(0, Math.max(0, -delta), width, height - Math.abs(delta), 0, delta);
+
+            // The band left behind by the shift
+            dirty = addBounds(dirty, new Rectangle(0, delta > 0 ? 0 : height + delta, width, Math.abs(delta)));
+
+            // Lines that crossed the top or bottom limit have either just appeared or just disappeared
+            final int band = Math.abs(delta) * 2 + frameLineHeight + overflowTop + overflowBottom + 2;
+            dirty = addBounds(dirty, new Rectangle(0, frameTopLimit - Math.abs(delta) - overflowTop - 1, width, band));
+            dirty = addBounds(dirty, new Rectangle(0, frameBotLimit - Math.abs(delta) - overflowTop - 1, width, band));
+        }
+
+        final int scrollY = frameScrollOffset * frameLineHeight;
+
+        // Messages that were added or rolled out more characters
+        for (Map.Entry<Message, Integer> frameMsg : frameMessageY.entrySet())
+        {
+            final Message msg = frameMsg.getKey();
+            final Float prevCursor = prevDrawCursor.get(msg);
+            final float drawCursor = frameDrawCursor.get(msg);
+            if (prevCursor == null)
+            {
+                dirty = addBounds(dirty, getMessageBounds(msg, frameMsg.getValue() + scrollY, drawCursor));
+            }
+            else if (prevCursor != drawCursor)
+            {
+                MessageLayout layout = font.getMessageLayout(msg, frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLineWrapLength);
+                dirty = addBounds(dirty, getGlyphBounds(layout, frameMsg.getValue() + scrollY, prevCursor, drawCursor));
+            }
+        }
+
+        // Messages that were removed, where they would be had they moved with the rest
+        for (Map.Entry<Message, Integer> prevMsg : prevMessageY.entrySet())
+        {
+            final Message msg = prevMsg.getKey();
+            if (!frameMessageY.containsKey(msg))
+            {
+                dirty = addBounds(dirty, getMessageBounds(msg, prevMsg.getValue() + prevScrollOffset * frameLineHeight + delta, prevDrawCursor.get(msg)));
+            }
+        }
+
+        return dirty.intersection(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Add the regions the animated emoji of the messages on screen are drawn into
+     * 
+     * @param dirty
+     * @return the union of the dirty region and the animated emoji
+     */
+    private Rectangle addAnimatedEmojiBounds(Rectangle dirty)
+    {
+        final int scrollY = frameScrollOffset * frameLineHeight;
+        final int first = findFirstOffset(frameMessageOffsets, 1, frameMessages.length + 1, frameTopLimit - scrollY + 1) - 1;
+        final int last = findFirstOffset(frameMessageOffsets, first, frameMessages.length, frameBotLimit - scrollY);
+        for (int i = first; i < last; i++)
+        {
+            for (Rectangle bounds : font.getAnimatedEmojiBounds(frameMessages[i], frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLeftEdge, frameMessageOffsets[i], frameTopLimit, frameBotLimit, frameLineWrapLength))
+            {
+                dirty = addBounds(dirty, bounds);
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Get the full width region a message draws into, including glyphs that overhang its lines
+     * 
+     * @param msg
+     * @param y
+     *            where the message starts, with the scroll offset applied
+     * @param drawCursor
+     * @return bounds
+     */
+    private Rectangle getMessageBounds(Message msg, int y, float drawCursor)
+    {
+        MessageLayout layout = font.getMessageLayout(msg, frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLineWrapLength);
+        final int msgHeight = (int) layout.getDimension(drawCursor, frameLineHeight).getHeight();
+        return new Rectangle(0, y - layout.getOverflowTop() - 1, targetWidth, msgHeight + layout.getOverflowTop() + layout.getOverflowBottom() + 2);
+    }
+
+    /**
+     * Add a region to a union of regions, where an empty rectangle is treated as no region at all rather than as a
+     * point to include
+     * 
+     * @param union
+     * @param bounds
+     * @return the union
+     */
+    private static Rectangle addBounds(Rectangle union, Rectangle bounds)
+    {
+        if (bounds.isEmpty())
+        {
+            return union;
+        }
+        else if (union.isEmpty())
+        {
+            return new Rectangle(bounds);
+        }
+        union.add(bounds);
+        return union;
+    }
+
+    /**
+     * Draw the background, which goes under the border
+     * 
+     * @param g2d
+     * @param empty
+     *            Whether there are no messages to be drawn, which can hide the background
+     */
+    private void drawStaticBackground(Graphics2D g2d, boolean empty)
+    {
+        // Draws the background color and the chroma key border
+        if (messageConfig.isHideEmptyBackground() && empty)
+        {
+            // If the messages are empty and the background should be hidden, draw the chroma color regardless of whether it's enabled
+            g2d.setColor(colorConfig.getChromaColor());
+            g2d.fillRect(0, 0, targetWidth, targetHeight);
+        }
+        else
+        {
+            drawBackgroundAndChroma(g2d);
+        }
+    }
+
+    /**
+     * Draw the border over the background
+     * 
+     * @param g2d
+     * @param empty
+     *            Whether there are no messages to be drawn, which can hide the border
+     * @return the offset representing how far inward in the x and y directions the messages should be drawn
+     */
+    private Point drawStaticBorder(Graphics2D g2d, boolean empty)
+    {
+        // This offset represents how far inward in the x and y directions the messages should be drawn
+        Point offset = new Point();
+
+        // If border scale is zero, just skip this. The drawBorder method won't draw a zero scale border, but if these
+        // calculations are attempted with a zero scale it will throw a divide by zero exception
+        // Also check if no messages are visible whether the border should be hidden
+        if (fontConfig.getBorderScale() > 0.0f && !(messageConfig.isHideEmptyBorder() && empty))
+        {
+            final int gridWidth = targetWidth / border.getSpriteDrawWidth(fontConfig.getBorderScale());
+            final int gridHeight = targetHeight / border.getSpriteDrawHeight(fontConfig.getBorderScale());
+
+            final int leftOffset = (targetWidth - gridWidth * border.getSpriteDrawWidth(fontConfig.getBorderScale())) / 2;
+            final int topOffset = (targetHeight - gridHeight * border.getSpriteDrawHeight(fontConfig.getBorderScale())) / 2;
+
+            offset = new Point(leftOffset, topOffset);
+
+            drawBorder(g2d, gridWidth, gridHeight, offset, colorConfig.getBorderColor(), drawBorderGrid, borderGridColor);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Draw the background and the chroma key border
+     * 
+     * @param g2d
+     */
+    private void drawBackgroundAndChroma(Graphics2D g2d)
+    {
+        if (chatConfig.isChromaEnabled())
+        {
+            g2d.setColor(chatConfig.isChromaInvert() ? colorConfig.getBgColor() : colorConfig.getChromaColor());
+            g2d.fillRect(0, 0, targetWidth, targetHeight);
+            g2d.setColor(chatConfig.isChromaInvert() ? colorConfig.getChromaColor() : colorConfig.getBgColor());
+            Rectangle border = chatConfig.getChromaBorder();
+            g2d.fillRoundRect(Math.min(targetWidth, border.x), Math.min(targetHeight, border.y), Math.max(0, targetWidth - border.width - border.x), Math.max(0, targetHeight - border.height - border.y), chatConfig.getChromaCornerRadius(), chatConfig.getChromaCornerRadius());
+        }
+        else
+        {
+            // Just draw the background
+            g2d.setColor(colorConfig.getBgColor());
+            g2d.fillRect(0, 0, targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Work out where each message in the chat goes, and record it as the current frame. Only the messages on screen,
+     * the ones still being rolled out and the ones whose heights aren't known yet are measured. The heights of the rest
+     * are remembered from earlier frames until something that could change them is invalidated.
+     * 
+     * @param fontMetrics
+     * @param drawMessages
+     * @param offset
+     */
+    private void layoutChat(FontMetrics fontMetrics, List<Message> drawMessages, Point offset)
+    {
+        final int lineWrapLength = (border == null || fontConfig.getBorderScale() <= 0.0f ? targetWidth : border.getSpriteDrawWidth(fontConfig.getBorderScale()) * (targetWidth / border.getSpriteDrawWidth(fontConfig.getBorderScale()) - 2)) - fontConfig.getBorderInsetX() * 2;
+        final int leftEdge = offset.x + (border == null || fontConfig.getBorderScale() <= 0.0f ? 0 : border.getSpriteDrawWidth(fontConfig.getBorderScale())) + fontConfig.getBorderInsetX();
+
+        final int lineHeightScaled = font.getLineHeightScaled();
+        final boolean heightsInvalid = heightsStale || heightsFontMetrics == null || !heightsFontMetrics.getFont().equals(fontMetrics.getFont()) || heightsLineWrapLength != lineWrapLength || heightsLineHeight != lineHeightScaled;
+        heightsStale = false;
+        if (heightsInvalid)
+        {
+            messageHeights.clear();
+            heightsFontMetrics = fontMetrics;
+            heightsLineWrapLength = lineWrapLength;
+            heightsLineHeight = lineHeightScaled;
+        }
+
+        final int[] heights = new int[drawMessages.size()];
+        final boolean[] measured = new boolean[drawMessages.size()];
+        for (int i = 0; i < heights.length; i++)
+        {
+            final Message msg = drawMessages.get(i);
+            final Integer knownHeight = msg.isCompletelyDrawn() ? messageHeights.get(msg) : null;
+            if (knownHeight == null)
+            {
+                heights[i] = measureMessage(msg, fontMetrics, lineWrapLength);
+                measured[i] = true;
+            }
+            else
+            {
+                heights[i] = knownHeight;
+            }
+        }
+
+        placeMessages(fontMetrics, drawMessages, heights, offset, lineWrapLength, leftEdge);
+
+        // The messages on screen are drawn, so they're laid out anyway. Measure any of them whose remembered height is
+        // out of date, which only happens if something changed them without invalidating, and place them again if so.
+        final int scrollY = frameScrollOffset * lineHeightScaled;
+        final int first = findFirstOffset(frameMessageOffsets, 1, frameMessages.length + 1, frameTopLimit - scrollY + 1) - 1;
+        final int last = findFirstOffset(frameMessageOffsets, first, frameMessages.length, frameBotLimit - scrollY);
+        boolean moved = false;
+        for (int i = first; i < last; i++)
+        {
+            final int msgIndex = chatConfig.isReverseScrolling() ? drawMessages.size() - i - 1 : i;
+            if (!measured[msgIndex])
+            {
+                final int height = measureMessage(drawMessages.get(msgIndex), fontMetrics, lineWrapLength);
+                moved |= height != heights[msgIndex];
+                heights[msgIndex] = height;
+            }
+        }
+        if (moved)
+        {
+            placeMessages(fontMetrics, drawMessages, heights, offset, lineWrapLength, leftEdge);
+        }
+    }
+
+    /**
+     * Measure the height of a message, and remember it for later frames if it won't change on its own, meaning it's
+     * completely drawn and isn't waiting on any emoji images that could resize it
+     * 
+     * @param msg
+     * @param fontMetrics
+     * @param lineWrapLength
+     * @return height
+     */
+    private int measureMessage(Message msg, FontMetrics fontMetrics, int lineWrapLength)
+    {
+        Dimension dim = font.getMessageDimensions(msg, fontMetrics, messageConfig, emojiConfig, emojiManager, lineWrapLength);
+        final int height = (int) dim.getHeight();
+        if (msg.isCompletelyDrawn() && !font.getMessageLayout(msg, fontMetrics, messageConfig, emojiConfig, emojiManager, lineWrapLength).isPendingEmoji())
+        {
+            messageHeights.put(msg, height);
+        }
+        else
+        {
+            messageHeights.remove(msg);
+        }
+        return height;
+    }
+
+    /**
+     * Position each message with the specified heights, and record it as the current frame
+     * 
+     * @param fontMetrics
+     * @param drawMessages
+     * @param heights
+     *            The height of each message, in the same order
+     * @param offset
+     * @param lineWrapLength
+     * @param leftEdge
+     */
+    private void placeMessages(FontMetrics fontMetrics, List<Message> drawMessages, int[] heights, Point offset, int lineWrapLength, int leftEdge)
+    {
+        // totalHeight is the height of all the messages
+        int totalHeight = 0;
+        for (int height : heights)
+        {
+            totalHeight += height;
+        }
+
+        // Used for scrolling
+        int lineHeight = font.getLineHeightScaled();
+        if (lineHeight == 0)
+        {
+            lineHeight = 1;
+        }
+        lineCount = lineHeight == 0 ? 0 : totalHeight / lineHeight;
+
+        // borderEdgeThickness is the y-inset on the top plus the height of the top part of the border
+        final int borderEdgeThickness = offset.y + (border == null || fontConfig.getBorderScale() < ConfigFont.FONT_BORDER_SCALE_GRANULARITY ? 0 : border.getSpriteDrawHeight(fontConfig.getBorderScale())) + fontConfig.getBorderInsetY();
+
+        final int drawableVerticalRange = targetHeight - borderEdgeThickness * 2;
+
+        // Used for scrolling when chat scrolls normally and starts from the top, or when chat scrolls reverse and starts from the bottom
+        onScreenLineCount = drawableVerticalRange / lineHeight;
+
+        // y is where the drawing begins
+        int y;
+        if (chatConfig.isChatFromBottom())
+        {
+            if (chatConfig.isReverseScrolling())
+            {
+                if (totalHeight > drawableVerticalRange)
+                {
+                    y = borderEdgeThickness;
+                }
+                else
+                {
+                    y = targetHeight - totalHeight - borderEdgeThickness;
+                }
+            }
+            else
+            {
+                y = targetHeight - totalHeight - borderEdgeThickness;
+            }
+        }
+        // else chat from top
+        else
+        {
+            if (chatConfig.isReverseScrolling())
+            {
+                y = borderEdgeThickness;
+            }
+            else
+            {
+                if (totalHeight > drawableVerticalRange)
+                {
+                    // Not all the messages fit in the given space range, so start drawing up out of bounds at a negative y. This uses just the top borderEdgeThickness's height, not both top and bottom
+                    y = (targetHeight - borderEdgeThickness) - totalHeight;
+                }
+                // If the total height of all the messages is less than or equal to the total height
+                else
+                {
+                    // Just set the y to start drawing to the borderEdgeThickness because it should be fixed to the top when there's enough room for everything
+                    y = borderEdgeThickness;
+                }
+            }
+        }
+
+        final int botLimit;
+        if (chatConfig.isReverseScrolling() && totalHeight > drawableVerticalRange)
+        {
+            botLimit = targetHeight - borderEdgeThickness - font.getLineHeightScaled();
+        }
+        else
+        {
+            botLimit = targetHeight - borderEdgeThickness;
+        }
+
+        frameMessageY.clear();
+        frameDrawCursor.clear();
+        frameFontMetrics = fontMetrics;
+        frameLineWrapLength = lineWrapLength;
+        frameLeftEdge = leftEdge;
+        frameTopLimit = borderEdgeThickness;
+        frameBotLimit = botLimit;
+        frameScrollOffset = font.getLineScrollOffset();
+
+        // Position each message in the drawMessages copy of the cache, keeping a running sum of the heights so the
+        // messages on screen can be found without going through all of them
+        frameMessages = new Message[drawMessages.size()];
+        frameMessageOffsets = new int[drawMessages.size() + 1];
+        for (int i = 0; i < drawMessages.size(); i++)
+        {
+            int msgIndex = chatConfig.isReverseScrolling() ? drawMessages.size() - i - 1 : i;
+            Message msg = drawMessages.get(msgIndex);
+            frameMessages[i] = msg;
+            frameMessageOffsets[i] = y;
+            frameMessageY.put(msg, y);
+            frameDrawCursor.put(msg, msg.getDrawCursor());
+            y += heights[msgIndex];
+        }
+        frameMessageOffsets[drawMessages.size()] = y;
+    }
+
+    /**
+     * Draw the words in the messages in the chat where they were positioned by layoutChat
+     * 
+     * @param g2d
+     * @param debug
+     * @param debugColor
+     * @param onScreen
+     *            Whether the messages are being drawn onto the screen, so they can be marked as painted
+     */
+    private void drawChat(Graphics2D g2d, boolean debug, Color debugColor, boolean onScreen)
+    {
+        final int scrollY = font.getLineScrollOffset() * font.getLineHeightScaled();
+
+        // Only the messages that end below the top limit and start above the bottom limit have any lines on screen
+        final int first = findFirstOffset(frameMessageOffsets, 1, frameMessages.length + 1, frameTopLimit - scrollY + 1) - 1;
+        final int last = findFirstOffset(frameMessageOffsets, first, frameMessages.length, frameBotLimit - scrollY);
+
+        for (int i = first; i < last; i++)
+        {
+            Message msg = frameMessages[i];
+            Color col = getUsernameColor(colorConfig, msg);
+            // The call to drawMessage in SpriteFont will determine whether to draw each character based on whether it is located at a position appropriate to be drawn on
+            font.drawMessage(g2d, frameFontMetrics, msg, col, colorConfig, messageConfig, emojiConfig, emojiManager, frameLeftEdge, frameMessageOffsets[i], frameTopLimit, frameBotLimit, frameLineWrapLength, debug, debugColor, imageObserver);
+            if (onScreen && msg.getDrawCursor() > 0.0f && msg.markPainted())
+            {
+                final long latency = System.nanoTime() - msg.getReceivedNanos();
+                frameFirstPaintCount++;
+                frameFirstPaintTotalNanos += latency;
+                frameFirstPaintMaxNanos = Math.max(frameFirstPaintMaxNanos, latency);
+            }
+        }
+    }
+
+    /**
+     * Binary search the ascending offsets for the first index in the range whose offset is at least the specified value
+     * 
+     * @param offsets
+     * @param from
+     *            inclusive
+     * @param to
+     *            exclusive
+     * @param value
+     * @return the index, or to if no offset in the range is large enough
+     */
+    private static int findFirstOffset(int[] offsets, int from, int to, int value)
+    {
+        int lo = from;
+        int hi = to;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (offsets[mid] < value)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static Color getUsernameColor(ConfigColor colorConfig, Message msg)
+    {
+        Color col;
+        if (msg.isJoinType())
+        {
+            col = colorConfig.getHighlight();
+        }
+        else if (colorConfig.isUseTwitchColors() && msg.getPrivmsg().getColor() != null)
+        {
+            col = msg.getPrivmsg().getColor();
+        }
+        else
+        {
+            col = colorConfig.getPalette().isEmpty() ? colorConfig.getHighlight() : colorConfig.getPalette().get(Math.abs(msg.getUsername().toLowerCase().hashCode()) % colorConfig.getPalette().size());
+        }
+        return col;
+    }
+
+    /**
+     * Draw the border
+     * 
+     * @param g2d
+     * @param gridWidth
+     * @param gridHeight
+     * @param offset
+     * @param color
+     */
+    private void drawBorder(Graphics2D g2d, int gridWidth, int gridHeight, Point offset, Color color, boolean debug, Color debugColor)
+    {
+        final float scale = fontConfig.getBorderScale();
+
+        if (scale <= 0.0f)
+        {
+            return;
+        }
+
+        if (debug)
+        {
+            g2d.setColor(debugColor);
+        }
+
+        for (int r = 0; r < gridHeight; r++)
+        {
+            for (int c = 0; c < gridWidth; c++)
+            {
+                int pixelX = c * border.getSpriteDrawWidth(scale) + offset.x;
+                int pixelY = r * border.getSpriteDrawHeight(scale) + offset.y;
+
+                if (r == 0) // Top row
+                {
+                    if (c == 0) // Top left
+                    {
+                        border.draw(g2d, pixelX, pixelY, 0, scale, color);
+                    }
+                    else if (c == gridWidth - 1) // Top right
+                    {
+                        border.draw(g2d, pixelX, pixelY, 2, scale, color);
+                    }
+                    else
+                    // Top middle
+                    {
+                        border.draw(g2d, pixelX, pixelY, 1, scale, color);
+                    }
+                }
+                else if (r == gridHeight - 1) // Bottom row
+                {
+                    if (c == 0) // Bottom left
+                    {
+                        border.draw(g2d, pixelX, pixelY, 6, scale, color);
+                    }
+                    else if (c == gridWidth - 1) // Bottom right
+                    {
+                        border.draw(g2d, pixelX, pixelY, 8, scale, color);
+                    }
+                    else
+                    // Bottom middle
+                    {
+                        border.draw(g2d, pixelX, pixelY, 7, scale, color);
+                    }
+                }
+                else
+                // Middle
+                {
+                    if (c == 0) // Middle left
+                    {
+                        border.draw(g2d, pixelX, pixelY, 3, scale, color);
+                    }
+                    else if (c == gridWidth - 1) // Middle right
+                    {
+                        border.draw(g2d, pixelX, pixelY, 5, scale, color);
+                    }
+                    else
+                    // Middle middle
+                    {
+                        border.draw(g2d, pixelX, pixelY, 4, scale, color);
+                    }
+                }
+                if (debug)
+                {
+                    g2d.drawRect(pixelX, pixelY, (int) (border.getSpriteWidth() * scale), (int) (border.getSpriteHeight() * scale));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the region covering the characters revealed between the two draw cursors as they were positioned in the last
+     * frame
+     * 
+     * @param msg
+     * @param fromCursor
+     * @param toCursor
+     * @return dirty region, empty if nothing needs repainting, or null if everything does
+     */
+    public Rectangle getRevealedBounds(Message msg, float fromCursor, float toCursor)
+    {
+        if (frameFontMetrics == null || msg.isCompletelyDrawn())
+        {
+            return null;
+        }
+
+        final Integer msgY = frameMessageY.get(msg);
+        if (msgY == null)
+        {
+            return null;
+        }
+
+        // Anything expiring at the same time moves or hides things outside the revealed characters
+        final Rectangle expired = getExpiredBounds(System.currentTimeMillis());
+        if (expired == null || !expired.isEmpty())
+        {
+            return null;
+        }
+
+        MessageLayout layout = font.getMessageLayout(msg, frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLineWrapLength);
+        if (layout.isEmpty())
+        {
+            return new Rectangle();
+        }
+        else if (layout.getLineCount(fromCursor) != layout.getLineCount(toCursor))
+        {
+            // A new line changes the height of the message, which moves the messages around it
+            return null;
+        }
+
+        final int lineHeight = Math.max(1, font.getLineHeightScaled());
+        return getGlyphBounds(layout, msgY + font.getLineScrollOffset() * lineHeight, fromCursor, toCursor);
+    }
+
+    /**
+     * Get the region covering the characters of a message between the two draw cursors that are drawn within the
+     * vertical limits of the last frame
+     * 
+     * @param layout
+     * @param y
+     *            where the message starts, with the scroll offset applied
+     * @param fromCursor
+     * @param toCursor
+     * @return bounds, empty if none of the characters are drawn
+     */
+    private Rectangle getGlyphBounds(MessageLayout layout, int y, float fromCursor, float toCursor)
+    {
+        if (layout.isEmpty())
+        {
+            return new Rectangle();
+        }
+
+        final int lineHeight = Math.max(1, font.getLineHeightScaled());
+        // Sprites can overhang their cell by the character spacing and extended characters by their italic slant
+        final int padX = lineHeight / 2 + (int) (Math.abs(fontConfig.getCharSpacing()) * fontConfig.getFontScale()) + 1;
+
+        Rectangle dirty = new Rectangle();
+        final int end = Math.min(layout.getText().length(), (int) Math.ceil(toCursor));
+        for (int ci = Math.max(0, (int) Math.ceil(fromCursor)); ci < end; ci++)
+        {
+            final int line = layout.getGlyphLine(ci);
+            if (line == MessageLayout.NOT_DRAWN)
+            {
+                continue;
+            }
+
+            final int drawY = y + line * lineHeight;
+            if (drawY >= frameTopLimit && drawY < frameBotLimit)
+            {
+                Rectangle glyph = new Rectangle(frameLeftEdge + layout.getGlyphX(ci) - padX, drawY - layout.getOverflowTop() - 1, layout.getGlyphWidth(ci) + padX * 2, lineHeight + layout.getOverflowTop() + layout.getOverflowBottom() + 2);
+                if (dirty.isEmpty())
+                {
+                    dirty = glyph;
+                }
+                else
+                {
+                    dirty.add(glyph);
+                }
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Get the region covering the messages drawn in the last frame that have since expired
+     * 
+     * @param currentTime
+     * @return dirty region, empty if nothing needs repainting, or null if everything does
+     */
+    public Rectangle getExpiredBounds(long currentTime)
+    {
+        if (frameFontMetrics == null || !messageConfig.isMessageExpirable())
+        {
+            return new Rectangle();
+        }
+
+        final boolean messagesStayPut = chatConfig.isChatFromBottom() && !chatConfig.isReverseScrolling();
+        final int lineHeight = Math.max(1, font.getLineHeightScaled());
+
+        Rectangle dirty = new Rectangle();
+        int remaining = frameMessageY.size();
+        for (Map.Entry<Message, Integer> frameMsg : frameMessageY.entrySet())
+        {
+            Message msg = frameMsg.getKey();
+            if (msg.getAge(currentTime) <= messageConfig.getExpirationTime())
+            {
+                continue;
+            }
+            else if (!messagesStayPut)
+            {
+                return null;
+            }
+
+            remaining--;
+            MessageLayout layout = font.getMessageLayout(msg, frameFontMetrics, messageConfig, emojiConfig, emojiManager, frameLineWrapLength);
+            final int y = frameMsg.getValue() + font.getLineScrollOffset() * lineHeight;
+            final int msgHeight = (int) layout.getDimension(msg.getDrawCursor(), lineHeight).getHeight();
+            Rectangle bounds = new Rectangle(0, y - layout.getOverflowTop() - 1, targetWidth, msgHeight + layout.getOverflowTop() + layout.getOverflowBottom() + 2);
+            if (dirty.isEmpty())
+            {
+                dirty = bounds;
+            }
+            else
+            {
+                dirty.add(bounds);
+            }
+        }
+
+        // The last message expiring can hide the background and the border
+        if (remaining == 0 && !dirty.isEmpty() && (messageConfig.isHideEmptyBackground() || messageConfig.isHideEmptyBorder()))
+        {
+            return null;
+        }
+
+        return dirty;
+    }
+}
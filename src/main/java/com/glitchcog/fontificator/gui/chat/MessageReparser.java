@@ -0,0 +1,161 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.config.ConfigEmoji;
+import com.glitchcog.fontificator.config.ConfigMessage;
+import com.glitchcog.fontificator.emoji.EmojiManager;
+
+/**
+ * Re-parses the messages in the chat on a small pool of background threads whenever a message or emoji setting that
+ * changes how messages are parsed into text changes, instead of letting every message re-parse itself on the paint
+ * thread the next time it's drawn. Until the whole batch is ready, the messages keep returning their old text, so the
+ * old rendering stays on screen. Then the new text is swapped in all at once on the event dispatch thread and the chat
+ * is repainted. Only the parsing is done in the background: the sprite font isn't thread safe, so the new text is laid
+ * out by the paint that follows, on the event dispatch thread.
+ *
+ * @author Matt Yanos
+ */
+public class MessageReparser
+{
+    private static final Logger logger = Logger.getLogger(MessageReparser.class);
+
+    /**
+     * The number of messages that can be re-parsed at once
+     */
+    private static final int THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final ThreadPoolExecutor executor;
+
+    private final ChatPanel chat;
+
+    /**
+     * The text versions of the message and emoji configurations the latest batch was started for. These are only
+     * accessed on the event dispatch thread.
+     */
+    private long messageConfigVersion;
+    private long emojiConfigVersion;
+
+    /**
+     * Whether a batch is being re-parsed. Another batch isn't started until this one is committed, after which any
+     * changes made in the meantime start a new one. This is only accessed on the event dispatch thread.
+     */
+    private boolean running;
+
+    public MessageReparser(ChatPanel chat)
+    {
+        this.chat = chat;
+        this.messageConfigVersion = -1L;
+        this.emojiConfigVersion = -1L;
+        this.running = false;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Message Reparser " + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start re-parsing every message whose text was parsed with an older configuration than the current one, unless a
+     * batch is already underway. This must be called on the event dispatch thread, before the chat is painted, so the
+     * messages in the batch are already marked to keep their old text for that paint.
+     */
+    public void reparseIfConfigChanged()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        final ConfigEmoji emojiConfig = chat.getEmojiConfig();
+
+        if (running || (messageConfig.getTextVersion() == messageConfigVersion && emojiConfig.getTextVersion() == emojiConfigVersion))
+        {
+            return;
+        }
+
+        messageConfigVersion = messageConfig.getTextVersion();
+        emojiConfigVersion = emojiConfig.getTextVersion();
+
+        List<Message> outdated = new ArrayList<Message>();
+        for (Message msg : chat.getMessages())
+        {
+            if (msg.isTextOutdated(messageConfig, emojiConfig))
+            {
+                msg.setReparsePending(true);
+                outdated.add(msg);
+            }
+        }
+
+        if (outdated.isEmpty())
+        {
+            return;
+        }
+
+        running = true;
+
+        final Message[] batch = outdated.toArray(new Message[outdated.size()]);
+        final AtomicInteger remaining = new AtomicInteger(batch.length);
+
+        final EmojiManager emojiManager = chat.getEmojiManager();
+
+        final Runnable commit = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Message msg : batch)
+                {
+                    msg.commitPreparedText();
+                }
+                running = false;
+                chat.repaintMessages();
+            }
+        };
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            final int index = i;
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        batch[index].prepareText(emojiManager, messageConfig, emojiConfig);
+                    }
+                    catch (Exception e)
+                    {
+                        // The message will just be re-parsed on the paint thread once the batch is committed
+                        logger.error("Unable to re-parse message " + batch[index], e);
+                    }
+                    finally
+                    {
+                        if (remaining.decrementAndGet() == 0)
+                        {
+                            SwingUtilities.invokeLater(commit);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
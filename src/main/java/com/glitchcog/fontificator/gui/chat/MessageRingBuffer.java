@@ -0,0 +1,238 @@
+package com.glitchcog.fontificator.gui.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.glitchcog.fontificator.bot.Message;
+
+/**
+ * A fixed capacity queue of the messages in the chat, oldest first, backed by a ring of slots. Adding a message and
+ * evicting the oldest one are constant time, and neither blocks readers. Only one thread may modify the queue at a
+ * time, which ChatPanel ensures, but any number of threads can take snapshots at once without locking. A snapshot is
+ * an array that is shared by every reader until the queue changes, so taking one is free when nothing has been posted
+ * since the last. The slots a message leaves are cleared, so messages that are evicted, cleared or removed can be
+ * collected once nothing else holds them.
+ *
+ * @author Matt Yanos
+ */
+public class MessageRingBuffer
+{
+    private static final Message[] NO_MESSAGES = new Message[0];
+
+    /**
+     * The slots, twice the maximum size of the queue so the survivors of removeAll can be copied to the positions
+     * after the tail without overwriting any that haven't been copied yet
+     */
+    private final AtomicReferenceArray<Message> slots;
+
+    /**
+     * The maximum number of messages the queue holds before the oldest is evicted
+     */
+    private final int maxSize;
+
+    /**
+     * The position of the oldest message in the queue
+     */
+    private volatile long head;
+
+    /**
+     * The position the next message goes in
+     */
+    private volatile long tail;
+
+    /**
+     * Incremented once before and once after every modification, so it is odd while the queue is being modified, and
+     * a reader that sees the same even value before and after copying the messages knows the copy is consistent
+     */
+    private volatile long modCount;
+
+    /**
+     * The latest snapshot taken, kept to be handed out again until the queue changes
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param maxSize
+     *            The most messages the queue can hold
+     */
+    public MessageRingBuffer(int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.slots = new AtomicReferenceArray<Message>(maxSize * 2);
+        this.head = 0L;
+        this.tail = 0L;
+        this.modCount = 0L;
+        this.snapshot = new Snapshot(0L, NO_MESSAGES);
+    }
+
+    /**
+     * Add a message to the end of the queue, evicting the oldest message if the queue is full. Only one thread may
+     * modify the queue at a time.
+     *
+     * @param msg
+     * @return the message evicted to make room, or null if there was room
+     */
+    public Message add(Message msg)
+    {
+        Message evicted = null;
+        modCount++;
+        if (tail - head >= maxSize)
+        {
+            evicted = slots.get(slotIndex(head));
+            slots.set(slotIndex(head), null);
+            head++;
+        }
+        slots.set(slotIndex(tail), msg);
+        tail++;
+        modCount++;
+        return evicted;
+    }
+
+    /**
+     * Evict the oldest messages until no more than the specified number remain. Only one thread may modify the queue
+     * at a time.
+     *
+     * @param size
+     * @return the messages evicted, oldest first
+     */
+    public List<Message> trimTo(int size)
+    {
+        List<Message> evicted = new ArrayList<Message>();
+        if (size() > size)
+        {
+            final long newHead = tail - Math.max(0, size);
+            for (long p = head; p < newHead; p++)
+            {
+                evicted.add(slots.get(slotIndex(p)));
+            }
+            modCount++;
+            for (long p = head; p < newHead; p++)
+            {
+                slots.set(slotIndex(p), null);
+            }
+            head = newHead;
+            modCount++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Evict every message. Only one thread may modify the queue at a time.
+     * 
+     * @return the messages evicted, oldest first
+     */
+    public List<Message> clear()
+    {
+        return trimTo(0);
+    }
+
+    /**
+     * Remove the specified messages from wherever they are in the queue, keeping the rest in order. This is linear in
+     * the size of the queue. Only one thread may modify the queue at a time.
+     *
+     * @param removals
+     *            The messages to remove, any of which may have already left the queue
+     * @return the number of messages removed
+     */
+    public int removeAll(Set<Message> removals)
+    {
+        final long h = head;
+        final long t = tail;
+
+        modCount++;
+        // The survivors are copied to the positions starting at the tail, which are in the free half of the ring
+        long next = t;
+        for (long p = h; p < t; p++)
+        {
+            final Message msg = slots.get(slotIndex(p));
+            if (!removals.contains(msg))
+            {
+                slots.set(slotIndex(next++), msg);
+            }
+        }
+        // The survivors' old positions are in the other half of the ring from their new ones
+        for (long p = h; p < t; p++)
+        {
+            slots.set(slotIndex(p), null);
+        }
+        head = t;
+        tail = next;
+        modCount++;
+
+        return (int) ((t - h) - (next - t));
+    }
+
+    /**
+     * Get the number of messages in the queue. This is only exact on the thread modifying the queue.
+     *
+     * @return size
+     */
+    public int size()
+    {
+        return (int) Math.max(0L, tail - head);
+    }
+
+    /**
+     * Get the messages in the queue, oldest first. The array is shared with other readers, so it must not be modified.
+     * This never blocks, and it only copies the messages if the queue has changed since the last snapshot was taken.
+     *
+     * @return messages
+     */
+    public Message[] snapshot()
+    {
+        while (true)
+        {
+            final long mod = modCount;
+            if ((mod & 1L) != 0L)
+            {
+                // Mid modification, which is only ever a handful of writes
+                Thread.yield();
+                continue;
+            }
+
+            final Snapshot latest = snapshot;
+            if (latest.modCount == mod)
+            {
+                return latest.messages;
+            }
+
+            final long h = head;
+            final long t = tail;
+            Message[] messages = new Message[(int) Math.max(0L, t - h)];
+            for (int i = 0; i < messages.length; i++)
+            {
+                messages[i] = slots.get(slotIndex(h + i));
+            }
+
+            // The copy is only good if nothing was modified while making it, otherwise try again
+            if (modCount == mod)
+            {
+                snapshot = new Snapshot(mod, messages);
+                return messages;
+            }
+        }
+    }
+
+    private int slotIndex(long position)
+    {
+        return (int) (position % slots.length());
+    }
+
+    /**
+     * The messages in the queue as of one modification count, which is immutable once published
+     */
+    private static class Snapshot
+    {
+        private final long modCount;
+
+        private final Message[] messages;
+
+        private Snapshot(long modCount, Message[] messages)
+        {
+            this.modCount = modCount;
+            this.messages = messages;
+        }
+    }
+}
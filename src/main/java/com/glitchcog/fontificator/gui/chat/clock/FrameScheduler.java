@@ -0,0 +1,436 @@
+package com.glitchcog.fontificator.gui.chat.clock;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.bot.Message;
+import com.glitchcog.fontificator.config.ConfigMessage;
+import com.glitchcog.fontificator.gui.chat.ChatPanel;
+
+/**
+ * Drives everything in the chat that changes over time from a single daemon thread: rolling out messages one character
+ * at a time, removing messages as they expire, and repainting for the frames of animated emoji. Each of these is due
+ * at its own time and only the earliest is scheduled, so while no message is rolling out, none is waiting to expire and
+ * no emoji is animating, the thread sleeps until something wakes it, like a message arriving. Completed messages wait
+ * to expire in a heap ordered by when they were completed, which is also the order of their expiration deadlines, so
+ * only the deadline of the oldest one needs to be scheduled. Each heap entry holds the completion time it was added
+ * with, because a message's completion time can change while it waits, like when it's censored. An entry that no
+ * longer matches its message is put back with the new time when it comes due.
+ *
+ * @author Matt Yanos
+ */
+public class FrameScheduler
+{
+    private static final Logger logger = Logger.getLogger(FrameScheduler.class);
+
+    /**
+     * The shortest time between repaints for the frames of animated emoji, so the frames of every animated emoji on
+     * screen are drawn together rather than each one repainting the chat
+     */
+    public static final long ANIMATION_FRAME_DELAY = 20L;
+
+    /**
+     * The due time of something that isn't scheduled
+     */
+    private static final long IDLE = Long.MAX_VALUE;
+
+    /**
+     * Orders expiry entries by when their messages were completely drawn
+     */
+    private static final Comparator<ExpiryEntry> COMPLETION_ORDER = new Comparator<ExpiryEntry>()
+    {
+        @Override
+        public int compare(ExpiryEntry a, ExpiryEntry b)
+        {
+            return a.completedTime < b.completedTime ? -1 : (a.completedTime == b.completedTime ? 0 : 1);
+        }
+    };
+
+    private final ChatPanel chat;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final Runnable tick;
+
+    /**
+     * The next tick scheduled, or null if nothing is due, and the time it's scheduled for. All of the scheduling state
+     * is guarded by this object.
+     */
+    private ScheduledFuture<?> nextTick;
+    private long nextTickTime;
+
+    /**
+     * When the message rollout, the next expiration and the animation repaint are due, or IDLE
+     */
+    private long rolloutDue;
+    private long expiryDue;
+    private long animationDue;
+
+    /**
+     * When the chat was last repainted for animated emoji
+     */
+    private long lastAnimationFrame;
+
+    /**
+     * The completed messages waiting to expire, soonest first, and the current entry of each of those messages, to keep
+     * from adding one twice and to tell entries that are out of date apart. These are only kept while messages are set
+     * to expire.
+     */
+    private final PriorityQueue<ExpiryEntry> expiryHeap;
+    private final Map<Message, ExpiryEntry> expiryTracked;
+
+    public FrameScheduler(ChatPanel chat)
+    {
+        this.chat = chat;
+        this.rolloutDue = IDLE;
+        this.expiryDue = IDLE;
+        this.animationDue = IDLE;
+        this.lastAnimationFrame = 0L;
+        this.expiryHeap = new PriorityQueue<ExpiryEntry>(ConfigMessage.MAX_QUEUE_SIZE, COMPLETION_ORDER);
+        this.expiryTracked = new HashMap<Message, ExpiryEntry>();
+
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Frame Scheduler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        this.tick = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    tick();
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error updating the chat", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Start rolling out messages, if they aren't already, called whenever a message might need to be drawn, like when
+     * one arrives or is uncensored. The rollout goes idle again on its own once every message is completely drawn.
+     */
+    public synchronized void startRollout()
+    {
+        if (rolloutDue == IDLE)
+        {
+            rolloutDue = now();
+            reschedule();
+        }
+    }
+
+    /**
+     * Restart rolling out messages right away, called when the message speed is changed so the new delay takes effect
+     * immediately
+     */
+    public synchronized void restartRollout()
+    {
+        rolloutDue = now();
+        reschedule();
+    }
+
+    /**
+     * Give every completed message in the chat that isn't waiting to expire yet an expiration deadline, and schedule
+     * the soonest one, if messages are set to expire. This is called when the expiration time changes and whenever a
+     * message might have been completed without being rolled out, like by being censored.
+     */
+    public synchronized void startExpiry()
+    {
+        if (!chat.getMessageConfig().isMessageExpirable())
+        {
+            stopExpiry();
+            return;
+        }
+
+        for (Message msg : chat.getMessages())
+        {
+            if (msg.isCompletelyDrawn() && !expiryTracked.containsKey(msg))
+            {
+                addExpiry(msg);
+            }
+        }
+        scheduleExpiry();
+    }
+
+    /**
+     * Stop expiring messages, called when messages are set to never expire
+     */
+    public synchronized void stopExpiry()
+    {
+        expiryHeap.clear();
+        expiryTracked.clear();
+        expiryDue = IDLE;
+        reschedule();
+    }
+
+    /**
+     * Ask for the chat to be repainted because a frame of an animated emoji is ready. Any number of these requests
+     * between two animation frames result in a single repaint.
+     */
+    public synchronized void requestAnimationFrame()
+    {
+        if (animationDue == IDLE)
+        {
+            animationDue = Math.max(now(), lastAnimationFrame + ANIMATION_FRAME_DELAY);
+            reschedule();
+        }
+    }
+
+    /**
+     * Run whatever is due, then schedule whatever is due next, if anything
+     */
+    private void tick()
+    {
+        final long now;
+        final boolean rollout;
+        final boolean expiry;
+        final boolean animation;
+        synchronized (this)
+        {
+            nextTick = null;
+            now = now();
+            rollout = rolloutDue <= now;
+            expiry = expiryDue <= now;
+            animation = animationDue <= now;
+            if (rollout)
+            {
+                rolloutDue = IDLE;
+            }
+            if (expiry)
+            {
+                expiryDue = IDLE;
+            }
+            if (animation)
+            {
+                animationDue = IDLE;
+                lastAnimationFrame = now;
+            }
+        }
+
+        final boolean rolloutContinues = rollout && advanceRollout();
+        if (expiry)
+        {
+            expireMessages();
+        }
+        if (animation)
+        {
+            chat.repaintAnimation();
+        }
+
+        synchronized (this)
+        {
+            if (rolloutContinues)
+            {
+                rolloutDue = Math.min(rolloutDue, now + chat.getMessageConfig().getMessageDelay());
+            }
+            reschedule();
+        }
+    }
+
+    /**
+     * Move the draw cursor of the first message that isn't completely drawn yet
+     *
+     * @return whether a message is still being drawn
+     */
+    private boolean advanceRollout()
+    {
+        final ConfigMessage messageConfig = chat.getMessageConfig();
+        for (Message msg : chat.getMessages())
+        {
+            if (msg.isCompletelyDrawn() || (msg.isCensored() && chat.isCensorshipEnabled()))
+            {
+                continue;
+            }
+            final float fromCursor = msg.getDrawCursor();
+            msg.incrementDrawCursor(chat.getEmojiManager(), messageConfig, chat.getEmojiConfig());
+            chat.repaintRevealed(msg, fromCursor, msg.getDrawCursor());
+            if (msg.isCompletelyDrawn())
+            {
+                trackExpiry(msg);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give a message that was just completed an expiration deadline, if messages are set to expire
+     *
+     * @param msg
+     */
+    private synchronized void trackExpiry(Message msg)
+    {
+        if (chat.getMessageConfig().isMessageExpirable() && !expiryTracked.containsKey(msg))
+        {
+            addExpiry(msg);
+            scheduleExpiry();
+        }
+    }
+
+    /**
+     * Stop waiting for the specified messages to expire, because they have been removed from the chat some other way,
+     * like by being cleared or pushed out by newer messages
+     * 
+     * @param removed
+     */
+    public synchronized void untrackExpiry(Collection<Message> removed)
+    {
+        if (removed.isEmpty() || expiryTracked.isEmpty())
+        {
+            return;
+        }
+
+        Set<ExpiryEntry> entries = new HashSet<ExpiryEntry>();
+        for (Message msg : removed)
+        {
+            ExpiryEntry entry = expiryTracked.remove(msg);
+            if (entry != null)
+            {
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty())
+        {
+            expiryHeap.removeAll(entries);
+            scheduleExpiry();
+        }
+    }
+
+    /**
+     * Put a completed message on the heap with the time it was completed. This must be called holding the lock on this
+     * object.
+     * 
+     * @param msg
+     */
+    private void addExpiry(Message msg)
+    {
+        ExpiryEntry entry = new ExpiryEntry(msg, msg.getCompletedTime());
+        expiryTracked.put(msg, entry);
+        expiryHeap.add(entry);
+    }
+
+    /**
+     * Take every message whose deadline has passed off of the heap and have the chat remove them, then schedule the
+     * next deadline
+     */
+    private void expireMessages()
+    {
+        final Set<Message> expired = new HashSet<Message>();
+        synchronized (this)
+        {
+            final int expirationTime = chat.getMessageConfig().getExpirationTime();
+            final long currentTime = System.currentTimeMillis();
+            while (!expiryHeap.isEmpty() && expiryHeap.peek().getDeadline(expirationTime) <= currentTime)
+            {
+                ExpiryEntry entry = expiryHeap.poll();
+                expiryTracked.remove(entry.msg);
+                if (entry.completedTime == entry.msg.getCompletedTime())
+                {
+                    expired.add(entry.msg);
+                }
+                else if (entry.msg.isCompletelyDrawn())
+                {
+                    // It was completed again since it was added, so it waits for its new deadline
+                    addExpiry(entry.msg);
+                }
+            }
+            scheduleExpiry();
+        }
+
+        if (!expired.isEmpty())
+        {
+            chat.expireMessages(expired);
+        }
+    }
+
+    /**
+     * Schedule the expiry for the deadline of the message at the top of the heap, or nothing if the heap is empty. This
+     * must be called holding the lock on this object.
+     */
+    private void scheduleExpiry()
+    {
+        if (expiryHeap.isEmpty() || !chat.getMessageConfig().isMessageExpirable())
+        {
+            expiryDue = IDLE;
+        }
+        else
+        {
+            // Deadlines are wall clock times, but everything else here is scheduled on the monotonic clock
+            final long deadline = expiryHeap.peek().getDeadline(chat.getMessageConfig().getExpirationTime());
+            expiryDue = now() + Math.max(0L, deadline - System.currentTimeMillis());
+        }
+        reschedule();
+    }
+
+    /**
+     * Make sure the next tick is scheduled for the earliest due time. This must be called holding the lock on this
+     * object.
+     */
+    private void reschedule()
+    {
+        final long due = Math.min(rolloutDue, Math.min(expiryDue, animationDue));
+        if (nextTick != null)
+        {
+            if (nextTickTime <= due)
+            {
+                return;
+            }
+            nextTick.cancel(false);
+            nextTick = null;
+        }
+        if (due != IDLE)
+        {
+            nextTickTime = due;
+            nextTick = executor.schedule(tick, Math.max(0L, due - now()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * A message waiting to expire, along with the time it was completed when it started waiting, which is what the
+     * heap is ordered by, so it can't change while the entry is on the heap
+     */
+    private static class ExpiryEntry
+    {
+        private final Message msg;
+
+        private final long completedTime;
+
+        private ExpiryEntry(Message msg, long completedTime)
+        {
+            this.msg = msg;
+            this.completedTime = completedTime;
+        }
+
+        private long getDeadline(int expirationTime)
+        {
+            return Message.getExpirationDeadline(completedTime, expirationTime);
+        }
+    }
+}
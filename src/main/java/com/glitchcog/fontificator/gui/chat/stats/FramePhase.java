@@ -0,0 +1,30 @@
+package com.glitchcog.fontificator.gui.chat.stats;
+
+/**
+ * The parts of painting a frame of the chat that are timed separately
+ * 
+ * @author Matt Yanos
+ */
+public enum FramePhase
+{
+    // @formatter:off
+    BACKGROUND("Background"), 
+    BORDER("Border"), 
+    LAYOUT("Layout"), 
+    GLYPHS("Glyph Blit"), 
+    EMOJI("Emoji Draw");
+    // @formatter:on
+
+    private final String label;
+
+    private FramePhase(String label)
+    {
+        this.label = label;
+    }
+
+    @Override
+    public String toString()
+    {
+        return label;
+    }
+}
@@ -0,0 +1,398 @@
+package com.glitchcog.fontificator.gui.chat.stats;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.glitchcog.fontificator.emoji.EmojiLoader;
+import com.glitchcog.fontificator.gui.chat.ChatPanel;
+import com.glitchcog.fontificator.gui.chat.ChatRenderer;
+
+/**
+ * Keeps track of how long the chat takes to paint and what it's holding onto while it does: the time spent in each
+ * phase of a frame, how often repaints are asked for compared to how often the chat is actually painted, how long it
+ * takes a message to show up once it's received, and the size of the sprite caches, the emoji loader and the message
+ * queue. These are registered with the platform MBean server to be watched from a JMX console, and can be drawn over
+ * the corner of the chat while debugging. Frames are recorded on the event dispatch thread, and the statistics can be
+ * read from any thread.
+ *
+ * @author Matt Yanos
+ */
+public class FrameStats implements FrameStatsMBean
+{
+    private static final Logger logger = Logger.getLogger(FrameStats.class);
+
+    /**
+     * The name the statistics are registered under with the platform MBean server
+     */
+    public static final String OBJECT_NAME = "com.glitchcog.fontificator:type=FrameStats";
+
+    /**
+     * How much each new frame counts toward the averages, with the rest carried over from the frames before it
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * The shortest time the repaint and paint rates are measured over
+     */
+    private static final long RATE_WINDOW_MILLIS = 1000L;
+
+    /**
+     * A frame that takes longer than this misses a refresh of a 60 Hz display, so it counts as dropped
+     */
+    private static final long FRAME_BUDGET_NANOS = 1000000000L / 60L;
+
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 0xC0);
+
+    private static final Color HUD_TEXT = new Color(0x99FF88);
+
+    /**
+     * The distance between the stats display and the corner of the chat, and between its edge and its text
+     */
+    private static final int HUD_MARGIN = 4;
+
+    private final ChatPanel chat;
+
+    /**
+     * Everything below is guarded by this object
+     */
+    private long frameCount;
+    private double lastFrameMillis;
+    private double averageFrameMillis;
+    private double maxFrameMillis;
+    private final double[] averagePhaseMillis;
+    private long droppedFrames;
+
+    /**
+     * The time between receiving a message and painting its first glyph
+     */
+    private long latencyCount;
+    private double averageLatencyMillis;
+    private double maxLatencyMillis;
+
+    /**
+     * The repaint requests and paints counted since the start of the current rate window, and the rates measured over
+     * the last complete window
+     */
+    private long windowStart;
+    private int windowRepaints;
+    private int windowPaints;
+    private double repaintRate;
+    private double paintRate;
+    private long coalescedRepaints;
+
+    /**
+     * The sprite cache sizes as of the last frame. The sprite caches are only safe to look at on the paint thread, so
+     * they're sampled there rather than when they're read.
+     */
+    private int colorCacheCount;
+    private int glyphAtlasCount;
+
+    private ObjectName registeredName;
+
+    public FrameStats(ChatPanel chat)
+    {
+        this.chat = chat;
+        this.averagePhaseMillis = new double[FramePhase.values().length];
+        this.windowStart = now();
+    }
+
+    /**
+     * Register the statistics with the platform MBean server so they can be watched over JMX. Failing to register only
+     * means they can't be, so it is logged rather than thrown.
+     */
+    public synchronized void register()
+    {
+        if (registeredName != null)
+        {
+            return;
+        }
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            registeredName = name;
+        }
+        catch (JMException e)
+        {
+            logger.warn("Unable to register the chat frame statistics for JMX", e);
+        }
+    }
+
+    /**
+     * Count a request to repaint the chat, which may come from any thread
+     */
+    public synchronized void recordRepaintRequest()
+    {
+        rollRateWindow();
+        windowRepaints++;
+    }
+
+    /**
+     * Record a frame that was just painted. This must be called on the event dispatch thread.
+     *
+     * @param renderer
+     *            The renderer that painted the frame, to get the time spent in each phase from
+     * @param frameNanos
+     *            The time the whole frame took
+     */
+    public synchronized void recordFrame(ChatRenderer renderer, long frameNanos)
+    {
+        rollRateWindow();
+        windowPaints++;
+
+        if (frameNanos > FRAME_BUDGET_NANOS)
+        {
+            droppedFrames++;
+        }
+        lastFrameMillis = toMillis(frameNanos);
+        averageFrameMillis = smooth(averageFrameMillis, lastFrameMillis);
+        maxFrameMillis = Math.max(maxFrameMillis, lastFrameMillis);
+        for (FramePhase phase : FramePhase.values())
+        {
+            averagePhaseMillis[phase.ordinal()] = smooth(averagePhaseMillis[phase.ordinal()], toMillis(renderer.getFramePhaseNanos(phase)));
+        }
+        frameCount++;
+
+        final int firstPaints = renderer.getFrameFirstPaintCount();
+        if (firstPaints > 0)
+        {
+            final double frameLatency = toMillis(renderer.getFrameFirstPaintTotalNanos()) / firstPaints;
+            averageLatencyMillis = latencyCount == 0L ? frameLatency : smooth(averageLatencyMillis, frameLatency);
+            maxLatencyMillis = Math.max(maxLatencyMillis, toMillis(renderer.getFrameFirstPaintMaxNanos()));
+            latencyCount += firstPaints;
+        }
+
+        colorCacheCount = renderer.getFont().getColorCacheCount();
+        glyphAtlasCount = renderer.getFont().getGlyphAtlasCount();
+    }
+
+    /**
+     * Draw the statistics in the top left corner of the chat
+     *
+     * @param g2d
+     * @return the region the statistics were drawn over
+     */
+    public Rectangle paintHud(Graphics2D g2d)
+    {
+        List<String> lines = new ArrayList<String>();
+        synchronized (this)
+        {
+            rollRateWindow();
+            lines.add(String.format("Frame %6.2f ms avg %6.2f max", averageFrameMillis, maxFrameMillis));
+            for (FramePhase phase : FramePhase.values())
+            {
+                lines.add(String.format("%-17s %6.2f ms", phase, averagePhaseMillis[phase.ordinal()]));
+            }
+            lines.add(String.format("Repaints %5.1f/s Paints %5.1f/s", repaintRate, paintRate));
+            lines.add(String.format("Coalesced %d Dropped %d", coalescedRepaints, droppedFrames));
+            lines.add(String.format("Latency %7.1f ms avg %7.1f max", averageLatencyMillis, maxLatencyMillis));
+            lines.add(String.format("Color Cache %d Glyph Atlas %d", colorCacheCount, glyphAtlasCount));
+        }
+        lines.add(String.format("Emoji Loading %d", getEmojiLoadsInFlight()));
+        lines.add(String.format("Message Queue %d", getMessageQueueDepth()));
+
+        g2d.setFont(HUD_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int width = 0;
+        for (String line : lines)
+        {
+            width = Math.max(width, fm.stringWidth(line));
+        }
+        Rectangle bounds = new Rectangle(HUD_MARGIN, HUD_MARGIN, width + HUD_MARGIN * 2, lines.size() * fm.getHeight() + HUD_MARGIN * 2);
+
+        g2d.setColor(HUD_BACKGROUND);
+        g2d.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        g2d.setColor(HUD_TEXT);
+        int y = bounds.y + HUD_MARGIN + fm.getAscent();
+        for (String line : lines)
+        {
+            g2d.drawString(line, bounds.x + HUD_MARGIN, y);
+            y += fm.getHeight();
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Start a new rate window if the current one is long enough to measure the rates over. This must be called holding
+     * the lock on this object.
+     */
+    private void rollRateWindow()
+    {
+        final long now = now();
+        final long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_MILLIS)
+        {
+            repaintRate = windowRepaints * 1000.0 / elapsed;
+            paintRate = windowPaints * 1000.0 / elapsed;
+            // Requests for repaints that arrive before the last one is painted are merged into it by Swing
+            coalescedRepaints += Math.max(0, windowRepaints - windowPaints);
+            windowRepaints = 0;
+            windowPaints = 0;
+            windowStart = now;
+        }
+    }
+
+    private static double smooth(double average, double value)
+    {
+        return average + (value - average) * SMOOTHING;
+    }
+
+    private static double toMillis(long nanos)
+    {
+        return nanos / 1000000.0;
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public synchronized long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized double getLastFrameMillis()
+    {
+        return lastFrameMillis;
+    }
+
+    @Override
+    public synchronized double getAverageFrameMillis()
+    {
+        return averageFrameMillis;
+    }
+
+    @Override
+    public synchronized double getMaxFrameMillis()
+    {
+        return maxFrameMillis;
+    }
+
+    @Override
+    public synchronized long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    @Override
+    public synchronized double getBackgroundMillis()
+    {
+        return averagePhaseMillis[FramePhase.BACKGROUND.ordinal()];
+    }
+
+    @Override
+    public synchronized double getBorderMillis()
+    {
+        return averagePhaseMillis[FramePhase.BORDER.ordinal()];
+    }
+
+    @Override
+    public synchronized double getLayoutMillis()
+    {
+        return averagePhaseMillis[FramePhase.LAYOUT.ordinal()];
+    }
+
+    @Override
+    public synchronized double getGlyphBlitMillis()
+    {
+        return averagePhaseMillis[FramePhase.GLYPHS.ordinal()];
+    }
+
+    @Override
+    public synchronized double getEmojiDrawMillis()
+    {
+        return averagePhaseMillis[FramePhase.EMOJI.ordinal()];
+    }
+
+    @Override
+    public synchronized double getRepaintRequestRate()
+    {
+        rollRateWindow();
+        return repaintRate;
+    }
+
+    @Override
+    public synchronized double getPaintRate()
+    {
+        rollRateWindow();
+        return paintRate;
+    }
+
+    @Override
+    public synchronized long getCoalescedRepaints()
+    {
+        rollRateWindow();
+        return coalescedRepaints;
+    }
+
+    @Override
+    public synchronized long getLatencyCount()
+    {
+        return latencyCount;
+    }
+
+    @Override
+    public synchronized double getAverageLatencyMillis()
+    {
+        return averageLatencyMillis;
+    }
+
+    @Override
+    public synchronized double getMaxLatencyMillis()
+    {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public synchronized int getColorCacheCount()
+    {
+        return colorCacheCount;
+    }
+
+    @Override
+    public synchronized int getGlyphAtlasCount()
+    {
+        return glyphAtlasCount;
+    }
+
+    @Override
+    public int getEmojiLoadsInFlight()
+    {
+        EmojiLoader loader = chat.getEmojiManager().getLoader();
+        return loader == null ? 0 : loader.getInFlightCount();
+    }
+
+    @Override
+    public int getMessageQueueDepth()
+    {
+        return chat.getMessages().length;
+    }
+
+    @Override
+    public synchronized void resetMaximums()
+    {
+        maxFrameMillis = 0.0;
+        maxLatencyMillis = 0.0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.glitchcog.fontificator.gui.chat.stats;
+
+/**
+ * The frame statistics of the chat as exposed over JMX. Times are in milliseconds, averaged over recent frames unless
+ * noted otherwise, and rates are per second.
+ * 
+ * @author Matt Yanos
+ */
+public interface FrameStatsMBean
+{
+    public long getFrameCount();
+
+    public double getLastFrameMillis();
+
+    public double getAverageFrameMillis();
+
+    public double getMaxFrameMillis();
+
+    /**
+     * Get the number of frames that took too long to paint to keep up with a 60 Hz display
+     */
+    public long getDroppedFrames();
+
+    public double getBackgroundMillis();
+
+    public double getBorderMillis();
+
+    public double getLayoutMillis();
+
+    public double getGlyphBlitMillis();
+
+    public double getEmojiDrawMillis();
+
+    public double getRepaintRequestRate();
+
+    public double getPaintRate();
+
+    /**
+     * Get the number of repaint requests that were merged into another repaint instead of being painted on their own
+     */
+    public long getCoalescedRepaints();
+
+    /**
+     * Get the number of messages painted, which the latencies are measured from
+     */
+    public long getLatencyCount();
+
+    /**
+     * Get the time between receiving a message and painting its first glyph
+     */
+    public double getAverageLatencyMillis();
+
+    public double getMaxLatencyMillis();
+
+    public int getColorCacheCount();
+
+    public int getGlyphAtlasCount();
+
+    public int getEmojiLoadsInFlight();
+
+    public int getMessageQueueDepth();
+
+    /**
+     * Start tracking the maximum frame time and latency over again
+     */
+    public void resetMaximums();
+}
@@ -106,7 +106,7 @@ public class CharacterPicker extends JDialog
         charButtons[selectedChar - 32].setSelected(true);
         String label = "'" + Character.toString(selectedChar) + "' (ASCII " + (int)selectedChar + ")";
         selectionLabel.setText(baseLabelText + label);
-        chat.repaint();
+        chat.invalidateAndRepaint();
     }
 
     public char getSelectedChar()
@@ -4,7 +4,6 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Desktop;
 import java.awt.Event;
-import java.awt.Graphics;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
@@ -386,7 +385,7 @@ public class ControlWindow extends JDialog
                 {
                     JCheckBoxMenuItem checkBox = (JCheckBoxMenuItem) e.getSource();
                     controlTabs.setAntiAlias(checkBox.isSelected());
-                    chatWindow.getChatPanel().repaint();
+                    chatWindow.getChatPanel().invalidateAndRepaint();
                 }
                 else if (strViewTop.equals(mi.getText()))
                 {
@@ -636,7 +635,7 @@ public class ControlWindow extends JDialog
             {
                 fProps.loadDefaultValues(overrideExistingValues);
                 controlTabs.refreshUiFromConfig(fProps);
-                chatWindow.getChatPanel().repaint();
+                chatWindow.getChatPanel().invalidateAndRepaint();
             }
         }
     }
@@ -658,7 +657,7 @@ public class ControlWindow extends JDialog
                         throw new Exception("Configuration file open error");
                     }
                     controlTabs.refreshUiFromConfig(fProps);
-                    chatWindow.getChatPanel().repaint();
+                    chatWindow.getChatPanel().invalidateAndRepaint();
                 }
                 catch (Exception ex)
                 {
@@ -690,7 +689,7 @@ public class ControlWindow extends JDialog
                 ChatWindow.popup.handleProblem("Unable to load preset " + presetName + " (" + presetFilename + ")");
             }
             controlTabs.refreshUiFromConfig(fProps);
-            chatWindow.getChatPanel().repaint();
+            chatWindow.getChatPanel().invalidateAndRepaint();
         }
     }
 
@@ -790,8 +789,10 @@ public class ControlWindow extends JDialog
         // Take the screenshot before the save file chooser is shown
         ChatPanel chat = chatWindow.getChatPanel();
         BufferedImage chatImage = new BufferedImage(chat.getWidth(), chat.getHeight(), screenshotOptions.isTransparencyEnabled() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
-        Graphics chatGraphics = chatImage.getGraphics();
-        chat.paint(chatGraphics);
+        if (chat.isLoaded())
+        {
+            chat.getRenderer().render(chat.getMessages(), chatImage);
+        }
 
         final boolean chromaEnabled = Boolean.toString(true).equalsIgnoreCase(fProps.getProperty(FontificatorProperties.KEY_CHAT_CHROMA_ENABLED));
         if (screenshotOptions.isTransparencyEnabled() && chromaEnabled)
@@ -41,7 +41,7 @@ public class MessageCheckListModel extends DefaultTableModel
     @Override
     public int getRowCount()
     {
-        return chat == null ? 0 : chat.getMessageQueue().size();
+        return chat == null ? 0 : chat.getMessages().length;
     }
 
     @Override
@@ -94,13 +94,13 @@ public class MessageCheckListModel extends DefaultTableModel
             msg.setCensored((Boolean)(aValue == null ? false : aValue), chat.isCensorshipEnabled());
             msg.setManualCensorship(true);
             list.revalidateTable();
-            chat.repaint();
+            chat.invalidateAndRepaint();
             chat.initMessageRollout();
         }
     }
 
     private Message[] getMessages()
     {
-        return chat.getMessageQueue().toArray(new Message[chat.getMessageQueue().size()]);
+        return chat.getMessages();
     }
 }
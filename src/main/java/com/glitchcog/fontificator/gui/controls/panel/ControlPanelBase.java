@@ -155,7 +155,7 @@ public abstract class ControlPanelBase extends JPanel
             try
             {
                 fillConfigFromInput();
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
             catch (Exception ex)
             {
@@ -258,7 +258,7 @@ public class ControlPanelChat extends ControlPanelBase
                 {
                     config.setChromaInvert(chromaInvertBox.isSelected());
                 }
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         };
 
@@ -310,7 +310,7 @@ public class ControlPanelChat extends ControlPanelBase
                     if (report.isErrorFree())
                     {
                         inputToConfigChromaBorders();
-                        chat.repaint();
+                        chat.invalidateAndRepaint();
                     }
                     else
                     {
@@ -332,7 +332,7 @@ public class ControlPanelChat extends ControlPanelBase
             public void stateChanged(ChangeEvent e)
             {
                 config.setChromaCornerRadius(chromaCornerSlider.getValue());
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -134,7 +134,7 @@ public class ControlPanelColor extends ControlPanelBase
                 {
                     config.setColorMessage(source.isSelected());
                 }
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         };
 
@@ -6,10 +6,14 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.List;
 import java.util.Random;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JToggleButton;
@@ -20,10 +24,14 @@ import javax.swing.event.ChangeListener;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.bot.ChatLoadGenerator;
+import com.glitchcog.fontificator.bot.ChatViewerBot;
+import com.glitchcog.fontificator.bot.ingest.IngestStageMBean;
 import com.glitchcog.fontificator.config.FontificatorProperties;
 import com.glitchcog.fontificator.config.loadreport.LoadConfigReport;
 import com.glitchcog.fontificator.gui.DebugAppender;
 import com.glitchcog.fontificator.gui.chat.ChatWindow;
+import com.glitchcog.fontificator.gui.chat.stats.FrameStats;
 import com.glitchcog.fontificator.gui.component.ColorButton;
 import com.glitchcog.fontificator.gui.component.LabeledSlider;
 import com.glitchcog.fontificator.gui.controls.ControlWindow;
@@ -36,6 +44,8 @@ import com.glitchcog.fontificator.sprite.SpriteFont;
  */
 public class ControlPanelDebug extends ControlPanelBase
 {
+    private static final Logger logger = Logger.getLogger(ControlPanelDebug.class);
+
     private static final long serialVersionUID = 1L;
 
     /**
@@ -61,6 +71,43 @@ public class ControlPanelDebug extends ControlPanelBase
 
     private ColorButton borderGridColorButton;
 
+    private JCheckBox compositingBox;
+
+    private JCheckBox drawFrameStatsBox;
+
+    private ChatViewerBot bot;
+
+    /**
+     * Posts tagged IRC lines through the bot at raid rates
+     */
+    private ChatLoadGenerator loadGenerator;
+
+    /**
+     * The dropped and coalesced counts of each ingest stage when the load generator was started, so only what the load
+     * caused is reported when it stops
+     */
+    private long[] startDroppedCounts;
+
+    private long[] startCoalescedCounts;
+
+    private JToggleButton generateLoadButton;
+
+    private JButton corpusButton;
+
+    private JLabel corpusLabel;
+
+    private JFileChooser corpusChooser;
+
+    private LabeledSlider loadRateSlider;
+
+    private LabeledSlider burstSlider;
+
+    private LabeledSlider emoteSlider;
+
+    private LabeledSlider badgeSlider;
+
+    private LabeledSlider colorCountSlider;
+
     private Random rnd;
 
     private Timer postClock;
@@ -174,12 +221,14 @@ public class ControlPanelDebug extends ControlPanelBase
      * @param fProps
      * @param chatWindow
      * @param ctrlWindow
+     * @param bot
      */
-    public ControlPanelDebug(FontificatorProperties fProps, ChatWindow chatWindow, ControlWindow ctrlWindow)
+    public ControlPanelDebug(FontificatorProperties fProps, ChatWindow chatWindow, ControlWindow ctrlWindow, ChatViewerBot bot)
     {
         super("Debug", fProps, chatWindow, new LogBox());
         this.debugging = false;
         this.ctrlWindow = ctrlWindow;
+        this.bot = bot;
         rnd = new Random();
         debugAppender = new DebugAppender(logBox);
     }
@@ -194,6 +243,27 @@ public class ControlPanelDebug extends ControlPanelBase
         return isDebugging() && drawBorderGridBox.isSelected();
     }
 
+    /**
+     * Get whether the chat should be painted by compositing offscreen layers rather than drawing everything directly
+     * each frame. This is always on unless it is switched off while debugging, to compare the two.
+     * 
+     * @return compositing
+     */
+    public boolean isCompositing()
+    {
+        return !isDebugging() || compositingBox.isSelected();
+    }
+
+    /**
+     * Get whether the frame statistics should be drawn over the corner of the chat
+     * 
+     * @return drawFrameStats
+     */
+    public boolean isDrawFrameStats()
+    {
+        return isDebugging() && drawFrameStatsBox.isSelected();
+    }
+
     public Color getTextGridColor()
     {
         return textGridColorButton.getColor();
@@ -268,6 +338,10 @@ public class ControlPanelDebug extends ControlPanelBase
         textGridColorButton = new ColorButton("Text Grid Color", new Color(0x99FF88), "Color of the border grid", this);
         drawBorderGridBox = new JCheckBox("Draw Border Grid");
         borderGridColorButton = new ColorButton("Border Grid Color", new Color(0x9988FF), "Color of the border grid", this);
+        compositingBox = new JCheckBox("Composite Offscreen Layers", true);
+        drawFrameStatsBox = new JCheckBox("Draw Frame Stats");
+
+        buildLoadGenerator();
 
         ActionListener refreshListener = new ActionListener()
         {
@@ -276,13 +350,15 @@ public class ControlPanelDebug extends ControlPanelBase
             {
                 if (chat != null)
                 {
-                    chat.repaint();
+                    chat.invalidateAndRepaint();
                 }
             }
         };
 
         drawTextGridBox.addActionListener(refreshListener);
         drawBorderGridBox.addActionListener(refreshListener);
+        compositingBox.addActionListener(refreshListener);
+        drawFrameStatsBox.addActionListener(refreshListener);
 
         JPanel topPanel = new JPanel(new GridBagLayout());
         gbc.gridx = 0;
@@ -304,6 +380,9 @@ public class ControlPanelDebug extends ControlPanelBase
         add(topPanel, gbc);
         gbc.gridy++;
 
+        add(buildLoadPanel(), gbc);
+        gbc.gridy++;
+
         gbc.gridwidth = 1;
 
         gbc.weightx = 0.5;
@@ -318,6 +397,12 @@ public class ControlPanelDebug extends ControlPanelBase
         gbc.gridy++;
 
         gbc.gridx = 0;
+        add(compositingBox, gbc);
+        gbc.gridx += 2;
+        add(drawFrameStatsBox, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+
         gbc.gridwidth = 4;
 
         gbc.weighty = 0.1;
@@ -335,6 +420,191 @@ public class ControlPanelDebug extends ControlPanelBase
         add(logBox, gbc);
     }
 
+    /**
+     * Create the load generator and the inputs that control it
+     */
+    private void buildLoadGenerator()
+    {
+        loadGenerator = new ChatLoadGenerator(bot);
+
+        generateLoadButton = new JToggleButton("Generate Load");
+        corpusButton = new JButton("Corpus File");
+        corpusLabel = new JLabel("Synthetic Lines");
+        corpusChooser = new JFileChooser();
+        loadRateSlider = new LabeledSlider("Load Rate ", " lines / s", 1, 5000, 100, 4);
+        burstSlider = new LabeledSlider("Burst ", " lines / " + (ChatLoadGenerator.BURST_PERIOD_MILLIS / 1000L) + " s", 0, 5000, 0, 4);
+        emoteSlider = new LabeledSlider("Emotes ", "%", 0, 100, 20, 3);
+        badgeSlider = new LabeledSlider("Badges ", "%", 0, 100, 30, 3);
+        colorCountSlider = new LabeledSlider("Colors ", "", 1, 1000, 50, 4);
+
+        generateLoadButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (generateLoadButton.isSelected())
+                {
+                    startLoad();
+                }
+                else
+                {
+                    stopLoad();
+                }
+            }
+        });
+
+        corpusButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if (corpusChooser.showOpenDialog(ControlPanelDebug.this) == JFileChooser.APPROVE_OPTION)
+                {
+                    File file = corpusChooser.getSelectedFile();
+                    try
+                    {
+                        final int lineCount = loadGenerator.loadCorpus(file);
+                        corpusLabel.setText(file.getName() + " (" + lineCount + " lines)");
+                    }
+                    catch (Exception ex)
+                    {
+                        logger.error("Unable to read corpus file " + file.getName(), ex);
+                        loadGenerator.clearCorpus();
+                        corpusLabel.setText("Synthetic Lines");
+                    }
+                }
+                else
+                {
+                    loadGenerator.clearCorpus();
+                    corpusLabel.setText("Synthetic Lines");
+                }
+            }
+        });
+
+        ChangeListener loadListener = new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                loadGenerator.setLinesPerSecond(loadRateSlider.getValue());
+                loadGenerator.setBurstSize(burstSlider.getValue());
+                loadGenerator.setEmotePercent(emoteSlider.getValue());
+                loadGenerator.setBadgePercent(badgeSlider.getValue());
+                loadGenerator.setColorCount(colorCountSlider.getValue());
+            }
+        };
+        loadListener.stateChanged(null);
+
+        loadRateSlider.addChangeListener(loadListener);
+        burstSlider.addChangeListener(loadListener);
+        emoteSlider.addChangeListener(loadListener);
+        badgeSlider.addChangeListener(loadListener);
+        colorCountSlider.addChangeListener(loadListener);
+    }
+
+    /**
+     * Lay out the load generator inputs
+     * 
+     * @return load panel
+     */
+    private JPanel buildLoadPanel()
+    {
+        JPanel loadPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints lgbc = new GridBagConstraints();
+        lgbc.gridx = 0;
+        lgbc.gridy = 0;
+        lgbc.weightx = 0.0;
+        lgbc.fill = GridBagConstraints.NONE;
+        loadPanel.add(generateLoadButton, lgbc);
+        lgbc.gridx++;
+        loadPanel.add(corpusButton, lgbc);
+        lgbc.gridx++;
+        lgbc.gridwidth = 2;
+        lgbc.weightx = 1.0;
+        lgbc.fill = GridBagConstraints.HORIZONTAL;
+        loadPanel.add(corpusLabel, lgbc);
+        lgbc.gridy++;
+
+        lgbc.gridx = 0;
+        lgbc.gridwidth = 2;
+        lgbc.weightx = 0.5;
+        loadPanel.add(loadRateSlider, lgbc);
+        lgbc.gridx += 2;
+        loadPanel.add(burstSlider, lgbc);
+        lgbc.gridy++;
+
+        JPanel mixPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints mgbc = new GridBagConstraints();
+        mgbc.gridy = 0;
+        mgbc.weightx = 1.0;
+        mgbc.fill = GridBagConstraints.HORIZONTAL;
+        mixPanel.add(emoteSlider, mgbc);
+        mixPanel.add(badgeSlider, mgbc);
+        mixPanel.add(colorCountSlider, mgbc);
+
+        lgbc.gridx = 0;
+        lgbc.gridwidth = 4;
+        lgbc.weightx = 1.0;
+        loadPanel.add(mixPanel, lgbc);
+
+        return loadPanel;
+    }
+
+    /**
+     * Start generating load, unless the bot is connected, in which case the generated lines would be mixed in with real
+     * ones coming in on the bot's own thread
+     */
+    private void startLoad()
+    {
+        if (bot.isConnected())
+        {
+            logBox.log("Disconnect from the channel before generating load");
+            generateLoadButton.setSelected(false);
+            return;
+        }
+        if (chat != null)
+        {
+            chat.getFrameStats().resetMaximums();
+        }
+        List<IngestStageMBean> stages = bot.getPipeline().getStages();
+        startDroppedCounts = new long[stages.size()];
+        startCoalescedCounts = new long[stages.size()];
+        for (int i = 0; i < stages.size(); i++)
+        {
+            startDroppedCounts[i] = stages.get(i).getDroppedCount();
+            startCoalescedCounts[i] = stages.get(i).getCoalescedCount();
+        }
+        loadGenerator.start();
+    }
+
+    /**
+     * Stop generating load and report how the chat held up
+     */
+    private void stopLoad()
+    {
+        if (!loadGenerator.isRunning())
+        {
+            return;
+        }
+        loadGenerator.stop();
+
+        final long posted = loadGenerator.getPostedCount();
+        final long elapsed = Math.max(1L, loadGenerator.getElapsedMillis());
+        logBox.log(String.format("Load generator posted %d lines in %.1f s (%.1f lines / s)", posted, elapsed / 1000.0, posted * 1000.0 / elapsed));
+        List<IngestStageMBean> stages = bot.getPipeline().getStages();
+        for (int i = 0; i < stages.size(); i++)
+        {
+            IngestStageMBean stage = stages.get(i);
+            logBox.log(String.format("%s stage dropped %d, coalesced %d", stage.getName(), stage.getDroppedCount() - startDroppedCounts[i], stage.getCoalescedCount() - startCoalescedCounts[i]));
+        }
+        if (chat != null)
+        {
+            FrameStats stats = chat.getFrameStats();
+            logBox.log(String.format("Frames %d, frames over budget %d, repaints coalesced %d, frame %.2f ms avg %.2f ms max", stats.getFrameCount(), stats.getDroppedFrames(), stats.getCoalescedRepaints(), stats.getAverageFrameMillis(), stats.getMaxFrameMillis()));
+            logBox.log(String.format("Receipt to first glyph %.1f ms avg %.1f ms max over %d messages", stats.getAverageLatencyMillis(), stats.getMaxLatencyMillis(), stats.getLatencyCount()));
+        }
+    }
+
     @Override
     protected void fillInputFromProperties(FontificatorProperties fProps)
     {
@@ -375,9 +645,13 @@ public class ControlPanelDebug extends ControlPanelBase
             // Turn off everything before disabling the debug tab
             postClock.stop();
             postMessagesButton.setSelected(false);
+            stopLoad();
+            generateLoadButton.setSelected(false);
             drawTextGridBox.setSelected(false);
             drawBorderGridBox.setSelected(false);
-            chat.repaint();
+            compositingBox.setSelected(true);
+            drawFrameStatsBox.setSelected(false);
+            chat.invalidateAndRepaint();
             Thread.setDefaultUncaughtExceptionHandler(null);
             Logger.getRootLogger().removeAppender(debugAppender);
         }
@@ -141,6 +141,16 @@ public class ControlPanelEmoji extends ControlPanelBase
      */
     private JCheckBox cacheBetterTtv;
 
+    /**
+     * The most emote images to download at once when caching
+     */
+    private LabeledSlider prefetchThreads;
+
+    /**
+     * The most emote images to download at once from any one host when caching
+     */
+    private LabeledSlider prefetchPerHost;
+
     /**
      * The emoji config object that bridges the UI to the properties file
      */
@@ -151,6 +161,11 @@ public class ControlPanelEmoji extends ControlPanelBase
      */
     private JPanel scaleAndDisplayPanel;
 
+    /**
+     * Panel to house the options for caching emotes
+     */
+    private JPanel prefetchPanel;
+
     /**
      * Panel to house Twitch emote options
      */
@@ -245,13 +260,16 @@ public class ControlPanelEmoji extends ControlPanelBase
         enableBetterTtv = new JCheckBox("Enable BetterTTV Emotes");
         cacheBetterTtv = new JCheckBox("Cache BetterTTV Emotes");
 
+        prefetchThreads = new LabeledSlider("Downloads at Once", "images", ConfigEmoji.MIN_PREFETCH_THREADS, ConfigEmoji.MAX_PREFETCH_THREADS, ConfigEmoji.DEFAULT_PREFETCH_THREADS, 2);
+        prefetchPerHost = new LabeledSlider("Downloads at Once per Server", "images", ConfigEmoji.MIN_PREFETCH_PER_HOST, ConfigEmoji.MAX_PREFETCH_PER_HOST, ConfigEmoji.DEFAULT_PREFETCH_PER_HOST, 2);
+
         emojiScale.addChangeListener(new ChangeListener()
         {
             @Override
             public void stateChanged(ChangeEvent e)
             {
                 config.setEmojiScale(emojiScale.getValue());
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -261,7 +279,7 @@ public class ControlPanelEmoji extends ControlPanelBase
             public void stateChanged(ChangeEvent e)
             {
                 config.setBadgeScale(badgeScale.getValue());
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -271,7 +289,26 @@ public class ControlPanelEmoji extends ControlPanelBase
             public void stateChanged(ChangeEvent e)
             {
                 config.setBadgeHeightOffset(badgeHeightOffset.getValue());
-                chat.repaint();
+                chat.invalidateAndRepaint();
+            }
+        });
+
+        // The download limits are read when caching starts, so nothing needs to be redrawn when they change
+        prefetchThreads.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                config.setPrefetchThreads(prefetchThreads.getValue());
+            }
+        });
+
+        prefetchPerHost.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                config.setPrefetchPerHost(prefetchPerHost.getValue());
             }
         });
 
@@ -281,7 +318,7 @@ public class ControlPanelEmoji extends ControlPanelBase
             public void actionPerformed(ActionEvent e)
             {
                 config.setDisplayStrategy((EmojiLoadingDisplayStragegy) emojiLoadingDisplayStrat.getSelectedItem());
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -428,7 +465,7 @@ public class ControlPanelEmoji extends ControlPanelBase
                 config.setBadgeScaleToLine(badgeScaleToLineHeight.isSelected());
                 resolveEnables();
 
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         };
 
@@ -504,6 +541,16 @@ public class ControlPanelEmoji extends ControlPanelBase
         bottomOfScaleDisplayPanel.add(emojiLoadingDisplayStrat);
         scaleAndDisplayPanel.add(bottomOfScaleDisplayPanel, scaleAndDisplayGbc);
 
+        prefetchPanel = new JPanel(new GridBagLayout());
+        prefetchPanel.setBorder(BorderFactory.createTitledBorder(baseBorder, "Emote Caching"));
+        GridBagConstraints prefetchGbc = getGbc();
+        prefetchGbc.fill = GridBagConstraints.HORIZONTAL;
+        prefetchGbc.weightx = 1.0;
+        prefetchPanel.add(prefetchThreads, prefetchGbc);
+        prefetchGbc.gridy++;
+        prefetchPanel.add(prefetchPerHost, prefetchGbc);
+        prefetchGbc.gridy++;
+
         twitchPanel = new JPanel(new GridBagLayout());
         twitchPanel.setBorder(BorderFactory.createTitledBorder(baseBorder, "Twitch Emotes"));
         GridBagConstraints twitchGbc = getGbc();
@@ -553,6 +600,9 @@ public class ControlPanelEmoji extends ControlPanelBase
         add(scaleAndDisplayPanel, gbc);
         gbc.gridy++;
 
+        add(prefetchPanel, gbc);
+        gbc.gridy++;
+
         gbc.gridy++;
         gbc.anchor = GridBagConstraints.SOUTH;
         gbc.weighty = 1.0;
@@ -754,7 +804,7 @@ public class ControlPanelEmoji extends ControlPanelBase
 
             // A SwingWorkers can only be run once because... reasons. So each call to do work must be on a freshly
             // instantiated worker object.
-            EmojiWorker worker = new EmojiWorker(chat.getEmojiManager(), progressPanel, job, logBox, initialReport);
+            EmojiWorker worker = new EmojiWorker(chat.getEmojiManager(), progressPanel, job, logBox, initialReport, config);
 
             progressPanel.addWorkToQueue(worker);
         }
@@ -807,6 +857,8 @@ public class ControlPanelEmoji extends ControlPanelBase
         this.cacheFrankerFaceZ.setSelected(config.isFfzCacheEnabled());
         this.enableBetterTtv.setSelected(config.isBttvEnabled());
         this.cacheBetterTtv.setSelected(config.isBttvCacheEnabled());
+        this.prefetchThreads.setValue(config.getPrefetchThreads());
+        this.prefetchPerHost.setValue(config.getPrefetchPerHost());
 
         resolveEnables();
     }
@@ -835,6 +887,8 @@ public class ControlPanelEmoji extends ControlPanelBase
         config.setFfzCacheEnabled(cacheFrankerFaceZ.isSelected());
         config.setBttvEnabled(enableBetterTtv.isSelected());
         config.setBttvCacheEnabled(cacheBetterTtv.isSelected());
+        config.setPrefetchThreads(prefetchThreads.getValue());
+        config.setPrefetchPerHost(prefetchPerHost.getValue());
     }
 
 }
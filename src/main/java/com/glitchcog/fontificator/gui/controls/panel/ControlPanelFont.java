@@ -446,6 +446,10 @@ public class ControlPanelFont extends ControlPanelBase
 
     private JCheckBox extendedCharBox;
 
+    private JCheckBox glyphAtlasBox;
+
+    private LabeledSlider colorCacheSizeSlider;
+
     private ConfigFont config;
 
     private ChangeListener sliderListener;
@@ -534,7 +538,7 @@ public class ControlPanelFont extends ControlPanelBase
                 {
                     config.setCharSpacing(charSpacingSlider.getValue());
                 }
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         };
 
@@ -612,7 +616,19 @@ public class ControlPanelFont extends ControlPanelBase
                 config.setExtendedCharEnabled(ecbSelected);
                 unknownCharPopupButton.setEnabled(!ecbSelected);
                 unknownCharLabel.setEnabled(!ecbSelected);
-                chat.repaint();
+                chat.invalidateAndRepaint();
+            }
+        });
+
+        glyphAtlasBox = new JCheckBox("Tint Only Drawn Characters");
+        glyphAtlasBox.setToolTipText("Tint each character of the font as it's drawn rather than the whole font image for each color");
+        glyphAtlasBox.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                config.setGlyphAtlasEnabled(glyphAtlasBox.isSelected());
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -640,6 +656,7 @@ public class ControlPanelFont extends ControlPanelBase
         baselineOffsetSlider = new LabeledSlider("Baseline Height Offset", "pixels", ConfigFont.MIN_BASELINE_OFFSET, ConfigFont.MAX_BASELINE_OFFSET);
         lineSpacingSlider = new LabeledSlider("Line Spacing", "pixels", ConfigFont.MIN_LINE_SPACING, ConfigFont.MAX_LINE_SPACING);
         charSpacingSlider = new LabeledSlider("Char Spacing", "pixels", ConfigFont.MIN_CHAR_SPACING, ConfigFont.MAX_LINE_SPACING);
+        colorCacheSizeSlider = new LabeledSlider("Color Cache Size", "MB", ConfigFont.MIN_COLOR_CACHE_SIZE, ConfigFont.MAX_COLOR_CACHE_SIZE);
         unknownCharPopupButton = new JButton("Select Missing Character");
 
         unknownCharPopupButton.addActionListener(new ActionListener()
@@ -663,6 +680,18 @@ public class ControlPanelFont extends ControlPanelBase
         lineSpacingSlider.addChangeListener(sliderListener);
         charSpacingSlider.addChangeListener(sliderListener);
 
+        // The cache size doesn't change how anything looks, so this doesn't need the chat redrawn like the other
+        // sliders
+        colorCacheSizeSlider.addChangeListener(new ChangeListener()
+        {
+            @Override
+            public void stateChanged(ChangeEvent e)
+            {
+                config.setColorCacheSize(colorCacheSizeSlider.getValue());
+                chat.reloadColorCacheSizeFromConfig();
+            }
+        });
+
         JPanel fontPanel = new JPanel(new GridBagLayout());
         JPanel borderPanel = new JPanel(new GridBagLayout());
         JPanel unknownPanel = new JPanel(new GridBagLayout());
@@ -714,6 +743,11 @@ public class ControlPanelFont extends ControlPanelBase
         fontPanel.add(baselineOffsetSlider, fontGbc);
         fontGbc.gridy++;
 
+        fontPanel.add(glyphAtlasBox, fontGbc);
+        fontGbc.gridy++;
+        fontPanel.add(colorCacheSizeSlider, fontGbc);
+        fontGbc.gridy++;
+
         borderPanel.add(borderPresetDropdown, borderGbc);
         borderGbc.gridx++;
         // This slider being on the same row as the preset dropdown keeps the combo menu bar from collapsing to no
@@ -811,7 +845,7 @@ public class ControlPanelFont extends ControlPanelBase
                 {
                     chat.reloadBorderFromConfig();
                 }
-                chat.repaint();
+                chat.invalidateAndRepaint();
                 return true;
             }
             catch (Exception ex)
@@ -852,6 +886,8 @@ public class ControlPanelFont extends ControlPanelBase
         baselineOffsetSlider.setValue(config.getBaselineOffset());
         lineSpacingSlider.setValue(config.getLineSpacing());
         charSpacingSlider.setValue(config.getCharSpacing());
+        glyphAtlasBox.setSelected(config.isGlyphAtlasEnabled());
+        colorCacheSizeSlider.setValue(config.getColorCacheSize());
         fontTypeCheckbox.setSelected(FontType.VARIABLE_WIDTH.equals(config.getFontType()));
         spaceWidthSlider.setEnabled(fontTypeCheckbox.isSelected());
         final boolean ecbSelected = extendedCharBox.isSelected();
@@ -937,6 +973,8 @@ public class ControlPanelFont extends ControlPanelBase
         config.setBaselineOffset(baselineOffsetSlider.getValue());
         config.setLineSpacing(lineSpacingSlider.getValue());
         config.setCharSpacing(charSpacingSlider.getValue());
+        config.setGlyphAtlasEnabled(glyphAtlasBox.isSelected());
+        config.setColorCacheSize(colorCacheSizeSlider.getValue());
     }
 
 }
@@ -285,7 +285,7 @@ public class ControlPanelIrc extends ControlPanelBase
             public void actionPerformed(ActionEvent e)
             {
                 chat.clearChat();
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -241,7 +241,7 @@ public class ControlPanelMessage extends ControlPanelBase
             public void actionPerformed(ActionEvent e)
             {
                 config.setMessageCasing((MessageCasing) messageCasingDropdown.getSelectedItem());
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         });
 
@@ -277,7 +277,7 @@ public class ControlPanelMessage extends ControlPanelBase
                 {
                     config.setHideEmptyBackground(hideEmptyBackground.isSelected());
                 }
-                chat.repaint();
+                chat.invalidateAndRepaint();
             }
         };
 
@@ -299,7 +299,7 @@ public class ControlPanelMessage extends ControlPanelBase
                 {
                     config.setTimeFormat(timeFormatInput.getText());
                     toggleEnableds();
-                    chat.repaint();
+                    chat.invalidateAndRepaint();
                 }
                 else
                 {
@@ -322,12 +322,12 @@ public class ControlPanelMessage extends ControlPanelBase
                     }
                     else if (messageSpeedSlider.getSlider().equals(source))
                     {
-                        config.setMessageSpeed(messageSpeedSlider.getValue(), chat.getMessageProgressor());
+                        config.setMessageSpeed(messageSpeedSlider.getValue(), chat.getFrameScheduler());
                     }
                     else if (expirationTimeSlider.getSlider().equals(source))
                     {
-                        config.setExpirationTime(expirationTimeSlider.getValue(), chat.getMessageExpirer());
-                        chat.repaint();
+                        config.setExpirationTime(expirationTimeSlider.getValue(), chat.getFrameScheduler());
+                        chat.invalidateAndRepaint();
                     }
                 }
             }
@@ -498,8 +498,8 @@ public class ControlPanelMessage extends ControlPanelBase
         config.setTimeFormat(timeFormatInput.getText());
         toggleEnableds();
         config.setQueueSize(queueSizeSlider.getValue());
-        config.setMessageSpeed(messageSpeedSlider.getValue(), chat.getMessageProgressor());
-        config.setExpirationTime(expirationTimeSlider.getValue(), chat.getMessageExpirer());
+        config.setMessageSpeed(messageSpeedSlider.getValue(), chat.getFrameScheduler());
+        config.setExpirationTime(expirationTimeSlider.getValue(), chat.getFrameScheduler());
         config.setHideEmptyBorder(hideEmptyBorder.isSelected());
         config.setHideEmptyBackground(hideEmptyBackground.isSelected());
         config.setCaseResolutionType((UsernameCaseResolutionType) caseTypeDropdown.getSelectedItem());
@@ -110,7 +110,7 @@ public class ControlTabs extends JTabbedPane
         colorPanel = new ControlPanelColor(fProps, chatWindow, logBox);
         fontPanel = new ControlPanelFont(fProps, chatWindow, logBox, colorPanel);
         messagePanel = new ControlPanelMessage(fProps, chatWindow, bot, logBox);
-        debugPanel = new ControlPanelDebug(fProps, chatWindow, ctrlWindow);
+        debugPanel = new ControlPanelDebug(fProps, chatWindow, ctrlWindow, bot);
 
         subpanels = new ControlPanelBase[6];
 
@@ -4,6 +4,9 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.swing.JCheckBox;
@@ -58,8 +61,14 @@ public class MessageCensorPanel extends ControlPanelBase
 
     private ConfigCensor config;
 
-    final String URL_REGEX = "(https?|ftp|file)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]";
-    final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
+    /**
+     * A copy of the censorship rules as they're set in the inputs, taken on the event dispatch thread whenever they
+     * change, so messages can be checked on the ingest pipeline without touching any Swing components
+     */
+    private volatile CensorRules rules;
+
+    public static final String URL_REGEX = "(https?|ftp|file)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]";
+    public static final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
 
     /**
      * Construct a chat control panel
@@ -120,7 +129,7 @@ public class MessageCensorPanel extends ControlPanelBase
             public void actionPerformed(ActionEvent e)
             {
                 updateConfig();
-                chat.repaint();
+                chat.invalidateAndRepaint();
                 chat.initMessageRollout();
             }
         };
@@ -137,6 +146,7 @@ public class MessageCensorPanel extends ControlPanelBase
             public void stateChanged(ChangeEvent e)
             {
                 config.setUnknownCharPercentage(unknownCharSlider.getValue());
+                updateRules();
             }
         });
 
@@ -188,6 +198,17 @@ public class MessageCensorPanel extends ControlPanelBase
         gbc.fill = GridBagConstraints.BOTH;
         add(messageList, gbc);
         gbc.gridy++;
+
+        updateRules();
+    }
+
+    /**
+     * Take a new copy of the censorship rules from the inputs. This must be called on the event dispatch thread
+     * whenever any of them change.
+     */
+    private void updateRules()
+    {
+        rules = new CensorRules(enableCensorshipBox.isSelected(), censorAllUrlsBox.isSelected(), censorFirstPostUrlsBox.isSelected(), censorUnknownCharsBox.isSelected(), unknownCharSlider.getValue(), userWhitelist.getItems(), userBlacklist.getItems(), bannedWordList.getItems());
     }
 
     public void addMessage(Message msg)
@@ -258,6 +279,7 @@ public class MessageCensorPanel extends ControlPanelBase
 
     public void recheckCensorship(boolean overrideManual)
     {
+        updateRules();
         for (Message msg : chat.getMessages())
         {
             msg.resetCensorship(overrideManual);
@@ -270,10 +292,27 @@ public class MessageCensorPanel extends ControlPanelBase
     {
         messageList.revalidateTable();
         chat.initMessageRollout();
-        chat.repaint();
+        chat.invalidateAndRepaint();
     }
 
+    /**
+     * Check a message against the censorship rules. This only reads the latest copy of the rules, never the inputs
+     * themselves, so it may be called from any thread.
+     * 
+     * @param msg
+     */
     public void checkCensor(Message msg)
+    {
+        checkCensor(msg, rules);
+    }
+
+    /**
+     * Check a message against the specified copy of the censorship rules, setting whether it is censored and why
+     * 
+     * @param msg
+     * @param rules
+     */
+    static void checkCensor(Message msg, CensorRules rules)
     {
         // If this individual message has been manually censored or uncensored, just return
         if (msg.isManualCensorship())
@@ -281,70 +320,100 @@ public class MessageCensorPanel extends ControlPanelBase
             return;
         }
         // Check for user on whitelist
-        if (userWhitelist.contains(msg.getUsername()))
+        if (rules.isWhitelisted(msg.getUsername()))
         {
             msg.setCensoredReason("USER WHITELIST");
             return;
         }
         // Check for user on blacklist
-        if (userBlacklist.contains(msg.getUsername()))
+        if (rules.isBlacklisted(msg.getUsername()))
         {
             msg.setCensoredReason("USER BLACKLIST");
-            msg.setCensored(true, chat.isCensorshipEnabled());
+            msg.setCensored(true, rules.enabled);
             return;
         }
         // Check message contents for banned words
-        String banned = containsBannedWord(msg.getContent());
+        String banned = containsBannedWord(msg.getContent(), rules.bannedWords);
         if (banned != null)
         {
             msg.setCensoredReason("BANNED WORD: \"" + banned + "\"");
-            msg.setCensored(true, enableCensorshipBox.isSelected());
+            msg.setCensored(true, rules.enabled);
             return;
         }
 
         // Check for URL censorship rules, if a URL is present in the message
-        final boolean containsUrl = URL_PATTERN.matcher(msg.getContent()).find();
+        final boolean containsUrl = containsUrl(msg.getContent());
         if (containsUrl)
         {
             // If all URLs are censored, then censor the message
-            if (censorAllUrlsBox.isSelected())
+            if (rules.censorAllUrls)
             {
-                msg.setCensored(true, enableCensorshipBox.isSelected());
+                msg.setCensored(true, rules.enabled);
                 msg.setCensoredReason("URL");
                 return;
             }
             // If only the first URLs are censored, then check the user post count to censor
-            else if (msg.getUserPostCount() < 2 && censorFirstPostUrlsBox.isSelected())
+            else if (msg.getUserPostCount() < 2 && rules.censorFirstUrls)
             {
-                msg.setCensored(true, enableCensorshipBox.isSelected());
+                msg.setCensored(true, rules.enabled);
                 msg.setCensoredReason("1ST POST URL");
                 return;
             }
         }
 
         final float percentUnknownChars = 100 * getPercentUnknownChars(msg.getContent());
-        if (censorUnknownCharsBox.isSelected() && percentUnknownChars > 0.0f && percentUnknownChars >= unknownCharSlider.getValue())
+        if (rules.censorUnknownChars && percentUnknownChars > 0.0f && percentUnknownChars >= rules.unknownCharPercentage)
         {
-            msg.setCensored(true, enableCensorshipBox.isSelected());
+            msg.setCensored(true, rules.enabled);
             msg.setCensoredReason("UNKNOWN CHARACTERS");
             return;
         }
     }
 
-    private String containsBannedWord(String text)
+    /**
+     * Get the first word of the text that is on the banned word list, ignoring case
+     * 
+     * @param text
+     * @param bannedWords
+     * @return the banned word or null if there isn't one
+     */
+    public static String containsBannedWord(String text, String[] bannedWords)
     {
         String[] words = text.split("[^\\w']+");
         for (String word : words)
         {
-            if (!word.trim().isEmpty() && bannedWordList.contains(word))
+            if (!word.trim().isEmpty())
             {
-                return word;
+                for (String bannedWord : bannedWords)
+                {
+                    if (bannedWord.equalsIgnoreCase(word))
+                    {
+                        return word;
+                    }
+                }
             }
         }
         return null;
     }
 
-    private float getPercentUnknownChars(String text)
+    /**
+     * Get whether the text contains a URL
+     * 
+     * @param text
+     * @return contains URL
+     */
+    public static boolean containsUrl(String text)
+    {
+        return URL_PATTERN.matcher(text).find();
+    }
+
+    /**
+     * Get the fraction of characters in the text that fall outside of the printable ASCII range
+     * 
+     * @param text
+     * @return percent unknown characters, from 0.0f to 1.0f
+     */
+    public static float getPercentUnknownChars(String text)
     {
         if (text == null || text.isEmpty())
         {
@@ -399,6 +468,7 @@ public class MessageCensorPanel extends ControlPanelBase
         userBlacklist.revalidate();
         bannedWordList.revalidate();
         repaint();
+        updateRules();
     }
 
     @Override
@@ -420,6 +490,7 @@ public class MessageCensorPanel extends ControlPanelBase
         config.setUserBlacklist(userBlacklist.getList());
         config.setBannedWords(bannedWordList.getList());
         toggleEnableds();
+        updateRules();
     }
 
     /**
@@ -446,4 +517,61 @@ public class MessageCensorPanel extends ControlPanelBase
         }
     }
 
+    /**
+     * An unchanging copy of the censorship rules
+     */
+    static class CensorRules
+    {
+        private final boolean enabled;
+
+        private final boolean censorAllUrls;
+
+        private final boolean censorFirstUrls;
+
+        private final boolean censorUnknownChars;
+
+        private final int unknownCharPercentage;
+
+        /**
+         * The usernames on the whitelist and the blacklist, in lowercase
+         */
+        private final Set<String> whitelist;
+
+        private final Set<String> blacklist;
+
+        private final String[] bannedWords;
+
+        CensorRules(boolean enabled, boolean censorAllUrls, boolean censorFirstUrls, boolean censorUnknownChars, int unknownCharPercentage, String[] whitelist, String[] blacklist, String[] bannedWords)
+        {
+            this.enabled = enabled;
+            this.censorAllUrls = censorAllUrls;
+            this.censorFirstUrls = censorFirstUrls;
+            this.censorUnknownChars = censorUnknownChars;
+            this.unknownCharPercentage = unknownCharPercentage;
+            this.whitelist = toLowerCaseSet(whitelist);
+            this.blacklist = toLowerCaseSet(blacklist);
+            this.bannedWords = bannedWords.clone();
+        }
+
+        private boolean isWhitelisted(String username)
+        {
+            return username != null && whitelist.contains(username.toLowerCase());
+        }
+
+        private boolean isBlacklisted(String username)
+        {
+            return username != null && blacklist.contains(username.toLowerCase());
+        }
+
+        private static Set<String> toLowerCaseSet(String[] items)
+        {
+            Set<String> set = new HashSet<String>();
+            for (String item : items)
+            {
+                set.add(item.toLowerCase());
+            }
+            return Collections.unmodifiableSet(set);
+        }
+    }
+
 }
@@ -148,7 +148,7 @@ public class EmojiLoadProgressPanel extends JPanel
                     workerTaskListCache.clear();
                     emojiConfig.resetWorkCompleted();
                     log("Reset all loaded and or cached emoji");
-                    chat.repaint();
+                    chat.invalidateAndRepaint();
                 }
                 else if (manualButton.equals(source))
                 {
@@ -338,7 +338,7 @@ public class EmojiLoadProgressPanel extends JPanel
         ConcurrentLinkedQueue<EmojiWorker> taskList = getTaskList();
         this.currentWorker = taskList.poll();
 
-        chat.repaint();
+        chat.invalidateAndRepaint();
         if (currentWorker == null)
         {
             reset();
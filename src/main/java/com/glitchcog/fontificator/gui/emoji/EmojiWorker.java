@@ -4,12 +4,26 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingWorker;
 
 import org.apache.log4j.Logger;
 
+import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.emoji.EmojiJob;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.EmojiOperation;
@@ -49,6 +63,11 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
      */
     private static final String FFZ_BASE_NO_EMOTES_URL = "https://api.frankerfacez.com/v1/_room/";
 
+    /**
+     * How long to wait for a download to finish before checking whether the job has been canceled or halted
+     */
+    private static final long PREFETCH_POLL_MILLIS = 100L;
+
     // @formatter:off
 
     /**
@@ -139,14 +158,22 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
 
     private EmojiJob job;
 
-    private boolean terminateWork;
+    private volatile boolean terminateWork;
 
-    private boolean silentlyTerminateWork;
+    private volatile boolean silentlyTerminateWork;
 
     private EmojiLoadProgressPanel progressPanel;
 
     private final EmojiWorkerReport initialReport;
 
+    /**
+     * The most emoji images downloaded at once when caching, and the most from any one host, taken from the emoji
+     * configuration when the worker is made so they aren't read off of the event dispatch thread
+     */
+    private final int prefetchThreads;
+
+    private final int prefetchPerHost;
+
     /**
      * Construct an emoji worker
      * 
@@ -157,8 +184,10 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
      * @param opType
      * @param logBox
      * @param initialReport
+     * @param config
+     *            The emoji configuration, for how many images to download at once when caching
      */
-    public EmojiWorker(EmojiManager manager, EmojiLoadProgressPanel progressPanel, EmojiJob job, LogBox logBox, EmojiWorkerReport initialReport)
+    public EmojiWorker(EmojiManager manager, EmojiLoadProgressPanel progressPanel, EmojiJob job, LogBox logBox, EmojiWorkerReport initialReport, ConfigEmoji config)
     {
         this.terminateWork = false;
         this.silentlyTerminateWork = false;
@@ -167,6 +196,8 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
         this.progressPanel = progressPanel;
         this.job = job;
         this.initialReport = initialReport;
+        this.prefetchThreads = config.getPrefetchThreads();
+        this.prefetchPerHost = config.getPrefetchPerHost();
         logBox.log(initialReport.getMessage());
 
         loader = new EmojiApiLoader();
@@ -270,7 +301,6 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
 
                 publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), 0));
                 Thread.sleep(1L);
-                int count = 0;
                 List<LazyLoadEmoji> emojiToCache = new ArrayList<LazyLoadEmoji>();
                 for (String regex : regexes)
                 {
@@ -283,24 +313,7 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
                     emojiToCache.add(emoji);
                 }
 
-                for (LazyLoadEmoji emoji : emojiToCache)
-                {
-                    if (emoji != null)
-                    {
-                        emoji.cacheImage();
-                    }
-                    count++;
-                    // This is safe from divide by zero exceptions, because we won't be here if emojiToCache is empty
-                    int percentComplete = (int) (100.0f * count / emojiToCache.size());
-                    publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), percentComplete));
-
-                    if (terminateWork)
-                    {
-                        throw new EmojiCancelException();
-                    }
-
-                    Thread.sleep(1L);
-                }
+                prefetch(emojiType, emojiToCache);
 
                 publish(new EmojiWorkerReport(emojiType.getDescription() + " caching complete", 100));
                 Thread.sleep(1L);
@@ -352,6 +365,123 @@ public class EmojiWorker extends SwingWorker<Integer, EmojiWorkerReport>
         }
     }
 
+    /**
+     * Download and decode the images of the specified emoji on a pool of prefetchThreads threads, with no more than
+     * prefetchPerHost of them from the same host at once so no one CDN is flooded. Each host's emoji are queued up here
+     * and handed to the pool one at a time as the last one from that host finishes, so a pool thread never sits waiting
+     * on a busy host while there's work for another. Progress is published as each image finishes, and canceling or
+     * halting the job stops handing out emoji, interrupts the pool and throws right away. A download already under way
+     * can't be interrupted, so it finishes in the background, but nothing after it is read or downloaded.
+     * 
+     * @param emojiType
+     * @param emojiToCache
+     *            The emoji to cache, which may include nulls that are just counted as done
+     * @throws Exception
+     */
+    private void prefetch(EmojiType emojiType, List<LazyLoadEmoji> emojiToCache) throws Exception
+    {
+        final int total = emojiToCache.size();
+        int count = 0;
+
+        Map<String, Queue<LazyLoadEmoji>> queuedByHost = new HashMap<String, Queue<LazyLoadEmoji>>();
+        for (LazyLoadEmoji emoji : emojiToCache)
+        {
+            if (emoji == null)
+            {
+                count++;
+                continue;
+            }
+            final String host = emoji.getUrl().getHost();
+            Queue<LazyLoadEmoji> queue = queuedByHost.get(host);
+            if (queue == null)
+            {
+                queue = new LinkedList<LazyLoadEmoji>();
+                queuedByHost.put(host, queue);
+            }
+            queue.add(emoji);
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(prefetchThreads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Emoji Prefetch " + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try
+        {
+            CompletionService<String> fetches = new ExecutorCompletionService<String>(pool);
+            int inFlight = 0;
+            for (Map.Entry<String, Queue<LazyLoadEmoji>> host : queuedByHost.entrySet())
+            {
+                for (int i = 0; i < prefetchPerHost && !host.getValue().isEmpty(); i++)
+                {
+                    submitFetch(fetches, host.getKey(), host.getValue().poll());
+                    inFlight++;
+                }
+            }
+
+            while (inFlight > 0)
+            {
+                if (terminateWork)
+                {
+                    throw new EmojiCancelException();
+                }
+                else if (silentlyTerminateWork)
+                {
+                    throw new EmojiHaltException();
+                }
+
+                Future<String> fetched = fetches.poll(PREFETCH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (fetched == null)
+                {
+                    continue;
+                }
+                inFlight--;
+
+                // Keep the host busy with its next emoji, if it has any left
+                final String host = fetched.get();
+                Queue<LazyLoadEmoji> queue = queuedByHost.get(host);
+                if (!queue.isEmpty())
+                {
+                    submitFetch(fetches, host, queue.poll());
+                    inFlight++;
+                }
+
+                count++;
+                // This is safe from divide by zero exceptions, because we won't be here if emojiToCache is empty
+                int percentComplete = (int) (100.0f * count / total);
+                publish(new EmojiWorkerReport("Caching " + emojiType.getDescription(), percentComplete));
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void submitFetch(CompletionService<String> fetches, final String host, final LazyLoadEmoji emoji)
+    {
+        fetches.submit(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                // The pool is only interrupted once the job is canceled or halted, so there's no point loading it
+                if (!Thread.currentThread().isInterrupted())
+                {
+                    emoji.cacheImage();
+                }
+                return host;
+            }
+        });
+    }
+
     /**
      * Gives you back the data from a website, used to get JSON data for emoji, or for loading the FFZ donor list
      * 
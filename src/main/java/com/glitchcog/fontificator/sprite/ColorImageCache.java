@@ -0,0 +1,155 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of recolored copies of a sprite image, keyed off of the color. It is bounded by the total number of bytes of
+ * image data it holds rather than by the number of colors, and evicts the least recently used colors once it's full.
+ * 
+ * @author Matt Yanos
+ */
+public class ColorImageCache
+{
+    /**
+     * The colored images, in least recently used to most recently used order
+     */
+    private final LinkedHashMap<Color, BufferedImage> images;
+
+    /**
+     * The maximum number of bytes of image data to hold
+     */
+    private long capacityBytes;
+
+    /**
+     * The number of bytes of image data currently held
+     */
+    private long sizeBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public ColorImageCache(long capacityBytes)
+    {
+        this.images = new LinkedHashMap<Color, BufferedImage>(16, 0.75f, true);
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Get the image for the specified color, counting a hit or a miss
+     * 
+     * @param color
+     * @return image, or null if it's not cached
+     */
+    public synchronized BufferedImage get(Color color)
+    {
+        BufferedImage img = images.get(color);
+        if (img == null)
+        {
+            misses++;
+        }
+        else
+        {
+            hits++;
+        }
+        return img;
+    }
+
+    /**
+     * Add the image for the specified color, evicting the least recently used images until the cache is back within
+     * its capacity. The image just added is never evicted, even if it alone exceeds the capacity.
+     * 
+     * @param color
+     * @param img
+     */
+    public synchronized void put(Color color, BufferedImage img)
+    {
+        BufferedImage replaced = images.put(color, img);
+        if (replaced != null)
+        {
+            sizeBytes -= getByteSize(replaced);
+        }
+        sizeBytes += getByteSize(img);
+        trim();
+    }
+
+    /**
+     * Change the number of bytes of image data this cache can hold, evicting images if it shrinks
+     * 
+     * @param capacityBytes
+     */
+    public synchronized void setCapacityBytes(long capacityBytes)
+    {
+        if (this.capacityBytes != capacityBytes)
+        {
+            this.capacityBytes = capacityBytes;
+            trim();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        images.clear();
+        sizeBytes = 0L;
+    }
+
+    private void trim()
+    {
+        Iterator<Map.Entry<Color, BufferedImage>> iter = images.entrySet().iterator();
+        while (sizeBytes > capacityBytes && images.size() > 1 && iter.hasNext())
+        {
+            sizeBytes -= getByteSize(iter.next().getValue());
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Get the number of bytes used by the pixel data of the specified image
+     * 
+     * @param img
+     * @return bytes
+     */
+    private static long getByteSize(BufferedImage img)
+    {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8L;
+    }
+
+    public synchronized int getCount()
+    {
+        return images.size();
+    }
+
+    public synchronized long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    public synchronized long getCapacityBytes()
+    {
+        return capacityBytes;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+}
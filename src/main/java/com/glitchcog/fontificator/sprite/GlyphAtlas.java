@@ -0,0 +1,270 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs individually tinted glyph cells of a sprite into shared atlas images, so the cost of coloring text is
+ * proportional to the number of distinct glyph and color pairs actually drawn rather than to a whole sprite sheet per
+ * color. Glyphs are packed left to right in shelves, top to bottom, across as many atlas pages as needed. Once the
+ * pages exceed the byte capacity, the whole atlas is flushed and repacked on demand.
+ * 
+ * @author Matt Yanos
+ */
+public class GlyphAtlas
+{
+    /**
+     * The default width and height of an atlas page, in pixels
+     */
+    private static final int PAGE_SIZE = 512;
+
+    /**
+     * Transparent pixels between packed glyphs so scaled drawing doesn't bleed in neighboring glyphs
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * The bytes per pixel of an atlas page (TYPE_INT_ARGB)
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Where a tinted glyph is located in the atlas
+     */
+    public static class Entry
+    {
+        private final BufferedImage page;
+
+        private final int x;
+
+        private final int y;
+
+        private Entry(BufferedImage page, int x, int y)
+        {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+        }
+
+        public BufferedImage getPage()
+        {
+            return page;
+        }
+
+        public int getX()
+        {
+            return x;
+        }
+
+        public int getY()
+        {
+            return y;
+        }
+    }
+
+    /**
+     * Identifies a glyph cell in the sprite sheet, tinted to a color
+     */
+    private static class GlyphKey
+    {
+        private final int x;
+
+        private final int y;
+
+        private final int width;
+
+        private final int height;
+
+        private final int rgb;
+
+        private GlyphKey(Rectangle source, Color color)
+        {
+            this.x = source.x;
+            this.y = source.y;
+            this.width = source.width;
+            this.height = source.height;
+            this.rgb = color.getRGB();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + x;
+            result = prime * result + y;
+            result = prime * result + width;
+            result = prime * result + height;
+            result = prime * result + rgb;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass())
+            {
+                return false;
+            }
+            GlyphKey other = (GlyphKey) obj;
+            return x == other.x && y == other.y && width == other.width && height == other.height && rgb == other.rgb;
+        }
+    }
+
+    private final Map<GlyphKey, Entry> entries;
+
+    private final List<BufferedImage> pages;
+
+    /**
+     * The packing cursor on the last page
+     */
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    private long capacityBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public GlyphAtlas(long capacityBytes)
+    {
+        this.entries = new HashMap<GlyphKey, Entry>();
+        this.pages = new ArrayList<BufferedImage>();
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Get the location of the specified glyph cell tinted to the specified color, tinting it into the atlas with the
+     * specified tinter if it isn't there yet
+     * 
+     * @param source
+     *            The bounds of the glyph in the sprite sheet
+     * @param color
+     * @param tinter
+     *            The sprite that tints the glyph
+     * @return entry
+     */
+    public synchronized Entry get(Rectangle source, Color color, Sprite tinter)
+    {
+        GlyphKey key = new GlyphKey(source, color);
+        Entry entry = entries.get(key);
+        if (entry != null)
+        {
+            hits++;
+            return entry;
+        }
+
+        misses++;
+        if (getSizeBytes() > capacityBytes)
+        {
+            clear();
+            evictions++;
+        }
+
+        entry = allocate(source.width, source.height);
+        Graphics2D g2d = entry.page.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(tinter.tintRegion(source, color), entry.x, entry.y, null);
+        g2d.dispose();
+
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Reserve a spot on the last page for a glyph of the specified size, starting a new shelf or a new page if it
+     * doesn't fit
+     */
+    private Entry allocate(int width, int height)
+    {
+        BufferedImage page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+
+        if (page != null && shelfX + width > page.getWidth())
+        {
+            shelfX = 0;
+            shelfY += shelfHeight + PADDING;
+            shelfHeight = 0;
+        }
+
+        if (page == null || shelfX + width > page.getWidth() || shelfY + height > page.getHeight())
+        {
+            page = new BufferedImage(Math.max(PAGE_SIZE, width), Math.max(PAGE_SIZE, height), BufferedImage.TYPE_INT_ARGB);
+            pages.add(page);
+            shelfX = 0;
+            shelfY = 0;
+            shelfHeight = 0;
+        }
+
+        Entry entry = new Entry(page, shelfX, shelfY);
+        shelfX += width + PADDING;
+        shelfHeight = Math.max(shelfHeight, height);
+        return entry;
+    }
+
+    public synchronized void setCapacityBytes(long capacityBytes)
+    {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Drop all the tinted glyphs, for example because the glyph bounds have been recalculated
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        pages.clear();
+        shelfX = 0;
+        shelfY = 0;
+        shelfHeight = 0;
+    }
+
+    public synchronized int getCount()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getSizeBytes()
+    {
+        long size = 0L;
+        for (BufferedImage page : pages)
+        {
+            size += (long) page.getWidth() * page.getHeight() * BYTES_PER_PIXEL;
+        }
+        return size;
+    }
+
+    public synchronized long getCapacityBytes()
+    {
+        return capacityBytes;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+}
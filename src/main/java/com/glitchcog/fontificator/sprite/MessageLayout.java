@@ -0,0 +1,252 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.awt.Dimension;
+import java.awt.Font;
+
+/**
+ * The result of word wrapping a message's text with a SpriteFont: where each glyph goes, where the lines break, and how
+ * big the whole thing is. It is computed once and reused by SpriteFont for as long as the parsed text, the wrap width,
+ * the font metrics and the emoji sizes it was computed with are unchanged, so repainting and scrolling don't need to
+ * re-measure every word of every message.
+ *
+ * @author Matt Yanos
+ */
+public class MessageLayout
+{
+    /**
+     * Line index value for a character that takes up space (or not) but is never drawn, like a space or a line return
+     */
+    public static final int NOT_DRAWN = -1;
+
+    /**
+     * The parsed message text this layout was computed for. Message re-parses into new text whenever a setting that
+     * changes how it's parsed changes, so the identity of the text stands in for those settings.
+     */
+    private final MessageText text;
+
+    /**
+     * The wrap width in pixels this layout was computed for
+     */
+    private final int lineWrapLength;
+
+    /**
+     * The font metrics this layout was computed for
+     */
+    private final int boundsVersion;
+    private final float fontScale;
+    private final int charSpacing;
+    private final int lineSpacing;
+    private final int spaceWidth;
+    private final int baselineOffset;
+    private final boolean extendedCharEnabled;
+    private final char unknownChar;
+    private final Font extendedFont;
+
+    /**
+     * The emoji and badge settings this layout was computed for, which change how big the emoji are without changing
+     * the text
+     */
+    private final int emojiScale;
+    private final int badgeScale;
+    private final boolean emojiScaleToLine;
+    private final boolean badgeScaleToLine;
+    private final int badgeHeightOffset;
+    private final boolean animationEnabled;
+
+    /**
+     * Whether the message has a character too wide to fit on any line, in which case none of it is drawn
+     */
+    private boolean empty;
+
+    /**
+     * Whether any emoji in the message had not loaded its image yet when this layout was computed. Emoji dimensions can
+     * change once the image arrives, so a layout with pending emoji is not reused.
+     */
+    private boolean pendingEmoji;
+
+    /**
+     * The x offset of each character from the left edge of the message
+     */
+    private int[] glyphX;
+
+    /**
+     * The width in pixels of each character, including spacing
+     */
+    private int[] glyphWidth;
+
+    /**
+     * The line index of each character, or NOT_DRAWN
+     */
+    private int[] glyphLine;
+
+    /**
+     * How many pixels the tallest glyphs, like emoji, reach above the top of their line and below the bottom of their
+     * line, so the area the message draws into can be repainted without clipping them
+     */
+    private int overflowTop;
+    private int overflowBottom;
+
+    /**
+     * The indices of the characters at which a new line is started, in ascending order
+     */
+    private int[] lineBreaks;
+
+    /**
+     * The widest line that was ended by a line break
+     */
+    private int maxWidth;
+
+    MessageLayout(MessageText text, int lineWrapLength, int boundsVersion, float fontScale, int charSpacing, int lineSpacing, int spaceWidth, int baselineOffset, boolean extendedCharEnabled, char unknownChar, Font extendedFont, int emojiScale, int badgeScale, boolean emojiScaleToLine, boolean badgeScaleToLine, int badgeHeightOffset, boolean animationEnabled)
+    {
+        this.text = text;
+        this.lineWrapLength = lineWrapLength;
+        this.boundsVersion = boundsVersion;
+        this.fontScale = fontScale;
+        this.charSpacing = charSpacing;
+        this.lineSpacing = lineSpacing;
+        this.spaceWidth = spaceWidth;
+        this.baselineOffset = baselineOffset;
+        this.extendedCharEnabled = extendedCharEnabled;
+        this.unknownChar = unknownChar;
+        this.extendedFont = extendedFont;
+        this.emojiScale = emojiScale;
+        this.badgeScale = badgeScale;
+        this.emojiScaleToLine = emojiScaleToLine;
+        this.badgeScaleToLine = badgeScaleToLine;
+        this.badgeHeightOffset = badgeHeightOffset;
+        this.animationEnabled = animationEnabled;
+        this.glyphX = new int[text.length()];
+        this.glyphWidth = new int[text.length()];
+        this.glyphLine = new int[text.length()];
+        this.lineBreaks = new int[0];
+    }
+
+    /**
+     * Whether this layout can be reused for the specified text, wrap width, font metrics and emoji sizes
+     */
+    boolean isValidFor(MessageText text, int lineWrapLength, int boundsVersion, float fontScale, int charSpacing, int lineSpacing, int spaceWidth, int baselineOffset, boolean extendedCharEnabled, char unknownChar, Font extendedFont, int emojiScale, int badgeScale, boolean emojiScaleToLine, boolean badgeScaleToLine, int badgeHeightOffset, boolean animationEnabled)
+    {
+        return !pendingEmoji && this.text == text && this.lineWrapLength == lineWrapLength && this.boundsVersion == boundsVersion && this.fontScale == fontScale && this.charSpacing == charSpacing && this.lineSpacing == lineSpacing && this.spaceWidth == spaceWidth && this.baselineOffset == baselineOffset && this.extendedCharEnabled == extendedCharEnabled && this.unknownChar == unknownChar && (this.extendedFont == null ? extendedFont == null : this.extendedFont.equals(extendedFont)) && this.emojiScale == emojiScale && this.badgeScale == badgeScale && this.emojiScaleToLine == emojiScaleToLine && this.badgeScaleToLine == badgeScaleToLine && this.badgeHeightOffset == badgeHeightOffset && this.animationEnabled == animationEnabled;
+    }
+
+    void setEmpty(boolean empty)
+    {
+        this.empty = empty;
+    }
+
+    void setPendingEmoji(boolean pendingEmoji)
+    {
+        this.pendingEmoji = pendingEmoji;
+    }
+
+    void setGlyph(int index, int x, int width, int line)
+    {
+        glyphX[index] = x;
+        glyphWidth[index] = width;
+        glyphLine[index] = line;
+    }
+
+    void setOverflow(int overflowTop, int overflowBottom)
+    {
+        this.overflowTop = overflowTop;
+        this.overflowBottom = overflowBottom;
+    }
+
+    void setLineBreaks(int[] lineBreaks)
+    {
+        this.lineBreaks = lineBreaks;
+    }
+
+    void setMaxWidth(int maxWidth)
+    {
+        this.maxWidth = maxWidth;
+    }
+
+    public MessageText getText()
+    {
+        return text;
+    }
+
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    /**
+     * Whether any emoji in the text didn't have its image loaded yet when this was laid out, so its size may change
+     * 
+     * @return pending emoji
+     */
+    public boolean isPendingEmoji()
+    {
+        return pendingEmoji;
+    }
+
+    public int getGlyphX(int index)
+    {
+        return glyphX[index];
+    }
+
+    public int getGlyphWidth(int index)
+    {
+        return glyphWidth[index];
+    }
+
+    /**
+     * Get how many pixels glyphs can reach above the top of their line
+     * 
+     * @return overflowTop
+     */
+    public int getOverflowTop()
+    {
+        return overflowTop;
+    }
+
+    /**
+     * Get how many pixels glyphs can reach below the bottom of their line
+     * 
+     * @return overflowBottom
+     */
+    public int getOverflowBottom()
+    {
+        return overflowBottom;
+    }
+
+    public int getGlyphLine(int index)
+    {
+        return glyphLine[index];
+    }
+
+    /**
+     * Get the number of lines the message takes up when only the characters before the draw cursor are visible
+     *
+     * @param drawCursor
+     * @return line count
+     */
+    public int getLineCount(float drawCursor)
+    {
+        int count = 1;
+        for (int i = 0; i < lineBreaks.length && lineBreaks[i] < drawCursor; i++)
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the size of the bounding box of the message drawn up to the draw cursor
+     *
+     * @param drawCursor
+     * @param lineHeight
+     *            scaled line height
+     * @return dimension
+     */
+    public Dimension getDimension(float drawCursor, int lineHeight)
+    {
+        if (empty)
+        {
+            return new Dimension();
+        }
+        return new Dimension(maxWidth, getLineCount(drawCursor) * lineHeight);
+    }
+}
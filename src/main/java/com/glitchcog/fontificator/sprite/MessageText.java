@@ -0,0 +1,227 @@
+package com.glitchcog.fontificator.sprite;
+
+import java.util.Arrays;
+
+/**
+ * The parsed text of a message, ready for SpriteFont to lay out and draw. The characters are kept as a plain array of
+ * chars, and the few slots that hold an emoji or a badge instead are kept in a sparse side table of their indices and
+ * keys, so a message costs two bytes per character rather than a reference per character, and the layout loop walks
+ * a flat array rather than chasing a key object per character.
+ *
+ * @author Matt Yanos
+ */
+public class MessageText
+{
+    /**
+     * The char stored in the character array at the index of each emoji, the same char an emoji SpriteCharacterKey
+     * reports
+     */
+    public static final char EMOJI_SLOT = (char) 127;
+
+    private static final int[] NO_EMOJI_INDICES = new int[0];
+
+    private static final SpriteCharacterKey[] NO_EMOJI_KEYS = new SpriteCharacterKey[0];
+
+    /**
+     * Every character of the text, with EMOJI_SLOT where an emoji goes
+     */
+    private final char[] chars;
+
+    /**
+     * The indices of the emoji slots, in ascending order
+     */
+    private final int[] emojiIndices;
+
+    /**
+     * The emoji or badge key for each index in emojiIndices
+     */
+    private final SpriteCharacterKey[] emojiKeys;
+
+    private MessageText(char[] chars, int[] emojiIndices, SpriteCharacterKey[] emojiKeys)
+    {
+        this.chars = chars;
+        this.emojiIndices = emojiIndices;
+        this.emojiKeys = emojiKeys;
+    }
+
+    /**
+     * Get the number of characters, counting each emoji as one character
+     *
+     * @return length
+     */
+    public int length()
+    {
+        return chars.length;
+    }
+
+    /**
+     * Get the character at the index, which is EMOJI_SLOT for an emoji
+     *
+     * @param index
+     * @return char
+     */
+    public char getChar(int index)
+    {
+        return chars[index];
+    }
+
+    /**
+     * Whether the index holds a character rather than an emoji
+     *
+     * @param index
+     * @return isChar
+     */
+    public boolean isChar(int index)
+    {
+        return getEmojiSlot(index) < 0;
+    }
+
+    /**
+     * Get the key for the index, the shared key for a character or the emoji key for an emoji
+     *
+     * @param index
+     * @return key
+     */
+    public SpriteCharacterKey getKey(int index)
+    {
+        final int slot = getEmojiSlot(index);
+        return slot < 0 ? SpriteCharacterKey.valueOf(chars[index]) : emojiKeys[slot];
+    }
+
+    /**
+     * Get the number of emoji and badges in the text
+     *
+     * @return emojiCount
+     */
+    public int getEmojiCount()
+    {
+        return emojiKeys.length;
+    }
+
+    /**
+     * Get the emoji or badge key of the nth emoji in the text
+     *
+     * @param n
+     * @return key
+     */
+    public SpriteCharacterKey getEmojiKey(int n)
+    {
+        return emojiKeys[n];
+    }
+
+    /**
+     * Get the position of the index in the emoji side table, or a negative number if it isn't an emoji. Only indices
+     * holding EMOJI_SLOT need to be looked up, since every emoji is stored with that char.
+     *
+     * @param index
+     * @return slot
+     */
+    private int getEmojiSlot(int index)
+    {
+        if (chars[index] != EMOJI_SLOT || emojiIndices.length == 0)
+        {
+            return -1;
+        }
+        return Arrays.binarySearch(emojiIndices, index);
+    }
+
+    /**
+     * Accumulates the characters and emoji of a message in order, then builds the MessageText
+     *
+     * @author Matt Yanos
+     */
+    public static class Builder
+    {
+        private char[] chars;
+
+        private int length;
+
+        private int[] emojiIndices;
+
+        private SpriteCharacterKey[] emojiKeys;
+
+        private int emojiCount;
+
+        /**
+         * @param capacity
+         *            The expected number of characters, which just needs to be a good guess
+         */
+        public Builder(int capacity)
+        {
+            this.chars = new char[Math.max(capacity, 16)];
+            this.length = 0;
+            this.emojiIndices = NO_EMOJI_INDICES;
+            this.emojiKeys = NO_EMOJI_KEYS;
+            this.emojiCount = 0;
+        }
+
+        public Builder append(char c)
+        {
+            ensureCapacity(length + 1);
+            chars[length++] = c;
+            return this;
+        }
+
+        public Builder append(String str)
+        {
+            return append(str, 0, str.length());
+        }
+
+        /**
+         * Append the chars of the specified string from start up to but not including end
+         *
+         * @param str
+         * @param start
+         * @param end
+         * @return this
+         */
+        public Builder append(String str, int start, int end)
+        {
+            ensureCapacity(length + end - start);
+            str.getChars(start, end, chars, length);
+            length += end - start;
+            return this;
+        }
+
+        /**
+         * Append an emoji or badge, which takes up a single character
+         *
+         * @param key
+         *            A key constructed for the emoji
+         * @return this
+         */
+        public Builder appendEmoji(SpriteCharacterKey key)
+        {
+            if (emojiCount == emojiKeys.length)
+            {
+                final int emojiCapacity = Math.max(4, emojiCount * 2);
+                emojiIndices = Arrays.copyOf(emojiIndices, emojiCapacity);
+                emojiKeys = Arrays.copyOf(emojiKeys, emojiCapacity);
+            }
+            emojiIndices[emojiCount] = length;
+            emojiKeys[emojiCount] = key;
+            emojiCount++;
+            return append(EMOJI_SLOT);
+        }
+
+        public int length()
+        {
+            return length;
+        }
+
+        public MessageText build()
+        {
+            final int[] indices = emojiCount == 0 ? NO_EMOJI_INDICES : Arrays.copyOf(emojiIndices, emojiCount);
+            final SpriteCharacterKey[] keys = emojiCount == 0 ? NO_EMOJI_KEYS : Arrays.copyOf(emojiKeys, emojiCount);
+            return new MessageText(Arrays.copyOf(chars, length), indices, keys);
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity > chars.length)
+            {
+                chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+            }
+        }
+    }
+}
@@ -12,8 +12,6 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.imageio.ImageIO;
 
@@ -32,7 +30,22 @@ public class Sprite
 
     private BufferedImage img;
 
-    private Map<Color, BufferedImage> coloredImgs;
+    /**
+     * Copies of the sprite image tinted to each color drawn with it, bounded by bytes and evicting the least recently
+     * used colors
+     */
+    private ColorImageCache coloredImgs;
+
+    /**
+     * Individually tinted glyph cells, used instead of whole recolored sheets when glyph atlas mode is enabled
+     */
+    private GlyphAtlas glyphAtlas;
+
+    /**
+     * Whether to draw from the glyph atlas, tinting only the cells that are drawn, rather than tinting the whole sheet
+     * for each color
+     */
+    private boolean glyphAtlasEnabled;
 
     /**
      * The number of frames that make up the width of the image grid
@@ -68,7 +81,8 @@ public class Sprite
         this.pixelWidth = 8;
         this.pixelHeight = 8;
         img = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
-        coloredImgs = new HashMap<Color, BufferedImage>();
+        coloredImgs = new ColorImageCache(ConfigFont.DEFAULT_COLOR_CACHE_SIZE * ConfigFont.BYTES_PER_MEGABYTE);
+        glyphAtlas = new GlyphAtlas(ConfigFont.DEFAULT_COLOR_CACHE_SIZE * ConfigFont.BYTES_PER_MEGABYTE);
         setupSwap();
     }
 
@@ -92,6 +106,26 @@ public class Sprite
         addToColorCache(Color.WHITE);
     }
 
+    /**
+     * Set whether to draw from the glyph atlas, tinting only the glyph cells that are actually drawn for each color,
+     * rather than tinting a copy of the whole sheet for each color. Turning it off lets go of the glyphs tinted so far.
+     * 
+     * @param glyphAtlasEnabled
+     */
+    public void setGlyphAtlasEnabled(boolean glyphAtlasEnabled)
+    {
+        if (this.glyphAtlasEnabled && !glyphAtlasEnabled)
+        {
+            glyphAtlas.clear();
+        }
+        this.glyphAtlasEnabled = glyphAtlasEnabled;
+    }
+
+    public boolean isGlyphAtlasEnabled()
+    {
+        return glyphAtlasEnabled;
+    }
+
     /**
      * Construct a sprite
      * 
@@ -102,7 +136,8 @@ public class Sprite
     {
         logger.trace("Loading sprite from " + fontSpriteFilename);
 
-        coloredImgs = new HashMap<Color, BufferedImage>();
+        coloredImgs = new ColorImageCache(ConfigFont.DEFAULT_COLOR_CACHE_SIZE * ConfigFont.BYTES_PER_MEGABYTE);
+        glyphAtlas = new GlyphAtlas(ConfigFont.DEFAULT_COLOR_CACHE_SIZE * ConfigFont.BYTES_PER_MEGABYTE);
 
         setImage(fontSpriteFilename);
 
@@ -169,6 +204,37 @@ public class Sprite
         setGridDimensions(config.getGridWidth(), config.getGridHeight());
     }
 
+    /**
+     * Set the maximum size of the cache of recolored sprite images from the configuration
+     * 
+     * @param config
+     */
+    public void setColorCacheCapacity(ConfigFont config)
+    {
+        coloredImgs.setCapacityBytes(config.getColorCacheSize() * ConfigFont.BYTES_PER_MEGABYTE);
+        glyphAtlas.setCapacityBytes(config.getColorCacheSize() * ConfigFont.BYTES_PER_MEGABYTE);
+    }
+
+    /**
+     * Get the cache of recolored sprite images, for reporting its hit, miss and eviction counts
+     * 
+     * @return coloredImgs
+     */
+    public ColorImageCache getColorCache()
+    {
+        return coloredImgs;
+    }
+
+    /**
+     * Get the atlas of individually tinted glyph cells
+     * 
+     * @return glyphAtlas
+     */
+    public GlyphAtlas getGlyphAtlas()
+    {
+        return glyphAtlas;
+    }
+
     private void setGridDimensions(int gridWidth, int gridHeight)
     {
         setGridWidth(gridWidth);
@@ -256,7 +322,7 @@ public class Sprite
         return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
     }
 
-    private BufferedImage addToColorCache(Color drawColor)
+    private void setSwapColor(Color drawColor)
     {
         for (short i = 0; i < 256; i++)
         {
@@ -264,6 +330,27 @@ public class Sprite
             swapTable.getTable()[1][i] = (short) ((i / 255.0f) * drawColor.getGreen());
             swapTable.getTable()[2][i] = (short) ((i / 255.0f) * drawColor.getBlue());
         }
+    }
+
+    /**
+     * Tint just the specified region of the sprite image, used to fill the glyph atlas
+     * 
+     * @param source
+     * @param drawColor
+     * @return tinted copy of the region
+     */
+    BufferedImage tintRegion(Rectangle source, Color drawColor)
+    {
+        setSwapColor(drawColor);
+        BufferedImage region = img.getSubimage(source.x, source.y, source.width, source.height);
+        ColorModel cm = img.getColorModel();
+        BufferedImage tintedRegion = new BufferedImage(cm, cm.createCompatibleWritableRaster(source.width, source.height), cm.isAlphaPremultiplied(), null);
+        return swapOp.filter(region, tintedRegion);
+    }
+
+    private BufferedImage addToColorCache(Color drawColor)
+    {
+        setSwapColor(drawColor);
         BufferedImage coloredImg = copyImage(img);
         coloredImg = swapOp.filter(img, coloredImg);
 
@@ -272,17 +359,34 @@ public class Sprite
         return coloredImg;
     }
 
+    /**
+     * Get the sprite image tinted to the specified color, only recoloring it on a cache miss
+     * 
+     * @param color
+     * @return colored image
+     */
+    private BufferedImage getColoredImage(Color color)
+    {
+        BufferedImage drawImg = coloredImgs.get(color);
+        if (drawImg == null)
+        {
+            drawImg = addToColorCache(color);
+        }
+        return drawImg;
+    }
+
     public void draw(Graphics2D g2d, int x, int y, int frame, float scale, Color color)
     {
         int sourceX = (frame % gridWidth) * pixelWidth;
         int sourceY = (frame / gridWidth) * pixelHeight;
 
-        BufferedImage drawImg = coloredImgs.get(color);
-        if (drawImg == null)
+        if (glyphAtlasEnabled)
         {
-            drawImg = addToColorCache(color);
-            coloredImgs.put(color, drawImg);
+            drawFromAtlas(g2d, x, y, pixelWidth, pixelHeight, new Rectangle(sourceX, sourceY, pixelWidth, pixelHeight), scale, color);
+            return;
         }
+
+        BufferedImage drawImg = getColoredImage(color);
         g2d.drawImage(drawImg, x, y, x + (int) (pixelWidth * scale), y + (int) (pixelHeight * scale), sourceX, sourceY, sourceX + pixelWidth, sourceY + pixelHeight, null);
 
         // Crops the image before anti-aliasing is applied, so pixels on the edges of cropping lines don't bleed over, but it's slow!
@@ -304,12 +408,13 @@ public class Sprite
 
     public void draw(Graphics2D g2d, int x, int y, int w, int h, Rectangle source, float scale, Color color)
     {
-        BufferedImage drawImg = coloredImgs.get(color);
-        if (drawImg == null)
+        if (glyphAtlasEnabled)
         {
-            drawImg = addToColorCache(color);
-            coloredImgs.put(color, drawImg);
+            drawFromAtlas(g2d, x, y, w, h, source, scale, color);
+            return;
         }
+
+        BufferedImage drawImg = getColoredImage(color);
         g2d.drawImage(drawImg, x, y, x + (int) (w * scale), y + (int) (h * scale), source.x, source.y, source.x + source.width, source.y + source.height, null);
 
         // Crops the image before anti-aliasing is applied, so pixels on the edges of cropping lines don't bleed over, but it's slow!
@@ -317,4 +422,13 @@ public class Sprite
         // g2d.drawImage(bi, x, y, (int) (w * scale), (int) (h * scale), null);
     }
 
+    /**
+     * Draw the source region tinted to the specified color from the glyph atlas
+     */
+    private void drawFromAtlas(Graphics2D g2d, int x, int y, int w, int h, Rectangle source, float scale, Color color)
+    {
+        GlyphAtlas.Entry entry = glyphAtlas.get(source, color, this);
+        g2d.drawImage(entry.getPage(), x, y, x + (int) (w * scale), y + (int) (h * scale), entry.getX(), entry.getY(), entry.getX() + source.width, entry.getY() + source.height, null);
+    }
+
 }
@@ -54,6 +54,10 @@ public class SpriteCache
             if (sprite != null)
             {
                 sprite.setGridDimensions(fontConfig);
+                sprite.setColorCacheCapacity(fontConfig);
+                // Font sprites are drawn in many colors a few glyphs at a time, so by default only the glyphs that are
+                // used are tinted
+                sprite.setGlyphAtlasEnabled(fontConfig.isGlyphAtlasEnabled());
                 return sprite;
             }
         }
@@ -6,25 +6,60 @@ import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
 
 /**
  * Replacement for char that can also represent an emoji or a badge. One or the other member variable is to be set.
+ * Character keys are immutable flyweights shared by every message, gotten with {@link #valueOf(char)}, so parsing the
+ * text of a message doesn't allocate an object per character. Emoji and badge keys are constructed for each use,
+ * because their background color can be overridden.
  * 
  * @author Matt Yanos
  */
 public class SpriteCharacterKey
 {
+    /**
+     * The first and last characters of the normal ASCII range, the range covered by SpriteFont.NORMAL_ASCII_KEY
+     */
+    private static final char FIRST_NORMAL_CHAR = ' ';
+    private static final char LAST_NORMAL_CHAR = (char) 127;
+
+    /**
+     * The number of characters in each page of the table of interned extended character keys
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * The keys for the normal ASCII range, created up front since nearly every character of every message is one of
+     * these
+     */
+    private static final SpriteCharacterKey[] NORMAL_KEYS = new SpriteCharacterKey[LAST_NORMAL_CHAR - FIRST_NORMAL_CHAR + 1];
+
+    static
+    {
+        for (char c = FIRST_NORMAL_CHAR; c <= LAST_NORMAL_CHAR; c++)
+        {
+            NORMAL_KEYS[c - FIRST_NORMAL_CHAR] = new SpriteCharacterKey(c, null, false);
+        }
+    }
+
+    /**
+     * The keys for extended characters, interned as they are first used, in pages of PAGE_SIZE characters so only the
+     * ranges of characters that actually show up in chat take up any space. Two threads interning the same character at
+     * once may each create a key, which is harmless because keys are immutable and never compared by identity.
+     */
+    private static final SpriteCharacterKey[][] EXTENDED_KEYS = new SpriteCharacterKey[(Character.MAX_VALUE + 1) / PAGE_SIZE][];
+
     /**
      * The character this represents
      */
-    private char character;
+    private final char character;
 
     /**
      * Whether the character falls outside of the inclusive ASCII range 32-127
      */
-    private boolean extended;
+    private final boolean extended;
 
     /**
      * The emoji this character represents
      */
-    private LazyLoadEmoji emoji;
+    private final LazyLoadEmoji emoji;
 
     /**
      * Background color override for emoji, for handling variable FFZ badge colors (bot is default gray, but changes to
@@ -35,16 +70,46 @@ public class SpriteCharacterKey
     /**
      * Whether the emoji set is a badge image
      */
-    private boolean badge;
+    private final boolean badge;
+
+    /**
+     * Get the shared key for a character
+     * 
+     * @param character
+     * @return key
+     */
+    public static SpriteCharacterKey valueOf(char character)
+    {
+        if (character >= FIRST_NORMAL_CHAR && character <= LAST_NORMAL_CHAR)
+        {
+            return NORMAL_KEYS[character - FIRST_NORMAL_CHAR];
+        }
+
+        SpriteCharacterKey[] page = EXTENDED_KEYS[character / PAGE_SIZE];
+        if (page == null)
+        {
+            page = new SpriteCharacterKey[PAGE_SIZE];
+            EXTENDED_KEYS[character / PAGE_SIZE] = page;
+        }
+        SpriteCharacterKey key = page[character % PAGE_SIZE];
+        if (key == null)
+        {
+            key = new SpriteCharacterKey(character, null, false);
+            page[character % PAGE_SIZE] = key;
+        }
+        return key;
+    }
 
     /**
-     * Construct as a character
+     * Whether the character falls outside of the inclusive ASCII range 32-127, meaning it isn't in
+     * SpriteFont.NORMAL_ASCII_KEY
      * 
      * @param character
+     * @return extended
      */
-    public SpriteCharacterKey(char character)
+    public static boolean isExtended(char character)
     {
-        this(character, null, false);
+        return character < FIRST_NORMAL_CHAR || character > LAST_NORMAL_CHAR;
     }
 
     /**
@@ -68,7 +133,7 @@ public class SpriteCharacterKey
     private SpriteCharacterKey(char character, LazyLoadEmoji emoji, boolean badge)
     {
         this.character = character;
-        this.extended = !SpriteFont.NORMAL_ASCII_KEY.contains(Character.toString(this.character));
+        this.extended = isExtended(character);
         this.emoji = emoji;
         this.badge = badge;
     }
@@ -147,8 +212,17 @@ public class SpriteCharacterKey
         return emoji == null ? null : emoji.getBgColor();
     }
 
+    /**
+     * Override the background color of an emoji key. Character keys are shared, so they can't be given an override.
+     * 
+     * @param emojiColorOverride
+     */
     public void setEmojiBgColorOverride(Color emojiColorOverride)
     {
+        if (isChar())
+        {
+            throw new IllegalStateException("Character keys are shared and cannot have an emoji background color override");
+        }
         this.emojiBgColorOverride = emojiColorOverride;
     }
 
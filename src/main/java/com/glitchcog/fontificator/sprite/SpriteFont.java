@@ -2,13 +2,19 @@ package com.glitchcog.fontificator.sprite;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
 import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -19,11 +25,14 @@ import com.glitchcog.fontificator.config.ConfigEmoji;
 import com.glitchcog.fontificator.config.ConfigFont;
 import com.glitchcog.fontificator.config.ConfigMessage;
 import com.glitchcog.fontificator.config.FontType;
+import com.glitchcog.fontificator.emoji.EmojiLoader;
 import com.glitchcog.fontificator.emoji.EmojiManager;
 import com.glitchcog.fontificator.emoji.LazyLoadEmoji;
 
 /**
- * A font that is drawn with a sprite
+ * A font that is drawn with a sprite. Measuring, laying out and drawing share state, like the character bounds and the
+ * sprite cache, that isn't thread safe, so a sprite font must only be used by one thread, which for the chat window is
+ * the event dispatch thread.
  * 
  * @author Matt Yanos
  */
@@ -42,6 +51,12 @@ public class SpriteFont
 
     protected Map<Character, Rectangle> characterBounds;
 
+    /**
+     * Indexed by character, whether each character is in the character key of the font, so a character can be checked
+     * without searching the key. It is rebuilt whenever the character dimensions are calculated.
+     */
+    private boolean[] keyCharacters;
+
     /**
      * Characters that can be line breaks for wrapping to the next line
      */
@@ -59,11 +74,39 @@ public class SpriteFont
 
     protected ConfigFont config;
 
+    /**
+     * Incremented whenever the character bounds are recalculated, so cached message layouts measured with the old
+     * bounds are not reused
+     */
+    private int boundsVersion;
+
+    /**
+     * The most recently computed layout of each message, weakly keyed so messages that fall out of the chat queue
+     * don't linger here
+     */
+    private final Map<Message, MessageLayout> layouts;
+
+    /**
+     * The font used to draw extended characters, sized to match the sprite line height, along with the height it was
+     * sized for and the base font and render context it was measured with. It is cleared by updateForConfigChange.
+     */
+    private Font extendedFont;
+    private float extendedFontTargetHeight;
+    private String extendedFontName;
+    private FontRenderContext extendedFontRenderContext;
+
+    /**
+     * The time spent drawing emoji since it was last taken, so the renderer can tell emoji apart from glyphs when
+     * timing frames. It is only touched on the paint thread.
+     */
+    private long emojiDrawNanos;
+
     public SpriteFont(ConfigFont config)
     {
         logger.trace("Creating sprite font using config font filename " + (config == null ? "null" : config.getFontFilename()));
         this.config = config;
         this.characterBounds = new HashMap<Character, Rectangle>();
+        this.layouts = Collections.synchronizedMap(new WeakHashMap<Message, MessageLayout>());
         this.sprites = new SpriteCache(config);
     }
 
@@ -72,11 +115,13 @@ public class SpriteFont
      * 
      * @param img
      * @param emojiConfig
+     * @param emojiLoader
+     *            Where to request the image if it isn't loaded yet
      * @return
      */
-    private int[] getEmojiDimensions(LazyLoadEmoji emoji, ConfigEmoji emojiConfig)
+    private int[] getEmojiDimensions(LazyLoadEmoji emoji, ConfigEmoji emojiConfig, EmojiLoader emojiLoader)
     {
-        Image img = emoji.getImage(emojiConfig.isAnimationEnabled());
+        Image img = emoji.getImage(emojiConfig.isAnimationEnabled(), emojiLoader);
 
         int iw;
         int ih;
@@ -95,7 +140,7 @@ public class SpriteFont
                 // Do not use the emoji scaling below because it's a character, not an emoji
                 // We can pass a null in for the FontMetrics, because we know the unknown character falls within the
                 // non-extended range
-                return new int[] { getCharacterWidth(null, new SpriteCharacterKey(config.getUnknownChar()), emojiConfig), 1 };
+                return new int[] { getCharacterWidth(null, config.getUnknownChar()), 1 };
             case NOTHING:
             default:
                 iw = 0;
@@ -136,52 +181,59 @@ public class SpriteFont
      * @param c
      * @return character width
      */
-    private int getCharacterWidth(FontMetrics fontMetrics, SpriteCharacterKey c, ConfigEmoji emojiConfig)
+    private int getCharacterWidth(FontMetrics fontMetrics, char c)
     {
-        if (c.isChar())
-        {
-            int baseWidth;
+        int baseWidth;
 
-            // Extended characters are enabled
-            if (c.isExtended())
+        // Extended characters are enabled
+        if (SpriteCharacterKey.isExtended(c))
+        {
+            if (config.isExtendedCharEnabled())
             {
-                if (config.isExtendedCharEnabled())
-                {
-                    // Return string width of extended char
-                    fontMetricCharArray[0] = c.getChar();
-                    baseWidth = fontMetrics.charsWidth(fontMetricCharArray, 0, 1);
-                    // Don't include scale in this calculation, because it's already built into the font size
-                    return (int) (baseWidth + config.getCharSpacing() * config.getFontScale());
-                }
-                // The extended character should be replaced with the unknown character
-                else
-                {
-                    baseWidth = getCharacterBounds(config.getUnknownChar()).width;
-                }
+                // Return string width of extended char
+                fontMetricCharArray[0] = c;
+                baseWidth = fontMetrics.charsWidth(fontMetricCharArray, 0, 1);
+                // Don't include scale in this calculation, because it's already built into the font size
+                return (int) (baseWidth + config.getCharSpacing() * config.getFontScale());
             }
-            // It's a normal character
+            // The extended character should be replaced with the unknown character
             else
             {
-                // Character
-                baseWidth = getCharacterBounds(c.getChar()).width;
+                baseWidth = getCharacterBounds(config.getUnknownChar()).width;
             }
-            return (int) ((baseWidth + config.getCharSpacing()) * config.getFontScale());
         }
+        // It's a normal character
         else
         {
-            // Emoji
-            int[] eDim = getEmojiDimensions(c.getEmoji(), emojiConfig);
-            final int charSpacing = (int) (config.getCharSpacing() * config.getFontScale());
-            final int extraSpacing = (c.getEmoji().getType().isBadge() ? Math.max(charSpacing, (int) (BADGE_MINIMUM_SPACING_PIXELS * config.getFontScale())) : charSpacing);
-            return eDim[0] + extraSpacing;
+            // Character
+            baseWidth = getCharacterBounds(c).width;
         }
+        return (int) ((baseWidth + config.getCharSpacing()) * config.getFontScale());
+    }
 
+    /**
+     * Return how wide an emoji or badge is in pixels, including spacing
+     * 
+     * @param sck
+     * @param emojiConfig
+     * @param emojiLoader
+     * @return emoji width
+     */
+    private int getEmojiWidth(SpriteCharacterKey sck, ConfigEmoji emojiConfig, EmojiLoader emojiLoader)
+    {
+        int[] eDim = getEmojiDimensions(sck.getEmoji(), emojiConfig, emojiLoader);
+        final int charSpacing = (int) (config.getCharSpacing() * config.getFontScale());
+        final int extraSpacing = (sck.getEmoji().getType().isBadge() ? Math.max(charSpacing, (int) (BADGE_MINIMUM_SPACING_PIXELS * config.getFontScale())) : charSpacing);
+        return eDim[0] + extraSpacing;
     }
 
     public void calculateCharacterDimensions()
     {
         // Start from scratch
         characterBounds.clear();
+        boundsVersion++;
+        keyCharacters = indexCharacterKey(config.getCharacterKey());
+        sprites.getSprite(config).getGlyphAtlas().clear();
 
         // For fixed width, just put the same sized box for all characters. The
         // only difference is the location on the sprite grid
@@ -308,6 +360,42 @@ public class SpriteFont
         }
     }
 
+    /**
+     * Mark each character of the specified character key in an array indexed by character
+     * 
+     * @param key
+     * @return whether each character is in the key, with a length of one past the largest character in it
+     */
+    private static boolean[] indexCharacterKey(String key)
+    {
+        char max = 0;
+        for (int i = 0; i < key.length(); i++)
+        {
+            max = (char) Math.max(max, key.charAt(i));
+        }
+        boolean[] index = new boolean[key.isEmpty() ? 0 : max + 1];
+        for (int i = 0; i < key.length(); i++)
+        {
+            index[key.charAt(i)] = true;
+        }
+        return index;
+    }
+
+    /**
+     * Whether the specified character is in the character key of the font
+     * 
+     * @param c
+     * @return in key
+     */
+    private boolean isKeyCharacter(char c)
+    {
+        if (keyCharacters == null)
+        {
+            keyCharacters = indexCharacterKey(config.getCharacterKey());
+        }
+        return c < keyCharacters.length && keyCharacters[c];
+    }
+
     /**
      * Get the bounding box for the character in the sprite font image (does not use scale at all)
      * 
@@ -316,7 +404,7 @@ public class SpriteFont
      */
     public Rectangle getCharacterBounds(char c)
     {
-        if (!config.getCharacterKey().contains(Character.toString(c)))
+        if (!isKeyCharacter(c))
         {
             c = config.getUnknownChar();
         }
@@ -336,6 +424,61 @@ public class SpriteFont
     public void updateForConfigChange()
     {
         calculateCharacterDimensions();
+        extendedFont = null;
+    }
+
+    /**
+     * Get the font to draw extended characters with, the smallest size of the graphics object's font that is at least
+     * as tall as the sprite characters above the baseline. It is found by binary search and kept until the sprite
+     * height, scale or baseline changes, or until updateForConfigChange is called.
+     * 
+     * @param g2d
+     *            The graphics object the extended characters will be drawn on
+     * @return extendedFont
+     */
+    public Font getExtendedFont(Graphics2D g2d)
+    {
+        final float targetHeight = (getFontHeight() - config.getBaselineOffset()) * config.getFontScale();
+        final String fontName = g2d.getFont().getName();
+        final FontRenderContext frc = g2d.getFontRenderContext();
+
+        if (extendedFont == null || extendedFontTargetHeight != targetHeight || !extendedFontName.equals(fontName) || !extendedFontRenderContext.equals(frc))
+        {
+            // Find an upper bound that is tall enough, then narrow down to the smallest size that is
+            int lo = 0;
+            int hi = 1;
+            while (isShorterThan(fontName, hi, frc, targetHeight))
+            {
+                lo = hi;
+                hi *= 2;
+            }
+            while (hi - lo > 1)
+            {
+                final int mid = (lo + hi) / 2;
+                if (isShorterThan(fontName, mid, frc, targetHeight))
+                {
+                    lo = mid;
+                }
+                else
+                {
+                    hi = mid;
+                }
+            }
+
+            logger.trace("Calculated extended font size: " + hi);
+
+            extendedFont = new Font(fontName, Font.PLAIN, hi);
+            extendedFontTargetHeight = targetHeight;
+            extendedFontName = fontName;
+            extendedFontRenderContext = frc;
+        }
+
+        return extendedFont;
+    }
+
+    private static boolean isShorterThan(String fontName, int fontSize, FontRenderContext frc, float targetHeight)
+    {
+        return targetHeight > new Font(fontName, Font.PLAIN, fontSize).getStringBounds("A", 0, 1, frc).getHeight();
     }
 
     /**
@@ -363,6 +506,38 @@ public class SpriteFont
         return sprites.getSprite(config).pixelHeight;
     }
 
+    /**
+     * Get the time spent drawing emoji since the last call, and start counting again from zero
+     * 
+     * @return nanoseconds
+     */
+    public long takeEmojiDrawNanos()
+    {
+        final long nanos = emojiDrawNanos;
+        emojiDrawNanos = 0L;
+        return nanos;
+    }
+
+    /**
+     * Get the number of colored copies of the font sprite being cached
+     * 
+     * @return count
+     */
+    public int getColorCacheCount()
+    {
+        return sprites.getSprite(config).getColorCache().getCount();
+    }
+
+    /**
+     * Get the number of colored glyphs packed into the glyph atlas
+     * 
+     * @return count
+     */
+    public int getGlyphAtlasCount()
+    {
+        return sprites.getSprite(config).getGlyphAtlas().getCount();
+    }
+
     public int getLineScrollOffset()
     {
         return lineScrollOffset;
@@ -457,208 +632,426 @@ public class SpriteFont
             return new Dimension();
         }
 
-        SpriteCharacterKey[] text = msg.getText(emojiManager, messageConfig, emojiConfig);
+        MessageLayout layout = getMessageLayout(msg, fontMetrics, messageConfig, emojiConfig, emojiManager, lineWrapLength);
 
-        int maxCharWidth = 0;
-        for (int c = 0; c < text.length; c++)
+        final int lineHeight = getLineHeightScaled();
+
+        if (g2d != null && !layout.isEmpty())
+        {
+            MessageText text = layout.getText();
+
+            // Because the letters are set back by this amount to divide up the spacing between their left and right
+            // sides
+            x_init -= config.getCharSpacing() / 2;
+
+            final int y = y_init + lineScrollOffset * lineHeight;
+            final float drawCursor = msg.getDrawCursor();
+
+            Color color = Color.WHITE;
+
+            // Only blit the characters the layout has already placed
+            for (int ci = 0; ci < text.length() && ci < drawCursor; ci++)
+            {
+                final int line = layout.getGlyphLine(ci);
+                if (line == MessageLayout.NOT_DRAWN)
+                {
+                    continue;
+                }
+
+                final int drawY = y + line * lineHeight;
+                if (drawY >= topLimit && drawY < botLimit)
+                {
+                    if (colorConfig != null)
+                    {
+                        color = getFontColor(msg, ci, messageConfig, colorConfig, userColor);
+                    }
+                    if (text.isChar(ci))
+                    {
+                        drawCharacter(g2d, fontMetrics, text.getChar(ci), x_init + layout.getGlyphX(ci), drawY, color, debug, debugColor);
+                    }
+                    else
+                    {
+                        final long emojiStart = System.nanoTime();
+                        drawEmoji(g2d, fontMetrics, text.getKey(ci), x_init + layout.getGlyphX(ci), drawY, emojiConfig, emojiManager.getLoader(), color, debug, debugColor, emojiObserver);
+                        emojiDrawNanos += System.nanoTime() - emojiStart;
+                    }
+                }
+            }
+        }
+
+        return layout.getDimension(msg.getDrawCursor(), lineHeight);
+    }
+
+    /**
+     * Get the regions the animated emoji of the specified message are drawn into by drawMessage with the same
+     * arguments, so a new frame of their animations can be drawn without redrawing anything else
+     * 
+     * @param msg
+     * @param fontMetrics
+     * @param messageConfig
+     * @param emojiConfig
+     * @param emojiManager
+     * @param x_init
+     * @param y_init
+     * @param topLimit
+     * @param botLimit
+     * @param lineWrapLength
+     * @return the bounds of each animated emoji drawn, which is empty if animation is disabled
+     */
+    public List<Rectangle> getAnimatedEmojiBounds(Message msg, FontMetrics fontMetrics, ConfigMessage messageConfig, ConfigEmoji emojiConfig, EmojiManager emojiManager, int x_init, int y_init, int topLimit, int botLimit, int lineWrapLength)
+    {
+        List<Rectangle> bounds = new ArrayList<Rectangle>();
+        if (!emojiConfig.isAnimationEnabled() || (msg.isJoinType() && !messageConfig.showJoinMessages()))
         {
-            maxCharWidth = Math.max(maxCharWidth, getCharacterWidth(fontMetrics, text[c], emojiConfig));
+            return bounds;
         }
-        if (maxCharWidth > lineWrapLength)
+
+        MessageLayout layout = getMessageLayout(msg, fontMetrics, messageConfig, emojiConfig, emojiManager, lineWrapLength);
+        if (layout.isEmpty())
         {
-            return new Dimension();
+            return bounds;
         }
 
-        // Because the letters are set back by this amount to divide up the
-        // spacing between their left and right sides
+        MessageText text = layout.getText();
         x_init -= config.getCharSpacing() / 2;
+        final int lineHeight = getLineHeightScaled();
+        final int y = y_init + lineScrollOffset * lineHeight;
+        final float drawCursor = msg.getDrawCursor();
+        for (int ci = 0; ci < text.length() && ci < drawCursor; ci++)
+        {
+            final int line = layout.getGlyphLine(ci);
+            if (text.isChar(ci) || line == MessageLayout.NOT_DRAWN || !text.getKey(ci).getEmoji().isAnimatedGif())
+            {
+                continue;
+            }
 
-        int x = x_init;
-        int y = y_init;
+            final int drawY = y + line * lineHeight;
+            if (drawY >= topLimit && drawY < botLimit)
+            {
+                Rectangle emojiBounds = getEmojiDrawBounds(text.getKey(ci), x_init + layout.getGlyphX(ci), drawY, emojiConfig, emojiManager.getLoader());
+                // The colored background of an emoji is filled one pixel past its image
+                emojiBounds.width++;
+                emojiBounds.height++;
+                bounds.add(emojiBounds);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Get the layout of the specified message, reusing the cached one if nothing it depends on has changed since it
+     * was computed
+     * 
+     * @param msg
+     * @param fontMetrics
+     * @param messageConfig
+     * @param emojiConfig
+     * @param emojiManager
+     * @param lineWrapLength
+     * @return layout
+     */
+    public MessageLayout getMessageLayout(Message msg, FontMetrics fontMetrics, ConfigMessage messageConfig, ConfigEmoji emojiConfig, EmojiManager emojiManager, int lineWrapLength)
+    {
+        MessageText text = msg.getText(emojiManager, messageConfig, emojiConfig);
+        final Font extendedFont = fontMetrics == null ? null : fontMetrics.getFont();
+        final int emojiScale = emojiConfig.getEmojiScale();
+        final int badgeScale = emojiConfig.getBadgeScale();
+        final boolean emojiScaleToLine = emojiConfig.isEmojiScaleToLine();
+        final boolean badgeScaleToLine = emojiConfig.isBadgeScaleToLine();
+        final int badgeHeightOffset = emojiConfig.getBadgeHeightOffset();
+        final boolean animationEnabled = emojiConfig.isAnimationEnabled();
+
+        MessageLayout layout = layouts.get(msg);
+        if (layout == null || !layout.isValidFor(text, lineWrapLength, boundsVersion, config.getFontScale(), config.getCharSpacing(), config.getLineSpacing(), config.getSpaceWidth(), config.getBaselineOffset(), config.isExtendedCharEnabled(), config.getUnknownChar(), extendedFont, emojiScale, badgeScale, emojiScaleToLine, badgeScaleToLine, badgeHeightOffset, animationEnabled))
+        {
+            layout = new MessageLayout(text, lineWrapLength, boundsVersion, config.getFontScale(), config.getCharSpacing(), config.getLineSpacing(), config.getSpaceWidth(), config.getBaselineOffset(), config.isExtendedCharEnabled(), config.getUnknownChar(), extendedFont, emojiScale, badgeScale, emojiScaleToLine, badgeScaleToLine, badgeHeightOffset, animationEnabled);
+            computeLayout(layout, fontMetrics, emojiConfig, emojiManager.getLoader(), lineWrapLength);
+            layouts.put(msg, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Word wrap the text of the specified layout, placing each character on a line at an x offset from the left edge
+     * of the message
+     * 
+     * @param layout
+     * @param fontMetrics
+     * @param emojiConfig
+     * @param emojiLoader
+     * @param lineWrapLength
+     */
+    private void computeLayout(MessageLayout layout, FontMetrics fontMetrics, ConfigEmoji emojiConfig, EmojiLoader emojiLoader, int lineWrapLength)
+    {
+        MessageText text = layout.getText();
+        final int length = text.length();
+
+        // Measure every character once
+        int[] charWidths = new int[length];
+        int maxCharWidth = 0;
+        boolean pendingEmoji = false;
+        for (int c = 0; c < length; c++)
+        {
+            if (text.isChar(c))
+            {
+                charWidths[c] = getCharacterWidth(fontMetrics, text.getChar(c));
+            }
+            else
+            {
+                SpriteCharacterKey sck = text.getKey(c);
+                if (!sck.getEmoji().isImageLoaded(emojiConfig.isAnimationEnabled()))
+                {
+                    pendingEmoji = true;
+                }
+                charWidths[c] = getEmojiWidth(sck, emojiConfig, emojiLoader);
+            }
+            maxCharWidth = Math.max(maxCharWidth, charWidths[c]);
+        }
+        layout.setPendingEmoji(pendingEmoji);
+        computeOverflow(layout, fontMetrics, emojiConfig, emojiLoader);
+
+        if (maxCharWidth > lineWrapLength)
+        {
+            layout.setEmpty(true);
+            return;
+        }
 
-        y += lineScrollOffset * getLineHeightScaled();
+        // The pixel width of the rest of the word starting at each character, so the look ahead to see whether the
+        // next word fits doesn't have to re-measure the word for every character in it
+        int[] wordRemainderWidths = new int[length];
+        for (int c = length - 1; c >= 0; c--)
+        {
+            if (!isWordBreak(text.getChar(c)))
+            {
+                wordRemainderWidths[c] = charWidths[c] + (c + 1 < length ? wordRemainderWidths[c + 1] : 0);
+            }
+        }
 
+        List<Integer> lineBreaks = new ArrayList<Integer>();
+
+        int x = 0;
+        int line = 0;
         int maxWidth = 0;
         int width = 0;
-        int height = getLineHeightScaled();
 
         boolean forcedBreak = false;
 
-        Color color = Color.WHITE;
-
         // Go through each character in the text
-        for (int ci = 0; ci < text.length; ci++)
+        for (int ci = 0; ci < length; ci++)
         {
-            if (colorConfig != null)
-            {
-                color = getFontColor(msg, ci, messageConfig, colorConfig, userColor);
-            }
+            final int charWidth = charWidths[ci];
 
             // If the character is a line return, go to the next line
-            if (LINE_BREAKS.contains(String.valueOf(text[ci].getChar())))
+            if (isLineBreak(text.getChar(ci)))
             {
-                x = x_init;
+                x = 0;
                 maxWidth = Math.max(maxWidth, width);
                 width = 0;
-                y += getLineHeightScaled();
-                if (ci < msg.getDrawCursor())
-                {
-                    height += getLineHeightScaled();
-                }
+                line++;
+                lineBreaks.add(ci);
+                layout.setGlyph(ci, x, charWidth, MessageLayout.NOT_DRAWN);
             }
             // If it's not a line return, look forward into the text to find if
             // the next word fits
-            else if (WORD_BREAKS.contains(String.valueOf(text[ci].getChar())))
+            else if (isWordBreak(text.getChar(ci)))
             {
-                int charWidth = getCharacterWidth(fontMetrics, text[ci], emojiConfig);
+                layout.setGlyph(ci, x, charWidth, MessageLayout.NOT_DRAWN);
                 x += charWidth;
                 width += charWidth;
                 forcedBreak = false;
             }
             else
             {
-                int currentWordPixelWidth = 0;
-                for (int nwc = 0; nwc < text.length - ci && !WORD_BREAKS.contains(String.valueOf(text[ci + nwc].getChar())); nwc++)
-                {
-                    currentWordPixelWidth += getCharacterWidth(fontMetrics, text[ci + nwc], emojiConfig);
-                }
-                int distanceAlreadyFilled = x - x_init;
+                final int currentWordPixelWidth = wordRemainderWidths[ci];
 
                 // The next word fits
-                if (distanceAlreadyFilled + currentWordPixelWidth < lineWrapLength)
+                if (x + currentWordPixelWidth < lineWrapLength)
                 {
-                    if (g2d != null && y >= topLimit && y < botLimit && ci < msg.getDrawCursor())
-                    {
-                        drawCharacter(g2d, fontMetrics, text[ci], x, y, emojiConfig, color, debug, debugColor, emojiObserver);
-                    }
-                    int charWidth = getCharacterWidth(fontMetrics, text[ci], emojiConfig);
-                    x += charWidth;
-                    width += charWidth;
+                    layout.setGlyph(ci, x, charWidth, line);
                 }
                 // The next word doesn't fit, but it doesn't exceed the length
                 // of a full line, so hit return
                 else if (!forcedBreak && currentWordPixelWidth < lineWrapLength)
                 {
-                    x = x_init;
+                    x = 0;
                     maxWidth = Math.max(maxWidth, width);
                     width = 0;
-                    y += getLineHeightScaled();
-                    if (ci < msg.getDrawCursor())
-                    {
-                        height += getLineHeightScaled();
-                    }
-                    if (g2d != null && y >= topLimit && y < botLimit && ci < msg.getDrawCursor())
-                    {
-                        drawCharacter(g2d, fontMetrics, text[ci], x, y, emojiConfig, color, debug, debugColor, emojiObserver);
-                    }
-                    int charWidth = getCharacterWidth(fontMetrics, text[ci], emojiConfig);
-                    x += charWidth;
-                    width += charWidth;
+                    line++;
+                    lineBreaks.add(ci);
+                    layout.setGlyph(ci, x, charWidth, line);
                 }
                 // The next word doesn't even fit on its own line, so it needs a
                 // forced break at the end of the line
                 else
                 {
                     forcedBreak = true;
-                    distanceAlreadyFilled = x - x_init;
-                    final int remainderOfTheLine = lineWrapLength - distanceAlreadyFilled;
-                    int charWidth = getCharacterWidth(fontMetrics, text[ci], emojiConfig);
+                    final int remainderOfTheLine = lineWrapLength - x;
                     if (charWidth > remainderOfTheLine)
                     {
-                        x = x_init;
+                        x = 0;
                         maxWidth = Math.max(maxWidth, width);
                         width = 0;
-                        y += getLineHeightScaled();
-                        if (ci < msg.getDrawCursor())
-                        {
-                            height += getLineHeightScaled();
-                        }
+                        line++;
+                        lineBreaks.add(ci);
                     }
-
-                    if (g2d != null && y >= topLimit && y < botLimit && ci < msg.getDrawCursor())
-                    {
-                        drawCharacter(g2d, fontMetrics, text[ci], x, y, emojiConfig, color, debug, debugColor, emojiObserver);
-                    }
-                    x += charWidth;
-                    width += charWidth;
+                    layout.setGlyph(ci, x, charWidth, line);
                 }
+                x += charWidth;
+                width += charWidth;
             }
+        }
 
+        int[] breaks = new int[lineBreaks.size()];
+        for (int i = 0; i < breaks.length; i++)
+        {
+            breaks[i] = lineBreaks.get(i);
         }
-        return new Dimension(maxWidth, height);
+        layout.setLineBreaks(breaks);
+        layout.setMaxWidth(maxWidth);
     }
 
-    private void drawCharacter(Graphics2D g2d, FontMetrics fontMetrics, SpriteCharacterKey sck, int x, int y, ConfigEmoji emojiConfig, Color color, boolean debug, Color debugColor, ImageObserver emojiObserver)
+    /**
+     * Determine how far above and below their lines the glyphs of the layout reach when drawn, mirroring where
+     * drawCharacter puts sprite characters, extended characters and emoji
+     * 
+     * @param layout
+     * @param fontMetrics
+     * @param emojiConfig
+     */
+    private void computeOverflow(MessageLayout layout, FontMetrics fontMetrics, ConfigEmoji emojiConfig, EmojiLoader emojiLoader)
     {
-        final int drawX = x + config.getCharSpacing() / 2;
-        int drawY = y;
+        MessageText text = layout.getText();
 
-        if (sck.isChar())
-        {
-            final boolean validNormalChar = !sck.isExtended() && characterBounds.containsKey(sck.getChar());
-            final boolean drawUnknownChar = !validNormalChar && !config.isExtendedCharEnabled();
+        final int lineHeight = getLineHeightScaled();
+        final int spriteDrawHeight = sprites.getSprite(config).getSpriteDrawHeight(config.getFontScale());
 
-            if (drawUnknownChar)
-            {
-                sck = new SpriteCharacterKey(config.getUnknownChar());
-            }
+        int top = 0;
+        int bottom = spriteDrawHeight;
 
-            if (validNormalChar || drawUnknownChar)
+        if (config.isExtendedCharEnabled() && fontMetrics != null)
+        {
+            for (int ci = 0; ci < text.length(); ci++)
             {
-                Rectangle bounds = characterBounds.get(sck.getChar());
-                sprites.getSprite(config).draw(g2d, drawX, drawY, bounds.width, bounds.height, bounds, config.getFontScale(), color);
-                if (debug)
+                // Emoji slots are never extended characters
+                if (SpriteCharacterKey.isExtended(text.getChar(ci)))
                 {
-                    g2d.setColor(debugColor);
-                    g2d.drawRect(drawX, drawY, (int) (bounds.width * config.getFontScale()), (int) (bounds.height * config.getFontScale()));
+                    final int baseline = (int) ((fontMetrics.getHeight() - fontMetrics.getDescent()) - config.getBaselineOffset() * config.getFontScale());
+                    top = Math.min(top, baseline - fontMetrics.getMaxAscent());
+                    bottom = Math.max(bottom, baseline + fontMetrics.getMaxDescent());
+                    break;
                 }
             }
-            // The character is invalid, and drawing the unknown char is not selected, so draw the extended characters
-            else
+        }
+
+        for (int e = 0; e < text.getEmojiCount(); e++)
+        {
+            SpriteCharacterKey sck = text.getEmojiKey(e);
+            int[] eDim = getEmojiDimensions(sck.getEmoji(), emojiConfig, emojiLoader);
+            final int yOffset = (int) (spriteDrawHeight / 2 - config.getBaselineOffset() * config.getFontScale()) - (sck.isBadge() ? emojiConfig.getBadgeHeightOffset() : 0);
+            final int emojiTop = yOffset - eDim[1] / 2;
+            top = Math.min(top, emojiTop);
+            bottom = Math.max(bottom, emojiTop + eDim[1] + 1);
+        }
+
+        layout.setOverflow(Math.max(0, -top), Math.max(0, bottom - lineHeight));
+    }
+
+    private static boolean isWordBreak(char c)
+    {
+        return WORD_BREAKS.indexOf(c) >= 0;
+    }
+
+    private static boolean isLineBreak(char c)
+    {
+        return LINE_BREAKS.indexOf(c) >= 0;
+    }
+
+    private void drawCharacter(Graphics2D g2d, FontMetrics fontMetrics, char c, int x, int y, Color color, boolean debug, Color debugColor)
+    {
+        final int drawX = x + config.getCharSpacing() / 2;
+        final int drawY = y;
+
+        final boolean validNormalChar = !SpriteCharacterKey.isExtended(c) && characterBounds.containsKey(c);
+        final boolean drawUnknownChar = !validNormalChar && !config.isExtendedCharEnabled();
+
+        if (drawUnknownChar)
+        {
+            c = config.getUnknownChar();
+        }
+
+        if (validNormalChar || drawUnknownChar)
+        {
+            Rectangle bounds = characterBounds.get(c);
+            sprites.getSprite(config).draw(g2d, drawX, drawY, bounds.width, bounds.height, bounds, config.getFontScale(), color);
+            if (debug)
             {
-                g2d.setColor(color);
-                g2d.drawString(Character.toString(sck.getChar()), drawX, drawY + (fontMetrics.getHeight() - fontMetrics.getDescent()) - config.getBaselineOffset() * config.getFontScale());
+                g2d.setColor(debugColor);
+                g2d.drawRect(drawX, drawY, (int) (bounds.width * config.getFontScale()), (int) (bounds.height * config.getFontScale()));
             }
         }
+        // The character is invalid, and drawing the unknown char is not selected, so draw the extended characters
         else
         {
-            int[] eDim = getEmojiDimensions(sck.getEmoji(), emojiConfig);
-            // yOffset is to center the emoji on the line
-            int yOffset = (int) (sprites.getSprite(config).getSpriteDrawHeight(config.getFontScale()) / 2 - config.getBaselineOffset() * config.getFontScale()) - (sck.isBadge() ? emojiConfig.getBadgeHeightOffset() : 0);
-            drawY += yOffset - eDim[1] / 2;
-            Image eImage = sck.getEmoji().getImage(emojiConfig.isAnimationEnabled());
-            if (eImage == null)
+            g2d.setColor(color);
+            g2d.drawString(Character.toString(c), drawX, drawY + (fontMetrics.getHeight() - fontMetrics.getDescent()) - config.getBaselineOffset() * config.getFontScale());
+        }
+    }
+
+    /**
+     * Get where the specified emoji is drawn for a glyph placed at the specified position
+     * 
+     * @param sck
+     * @param x
+     * @param y
+     * @param emojiConfig
+     * @param emojiLoader
+     * @return the position and the scaled size of the emoji image
+     */
+    private Rectangle getEmojiDrawBounds(SpriteCharacterKey sck, int x, int y, ConfigEmoji emojiConfig, EmojiLoader emojiLoader)
+    {
+        int[] eDim = getEmojiDimensions(sck.getEmoji(), emojiConfig, emojiLoader);
+        // yOffset is to center the emoji on the line
+        int yOffset = (int) (sprites.getSprite(config).getSpriteDrawHeight(config.getFontScale()) / 2 - config.getBaselineOffset() * config.getFontScale()) - (sck.isBadge() ? emojiConfig.getBadgeHeightOffset() : 0);
+        return new Rectangle(x + config.getCharSpacing() / 2, y + yOffset - eDim[1] / 2, eDim[0], eDim[1]);
+    }
+
+    private void drawEmoji(Graphics2D g2d, FontMetrics fontMetrics, SpriteCharacterKey sck, int x, int y, ConfigEmoji emojiConfig, EmojiLoader emojiLoader, Color color, boolean debug, Color debugColor, ImageObserver emojiObserver)
+    {
+        final Rectangle drawBounds = getEmojiDrawBounds(sck, x, y, emojiConfig, emojiLoader);
+        final int drawX = drawBounds.x;
+        final int drawY = drawBounds.y;
+        Image eImage = sck.getEmoji().getImage(emojiConfig.isAnimationEnabled(), emojiLoader);
+        if (eImage == null)
+        {
+            // If the image is null, then it's not loaded, so do the backup display strategy
+            g2d.setColor(color);
+            switch (emojiConfig.getDisplayStrategy())
             {
-                // If the image is null, then it's not loaded, so do the backup display strategy
-                g2d.setColor(color);
-                switch (emojiConfig.getDisplayStrategy())
-                {
-                case BOX_FILL:
-                    g2d.fillRect(drawX, drawY, eDim[0] + 1, eDim[1] + 1);
-                    break;
-                case BOX_FRAME:
-                    g2d.drawRect(drawX, drawY, eDim[0], eDim[1]);
-                    break;
-                case UNKNOWN:
-                    drawCharacter(g2d, fontMetrics, new SpriteCharacterKey(config.getUnknownChar()), x, y, emojiConfig, color, debug, debugColor, emojiObserver);
-                    break;
-                case SPACE:
-                case NOTHING:
-                default:
-                    break;
-                }
+            case BOX_FILL:
+                g2d.fillRect(drawX, drawY, drawBounds.width + 1, drawBounds.height + 1);
+                break;
+            case BOX_FRAME:
+                g2d.drawRect(drawX, drawY, drawBounds.width, drawBounds.height);
+                break;
+            case UNKNOWN:
+                drawCharacter(g2d, fontMetrics, config.getUnknownChar(), x, y, color, debug, debugColor);
+                break;
+            case SPACE:
+            case NOTHING:
+            default:
+                break;
             }
-            else
+        }
+        else
+        {
+            // Draw a color square background for the emoji (for FrankerFaceZ badges)
+            if (sck.getEmoji().isColoringRequired())
             {
-                // Draw a color square background for the emoji (for FrankerFaceZ badges)
-                if (sck.getEmoji().isColoringRequired())
-                {
-                    g2d.setColor(sck.getEmojiBgColor());
-                    g2d.fillRect(drawX, drawY, eDim[0] + 1, eDim[1] + 1);
-                }
-                // Draw the emoji image
-                g2d.drawImage(eImage, drawX, drawY, eDim[0], eDim[1], emojiObserver);
+                g2d.setColor(sck.getEmojiBgColor());
+                g2d.fillRect(drawX, drawY, drawBounds.width + 1, drawBounds.height + 1);
             }
+            // Draw the emoji image
+            g2d.drawImage(eImage, drawX, drawY, drawBounds.width, drawBounds.height, emojiObserver);
         }
     }
 
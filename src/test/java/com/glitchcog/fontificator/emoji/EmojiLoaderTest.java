@@ -0,0 +1,169 @@
+package com.glitchcog.fontificator.emoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Loads emoji from local file URLs through an EmojiLoader whose executor only runs the loads when the test says to, so
+ * each step of the load can be checked
+ *
+ * @author Matt Yanos
+ */
+public class EmojiLoaderTest
+{
+    private static final long NO_RETRY = 60000L;
+
+    private List<Runnable> queued;
+
+    private Executor manualExecutor;
+
+    @Before
+    public void setUp()
+    {
+        queued = new ArrayList<Runnable>();
+        manualExecutor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                queued.add(command);
+            }
+        };
+    }
+
+    @Test
+    public void testPendingThenLoaded() throws Exception
+    {
+        EmojiLoader loader = new EmojiLoader(manualExecutor, null, NO_RETRY);
+        LazyLoadEmoji emoji = new LazyLoadEmoji("Kappa", createImageFile(28, 20).toURI().toString(), EmojiType.BETTER_TTV_GLOBAL);
+        assertEquals(EmojiLoadState.UNLOADED, emoji.getLoadState());
+
+        assertNull(emoji.getImage(false, loader));
+        assertEquals(EmojiLoadState.PENDING, emoji.getLoadState());
+        assertEquals(1, loader.getInFlightCount());
+
+        // Drawing it again while it's pending doesn't request it again
+        assertNull(emoji.getImage(false, loader));
+        assertEquals(1, queued.size());
+
+        runQueued();
+        assertEquals(EmojiLoadState.LOADED, emoji.getLoadState());
+        assertEquals(0, loader.getInFlightCount());
+        assertNotNull(emoji.getImage(false, loader));
+        assertEquals(28, emoji.getWidth());
+        assertEquals(20, emoji.getHeight());
+        assertEquals(0, queued.size());
+    }
+
+    @Test
+    public void testFailedRetriedAfterDelay() throws Exception
+    {
+        final long retryDelay = 200L;
+        EmojiLoader loader = new EmojiLoader(manualExecutor, null, retryDelay);
+        File missing = new File(createImageFile(1, 1).getParentFile(), "missing-" + System.nanoTime() + ".png");
+        LazyLoadEmoji emoji = new LazyLoadEmoji("Kappa", missing.toURI().toString(), EmojiType.BETTER_TTV_GLOBAL);
+
+        emoji.getImage(false, loader);
+        runQueued();
+        assertEquals(EmojiLoadState.FAILED, emoji.getLoadState());
+
+        // Not requested again until the retry delay has passed
+        assertNull(emoji.getImage(false, loader));
+        assertEquals(EmojiLoadState.FAILED, emoji.getLoadState());
+        assertEquals(0, queued.size());
+
+        Thread.sleep(retryDelay * 2);
+        assertNull(emoji.getImage(false, loader));
+        assertEquals(EmojiLoadState.PENDING, emoji.getLoadState());
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    public void testArrivalsCoalescedIntoOneRepaint() throws Exception
+    {
+        final AtomicInteger repaints = new AtomicInteger();
+        EmojiLoader loader = new EmojiLoader(manualExecutor, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                repaints.incrementAndGet();
+            }
+        }, NO_RETRY);
+
+        List<LazyLoadEmoji> emoji = new ArrayList<LazyLoadEmoji>();
+        for (int i = 0; i < 3; i++)
+        {
+            LazyLoadEmoji e = new LazyLoadEmoji("Kappa" + i, createImageFile(10 + i, 10).toURI().toString(), EmojiType.BETTER_TTV_GLOBAL);
+            e.getImage(false, loader);
+            emoji.add(e);
+        }
+
+        // Hold up the event dispatch thread so all three arrive before the repaint can run
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        runQueued();
+        for (LazyLoadEmoji e : emoji)
+        {
+            assertEquals(EmojiLoadState.LOADED, e.getLoadState());
+        }
+        release.countDown();
+
+        // Wait for everything already posted to the event dispatch thread to run
+        SwingUtilities.invokeAndWait(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+        assertEquals(1, repaints.get());
+    }
+
+    private void runQueued()
+    {
+        List<Runnable> tasks = new ArrayList<Runnable>(queued);
+        queued.clear();
+        for (Runnable task : tasks)
+        {
+            task.run();
+        }
+    }
+
+    private static File createImageFile(int width, int height) throws Exception
+    {
+        File file = File.createTempFile("emoji", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", file);
+        return file;
+    }
+}